@@ -32,11 +32,14 @@ import ax.ha.it.smsalarm.alarm.Alarm;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler.EventAction;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler.EventCategory;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.DatabaseHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
 import ax.ha.it.smsalarm.provider.WidgetProvider;
+import ax.ha.it.smsalarm.util.FlightRecorder;
+import ax.ha.it.smsalarm.util.FlightRecorder.Event;
 import ax.ha.it.smsalarm.util.Utils;
 
 /**
@@ -310,6 +313,7 @@ public class Acknowledge extends Activity {
 	 * <ul>
 	 * <li>Current alarm is acknowledged and stored into database.</li>
 	 * <li>Widget is updated with updated alarm info.</li>
+	 * <li>Any ongoing alarm storm is ended, so that next alarm is raised again.</li>
 	 * </ul>
 	 * <p>
 	 * <b><i>Note. This method does not do the actual acknowledgement, eg. placing phone call or sending SMS, it only does the internal acknowledge
@@ -319,6 +323,10 @@ public class Acknowledge extends Activity {
 		// Update acknowledge time and persist it to database
 		alarm.updateAcknowledged();
 		db.updateAlarm(alarm);
+		FlightRecorder.record(Event.ALARM_ACKNOWLEDGED, alarm.getId());
+
+		// Alarm is taken care of, next alarm must not be coalesced into it's alert
+		AlertHandler.getInstance().endStorm();
 
 		// Update all widgets associated with this application
 		WidgetProvider.updateWidgets(Acknowledge.this);
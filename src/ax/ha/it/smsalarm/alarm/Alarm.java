@@ -74,6 +74,7 @@ public class Alarm implements Parcelable {
 	private String triggerText; 											// Text found in message triggering an alarm
 	private Optional<Date> optionalAcknowledged = Optional.<Date> absent();	// Optional date when the alarm was acknowledged
 	private AlarmType alarmType = AlarmType.UNDEFINED; 						// Indicating which kind of alarm this object is
+	private int repeats; 													// Number of duplicates of this alarm received
 	// @formatter:on
 
 	/**
@@ -123,13 +124,16 @@ public class Alarm implements Parcelable {
 	 *            Alarms optional acknowledge date and time as <code>String</code> in milliseconds.
 	 * @param alarmType
 	 *            Type of alarm.
+	 * @param repeats
+	 *            Number of duplicates of alarm received.
 	 */
-	public Alarm(int id, String received, String sender, String message, String triggerText, String acknowledged, AlarmType alarmType) {
+	public Alarm(int id, String received, String sender, String message, String triggerText, String acknowledged, AlarmType alarmType, int repeats) {
 		this.id = id;
 		this.sender = sender;
 		this.message = message;
 		this.triggerText = triggerText;
 		this.alarmType = alarmType;
+		this.repeats = repeats;
 
 		// Should always exist a date received
 		this.received = new Date(Long.parseLong(received));
@@ -173,6 +177,7 @@ public class Alarm implements Parcelable {
 		dest.writeString(triggerText);
 		dest.writeSerializable(optionalAcknowledged);
 		dest.writeInt(alarmType.ordinal());
+		dest.writeInt(repeats);
 	}
 
 	@Override
@@ -195,6 +200,7 @@ public class Alarm implements Parcelable {
 		triggerText = source.readString();
 		optionalAcknowledged = (Optional<Date>) source.readSerializable();
 		alarmType = AlarmType.of(source.readInt());
+		repeats = source.readInt();
 	}
 
 	/**
@@ -332,6 +338,16 @@ public class Alarm implements Parcelable {
 		return alarmType;
 	}
 
+	/**
+	 * To get number of duplicates of this Alarm received, that is how many times the same alarm has been received again shortly after it was first
+	 * received.
+	 * 
+	 * @return Number of duplicates received.
+	 */
+	public int getRepeats() {
+		return repeats;
+	}
+
 	/**
 	 * To get a <b><i>Localized</i></b> text representation from this {@link Alarm}'s {@link AlarmType}.
 	 * 
@@ -3,7 +3,13 @@
  */
 package ax.ha.it.smsalarm.application;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.google.android.gms.analytics.GoogleAnalytics;
 import com.google.android.gms.analytics.HitBuilders;
@@ -13,13 +19,20 @@ import android.app.Activity;
 import android.app.Application;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager.NameNotFoundException;
+import android.os.Process;
 import android.support.v4.app.Fragment;
 import android.util.Log;
 import ax.ha.it.smsalarm.activity.Acknowledge.AcknowledgeMethod;
+import ax.ha.it.smsalarm.classifier.Rule;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+import ax.ha.it.smsalarm.handler.AlarmSignalCatalog;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
 import ax.ha.it.smsalarm.handler.SoundHandler;
+import ax.ha.it.smsalarm.util.FlightRecorder;
+import ax.ha.it.smsalarm.util.Scheduler;
 
 /**
  * Application class, which have two main purposes:
@@ -46,6 +59,7 @@ public class SmsAlarmApplication extends Application {
 	private static final int LVL_15_CHANGE_DATATYPE_RENAME_SHARED_PREFERENCES = 15;
 	private static final int LVL_19_EXTENDED_ACKNOWLEDGE_FUNCTIONALTIY = 19;
 	private static final int LVL_20_RENAME_SHARED_PREFERENCES = 20;
+	private static final int LVL_35_SENDER_SCOPED_RULES = 35;
 
 	// To store both the current and old version code in
 	private int currentVersionCode;
@@ -66,8 +80,17 @@ public class SmsAlarmApplication extends Application {
 		// Initialize google analytics handler as soon as possible in case any exceptions occurs at an early stage
 		GoogleAnalyticsHandler.initialize(this);
 
+		// Dump the flight recorder on any uncaught exception, chained with the handler installed by Google Analytics
+		FlightRecorder.installCrashHandler();
+
 		// Handle updates if needed
 		handleUpdates();
+
+		// Build the alarm signal catalog before any alarm signal is resolved
+		AlarmSignalCatalog.getInstance().initialize(this);
+
+		// Get the alarm signals ready as early as possible, this is also the case when application is started due to a received SMS
+		AlertHandler.getInstance().prepareAlarmSignals(this);
 	}
 
 	/**
@@ -162,6 +185,19 @@ public class SmsAlarmApplication extends Application {
 					oldVersionCode = LVL_20_RENAME_SHARED_PREFERENCES;
 				}
 
+				// Only if old version code is less than 35, in version 35 free texts and regular expressions starting with a sender scope are scoped to
+				// some senders, existing ones starting with "{" by chance must be escaped to keep their behaviour
+				if (oldVersionCode < LVL_35_SENDER_SCOPED_RULES) {
+					escapeSenderScopes(PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY, Kind.FREE_TEXT);
+					escapeSenderScopes(PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY, Kind.FREE_TEXT);
+					escapeSenderScopes(PrefKey.PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY, Kind.REGEX);
+					escapeSenderScopes(PrefKey.SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY, Kind.REGEX);
+
+					prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.VERSION_CODE, LVL_35_SENDER_SCOPED_RULES, this);
+
+					oldVersionCode = LVL_35_SENDER_SCOPED_RULES;
+				}
+
 				// The old version code is larger than or equal the latest update level code, this tells us that all updates has been done or no
 				// update actions needed, store the latest version code
 				if (oldVersionCode >= LVL_19_EXTENDED_ACKNOWLEDGE_FUNCTIONALTIY || oldVersionCode < currentVersionCode) {
@@ -178,6 +214,27 @@ public class SmsAlarmApplication extends Application {
 		}
 	}
 
+	/**
+	 * To escape the rules of given kind stored in {@link SharedPreferences} under given key, so that they keep the behaviour they had before sender
+	 * scopes existed, see {@link Rule#escapeSenderScope(Kind, String)}.
+	 * 
+	 * @param key
+	 *            Key of the shared preferences holding the rules.
+	 * @param kind
+	 *            Kind of rules.
+	 */
+	@SuppressWarnings("unchecked")
+	private void escapeSenderScopes(PrefKey key, Kind kind) {
+		List<String> values = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, key, DataType.LIST, this);
+		List<String> escapedValues = new ArrayList<String>();
+
+		for (String value : values) {
+			escapedValues.add(Rule.escapeSenderScope(kind, value));
+		}
+
+		prefHandler.storePrefs(PrefKey.SHARED_PREF, key, escapedValues, this);
+	}
+
 	/**
 	 * A handler/utility class for all interaction with Google Analytics. This class should be <code>null</code> safe.<br>
 	 * <b><i>Note.</i></b> It's very important to initialize this class before usage, a hard failure is guaranteed in all other cases!
@@ -280,6 +337,71 @@ public class SmsAlarmApplication extends Application {
 		private static GoogleAnalytics analytics;
 		private static Tracker tracker;
 
+		// Changed settings are reported this long after the first change of a burst, if more settings than the threshold changed within the burst
+		// they are reported in one summarizing event
+		private static final long SETTINGS_CHANGED_DELAY = 2000;
+		private static final int SETTINGS_CHANGED_SUMMARY_THRESHOLD = 3;
+		private static final String SETTINGS_CHANGED_SUMMARY_LABEL = " settings changed";
+
+		// Settings changed within current burst, each mapped to the shared preferences it was changed in as a burst may span several, guarded by
+		// itself
+		private static final Map<PrefKey, SharedPreferences> changedPrefKeys = new LinkedHashMap<PrefKey, SharedPreferences>();
+
+		// Events queued but not yet dispatched, each mapped to the number of times it has been queued, guarded by itself
+		private static final Map<QueuedEvent, Integer> queuedEvents = new LinkedHashMap<QueuedEvent, Integer>();
+
+		// Single background thread, of low priority, on which queued events are dispatched to the tracker
+		private static final ExecutorService dispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, GoogleAnalyticsHandler.class.getSimpleName());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		/**
+		 * An event queued to be dispatched later, equal events are coalesced into one hit.
+		 * 
+		 * @author Robert Nyholm <robert.nyholm@aland.net>
+		 * @version 2.3.1
+		 * @since 2.3.1
+		 */
+		private static class QueuedEvent {
+			private final EventCategory eventCategory;
+			private final EventAction eventAction;
+			private final String label;
+
+			private QueuedEvent(EventCategory eventCategory, EventAction eventAction, String label) {
+				this.eventCategory = eventCategory;
+				this.eventAction = eventAction;
+				this.label = label;
+			}
+
+			@Override
+			public boolean equals(Object object) {
+				if (!(object instanceof QueuedEvent)) {
+					return false;
+				}
+
+				QueuedEvent other = (QueuedEvent) object;
+
+				return eventCategory == other.eventCategory && eventAction == other.eventAction && label.equals(other.label);
+			}
+
+			@Override
+			public int hashCode() {
+				return (eventCategory.hashCode() * 31 + eventAction.hashCode()) * 31 + label.hashCode();
+			}
+		}
+
 		/**
 		 * To initialize {@link GoogleAnalytics} and {@link Tracker} objects within this {@link GoogleAnalyticsHandler}. <br>
 		 * <b><i>Note.</i></b> It's mandatory to run this method before any usage of the handler can be made.
@@ -397,8 +519,70 @@ public class SmsAlarmApplication extends Application {
 		}
 
 		/**
-		 * Convenience method to send an event to Google Analytics telling some {@link SharedPreferences} has changed, and in case the data should be reported to Google Analytics that data will be
-		 * sent as well, see {@link ReportRule} for more info about that.
+		 * To queue an event to be sent to Google Analytics, nothing is sent until {@link #dispatchQueuedEvents()} is called. Equal events queued in
+		 * between are coalesced into one hit, with the number of times the event was queued as it's value.<br>
+		 * Queuing an event never touches the {@link Tracker}, hence this method is cheap enough to be called from time critical code.
+		 * 
+		 * @param eventCategory
+		 *            {@link EventCategory} of the event.
+		 * @param eventAction
+		 *            {@link EventAction} of the event.
+		 * @param label
+		 *            Label of the event.
+		 * @see #sendEvent(EventCategory, EventAction, String)
+		 */
+		public static void queueEvent(EventCategory eventCategory, EventAction eventAction, String label) {
+			if (eventCategory != null && eventAction != null && label != null) {
+				QueuedEvent event = new QueuedEvent(eventCategory, eventAction, label);
+
+				synchronized (queuedEvents) {
+					Integer count = queuedEvents.get(event);
+					queuedEvents.put(event, count == null ? 1 : count + 1);
+				}
+			}
+		}
+
+		/**
+		 * To dispatch all events queued so far. The events are sent to Google Analytics on a background thread of low priority, hence this method
+		 * returns immediately.
+		 * 
+		 * @see #queueEvent(EventCategory, EventAction, String)
+		 */
+		public static void dispatchQueuedEvents() {
+			final Map<QueuedEvent, Integer> events;
+
+			// Swap the queued events so new events can be queued while these are sent
+			synchronized (queuedEvents) {
+				if (queuedEvents.isEmpty()) {
+					return;
+				}
+
+				events = new LinkedHashMap<QueuedEvent, Integer>(queuedEvents);
+				queuedEvents.clear();
+			}
+
+			dispatcher.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (Map.Entry<QueuedEvent, Integer> entry : events.entrySet()) {
+						QueuedEvent event = entry.getKey();
+
+						try {
+							tracker().send(new HitBuilders.EventBuilder(event.eventCategory.getReportText(), event.eventAction.getReportText()).setLabel(event.label).setValue(entry.getValue()).build());
+						} catch (IllegalStateException e) {
+							Log.e(LOG_TAG + ":dispatchQueuedEvents()", "Unable to send queued event: \"" + event.label + "\"", e);
+						}
+					}
+				}
+			});
+		}
+
+		/**
+		 * Convenience method to send an event to Google Analytics telling some {@link SharedPreferences} has changed, and in case the data should be
+		 * reported to Google Analytics that data will be sent as well, see {@link ReportRule} for more info about that.<br>
+		 * Changes are reported after a short while, so a burst of changes, for example made when the application is updated, is reported together. If
+		 * more than a few settings changed within the burst one summarizing event is sent instead of one event per setting. Only the changed keys are
+		 * read, with their typed getters.
 		 * 
 		 * @param prefs
 		 *            <code>SharedPreferences</code> from which object changed will be fetched from.
@@ -407,39 +591,96 @@ public class SmsAlarmApplication extends Application {
 		 */
 		public static void sendSettingsChangedEvent(SharedPreferences prefs, String key) {
 			if (prefs != null && key != null) {
-				// Resolve the key
+				// Resolve the key, and figure out if the changed preferences on this key should be reported to Google Analytics at all
 				PrefKey changedPrefKey = PrefKey.of(key);
 
-				// Figure out if the changed preferences on this key should be reported to Google Analytics
-				if (!ReportRule.NO_REPORT.equals(changedPrefKey.getReportRule())) {
-
-					// Sanity control in case wrong PrefKey was resolved
-					if (prefs.contains(changedPrefKey.getKey())) {
-						// Fetch the object
-						Object object = prefs.getAll().get(changedPrefKey.getKey());
-
-						// When integers or booleans are reported, we don't take the ReportRule.REPORT_ANONYMIZE in consideration. We also don't
-						// need to cast anything as String.valueOf() will work fine for bare objects of these classes
-						if (object instanceof Integer || object instanceof Boolean) {
-							// Special handling for this shared preference, we want to send a resolved name for the acknowledge method, not the
-							// integer which is stored
-							if (PrefKey.ACK_METHOD_KEY.equals(changedPrefKey) && object instanceof Integer) {
-								object = AcknowledgeMethod.of((Integer) object).getReportText();
-							}
-							tracker().send(new HitBuilders.EventBuilder(EventCategory.SETTINGS.getReportText(), EventAction.SETTINGS_CHANGED.getReportText()).setLabel(changedPrefKey.getReportText() + ": " + String.valueOf(object)).build());
-						} else if (object instanceof String) { // Lists will be treated as strings as well
-							// Figure out if the data should be reported straight of or not
-							if (ReportRule.REPORT_RAW.equals(changedPrefKey.getReportRule())) {
-								tracker().send(new HitBuilders.EventBuilder(EventCategory.SETTINGS.getReportText(), EventAction.SETTINGS_CHANGED.getReportText()).setLabel(changedPrefKey.getReportText() + ": " + String.valueOf(object)).build());
-							} else {
-								// Translate string to true or false, if string contains any real data then send true else false
-								boolean used = ((String) object).length() > 0 ? true : false;
-								tracker().send(new HitBuilders.EventBuilder(EventCategory.SETTINGS.getReportText(), EventAction.SETTINGS_CHANGED.getReportText()).setLabel(changedPrefKey.getReportText() + ": " + String.valueOf(used)).build());
+				if (ReportRule.NO_REPORT.equals(changedPrefKey.getReportRule())) {
+					return;
+				}
+
+				synchronized (changedPrefKeys) {
+					changedPrefKeys.put(changedPrefKey, prefs);
+
+					// First change of a burst, report the whole burst once it's over
+					if (changedPrefKeys.size() == 1) {
+						Scheduler.getInstance().schedule(LOG_TAG + ":reportSettingsChanged", new Runnable() {
+							@Override
+							public void run() {
+								reportSettingsChanged();
 							}
-						}
+						}, SETTINGS_CHANGED_DELAY);
+					}
+				}
+			}
+		}
+
+		/**
+		 * To report all settings changed since last report, the events are queued and dispatched on the background thread.
+		 * 
+		 * @see #sendSettingsChangedEvent(SharedPreferences, String)
+		 */
+		private static void reportSettingsChanged() {
+			Map<PrefKey, SharedPreferences> prefKeys;
+
+			synchronized (changedPrefKeys) {
+				prefKeys = new LinkedHashMap<PrefKey, SharedPreferences>(changedPrefKeys);
+				changedPrefKeys.clear();
+			}
+
+			if (prefKeys.size() > SETTINGS_CHANGED_SUMMARY_THRESHOLD) {
+				queueEvent(EventCategory.SETTINGS, EventAction.SETTINGS_CHANGED, prefKeys.size() + SETTINGS_CHANGED_SUMMARY_LABEL);
+			} else {
+				for (Map.Entry<PrefKey, SharedPreferences> entry : prefKeys.entrySet()) {
+					PrefKey prefKey = entry.getKey();
+					SharedPreferences prefs = entry.getValue();
+
+					// Sanity control in case the preference was removed
+					if (prefs.contains(prefKey.getKey())) {
+						queueEvent(EventCategory.SETTINGS, EventAction.SETTINGS_CHANGED, prefKey.getReportText() + ": " + resolveReportValue(prefs, prefKey));
 					}
 				}
 			}
+
+			dispatchQueuedEvents();
+		}
+
+		/**
+		 * To resolve the value to report of given {@link PrefKey}, only the value of the key is read from given {@link SharedPreferences}.<br>
+		 * When integers or booleans are reported, the {@link ReportRule#REPORT_ANONYMIZE} isn't taken in consideration. Strings and lists, which are
+		 * stored as strings, are reported as <code>true</code> or <code>false</code>, whether they contain any data or not, unless they should be
+		 * reported raw.
+		 * 
+		 * @param prefs
+		 *            <code>SharedPreferences</code> from which the value is read.
+		 * @param prefKey
+		 *            Key of the value.
+		 * @return Value to report.
+		 */
+		private static String resolveReportValue(SharedPreferences prefs, PrefKey prefKey) {
+			switch (prefKey.getDataType()) {
+				case INTEGER:
+					int value = prefs.getInt(prefKey.getKey(), 0);
+
+					// Special handling for this shared preference, we want to send a resolved name for the acknowledge method, not the integer
+					// which is stored
+					if (PrefKey.ACK_METHOD_KEY.equals(prefKey)) {
+						return AcknowledgeMethod.of(value).getReportText();
+					}
+
+					return String.valueOf(value);
+				case BOOLEAN:
+					return String.valueOf(prefs.getBoolean(prefKey.getKey(), false));
+				default:
+					String string = prefs.getString(prefKey.getKey(), "");
+
+					// Figure out if the data should be reported straight of or not
+					if (ReportRule.REPORT_RAW.equals(prefKey.getReportRule())) {
+						return string;
+					}
+
+					// Translate string to true or false, if string contains any real data then true else false
+					return String.valueOf(string.length() > 0);
+			}
 		}
 	}
 }
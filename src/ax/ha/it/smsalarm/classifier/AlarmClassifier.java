@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+
+/**
+ * The <b><i>Alarm Classification</i></b> core, classifies an SMS as an {@link Type#PRIMARY}, {@link Type#SECONDARY} or no alarm at all against a
+ * {@link RuleSet}. The SMS can trigger an alarm on the senders phone number, on words within the message and on regular expressions matching the
+ * message. A primary alarm is never downgraded to a secondary alarm.<br>
+ * Words and regular expressions are only matched if their rules apply to the sender of the SMS, see {@link RuleSet#getRules(Type, Kind, String)}.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific, so the classification can be run and tested on a plain JVM.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public abstract class AlarmClassifier {
+	/**
+	 * Mutable state of one classification, turned into a {@link Classification} when done.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class State {
+		private Type type = Type.UNDEFINED;
+		private final List<String> triggerTexts = new ArrayList<String>();
+		private final List<Rule> matchedRules = new ArrayList<Rule>();
+
+		private void match(Rule rule) {
+			type = rule.getType();
+			matchedRules.add(rule);
+		}
+	}
+
+	/**
+	 * To classify an SMS with given <code>sender</code> and <code>body</code> against given {@link RuleSet}.
+	 * 
+	 * @param rules
+	 *            Rules to classify SMS against.
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @param body
+	 *            Body(message) of SMS.
+	 * @return Result of classification.
+	 */
+	public static Classification classify(RuleSet rules, String sender, String body) {
+		State state = new State();
+
+		checkNumbers(rules, sender, state);
+		checkFreeTexts(rules, sender, body, state);
+		checkRegexs(rules, sender, body, state);
+
+		return new Classification(state.type, state.triggerTexts, state.matchedRules);
+	}
+
+	/**
+	 * To figure out, as cheap as possible, if an SMS with given <code>sender</code> and <code>body</code> <b><i>might</i></b> be classified as an
+	 * alarm against given {@link RuleSet}. If this method returns <code>false</code> the SMS is never classified as an alarm, hence it doesn't need to
+	 * be classified at all.
+	 * 
+	 * @param rules
+	 *            Rules to classify SMS against.
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @param body
+	 *            Body(message) of SMS.
+	 * @return <code>false</code> if SMS isn't an alarm, <code>true</code> if it might be.
+	 * @see RuleSet#isRuleSender(String)
+	 * @see RuleSet#mightMatchBody(String, String)
+	 */
+	public static boolean mightBeAlarm(RuleSet rules, String sender, String body) {
+		return rules.isRuleSender(sender) || rules.mightMatchBody(sender, body);
+	}
+
+	/**
+	 * To check the senders phone number by <b><i>equality control</i></b>, first against primary numbers then secondary. Only the first matching
+	 * number counts.
+	 * 
+	 * @param rules
+	 *            Rules to check against.
+	 * @param sender
+	 *            Senders phone number.
+	 * @param state
+	 *            State of classification.
+	 */
+	private static void checkNumbers(RuleSet rules, String sender, State state) {
+		if (sender == null) {
+			return;
+		}
+
+		for (Type type : new Type[] { Type.PRIMARY, Type.SECONDARY }) {
+			for (Rule rule : rules.getRules(type, Kind.NUMBER)) {
+				if (sender.equals(rule.getValue())) {
+					state.match(rule);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * To check the <b><i>words</i></b> within the message by <b><i>equality control</i></b>, ignoring case. If no primary free text matches, the
+	 * secondary ones are checked but only if the SMS isn't already a primary alarm and wouldn't become one by the primary regular expressions.
+	 * 
+	 * @param rules
+	 *            Rules to check against.
+	 * @param sender
+	 *            Senders phone number.
+	 * @param body
+	 *            Body of SMS.
+	 * @param state
+	 *            State of classification.
+	 */
+	private static void checkFreeTexts(RuleSet rules, String sender, String body, State state) {
+		if (findWords(rules.getRules(Type.PRIMARY, Kind.FREE_TEXT, sender), body, state)) {
+			return;
+		}
+
+		// Check if received message trigger primary alarm on regular expression, if so don't proceed, this is to prevent alarm being set to secondary
+		// when it's actually a primary alarm
+		if (!Type.PRIMARY.equals(state.type) && !anyMatch(rules.getRules(Type.PRIMARY, Kind.REGEX, sender), body)) {
+			findWords(rules.getRules(Type.SECONDARY, Kind.FREE_TEXT, sender), body, state);
+		}
+	}
+
+	/**
+	 * To check the message against <b><i>regular expressions</i></b>. If no primary regular expression matches, the secondary ones are checked but
+	 * only if the SMS isn't already a primary alarm.
+	 * 
+	 * @param rules
+	 *            Rules to check against.
+	 * @param sender
+	 *            Senders phone number.
+	 * @param body
+	 *            Body of SMS.
+	 * @param state
+	 *            State of classification.
+	 */
+	private static void checkRegexs(RuleSet rules, String sender, String body, State state) {
+		if (matchRegexs(rules.getRules(Type.PRIMARY, Kind.REGEX, sender), body, state)) {
+			return;
+		}
+
+		if (!Type.PRIMARY.equals(state.type)) {
+			matchRegexs(rules.getRules(Type.SECONDARY, Kind.REGEX, sender), body, state);
+		}
+	}
+
+	/**
+	 * To find any of the words of given free text rules within given body. Only whole words are matched, not case sensitive, and each found word
+	 * is added as a trigger text.
+	 * 
+	 * @param freeTextRules
+	 *            Free text rules.
+	 * @param body
+	 *            Body of SMS.
+	 * @param state
+	 *            State of classification.
+	 * @return <code>true</code> if any rule matched, else <code>false</code>.
+	 */
+	private static boolean findWords(List<Rule> freeTextRules, String body, State state) {
+		if (freeTextRules.isEmpty() || body == null || body.length() == 0) {
+			return false;
+		}
+
+		String[] words = body.split(" ");
+		boolean matched = false;
+
+		for (Rule rule : freeTextRules) {
+			String wordToFind = rule.getValue();
+
+			if (wordToFind == null || wordToFind.length() == 0) {
+				continue;
+			}
+
+			boolean found = false;
+
+			for (String word : words) {
+				if (wordToFind.equalsIgnoreCase(word)) {
+					found = true;
+					state.triggerTexts.add(word);
+				}
+			}
+
+			if (found) {
+				state.match(rule);
+				matched = true;
+			}
+		}
+
+		return matched;
+	}
+
+	/**
+	 * To match given regular expression rules against given body. Each occurrence of a match is added as a trigger text.
+	 * 
+	 * @param regexRules
+	 *            Regular expression rules.
+	 * @param body
+	 *            Body of SMS.
+	 * @param state
+	 *            State of classification.
+	 * @return <code>true</code> if any rule matched, else <code>false</code>.
+	 */
+	private static boolean matchRegexs(List<Rule> regexRules, String body, State state) {
+		if (body == null || body.length() == 0) {
+			return false;
+		}
+
+		boolean matched = false;
+
+		for (Rule rule : regexRules) {
+			// Required literal of the regular expression is checked first, as it's much cheaper than running the matcher
+			if (rule.getPattern() == null || !rule.mightFind(body)) {
+				continue;
+			}
+
+			Matcher matcher = rule.getPattern().matcher(body);
+			boolean found = false;
+
+			// Iterate over all occurrences, often this is just once
+			while (matcher.find()) {
+				found = true;
+				state.triggerTexts.add(matcher.group());
+			}
+
+			if (found) {
+				state.match(rule);
+				matched = true;
+			}
+		}
+
+		return matched;
+	}
+
+	/**
+	 * To figure out if any of given regular expression rules matches given body, without touching any classification state.
+	 * 
+	 * @param regexRules
+	 *            Regular expression rules.
+	 * @param body
+	 *            Body of SMS.
+	 * @return <code>true</code> if any rule matches, else <code>false</code>.
+	 */
+	private static boolean anyMatch(List<Rule> regexRules, String body) {
+		if (body == null || body.length() == 0) {
+			return false;
+		}
+
+		for (Rule rule : regexRules) {
+			if (rule.getPattern() != null && rule.mightFind(body) && rule.getPattern().matcher(body).find()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
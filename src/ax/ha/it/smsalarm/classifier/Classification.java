@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of an {@link AlarmClassifier#classify(RuleSet, String, String)}, telling what {@link Type} of alarm an SMS was classified as,
+ * the texts that triggered it and which {@link Rule}'s that matched.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public final class Classification {
+	/**
+	 * The different types an SMS can be classified as, named as the corresponding <code>AlarmType</code> so they can be resolved from each other by
+	 * name.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public enum Type {
+		// @formatter:off
+		PRIMARY, 
+		SECONDARY, 
+		UNDEFINED;
+		// @formatter:on
+	}
+
+	private final Type type;
+
+	// Texts which triggered the alarm, in the order they were found
+	private final List<String> triggerTexts;
+
+	// Rules that matched, in the order they were matched
+	private final List<Rule> matchedRules;
+
+	/**
+	 * Creates a new instance of {@link Classification}.
+	 * 
+	 * @param type
+	 *            Type of alarm.
+	 * @param triggerTexts
+	 *            Texts which triggered the alarm.
+	 * @param matchedRules
+	 *            Rules that matched.
+	 */
+	Classification(Type type, List<String> triggerTexts, List<Rule> matchedRules) {
+		this.type = type;
+		this.triggerTexts = Collections.unmodifiableList(new ArrayList<String>(triggerTexts));
+		this.matchedRules = Collections.unmodifiableList(new ArrayList<Rule>(matchedRules));
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * To figure out if the SMS was classified as an alarm.
+	 * 
+	 * @return <code>true</code> if it's an alarm, else <code>false</code>.
+	 */
+	public boolean isAlarm() {
+		return !Type.UNDEFINED.equals(type);
+	}
+
+	public List<String> getTriggerTexts() {
+		return triggerTexts;
+	}
+
+	/**
+	 * To get the <b><i>Trigger Text</i></b>, all texts which triggered the alarm separated by <code>", "</code>.
+	 * 
+	 * @return Trigger text, empty if alarm wasn't triggered by any text.
+	 */
+	public String getTriggerText() {
+		StringBuilder triggerText = new StringBuilder();
+
+		for (String text : triggerTexts) {
+			if (triggerText.length() > 0) {
+				triggerText.append(", ");
+			}
+
+			triggerText.append(text);
+		}
+
+		return triggerText.toString();
+	}
+
+	public List<Rule> getMatchedRules() {
+		return matchedRules;
+	}
+
+	/**
+	 * To get the ids of the rules that matched.
+	 * 
+	 * @return Ids of matched rules, in the order they were matched.
+	 */
+	public List<String> getMatchedRuleIds() {
+		List<String> ids = new ArrayList<String>(matchedRules.size());
+
+		for (Rule rule : matchedRules) {
+			ids.add(rule.getId());
+		}
+
+		return ids;
+	}
+
+	@Override
+	public String toString() {
+		return type + " triggerText=\"" + getTriggerText() + "\" matchedRules=" + getMatchedRuleIds();
+	}
+}
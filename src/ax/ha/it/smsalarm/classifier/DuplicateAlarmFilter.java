@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Filter finding <b><i>Duplicate Alarms</i></b>. Dispatch systems often send the same alarm to several numbers, or sends it again, an alarm received
+ * again within a short time window is a duplicate and should not be raised once more.
+ * <p>
+ * An alarm is identified by a hash of it's sender and it's <b><i>normalized</i></b> message, where case and white spaces doesn't matter. Only the
+ * hashes of the latest alarms are kept, they are dropped as soon as they are outside the time window.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public final class DuplicateAlarmFilter {
+	/**
+	 * A recently raised alarm.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class RecentAlarm {
+		private final int alarmId;
+		private final long raisedMillis;
+
+		private RecentAlarm(int alarmId, long raisedMillis) {
+			this.alarmId = alarmId;
+			this.raisedMillis = raisedMillis;
+		}
+	}
+
+	// Returned when no duplicate is found
+	public static final int NO_ALARM = -1;
+
+	// Maximum number of recent alarms kept, no matter the time window
+	private static final int MAX_RECENT_ALARMS = 64;
+
+	// Offset basis and prime of the 64 bit FNV-1a hash
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// Recently raised alarms by hash, in the order they were raised
+	private final Map<Long, RecentAlarm> recentAlarms = new LinkedHashMap<Long, RecentAlarm>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, RecentAlarm> eldest) {
+			return size() > MAX_RECENT_ALARMS;
+		}
+	};
+
+	/**
+	 * To find the alarm given SMS is a duplicate of.
+	 * 
+	 * @param sender
+	 *            Senders phone number.
+	 * @param body
+	 *            Body of SMS.
+	 * @param windowMillis
+	 *            Time window, in milliseconds, within which an alarm received again is a duplicate.
+	 * @param nowMillis
+	 *            Current time in milliseconds.
+	 * @return Id of the alarm SMS is a duplicate of, {@link #NO_ALARM} if it isn't a duplicate.
+	 */
+	public synchronized int findDuplicate(String sender, String body, long windowMillis, long nowMillis) {
+		Iterator<RecentAlarm> iterator = recentAlarms.values().iterator();
+
+		// Oldest alarms are first, drop all outside the window
+		while (iterator.hasNext()) {
+			if (nowMillis - iterator.next().raisedMillis > windowMillis) {
+				iterator.remove();
+			} else {
+				break;
+			}
+		}
+
+		RecentAlarm recentAlarm = recentAlarms.get(hash(sender, body));
+
+		return recentAlarm != null ? recentAlarm.alarmId : NO_ALARM;
+	}
+
+	/**
+	 * To remember that an alarm has been raised for given SMS, so that any duplicate of it can be found.
+	 * 
+	 * @param sender
+	 *            Senders phone number.
+	 * @param body
+	 *            Body of SMS.
+	 * @param alarmId
+	 *            Id of raised alarm.
+	 * @param nowMillis
+	 *            Current time in milliseconds.
+	 */
+	public synchronized void alarmRaised(String sender, String body, int alarmId, long nowMillis) {
+		Long hash = hash(sender, body);
+
+		// Remove first so the alarm ends up last, as the newest one
+		recentAlarms.remove(hash);
+		recentAlarms.put(hash, new RecentAlarm(alarmId, nowMillis));
+	}
+
+	/**
+	 * To calculate the hash of given sender and normalized body. The body is normalized by ignoring case, ignoring leading and trailing white spaces
+	 * and treating any sequence of white spaces as one space, no strings are created in the process.
+	 * 
+	 * @param sender
+	 *            Senders phone number.
+	 * @param body
+	 *            Body of SMS.
+	 * @return Hash of SMS.
+	 */
+	public static long hash(String sender, String body) {
+		long hash = FNV_OFFSET_BASIS;
+
+		if (sender != null) {
+			for (int i = 0; i < sender.length(); i++) {
+				hash = (hash ^ sender.charAt(i)) * FNV_PRIME;
+			}
+		}
+
+		// Separates sender from body, can't be found within a normalized body
+		hash = (hash ^ '\n') * FNV_PRIME;
+
+		if (body != null) {
+			boolean pendingSpace = false;
+			boolean anyWritten = false;
+
+			for (int i = 0; i < body.length(); i++) {
+				char c = body.charAt(i);
+
+				if (Character.isWhitespace(c)) {
+					pendingSpace = anyWritten;
+					continue;
+				}
+
+				if (pendingSpace) {
+					hash = (hash ^ ' ') * FNV_PRIME;
+					pendingSpace = false;
+				}
+
+				hash = (hash ^ Character.toLowerCase(Character.toUpperCase(c))) * FNV_PRIME;
+				anyWritten = true;
+			}
+		}
+
+		return hash;
+	}
+}
@@ -0,0 +1,415 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer in which <b><i>Multipart SMS</i></b> arriving segment by segment are reassembled. Normally all segments of a multipart SMS are delivered at
+ * once, but depending on the modem they sometimes arrive one by one in separate broadcasts. The segments are kept per sender and
+ * <b><i>Concatenation Reference</i></b>, see {@link ConcatHeader}, until all segments has arrived or until the SMS has timed out.
+ * <p>
+ * Each time a segment arrives the SMS can be classified again, on the segments received so far, so that an alarm can be raised before the last
+ * segment has arrived, see {@link PartialSms#getPrefix()}.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public final class MultipartSmsBuffer {
+	/**
+	 * The <b><i>Concatenation Header</i></b> of a segment of a multipart SMS, as found in the <b><i>User Data Header</i></b> of a 3GPP PDU.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static final class ConcatHeader {
+		// Information element identifiers of concatenated SMS with 8 bit and 16 bit reference
+		private static final int IEI_CONCAT_8_BIT = 0x00;
+		private static final int IEI_CONCAT_16_BIT = 0x08;
+
+		// Reference shared by all segments of a SMS, number of segments and sequence number of this segment starting at 1
+		private final int reference;
+		private final int count;
+		private final int sequence;
+
+		public ConcatHeader(int reference, int count, int sequence) {
+			this.reference = reference;
+			this.count = count;
+			this.sequence = sequence;
+		}
+
+		public int getReference() {
+			return reference;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public int getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * To parse the concatenation header from given 3GPP SMS-DELIVER PDU, as delivered by the system with the SMSC address first.
+		 * 
+		 * @param pdu
+		 *            PDU of SMS.
+		 * @return Parsed concatenation header, <code>null</code> if SMS isn't a segment of a multipart SMS or if the PDU couldn't be parsed.
+		 */
+		public static ConcatHeader parse(byte[] pdu) {
+			if (pdu == null || pdu.length == 0) {
+				return null;
+			}
+
+			try {
+				// Skip SMSC address
+				int i = (pdu[0] & 0xff) + 1;
+				int firstOctet = pdu[i++] & 0xff;
+
+				// Only SMS-DELIVER with a user data header can be a segment
+				if ((firstOctet & 0x03) != 0 || (firstOctet & 0x40) == 0) {
+					return null;
+				}
+
+				// Skip originating address, length is in digits, then protocol identifier, data coding scheme, time stamp and user data length
+				int addressDigits = pdu[i++] & 0xff;
+				i += 1 + (addressDigits + 1) / 2;
+				i += 1 + 1 + 7 + 1;
+
+				int headerEnd = i + 1 + (pdu[i] & 0xff);
+				i++;
+
+				while (i + 1 < headerEnd) {
+					int iei = pdu[i] & 0xff;
+					int length = pdu[i + 1] & 0xff;
+					i += 2;
+
+					if (iei == IEI_CONCAT_8_BIT && length == 3) {
+						return create(pdu[i] & 0xff, pdu[i + 1] & 0xff, pdu[i + 2] & 0xff);
+					} else if (iei == IEI_CONCAT_16_BIT && length == 4) {
+						return create(((pdu[i] & 0xff) << 8) | (pdu[i + 1] & 0xff), pdu[i + 2] & 0xff, pdu[i + 3] & 0xff);
+					}
+
+					i += length;
+				}
+			} catch (ArrayIndexOutOfBoundsException e) {
+				// Malformed PDU, handle it as a SMS of it's own
+			}
+
+			return null;
+		}
+
+		/**
+		 * To create a concatenation header, if given values are valid.
+		 * 
+		 * @param reference
+		 *            Concatenation reference.
+		 * @param count
+		 *            Number of segments.
+		 * @param sequence
+		 *            Sequence number of segment.
+		 * @return Concatenation header, <code>null</code> if values aren't valid.
+		 */
+		private static ConcatHeader create(int reference, int count, int sequence) {
+			if (count < 2 || sequence < 1 || sequence > count) {
+				return null;
+			}
+
+			return new ConcatHeader(reference, count, sequence);
+		}
+	}
+
+	/**
+	 * A multipart SMS being reassembled within a {@link MultipartSmsBuffer}.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static final class PartialSms {
+		// Returned as alarm id as long as no alarm has been raised for this SMS
+		public static final int NO_ALARM = -1;
+
+		private final String sender;
+		private final String[] segments;
+
+		// Segments delivered to the inbox by the system, that is segments which weren't kept from the inbox by the receiver
+		private final boolean[] delivered;
+		private final long firstReceivedMillis;
+		private int received;
+		private int alarmId = NO_ALARM;
+
+		private PartialSms(String sender, int count, long firstReceivedMillis) {
+			this.sender = sender;
+			segments = new String[count];
+			delivered = new boolean[count];
+			this.firstReceivedMillis = firstReceivedMillis;
+		}
+
+		public String getSender() {
+			return sender;
+		}
+
+		public synchronized boolean isComplete() {
+			return received == segments.length;
+		}
+
+		public synchronized boolean isAlarmRaised() {
+			return alarmId != NO_ALARM;
+		}
+
+		public synchronized int getAlarmId() {
+			return alarmId;
+		}
+
+		/**
+		 * To get the body of all segments received so far, in order. Segments not yet received are left out.
+		 * 
+		 * @return Body of received segments.
+		 */
+		public synchronized String getBody() {
+			StringBuilder body = new StringBuilder();
+
+			for (String segment : segments) {
+				if (segment != null) {
+					body.append(segment);
+				}
+			}
+
+			return body.toString();
+		}
+
+		/**
+		 * To get the body of all segments received so far which haven't been delivered to the inbox by the system, in order. This is the part of the
+		 * SMS that must be stored in the inbox by the receiver, storing the whole body would duplicate the segments already in the inbox.
+		 * 
+		 * @return Body of received segments not delivered to the inbox, empty if all has been delivered.
+		 */
+		public synchronized String getUndeliveredBody() {
+			StringBuilder body = new StringBuilder();
+
+			for (int i = 0; i < segments.length; i++) {
+				if (segments[i] != null && !delivered[i]) {
+					body.append(segments[i]);
+				}
+			}
+
+			return body.toString();
+		}
+
+		/**
+		 * To get the part of the body that is known to be final, that is all segments received without any gaps from the first segment. As a segment
+		 * can end in the middle of a word, the prefix ends at the last space unless the SMS is complete. Hence a word found within the prefix is found
+		 * within the complete SMS too.
+		 * 
+		 * @return Known prefix of body, empty if first segment hasn't been received.
+		 */
+		public synchronized String getPrefix() {
+			StringBuilder prefix = new StringBuilder();
+
+			for (String segment : segments) {
+				if (segment == null) {
+					break;
+				}
+
+				prefix.append(segment);
+			}
+
+			if (received < segments.length) {
+				prefix.setLength(Math.max(0, prefix.lastIndexOf(" ")));
+			}
+
+			return prefix.toString();
+		}
+
+		/**
+		 * To add given segment.
+		 * 
+		 * @param sequence
+		 *            Sequence number of segment, starting at 1.
+		 * @param text
+		 *            Text of segment.
+		 */
+		private synchronized void add(int sequence, String text) {
+			// Same segment could be delivered more than once
+			if (segments[sequence - 1] == null) {
+				segments[sequence - 1] = text;
+				received++;
+			}
+		}
+
+		private synchronized void alarmRaised(int alarmId) {
+			this.alarmId = alarmId;
+		}
+
+		private synchronized void delivered(int sequence) {
+			delivered[sequence - 1] = true;
+		}
+	}
+
+	// Maximum number of SMS reassembled at the same time, if exceeded the oldest one is evicted
+	public static final int MAX_PARTIAL_SMS = 32;
+
+	// SMS being reassembled, key is sender, concatenation reference and number of segments
+	private final Map<String, PartialSms> partials = new HashMap<String, PartialSms>();
+
+	// Evicted SMS which already has raised an alarm, must be handed over to the caller as their segments has been kept from the inbox
+	private final List<PartialSms> evicted = new ArrayList<PartialSms>();
+
+	// Time after which a SMS is given up if not all segments has arrived
+	private final long timeoutMillis;
+
+	/**
+	 * Creates a new instance of {@link MultipartSmsBuffer}.
+	 * 
+	 * @param timeoutMillis
+	 *            Time, in milliseconds, after which a SMS is given up if not all of it's segments has arrived.
+	 */
+	public MultipartSmsBuffer(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * To add given segment of a multipart SMS. Once all segments of the SMS has been added it's removed from this buffer.<br>
+	 * If the buffer is full the oldest SMS is evicted, SMS which hasn't raised any alarm are evicted first. An evicted SMS which already has raised an
+	 * alarm is kept until it's taken, see {@link #takeEvicted()}.
+	 * 
+	 * @param sender
+	 *            Senders phone number.
+	 * @param header
+	 *            Concatenation header of segment.
+	 * @param text
+	 *            Text of segment.
+	 * @param nowMillis
+	 *            Current time in milliseconds.
+	 * @return The SMS the segment was added to.
+	 */
+	public synchronized PartialSms add(String sender, ConcatHeader header, String text, long nowMillis) {
+		String key = sender + ":" + header.getReference() + ":" + header.getCount();
+		PartialSms sms = partials.get(key);
+
+		if (sms == null) {
+			if (partials.size() >= MAX_PARTIAL_SMS) {
+				removeOldest();
+			}
+
+			sms = new PartialSms(sender, header.getCount(), nowMillis);
+			partials.put(key, sms);
+		}
+
+		sms.add(header.getSequence(), text);
+
+		if (sms.isComplete()) {
+			partials.remove(key);
+		}
+
+		return sms;
+	}
+
+	/**
+	 * To mark that an alarm has been raised for given SMS, before all of it's segments has arrived.
+	 * 
+	 * @param sms
+	 *            SMS for which an alarm has been raised.
+	 * @param alarmId
+	 *            Id of raised alarm.
+	 */
+	public void alarmRaised(PartialSms sms, int alarmId) {
+		sms.alarmRaised(alarmId);
+	}
+
+	/**
+	 * To mark that given segments of given SMS has been delivered to the inbox by the system, as the broadcast delivering them wasn't aborted.
+	 * 
+	 * @param sms
+	 *            SMS the segments belongs to.
+	 * @param sequences
+	 *            Sequence numbers of delivered segments, starting at 1.
+	 * @see PartialSms#getUndeliveredBody()
+	 */
+	public void segmentsDelivered(PartialSms sms, List<Integer> sequences) {
+		for (int sequence : sequences) {
+			sms.delivered(sequence);
+		}
+	}
+
+	/**
+	 * To remove, and return, all SMS which have timed out.
+	 * 
+	 * @param nowMillis
+	 *            Current time in milliseconds.
+	 * @return Timed out SMS, empty list if none has timed out.
+	 */
+	public synchronized List<PartialSms> expire(long nowMillis) {
+		List<PartialSms> expired = new ArrayList<PartialSms>();
+		Iterator<PartialSms> iterator = partials.values().iterator();
+
+		while (iterator.hasNext()) {
+			PartialSms sms = iterator.next();
+
+			if (nowMillis - sms.firstReceivedMillis >= timeoutMillis) {
+				expired.add(sms);
+				iterator.remove();
+			}
+		}
+
+		return expired;
+	}
+
+	/**
+	 * To remove, and return, all SMS evicted from this buffer while having an alarm raised for them. They must be handled as timed out SMS, see
+	 * {@link #expire(long)}.
+	 * 
+	 * @return Evicted SMS, empty list if none has been evicted.
+	 */
+	public synchronized List<PartialSms> takeEvicted() {
+		List<PartialSms> taken = new ArrayList<PartialSms>(evicted);
+		evicted.clear();
+
+		return taken;
+	}
+
+	/**
+	 * To figure out number of SMS being reassembled.
+	 * 
+	 * @return Number of SMS not yet complete.
+	 */
+	public synchronized int size() {
+		return partials.size();
+	}
+
+	/**
+	 * To remove the SMS which first segment was received longest ago, preferably one without any alarm raised for it. If the removed SMS has raised an
+	 * alarm it's kept among the evicted SMS.
+	 */
+	private void removeOldest() {
+		String oldestKey = null;
+		PartialSms oldest = null;
+
+		for (Map.Entry<String, PartialSms> entry : partials.entrySet()) {
+			PartialSms sms = entry.getValue();
+
+			if (oldest == null || (oldest.isAlarmRaised() && !sms.isAlarmRaised())
+					|| (oldest.isAlarmRaised() == sms.isAlarmRaised() && sms.firstReceivedMillis < oldest.firstReceivedMillis)) {
+				oldestKey = entry.getKey();
+				oldest = sms;
+			}
+		}
+
+		partials.remove(oldestKey);
+
+		if (oldest.isAlarmRaised()) {
+			evicted.add(oldest);
+		}
+	}
+}
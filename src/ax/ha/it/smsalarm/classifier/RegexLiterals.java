@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+/**
+ * Analysis of <b><i>Regular Expressions</i></b>, finds literal texts that must be present in any text a regular expression can find. Such a
+ * <b><i>Required Literal</i></b> is checked by a plain {@link String#indexOf(String)}, and only if it's present the far more expensive
+ * {@link java.util.regex.Matcher} needs to run.
+ * <p>
+ * The analysis is conservative, whenever a construct isn't fully understood no required literal is found. A found literal is always required, but
+ * it isn't always the only requirement.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public abstract class RegexLiterals {
+	// Escaped letters matching a class of characters or a position, everything else escaped by a letter or digit is too complex to analyse
+	private static final String CLASS_ESCAPES = "dDwWsShHvVbBAGZzR";
+
+	/**
+	 * To find the longest literal text that must be present in any text found by given regular expression. The regular expression must be compiled
+	 * without any flags.
+	 * 
+	 * @param regex
+	 *            Regular expression to analyse.
+	 * @return Longest required literal, <code>null</code> if none could be found.
+	 */
+	public static String findRequiredLiteral(String regex) {
+		if (regex == null) {
+			return null;
+		}
+
+		String longest = "";
+		StringBuilder current = new StringBuilder();
+
+		// Start of the latest literal atom within current literal, a quantifier removes it
+		int atomStart = 0;
+		int i = 0;
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+
+			switch (c) {
+				case '\\':
+					if (i + 1 >= regex.length()) {
+						return null;
+					}
+
+					char escaped = regex.charAt(i + 1);
+
+					if (isAsciiLetterOrDigit(escaped)) {
+						// Character classes and boundaries breaks the literal, quoting, back references, code points etc. isn't analysed at all
+						if (CLASS_ESCAPES.indexOf(escaped) < 0) {
+							return null;
+						}
+
+						longest = longest(longest, current);
+						atomStart = 0;
+					} else {
+						atomStart = current.length();
+						current.append(escaped);
+					}
+
+					i += 2;
+					break;
+				case '[':
+					longest = longest(longest, current);
+					atomStart = 0;
+					i = skipCharacterClass(regex, i);
+					break;
+				case '(':
+					// Inline flags, such as (?i), changes how the rest of the regular expression is matched
+					if (isInlineFlags(regex, i)) {
+						return null;
+					}
+
+					longest = longest(longest, current);
+					atomStart = 0;
+					i = skipGroup(regex, i);
+					break;
+				case '.':
+				case '^':
+				case '$':
+					longest = longest(longest, current);
+					atomStart = 0;
+					i++;
+					break;
+				case '+':
+					// Latest atom is required at least once, but it can't be followed by the next
+					longest = longest(longest, current);
+					atomStart = 0;
+					i = skipQuantifier(regex, i);
+					break;
+				case '?':
+				case '*':
+				case '{':
+					// Latest atom is optional
+					current.setLength(atomStart);
+					longest = longest(longest, current);
+					atomStart = 0;
+					i = skipQuantifier(regex, i);
+					break;
+				case '|':
+				case ')':
+					// Alternation on top level means nothing at all is required, an unbalanced group can't be analysed
+					return null;
+				default:
+					atomStart = current.length();
+					current.append(c);
+
+					// A character outside the basic multilingual plane is one atom of two chars
+					if (Character.isHighSurrogate(c) && i + 1 < regex.length() && Character.isLowSurrogate(regex.charAt(i + 1))) {
+						current.append(regex.charAt(++i));
+					}
+
+					i++;
+			}
+
+			if (i < 0) {
+				return null;
+			}
+		}
+
+		longest = longest(longest, current);
+
+		return longest.length() > 0 ? longest : null;
+	}
+
+	/**
+	 * To get the longest of given literal and given current literal, the current literal is cleared.
+	 * 
+	 * @param longest
+	 *            Longest literal so far.
+	 * @param current
+	 *            Current literal.
+	 * @return The longest one.
+	 */
+	private static String longest(String longest, StringBuilder current) {
+		if (current.length() > longest.length()) {
+			longest = current.toString();
+		}
+
+		current.setLength(0);
+
+		return longest;
+	}
+
+	/**
+	 * To skip the character class starting at given index.
+	 * 
+	 * @param regex
+	 *            Regular expression.
+	 * @param start
+	 *            Index of the opening <code>[</code>.
+	 * @return Index after the closing <code>]</code>, <code>-1</code> if character class is too complex to analyse.
+	 */
+	private static int skipCharacterClass(String regex, int start) {
+		int i = start + 1;
+
+		if (i < regex.length() && regex.charAt(i) == '^') {
+			i++;
+		}
+
+		// A closing bracket first in the class, and nested classes, are handled differently by different engines
+		if (i < regex.length() && regex.charAt(i) == ']') {
+			return -1;
+		}
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+
+			if (c == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					return -1;
+				}
+
+				i += 2;
+			} else if (c == '[') {
+				return -1;
+			} else if (c == ']') {
+				return i + 1;
+			} else {
+				i++;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * To skip the group starting at given index, including any nested groups.
+	 * 
+	 * @param regex
+	 *            Regular expression.
+	 * @param start
+	 *            Index of the opening <code>(</code>.
+	 * @return Index after the closing <code>)</code>, <code>-1</code> if group is too complex to analyse.
+	 */
+	private static int skipGroup(String regex, int start) {
+		int depth = 0;
+		int i = start;
+
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+
+			if (c == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					return -1;
+				}
+
+				i += 2;
+			} else if (c == '[') {
+				i = skipCharacterClass(regex, i);
+
+				if (i < 0) {
+					return -1;
+				}
+			} else {
+				if (c == '(') {
+					depth++;
+				} else if (c == ')' && --depth == 0) {
+					return i + 1;
+				}
+
+				i++;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * To skip the quantifier starting at given index, including any lazy or possessive suffix.
+	 * 
+	 * @param regex
+	 *            Regular expression.
+	 * @param start
+	 *            Index of the quantifier.
+	 * @return Index after the quantifier, <code>-1</code> if quantifier isn't closed.
+	 */
+	private static int skipQuantifier(String regex, int start) {
+		int i = start + 1;
+
+		if (regex.charAt(start) == '{') {
+			i = regex.indexOf('}', start);
+
+			if (i < 0) {
+				return -1;
+			}
+
+			i++;
+		}
+
+		if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * To figure out if the group starting at given index only sets inline flags, for example <code>(?i)</code>, which applies to the rest of the
+	 * regular expression.
+	 * 
+	 * @param regex
+	 *            Regular expression.
+	 * @param start
+	 *            Index of the opening <code>(</code>.
+	 * @return <code>true</code> if group sets inline flags, else <code>false</code>.
+	 */
+	private static boolean isInlineFlags(String regex, int start) {
+		if (!regex.startsWith("(?", start)) {
+			return false;
+		}
+
+		int i = start + 2;
+
+		while (i < regex.length() && (isAsciiLetterOrDigit(regex.charAt(i)) || regex.charAt(i) == '-')) {
+			i++;
+		}
+
+		return i > start + 2 && i < regex.length() && regex.charAt(i) == ')';
+	}
+
+	/**
+	 * To figure out if given character is an ASCII letter or digit.
+	 * 
+	 * @param c
+	 *            Character.
+	 * @return <code>true</code> if character is an ASCII letter or digit, else <code>false</code>.
+	 */
+	private static boolean isAsciiLetterOrDigit(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+
+/**
+ * A single, immutable, rule which an SMS is classified against. A rule has a <b><i>Kind</i></b>, telling how it's matched, and a {@link Type}
+ * telling which type of alarm it triggers.
+ * <p>
+ * Free text and regular expression rules can be scoped to SMS from some senders only, by starting the value of the rule with a
+ * <b><i>Sender Scope</i></b> listing the senders phone numbers. A phone number ending with <code>*</code> is a prefix, white spaces after the scope
+ * are ignored. For example the regular expression below is only matched against SMS from <code>112</code> or from any phone number starting with
+ * <code>+35818</code>:
+ * 
+ * <pre>
+ * {112,+35818*} RVS:\w+
+ * </pre>
+ * 
+ * A regular expression starting with <code>{</code> which isn't meant as a scope is written as <code>\{</code>, a free text is escaped by a leading
+ * <code>\</code> which isn't part of the word. Rules stored before sender scopes existed could start with a scope by chance, they must be escaped
+ * to keep their behaviour, see {@link #escapeSenderScope(Kind, String)}.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public final class Rule {
+	/**
+	 * The different kinds of rules, decides how a rule is matched.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public enum Kind {
+		// @formatter:off
+		NUMBER,			// Equality control of senders phone number
+		FREE_TEXT,		// Equality control, ignoring case, of the words within the message
+		REGEX;			// Regular expression pattern matching of the message
+		// @formatter:on
+	}
+
+	// Start and end of a sender scope, separator between it's senders and wildcard ending a sender prefix
+	private static final char SCOPE_START = '{';
+	private static final char SCOPE_END = '}';
+	private static final String SCOPE_SEPARATOR = ",";
+	private static final String SCOPE_WILDCARD = "*";
+
+	// Escapes a free text starting with a scope start, and an empty group escaping a valid regular expression starting with a scope start
+	private static final char SCOPE_ESCAPE = '\\';
+	private static final String EMPTY_GROUP = "(?:)";
+
+	// Id of rule, unique within a rule set
+	private final String id;
+
+	private final Kind kind;
+	private final Type type;
+	private final String value;
+
+	// Compiled pattern, only for rules of kind REGEX and only if it could be compiled
+	private final Pattern pattern;
+
+	// Literal text any text found by the pattern must contain, null if there is no pattern or if no such literal could be found
+	private final String requiredLiteral;
+
+	// Phone numbers and phone number prefixes of the senders this rule is scoped to, both are empty if rule applies to SMS from any sender
+	private final List<String> senders;
+	private final List<String> senderPrefixes;
+
+	/**
+	 * Creates a new instance of {@link Rule}. Any sender scope of a free text or regular expression rule is parsed and removed from the value, as is
+	 * the escape of an escaped free text. Rules of kind {@link Kind#REGEX} are compiled at once, if the value isn't a valid regular expression it's
+	 * escaped and compiled as a literal text.
+	 * 
+	 * @param id
+	 *            Id of rule.
+	 * @param kind
+	 *            Kind of rule.
+	 * @param type
+	 *            Type of alarm the rule triggers, {@link Type#PRIMARY} or {@link Type#SECONDARY}.
+	 * @param value
+	 *            Phone number, word or regular expression of rule, words and regular expressions may start with a sender scope.
+	 */
+	public Rule(String id, Kind kind, Type type, String value) {
+		int scopeEnd = Kind.NUMBER.equals(kind) ? -1 : findScopeEnd(value);
+		List<String> scopeSenders = new ArrayList<String>();
+		List<String> scopePrefixes = new ArrayList<String>();
+
+		if (scopeEnd > 0) {
+			for (String sender : value.substring(1, scopeEnd).split(SCOPE_SEPARATOR)) {
+				sender = sender.trim();
+
+				if (sender.endsWith(SCOPE_WILDCARD)) {
+					scopePrefixes.add(sender.substring(0, sender.length() - SCOPE_WILDCARD.length()));
+				} else if (sender.length() > 0) {
+					scopeSenders.add(sender);
+				}
+			}
+		}
+
+		this.id = id;
+		this.kind = kind;
+		this.type = type;
+
+		if (scopeEnd > 0) {
+			this.value = stripSenderScope(value);
+		} else if (Kind.FREE_TEXT.equals(kind) && isEscaped(value)) {
+			this.value = value.substring(1);
+		} else {
+			this.value = value;
+		}
+
+		senders = Collections.unmodifiableList(scopeSenders);
+		senderPrefixes = Collections.unmodifiableList(scopePrefixes);
+		pattern = Kind.REGEX.equals(kind) ? resolvePattern(this.value) : null;
+		requiredLiteral = pattern != null ? RegexLiterals.findRequiredLiteral(pattern.pattern()) : null;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * To figure out if this rule is scoped to SMS from some senders only.
+	 * 
+	 * @return <code>true</code> if rule is scoped, <code>false</code> if it applies to SMS from any sender.
+	 */
+	public boolean isScoped() {
+		return !senders.isEmpty() || !senderPrefixes.isEmpty();
+	}
+
+	/**
+	 * To get the phone numbers of the senders this rule is scoped to, not including any prefixes.
+	 * 
+	 * @return Unmodifiable list of phone numbers, empty if there are none.
+	 */
+	public List<String> getSenders() {
+		return senders;
+	}
+
+	/**
+	 * To get the phone number prefixes of the senders this rule is scoped to, without the ending wildcard.
+	 * 
+	 * @return Unmodifiable list of phone number prefixes, empty if there are none.
+	 */
+	public List<String> getSenderPrefixes() {
+		return senderPrefixes;
+	}
+
+	/**
+	 * To figure out if this rule applies to SMS from given sender.
+	 * 
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @return <code>true</code> if rule isn't scoped or if it's scoped to given sender, else <code>false</code>.
+	 */
+	public boolean appliesTo(String sender) {
+		if (!isScoped()) {
+			return true;
+		}
+
+		if (sender == null) {
+			return false;
+		}
+
+		if (senders.contains(sender)) {
+			return true;
+		}
+
+		for (String prefix : senderPrefixes) {
+			if (sender.startsWith(prefix)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * To get the compiled pattern of this rule.
+	 * 
+	 * @return Compiled pattern, <code>null</code> if rule isn't of kind {@link Kind#REGEX} or if it couldn't be compiled.
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * To get the literal text that any text found by the pattern of this rule must contain.
+	 * 
+	 * @return Required literal, <code>null</code> if there is no pattern or if no required literal could be found.
+	 * @see RegexLiterals#findRequiredLiteral(String)
+	 */
+	public String getRequiredLiteral() {
+		return requiredLiteral;
+	}
+
+	/**
+	 * To figure out, by a plain {@link String#indexOf(String)}, if the pattern of this rule <b><i>might</i></b> find anything within given body. If
+	 * this method returns <code>false</code> the pattern never finds anything, hence it doesn't need to be matched at all.
+	 * 
+	 * @param body
+	 *            Body of SMS.
+	 * @return <code>false</code> if pattern doesn't find anything, <code>true</code> if it might.
+	 */
+	public boolean mightFind(String body) {
+		return requiredLiteral == null || body.indexOf(requiredLiteral) >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return id + "(" + value + ")";
+	}
+
+	/**
+	 * To remove any sender scope from given value of a free text or regular expression rule, together with any white spaces following it. Should be
+	 * used whenever the value itself is validated, for example when a regular expression is compiled to see if it's valid.
+	 * 
+	 * @param value
+	 *            Value of rule.
+	 * @return Value without sender scope, or given value as is if it has none.
+	 */
+	public static String stripSenderScope(String value) {
+		int scopeEnd = findScopeEnd(value);
+
+		if (scopeEnd < 0) {
+			return value;
+		}
+
+		int start = scopeEnd + 1;
+
+		while (start < value.length() && Character.isWhitespace(value.charAt(start))) {
+			start++;
+		}
+
+		return value.substring(start);
+	}
+
+	/**
+	 * To escape given value of a rule so that it keeps the behaviour it had before sender scopes existed, that is so that a value starting with
+	 * <code>{</code> by chance isn't taken as a scope. A valid regular expression is prefixed by an empty group, as it could be matching something
+	 * else than it's literal text, and an invalid one is escaped as it's matched literally anyway. A free text starting with <code>{</code>, or
+	 * starting with an escaped <code>{</code>, gets another escape.
+	 * 
+	 * @param kind
+	 *            Kind of rule.
+	 * @param value
+	 *            Value of rule, stored before sender scopes existed.
+	 * @return Value keeping it's behaviour, or given value as is if it doesn't need to be escaped.
+	 */
+	public static String escapeSenderScope(Kind kind, String value) {
+		if (Kind.FREE_TEXT.equals(kind) && (findScopeEnd(value) > 0 || isEscaped(value))) {
+			return SCOPE_ESCAPE + value;
+		}
+
+		if (Kind.REGEX.equals(kind) && findScopeEnd(value) > 0) {
+			try {
+				Pattern.compile(value);
+
+				return EMPTY_GROUP + value;
+			} catch (PatternSyntaxException e) {
+				return resolvePattern(value).pattern();
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * To figure out if given value of a free text rule is escaped, that is if it starts with a <code>{</code> escaped any number of times.
+	 * 
+	 * @param value
+	 *            Value of rule.
+	 * @return <code>true</code> if value is escaped, else <code>false</code>.
+	 */
+	private static boolean isEscaped(String value) {
+		if (value == null || value.length() == 0 || value.charAt(0) != SCOPE_ESCAPE) {
+			return false;
+		}
+
+		int i = 0;
+
+		while (i < value.length() && value.charAt(i) == SCOPE_ESCAPE) {
+			i++;
+		}
+
+		return i < value.length() && value.charAt(i) == SCOPE_START;
+	}
+
+	/**
+	 * To find the end of the sender scope of given value.
+	 * 
+	 * @param value
+	 *            Value of rule.
+	 * @return Index of the character ending the scope, <code>-1</code> if value doesn't start with a scope.
+	 */
+	private static int findScopeEnd(String value) {
+		if (value == null || value.length() == 0 || value.charAt(0) != SCOPE_START) {
+			return -1;
+		}
+
+		int scopeEnd = value.indexOf(SCOPE_END);
+
+		// Nested scopes isn't a scope at all
+		return scopeEnd > 0 && value.lastIndexOf(SCOPE_START, scopeEnd) == 0 ? scopeEnd : -1;
+	}
+
+	/**
+	 * To resolve a {@link Pattern} from given <code>regular expression</code>. This method will first try to resolve the <code>Pattern</code> from
+	 * given regular expression straight away, if that's not possible the given regular expression will be escaped then the <code>Pattern</code> will
+	 * be tried to be resolved once more.
+	 * 
+	 * @param regex
+	 *            Regular expression from which a pattern will be resolved, if possible.
+	 * @return Resolved <code>Pattern</code> if it's possible to be resolved, else <code>null</code>.
+	 */
+	private static Pattern resolvePattern(String regex) {
+		Pattern resolvedPattern = null;
+
+		if (regex != null && regex.length() != 0) {
+			// Only try to resolve the pattern twice and as long as it hasn't been resolved
+			for (int tries = 0; tries < 2 && resolvedPattern == null; tries++) {
+				// Try to compile the regular expression straight away..
+				try {
+					resolvedPattern = Pattern.compile(regex);
+				} catch (PatternSyntaxException pse) {
+					// ... something was wrong with it, as a fall back try to escape it for the next pattern compilation
+					regex = regex.replaceAll("([^a-zA-Z0-9])", "\\\\$1");
+				}
+			}
+		}
+
+		return resolvedPattern;
+	}
+}
@@ -0,0 +1,456 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+
+/**
+ * Immutable set of {@link Rule}'s, the input of {@link AlarmClassifier}. The rules are grouped by {@link Kind} and {@link Type}, and regular
+ * expressions are compiled once when the rule set is created, hence a rule set should be reused for as long as the rules doesn't change.
+ * <p>
+ * Each rule gets an id looking like <code>PRIMARY.FREE_TEXT.2</code>, that is type, kind and index of the rule within it's list.
+ * <p>
+ * Free text and regular expression rules can be scoped to some senders, see {@link Rule}. The rule set indexes these rules by sender, so that an SMS
+ * is only classified against the subset of rules applying to it's sender, see {@link #getRules(Type, Kind, String)}. SMS from senders without any
+ * scoped rules are only classified against the rules applying to any sender.
+ * <p>
+ * A rule set also holds a <b><i>Prefilter</i></b>, see {@link #isRuleSender(String)} and {@link #mightMatchBody(String, String)}, by which most SMS
+ * that can't be alarms are rejected without being classified at all and without allocating anything.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public final class RuleSet {
+	// An empty rule set, never classifies anything as an alarm
+	public static final RuleSet EMPTY = new RuleSet(Collections.<String> emptyList(), Collections.<String> emptyList(), Collections.<String> emptyList(), Collections.<String> emptyList(), Collections.<String> emptyList(), Collections.<String> emptyList());
+
+	private final List<Rule> primaryNumbers;
+	private final List<Rule> secondaryNumbers;
+	private final List<Rule> primaryFreeTexts;
+	private final List<Rule> secondaryFreeTexts;
+	private final List<Rule> primaryRegexs;
+	private final List<Rule> secondaryRegexs;
+
+	// Phone numbers of all number rules, used by the prefilter
+	private final Set<String> numbers = new HashSet<String>();
+
+	// Body rules applying to SMS from any sender, and body rules applying to SMS from each phone number and phone number prefix of any sender scope
+	private final Subset anySenderRules;
+	private final Map<String, Subset> senderRules = new HashMap<String, Subset>();
+	private final Map<String, Subset> senderPrefixRules = new HashMap<String, Subset>();
+
+	// Phone number prefixes of all sender scopes, longest first
+	private final String[] senderPrefixes;
+
+	/**
+	 * The free text and regular expression rules, that is the body rules, applying to SMS from some sender, together with the prefilter of them.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static final class Subset {
+		private final List<Rule> primaryFreeTexts;
+		private final List<Rule> secondaryFreeTexts;
+		private final List<Rule> primaryRegexs;
+		private final List<Rule> secondaryRegexs;
+
+		// Case insensitive hashes of the words of all free text rules sorted for binary search, required literals of all regular expression rules and
+		// whether there is any regular expression rule without a required literal, all used by the prefilter
+		private final int[] freeTextHashes;
+		private final String[] regexLiterals;
+		private final boolean anyRegexsWithoutLiteral;
+
+		private Subset(List<Rule> primaryFreeTexts, List<Rule> secondaryFreeTexts, List<Rule> primaryRegexs, List<Rule> secondaryRegexs) {
+			this.primaryFreeTexts = primaryFreeTexts;
+			this.secondaryFreeTexts = secondaryFreeTexts;
+			this.primaryRegexs = primaryRegexs;
+			this.secondaryRegexs = secondaryRegexs;
+
+			List<Integer> hashes = new ArrayList<Integer>();
+
+			for (Rule rule : concat(primaryFreeTexts, secondaryFreeTexts)) {
+				// Words can never contain a space as the message is split on spaces, hence such a free text never matches
+				if (rule.getValue() != null && rule.getValue().length() > 0 && rule.getValue().indexOf(' ') < 0) {
+					hashes.add(hashIgnoreCase(rule.getValue(), 0, rule.getValue().length()));
+				}
+			}
+
+			freeTextHashes = new int[hashes.size()];
+
+			for (int i = 0; i < freeTextHashes.length; i++) {
+				freeTextHashes[i] = hashes.get(i);
+			}
+
+			Arrays.sort(freeTextHashes);
+
+			Set<String> literals = new HashSet<String>();
+			boolean regexsWithoutLiteral = false;
+
+			for (Rule rule : concat(primaryRegexs, secondaryRegexs)) {
+				if (rule.getRequiredLiteral() != null) {
+					literals.add(rule.getRequiredLiteral());
+				} else {
+					regexsWithoutLiteral |= rule.getPattern() != null;
+				}
+			}
+
+			regexLiterals = literals.toArray(new String[literals.size()]);
+			anyRegexsWithoutLiteral = regexsWithoutLiteral;
+		}
+	}
+
+	/**
+	 * Creates a new instance of {@link RuleSet} from given lists of rule values. The given lists are copied, hence later changes to them doesn't
+	 * affect the rule set.
+	 * 
+	 * @param primaryNumbers
+	 *            Phone numbers triggering a primary alarm.
+	 * @param secondaryNumbers
+	 *            Phone numbers triggering a secondary alarm.
+	 * @param primaryFreeTexts
+	 *            Words triggering a primary alarm.
+	 * @param secondaryFreeTexts
+	 *            Words triggering a secondary alarm.
+	 * @param primaryRegexs
+	 *            Regular expressions triggering a primary alarm.
+	 * @param secondaryRegexs
+	 *            Regular expressions triggering a secondary alarm.
+	 */
+	public RuleSet(List<String> primaryNumbers, List<String> secondaryNumbers, List<String> primaryFreeTexts, List<String> secondaryFreeTexts, List<String> primaryRegexs, List<String> secondaryRegexs) {
+		this.primaryNumbers = toRules(Type.PRIMARY, Kind.NUMBER, primaryNumbers);
+		this.secondaryNumbers = toRules(Type.SECONDARY, Kind.NUMBER, secondaryNumbers);
+		this.primaryFreeTexts = toRules(Type.PRIMARY, Kind.FREE_TEXT, primaryFreeTexts);
+		this.secondaryFreeTexts = toRules(Type.SECONDARY, Kind.FREE_TEXT, secondaryFreeTexts);
+		this.primaryRegexs = toRules(Type.PRIMARY, Kind.REGEX, primaryRegexs);
+		this.secondaryRegexs = toRules(Type.SECONDARY, Kind.REGEX, secondaryRegexs);
+
+		for (Rule rule : concat(this.primaryNumbers, this.secondaryNumbers)) {
+			if (rule.getValue() != null) {
+				numbers.add(rule.getValue());
+			}
+		}
+
+		anySenderRules = createSubset(null, false);
+
+		// Index the body rules by each phone number and phone number prefix of any sender scope
+		Set<String> prefixes = new HashSet<String>();
+
+		for (Rule rule : concat(concat(this.primaryFreeTexts, this.secondaryFreeTexts), concat(this.primaryRegexs, this.secondaryRegexs))) {
+			for (String sender : rule.getSenders()) {
+				if (!senderRules.containsKey(sender)) {
+					senderRules.put(sender, createSubset(sender, false));
+				}
+			}
+
+			for (String prefix : rule.getSenderPrefixes()) {
+				if (prefixes.add(prefix)) {
+					senderPrefixRules.put(prefix, createSubset(prefix, true));
+				}
+			}
+		}
+
+		senderPrefixes = prefixes.toArray(new String[prefixes.size()]);
+
+		// A sender is routed by it's longest matching prefix, which includes the rules of all shorter matching prefixes
+		Arrays.sort(senderPrefixes, new Comparator<String>() {
+			@Override
+			public int compare(String lhs, String rhs) {
+				return rhs.length() - lhs.length();
+			}
+		});
+	}
+
+	/**
+	 * To get the rules of given {@link Type} and {@link Kind}.
+	 * 
+	 * @param type
+	 *            Type of alarm the rules triggers.
+	 * @param kind
+	 *            Kind of rules.
+	 * @return Unmodifiable list of rules, in the order they were given.
+	 */
+	public List<Rule> getRules(Type type, Kind kind) {
+		boolean primary = Type.PRIMARY.equals(type);
+
+		switch (kind) {
+			case NUMBER:
+				return primary ? primaryNumbers : secondaryNumbers;
+			case FREE_TEXT:
+				return primary ? primaryFreeTexts : secondaryFreeTexts;
+			case REGEX:
+				return primary ? primaryRegexs : secondaryRegexs;
+			default:
+				return Collections.<Rule> emptyList();
+		}
+	}
+
+	/**
+	 * To get the rules of given {@link Type} and {@link Kind} applying to SMS from given sender, see {@link Rule#appliesTo(String)}. The rules are
+	 * looked up in the index of this rule set, nothing is filtered when this method is called.
+	 * 
+	 * @param type
+	 *            Type of alarm the rules triggers.
+	 * @param kind
+	 *            Kind of rules.
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @return Unmodifiable list of rules, in the order they were given.
+	 */
+	public List<Rule> getRules(Type type, Kind kind, String sender) {
+		boolean primary = Type.PRIMARY.equals(type);
+		Subset subset = resolveSubset(sender);
+
+		switch (kind) {
+			case NUMBER:
+				return primary ? primaryNumbers : secondaryNumbers;
+			case FREE_TEXT:
+				return primary ? subset.primaryFreeTexts : subset.secondaryFreeTexts;
+			case REGEX:
+				return primary ? subset.primaryRegexs : subset.secondaryRegexs;
+			default:
+				return Collections.<Rule> emptyList();
+		}
+	}
+
+	/**
+	 * To figure out total number of rules within this rule set.
+	 * 
+	 * @return Number of rules.
+	 */
+	public int size() {
+		return primaryNumbers.size() + secondaryNumbers.size() + primaryFreeTexts.size() + secondaryFreeTexts.size() + primaryRegexs.size() + secondaryRegexs.size();
+	}
+
+	/**
+	 * To figure out if this rule set is empty, an empty rule set never classifies anything as an alarm.
+	 * 
+	 * @return <code>true</code> if rule set is empty, else <code>false</code>.
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * To figure out if this rule set has any rules matched against the body of an SMS, that is any free text or regular expression rules. If not, an
+	 * SMS can only be an alarm due to it's sender.
+	 * 
+	 * @return <code>true</code> if rule set has rules matched against the body, else <code>false</code>.
+	 */
+	public boolean hasBodyRules() {
+		return !primaryFreeTexts.isEmpty() || !secondaryFreeTexts.isEmpty() || !primaryRegexs.isEmpty() || !secondaryRegexs.isEmpty();
+	}
+
+	/**
+	 * To figure out if given sender is the phone number of any number rule.
+	 * 
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @return <code>true</code> if sender triggers an alarm, else <code>false</code>.
+	 */
+	public boolean isRuleSender(String sender) {
+		return sender != null && numbers.contains(sender);
+	}
+
+	/**
+	 * Prefilter to figure out if any free text or regular expression rule applying to given sender <b><i>might</i></b> match given body. If this
+	 * method returns <code>false</code> no such rule matches, but a <code>true</code> doesn't guarantee that any does. The words of the body are
+	 * compared to the free texts by case insensitive hashes, hence no strings are created, and the body is searched for the required literals of the
+	 * regular expressions, see {@link Rule#getRequiredLiteral()}.
+	 * 
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @param body
+	 *            Body of SMS.
+	 * @return <code>false</code> if no rule matches given body, <code>true</code> if any rule might match.
+	 */
+	public boolean mightMatchBody(String sender, String body) {
+		if (body == null || body.length() == 0) {
+			return false;
+		}
+
+		Subset subset = resolveSubset(sender);
+
+		if (subset.anyRegexsWithoutLiteral) {
+			return true;
+		}
+
+		for (String literal : subset.regexLiterals) {
+			if (body.indexOf(literal) >= 0) {
+				return true;
+			}
+		}
+
+		if (subset.freeTextHashes.length == 0) {
+			return false;
+		}
+
+		// Hash each word, the message is split on single spaces exactly as when free texts are matched
+		int start = 0;
+
+		for (int i = 0; i <= body.length(); i++) {
+			if (i == body.length() || body.charAt(i) == ' ') {
+				if (i > start && Arrays.binarySearch(subset.freeTextHashes, hashIgnoreCase(body, start, i)) >= 0) {
+					return true;
+				}
+
+				start = i + 1;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * To resolve the {@link Subset} of body rules applying to SMS from given sender. Rules scoped to the phone number of the sender are looked up
+	 * first, then rules scoped to the longest prefix of it. If no rules are scoped to the sender, the rules applying to any sender are resolved.
+	 * 
+	 * @param sender
+	 *            Senders phone number, already normalized.
+	 * @return Resolved subset.
+	 */
+	private Subset resolveSubset(String sender) {
+		if (sender == null) {
+			return anySenderRules;
+		}
+
+		Subset subset = senderRules.get(sender);
+
+		if (subset != null) {
+			return subset;
+		}
+
+		for (String prefix : senderPrefixes) {
+			if (sender.startsWith(prefix)) {
+				return senderPrefixRules.get(prefix);
+			}
+		}
+
+		return anySenderRules;
+	}
+
+	/**
+	 * To create a {@link Subset} of the body rules applying to SMS from given sender, or from any sender starting with given prefix.
+	 * 
+	 * @param sender
+	 *            Senders phone number or phone number prefix, <code>null</code> to create a subset of only the rules applying to any sender.
+	 * @param prefix
+	 *            Whether <code>sender</code> is a prefix or not. Only rules scoped to a prefix of the prefix applies to all senders starting with it.
+	 * @return Created subset.
+	 */
+	private Subset createSubset(String sender, boolean prefix) {
+		// @formatter:off
+		return new Subset(	filter(primaryFreeTexts, sender, prefix), filter(secondaryFreeTexts, sender, prefix), 
+							filter(primaryRegexs, sender, prefix), filter(secondaryRegexs, sender, prefix));
+		// @formatter:on
+	}
+
+	/**
+	 * To filter out the rules applying to SMS from given sender, or from any sender starting with given prefix.
+	 * 
+	 * @param rules
+	 *            Rules to filter.
+	 * @param sender
+	 *            Senders phone number or phone number prefix, <code>null</code> to filter out only the rules applying to any sender.
+	 * @param prefix
+	 *            Whether <code>sender</code> is a prefix or not.
+	 * @return Unmodifiable list of rules, in the order they were given.
+	 */
+	private static List<Rule> filter(List<Rule> rules, String sender, boolean prefix) {
+		List<Rule> filtered = new ArrayList<Rule>();
+
+		for (Rule rule : rules) {
+			boolean applies = !rule.isScoped();
+
+			if (!applies && sender != null) {
+				if (prefix) {
+					for (String senderPrefix : rule.getSenderPrefixes()) {
+						applies |= sender.startsWith(senderPrefix);
+					}
+				} else {
+					applies = rule.appliesTo(sender);
+				}
+			}
+
+			if (applies) {
+				filtered.add(rule);
+			}
+		}
+
+		return Collections.unmodifiableList(filtered);
+	}
+
+	/**
+	 * To calculate a case insensitive hash of given part of given string. Strings equal ignoring case, as by
+	 * {@link String#equalsIgnoreCase(String)}, always gets the same hash.
+	 * 
+	 * @param string
+	 *            String to hash.
+	 * @param start
+	 *            Start index, inclusive.
+	 * @param end
+	 *            End index, exclusive.
+	 * @return Case insensitive hash.
+	 */
+	private static int hashIgnoreCase(String string, int start, int end) {
+		int hash = 0;
+
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(string.charAt(i)));
+		}
+
+		return hash;
+	}
+
+	/**
+	 * To concatenate given lists of rules.
+	 * 
+	 * @param first
+	 *            First list.
+	 * @param second
+	 *            Second list.
+	 * @return New list of all rules.
+	 */
+	private static List<Rule> concat(List<Rule> first, List<Rule> second) {
+		List<Rule> rules = new ArrayList<Rule>(first);
+		rules.addAll(second);
+
+		return rules;
+	}
+
+	/**
+	 * To create rules of given values.
+	 * 
+	 * @param type
+	 *            Type of alarm the rules triggers.
+	 * @param kind
+	 *            Kind of rules.
+	 * @param values
+	 *            Values of rules, <code>null</code> values are kept as they are and never matches.
+	 * @return Unmodifiable list of rules.
+	 */
+	private static List<Rule> toRules(Type type, Kind kind, List<String> values) {
+		List<Rule> rules = new ArrayList<Rule>(values.size());
+
+		for (int i = 0; i < values.size(); i++) {
+			rules.add(new Rule(type.name() + "." + kind.name() + "." + i, kind, type, values.get(i)));
+		}
+
+		return Collections.unmodifiableList(rules);
+	}
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+
+/**
+ * Reads a {@link RuleSet} from a rule file, the same file format as is imported on the device by <code>RuleImportHandler</code>. Each line is on the
+ * form <code>TYPE,TIER,VALUE</code>, values are normalized, invalid regular expressions are rejected and duplicates are resolved exactly as when
+ * importing, hence the resulting rule set is the one a device ends up with when importing the file into an empty configuration. In fact
+ * <code>RuleImportHandler</code> reads the file through this class, with the rules already configured on the device added as existing rules.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class RuleSetReader {
+	// Pattern of characters commonly used to group digits in phone numbers, and of white spaces, compiled once
+	private static final Pattern PHONE_NUMBER_SEPARATORS = Pattern.compile("[-()./]");
+	private static final Pattern WHITE_SPACES = Pattern.compile("\\s+");
+
+	// Separators between type, tier and value, and lines starting with this are ignored
+	private static final String SEPARATORS = "[,;]";
+	private static final String COMMENT = "#";
+
+	// Accepted rule values, and the ones used to detect duplicates, by kind and type
+	private final Map<Kind, Map<Type, List<String>>> rules = new EnumMap<Kind, Map<Type, List<String>>>(Kind.class);
+	private final Map<Kind, Map<Type, Set<String>>> existingRules = new EnumMap<Kind, Map<Type, Set<String>>>(Kind.class);
+
+	// @formatter:off
+	private int linesRead;				// Every line read, including empty lines and comments
+	private int duplicates;				// Rules that already existed within the same tier
+	private int crossTierDuplicates;	// Rules that already existed in the opposite tier
+	private int invalidRegexs;			// Regular expressions that couldn't be compiled
+	private int malformedLines;			// Lines not on the form TYPE,TIER,VALUE
+	// @formatter:on
+
+	/**
+	 * Creates a new instance of {@link RuleSetReader}.
+	 */
+	public RuleSetReader() {
+		for (Kind kind : Kind.values()) {
+			Map<Type, List<String>> values = new EnumMap<Type, List<String>>(Type.class);
+			Map<Type, Set<String>> existing = new EnumMap<Type, Set<String>>(Type.class);
+
+			for (Type type : new Type[] { Type.PRIMARY, Type.SECONDARY }) {
+				values.put(type, new ArrayList<String>());
+				existing.put(type, new HashSet<String>());
+			}
+
+			rules.put(kind, values);
+			existingRules.put(kind, existing);
+		}
+	}
+
+	/**
+	 * To add rules that already exists, rules read later which are duplicates of these are rejected. The existing rules aren't part of the read
+	 * rules.
+	 * 
+	 * @param kind
+	 *            Kind of existing rules.
+	 * @param type
+	 *            Type of existing rules, must be either {@link Type#PRIMARY} or {@link Type#SECONDARY}.
+	 * @param values
+	 *            Values of existing rules.
+	 */
+	public void addExistingRules(Kind kind, Type type, Collection<String> values) {
+		for (String value : values) {
+			existingRules.get(kind).get(type).add(toLookupValue(kind, value));
+		}
+	}
+
+	/**
+	 * To read rules from given UTF-8 encoded file.
+	 * 
+	 * @param file
+	 *            Rule file to read.
+	 * @return Read rules, together with any rules read earlier by this reader.
+	 * @throws IOException
+	 *             If the file couldn't be read.
+	 */
+	public RuleSet read(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+		try {
+			return read(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * To read rules line by line from given {@link BufferedReader}.
+	 * 
+	 * @param reader
+	 *            Reader to read rules from.
+	 * @return Read rules, together with any rules read earlier by this reader.
+	 * @throws IOException
+	 *             If an error occurs while reading.
+	 */
+	public RuleSet read(BufferedReader reader) throws IOException {
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			linesRead++;
+			line = line.trim();
+
+			// Skip empty lines and comments
+			if (line.length() == 0 || line.startsWith(COMMENT)) {
+				continue;
+			}
+
+			// Split in three parts, type, tier and value. Value may contain separators so don't split any further
+			accept(line.split(SEPARATORS, 3));
+		}
+
+		// @formatter:off
+		return new RuleSet(	rules.get(Kind.NUMBER).get(Type.PRIMARY), rules.get(Kind.NUMBER).get(Type.SECONDARY),
+							rules.get(Kind.FREE_TEXT).get(Type.PRIMARY), rules.get(Kind.FREE_TEXT).get(Type.SECONDARY),
+							rules.get(Kind.REGEX).get(Type.PRIMARY), rules.get(Kind.REGEX).get(Type.SECONDARY));
+		// @formatter:on
+	}
+
+	public int getLinesRead() {
+		return linesRead;
+	}
+
+	/**
+	 * To get the rules of given kind and type accepted by this reader, in the order they were read.
+	 * 
+	 * @param kind
+	 *            Kind of rules.
+	 * @param type
+	 *            Type of rules, must be either {@link Type#PRIMARY} or {@link Type#SECONDARY}.
+	 * @return Accepted rules of given kind and type.
+	 */
+	public List<String> getAcceptedRules(Kind kind, Type type) {
+		return Collections.unmodifiableList(rules.get(kind).get(type));
+	}
+
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	public int getCrossTierDuplicates() {
+		return crossTierDuplicates;
+	}
+
+	public int getInvalidRegexs() {
+		return invalidRegexs;
+	}
+
+	public int getMalformedLines() {
+		return malformedLines;
+	}
+
+	/**
+	 * To get the number of rejected lines, that is malformed lines, invalid regular expressions and duplicates.
+	 * 
+	 * @return Number of rejected lines.
+	 */
+	public int getRejectedLines() {
+		return duplicates + crossTierDuplicates + invalidRegexs + malformedLines;
+	}
+
+	/**
+	 * To validate a rule, split into type, tier and value, and accept it if it's valid and not a duplicate. The outcome is counted.
+	 * 
+	 * @param parts
+	 *            Rule split into it's parts.
+	 */
+	private void accept(String[] parts) {
+		Kind kind = parts.length == 3 ? resolve(Kind.class, parts[0]) : null;
+		Type type = parts.length == 3 ? resolve(Type.class, parts[1]) : null;
+
+		if (kind == null || type == null || Type.UNDEFINED.equals(type)) {
+			malformedLines++;
+			return;
+		}
+
+		String value = normalize(kind, unquote(parts[2].trim()));
+
+		if (value.length() == 0) {
+			malformedLines++;
+			return;
+		}
+
+		// Regular expressions must compile, any sender scope isn't part of the regular expression. This is stricter than the classifier, which matches
+		// an invalid regular expression literally, but an invalid one in a rule file is most likely a mistake and is reported rather than imported
+		if (Kind.REGEX.equals(kind)) {
+			try {
+				Pattern.compile(Rule.stripSenderScope(value));
+			} catch (PatternSyntaxException e) {
+				invalidRegexs++;
+				return;
+			}
+		}
+
+		String lookupValue = toLookupValue(kind, value);
+		Type oppositeType = Type.PRIMARY.equals(type) ? Type.SECONDARY : Type.PRIMARY;
+
+		if (existingRules.get(kind).get(type).contains(lookupValue)) {
+			duplicates++;
+		} else if (existingRules.get(kind).get(oppositeType).contains(lookupValue)) {
+			crossTierDuplicates++;
+		} else {
+			existingRules.get(kind).get(type).add(lookupValue);
+			rules.get(kind).get(type).add(value);
+		}
+	}
+
+	/**
+	 * To get the value by which given rule value is detected as a duplicate. Phone numbers are compared ignoring cases, as when added through the
+	 * user interface.
+	 * 
+	 * @param kind
+	 *            Kind of rule.
+	 * @param value
+	 *            Value of rule.
+	 * @return Value to detect duplicates by.
+	 */
+	private static String toLookupValue(Kind kind, String value) {
+		return Kind.NUMBER.equals(kind) ? value.toUpperCase(Locale.ENGLISH) : value;
+	}
+
+	/**
+	 * To normalize given value according to given {@link Kind}, same normalization as when importing on the device.
+	 * 
+	 * @param kind
+	 *            Kind of rule.
+	 * @param value
+	 *            Value to normalize.
+	 * @return Normalized value.
+	 */
+	private static String normalize(Kind kind, String value) {
+		switch (kind) {
+			case NUMBER:
+				return PHONE_NUMBER_SEPARATORS.matcher(WHITE_SPACES.matcher(value).replaceAll("")).replaceAll("");
+			case FREE_TEXT:
+				return WHITE_SPACES.matcher(value).replaceAll("");
+			default:
+				return value;
+		}
+	}
+
+	/**
+	 * To resolve an enumeration constant of given class from given name, resolving is done ignoring cases.
+	 * 
+	 * @param enumClass
+	 *            Class of enumeration.
+	 * @param name
+	 *            Name of constant.
+	 * @return Resolved constant, <code>null</code> if none could be resolved.
+	 */
+	private static <E extends Enum<E>> E resolve(Class<E> enumClass, String name) {
+		try {
+			return Enum.valueOf(enumClass, name.trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * To remove surrounding quotes from given value, as CSV exported from spreadsheets often is quoted. Escaped quotes within value are unescaped.
+	 * 
+	 * @param value
+	 *            Value to unquote.
+	 * @return Unquoted value, or given value as is if it isn't quoted.
+	 */
+	private static String unquote(String value) {
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+			return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+		}
+
+		return value;
+	}
+}
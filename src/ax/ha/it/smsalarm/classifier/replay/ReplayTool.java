@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier.replay;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ax.ha.it.smsalarm.classifier.AlarmClassifier;
+import ax.ha.it.smsalarm.classifier.Classification;
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.RuleSet;
+import ax.ha.it.smsalarm.classifier.RuleSetReader;
+import ax.ha.it.smsalarm.classifier.replay.SmsLogReader.LoggedSms;
+
+/**
+ * Command line tool replaying recorded SMS debug logs through {@link AlarmClassifier}, runs on a plain JVM. Used to validate rule changes before they
+ * are pushed to the devices, instead of sending mock SMS one by one.
+ * 
+ * <pre>
+ * java ax.ha.it.smsalarm.classifier.replay.ReplayTool -rules rules.txt [-compare new_rules.txt] [-threads N] [-diff] [-quiet] smslog.txt...
+ * </pre>
+ * 
+ * The decision for every message is written to standard out, one tab separated line per message: file, line, sender, alarm type and trigger text.
+ * If a second rule file is given with <code>-compare</code> the alarm type and trigger text of that rule set are added, and with <code>-diff</code>
+ * only messages classified differently by the two rule sets are written. A summary, including throughput, is written to standard error.
+ * <p>
+ * Messages are read on the main thread and classified in batches by a pool of workers, the decisions are written in the same order as the messages
+ * were read.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class ReplayTool {
+	/**
+	 * Classified batch of messages, the output and counts of the batch.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class BatchResult {
+		private final StringBuilder output = new StringBuilder();
+		private final int[] typeCounts = new int[Type.values().length];
+		private final int[] compareTypeCounts = new int[Type.values().length];
+		private int messages;
+		private int diffs;
+	}
+
+	// Number of messages classified by a worker at a time, and number of batches queued per worker
+	private static final int BATCH_SIZE = 1024;
+	private static final int BATCHES_PER_WORKER = 4;
+
+	private static final String USAGE = "Usage: ReplayTool -rules <file> [-compare <file>] [-threads <n>] [-diff] [-quiet] <smslog file>...";
+
+	private RuleSet rules;
+	private RuleSet compareRules;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean diffOnly = false;
+	private boolean quiet = false;
+	private final List<File> logFiles = new ArrayList<File>();
+
+	// Totals, only updated by the thread writing the output
+	private long messages;
+	private long diffs;
+	private final long[] typeCounts = new long[Type.values().length];
+	private final long[] compareTypeCounts = new long[Type.values().length];
+
+	public static void main(String[] args) {
+		ReplayTool tool = new ReplayTool();
+
+		try {
+			if (!tool.parseArguments(args)) {
+				System.err.println(USAGE);
+				System.exit(2);
+			}
+
+			tool.replay();
+		} catch (IOException e) {
+			System.err.println("Replay failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * To parse given command line arguments.
+	 * 
+	 * @param args
+	 *            Command line arguments.
+	 * @return <code>true</code> if arguments were valid, else <code>false</code>.
+	 * @throws IOException
+	 *             If a rule file couldn't be read.
+	 */
+	private boolean parseArguments(String[] args) throws IOException {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			boolean hasValue = i + 1 < args.length;
+
+			if ("-rules".equals(arg) && hasValue) {
+				rules = readRules(new File(args[++i]));
+			} else if ("-compare".equals(arg) && hasValue) {
+				compareRules = readRules(new File(args[++i]));
+			} else if ("-threads".equals(arg) && hasValue) {
+				try {
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			} else if ("-diff".equals(arg)) {
+				diffOnly = true;
+			} else if ("-quiet".equals(arg)) {
+				quiet = true;
+			} else if (arg.startsWith("-")) {
+				return false;
+			} else {
+				logFiles.add(new File(arg));
+			}
+		}
+
+		return rules != null && !logFiles.isEmpty() && (!diffOnly || compareRules != null);
+	}
+
+	/**
+	 * To read a {@link RuleSet} from given rule file, a summary of it is written to standard error.
+	 * 
+	 * @param file
+	 *            Rule file to read.
+	 * @return Read rule set.
+	 * @throws IOException
+	 *             If the rule file couldn't be read.
+	 */
+	private static RuleSet readRules(File file) throws IOException {
+		RuleSetReader reader = new RuleSetReader();
+		RuleSet ruleSet = reader.read(file);
+
+		System.err.println("Rules: \"" + file.getPath() + "\", lines read: " + reader.getLinesRead() + ", rules: " + ruleSet.size() + ", rejected lines: " + reader.getRejectedLines());
+
+		return ruleSet;
+	}
+
+	/**
+	 * To replay all given SMS debug logs and write the decisions and summary.
+	 * 
+	 * @throws IOException
+	 *             If a log couldn't be read or the output couldn't be written.
+	 */
+	private void replay() throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), 64 * 1024);
+
+		// Batches in the order they were read, bounded so reading can't get too far ahead of classifying and writing
+		Deque<Future<BatchResult>> pending = new ArrayDeque<Future<BatchResult>>();
+
+		long start = System.nanoTime();
+
+		try {
+			for (File logFile : logFiles) {
+				SmsLogReader reader = SmsLogReader.open(logFile);
+
+				try {
+					List<LoggedSms> batch = new ArrayList<LoggedSms>(BATCH_SIZE);
+					LoggedSms sms;
+
+					while ((sms = reader.next()) != null) {
+						batch.add(sms);
+
+						if (batch.size() == BATCH_SIZE) {
+							submit(workers, pending, logFile.getPath(), batch, out);
+							batch = new ArrayList<LoggedSms>(BATCH_SIZE);
+						}
+					}
+
+					if (!batch.isEmpty()) {
+						submit(workers, pending, logFile.getPath(), batch, out);
+					}
+				} finally {
+					reader.close();
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				write(pending.poll(), out);
+			}
+		} finally {
+			workers.shutdownNow();
+			out.flush();
+		}
+
+		writeSummary(System.nanoTime() - start);
+	}
+
+	/**
+	 * To submit given batch to the workers. If too many batches are pending the oldest one is written first.
+	 * 
+	 * @param workers
+	 *            Workers classifying batches.
+	 * @param pending
+	 *            Pending batches, in read order.
+	 * @param fileName
+	 *            Name of log file the batch was read from.
+	 * @param batch
+	 *            Messages to classify.
+	 * @param out
+	 *            Writer of decisions.
+	 * @throws IOException
+	 *             If output couldn't be written.
+	 */
+	private void submit(ExecutorService workers, Deque<Future<BatchResult>> pending, final String fileName, final List<LoggedSms> batch, Writer out) throws IOException {
+		if (pending.size() >= threads * BATCHES_PER_WORKER) {
+			write(pending.poll(), out);
+		}
+
+		pending.add(workers.submit(new Callable<BatchResult>() {
+			@Override
+			public BatchResult call() {
+				return classify(fileName, batch);
+			}
+		}));
+	}
+
+	/**
+	 * To classify given batch of messages, <b><i>called by the workers</i></b>.
+	 * 
+	 * @param fileName
+	 *            Name of log file the batch was read from.
+	 * @param batch
+	 *            Messages to classify.
+	 * @return Result of batch.
+	 */
+	private BatchResult classify(String fileName, List<LoggedSms> batch) {
+		BatchResult result = new BatchResult();
+
+		for (LoggedSms sms : batch) {
+			Classification classification = AlarmClassifier.classify(rules, sms.getSender(), sms.getBody());
+			result.typeCounts[classification.getType().ordinal()]++;
+			result.messages++;
+
+			Classification compareClassification = null;
+			boolean diff = false;
+
+			if (compareRules != null) {
+				compareClassification = AlarmClassifier.classify(compareRules, sms.getSender(), sms.getBody());
+				result.compareTypeCounts[compareClassification.getType().ordinal()]++;
+
+				diff = !classification.getType().equals(compareClassification.getType()) || !classification.getTriggerText().equals(compareClassification.getTriggerText());
+
+				if (diff) {
+					result.diffs++;
+				}
+			}
+
+			if (quiet || (diffOnly && !diff)) {
+				continue;
+			}
+
+			result.output.append(fileName).append('\t').append(sms.getLineNumber()).append('\t').append(sms.getSender()).append('\t');
+			result.output.append(classification.getType()).append('\t').append(classification.getTriggerText());
+
+			if (compareClassification != null) {
+				result.output.append('\t').append(compareClassification.getType()).append('\t').append(compareClassification.getTriggerText());
+			}
+
+			result.output.append('\n');
+		}
+
+		return result;
+	}
+
+	/**
+	 * To wait for given batch to be classified, write it's decisions and add it's counts to the totals.
+	 * 
+	 * @param future
+	 *            Pending batch.
+	 * @param out
+	 *            Writer of decisions.
+	 * @throws IOException
+	 *             If output couldn't be written.
+	 */
+	private void write(Future<BatchResult> future, Writer out) throws IOException {
+		BatchResult result;
+
+		try {
+			result = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for classification");
+		} catch (ExecutionException e) {
+			throw new IOException("Classification failed: " + e.getCause());
+		}
+
+		out.append(result.output);
+
+		messages += result.messages;
+		diffs += result.diffs;
+
+		for (int i = 0; i < typeCounts.length; i++) {
+			typeCounts[i] += result.typeCounts[i];
+			compareTypeCounts[i] += result.compareTypeCounts[i];
+		}
+	}
+
+	/**
+	 * To write summary of the replay to standard error.
+	 * 
+	 * @param elapsedNanos
+	 *            Time the replay took.
+	 */
+	private void writeSummary(long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+
+		System.err.println("Messages: " + messages + ", workers: " + threads);
+		System.err.println("Rules: " + formatTypeCounts(typeCounts));
+
+		if (compareRules != null) {
+			System.err.println("Compare rules: " + formatTypeCounts(compareTypeCounts));
+			System.err.println("Differences: " + diffs);
+		}
+
+		System.err.println(String.format("Elapsed: %.3f s, throughput: %.0f messages/s", seconds, seconds > 0 ? messages / seconds : 0));
+	}
+
+	/**
+	 * To format given counts per {@link Type}.
+	 * 
+	 * @param counts
+	 *            Counts, indexed by ordinal of type.
+	 * @return Formatted counts.
+	 */
+	private static String formatTypeCounts(long[] counts) {
+		StringBuilder sb = new StringBuilder();
+
+		for (Type type : Type.values()) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+
+			sb.append(type).append(": ").append(counts[type.ordinal()]);
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.classifier.replay;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the SMS debug log, <code>smslog.txt</code>, written by <code>SmsReceiver</code> when SMS debug logging is enabled. Each record is on the form
+ * <code>TIME\tSENDER\tBODY</code>, a body spanning several lines continues on the lines following the record. Rotated, gzipped, log files are read
+ * as well.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class SmsLogReader implements Closeable {
+	/**
+	 * A logged SMS, as read from the SMS debug log.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class LoggedSms {
+		private final int lineNumber;
+		private final String time;
+		private final String sender;
+		private final String body;
+
+		private LoggedSms(int lineNumber, String time, String sender, String body) {
+			this.lineNumber = lineNumber;
+			this.time = time;
+			this.sender = sender;
+			this.body = body;
+		}
+
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		public String getTime() {
+			return time;
+		}
+
+		public String getSender() {
+			return sender;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+
+	// Time each record starts with, as formatted by Logger
+	private static final Pattern TIME = Pattern.compile("\\d{2}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}");
+
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final BufferedReader reader;
+
+	// Reused for every line, a reader is only used by one thread
+	private final Matcher timeMatcher = TIME.matcher("");
+
+	// Line read ahead, the first line of next record, and it's line number
+	private String nextLine;
+	private int lineNumber;
+
+	/**
+	 * Creates a new instance of {@link SmsLogReader} reading from given {@link BufferedReader}.
+	 * 
+	 * @param reader
+	 *            Reader to read SMS debug log from.
+	 */
+	public SmsLogReader(BufferedReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * To open given SMS debug log file for reading, a file ending with <code>.gz</code> is read as gzipped.
+	 * 
+	 * @param file
+	 *            SMS debug log file to read.
+	 * @return Reader of given file.
+	 * @throws IOException
+	 *             If the file couldn't be opened.
+	 */
+	public static SmsLogReader open(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+
+		if (file.getName().endsWith(GZIP_EXTENSION)) {
+			in = new GZIPInputStream(in, BUFFER_SIZE);
+		}
+
+		return new SmsLogReader(new BufferedReader(new InputStreamReader(in, "UTF-8"), BUFFER_SIZE));
+	}
+
+	/**
+	 * To read next logged SMS. Lines before the first record are skipped.
+	 * 
+	 * @return Next logged SMS, <code>null</code> if end of log has been reached.
+	 * @throws IOException
+	 *             If an error occurs while reading.
+	 */
+	public LoggedSms next() throws IOException {
+		// Find start of next record
+		while (nextLine == null || !isRecordStart(nextLine)) {
+			if (!readLine()) {
+				return null;
+			}
+		}
+
+		int recordLineNumber = lineNumber;
+		String[] parts = nextLine.split("\t", 3);
+		StringBuilder body = new StringBuilder(parts.length == 3 ? parts[2] : "");
+
+		// Any following lines not starting a new record belongs to this body
+		while (readLine() && !isRecordStart(nextLine)) {
+			body.append('\n').append(nextLine);
+		}
+
+		return new LoggedSms(recordLineNumber, parts[0], parts.length > 1 ? parts[1] : "", body.toString());
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * To read next line into {@link #nextLine}.
+	 * 
+	 * @return <code>true</code> if a line was read, <code>false</code> if end of log has been reached.
+	 * @throws IOException
+	 *             If an error occurs while reading.
+	 */
+	private boolean readLine() throws IOException {
+		nextLine = reader.readLine();
+
+		if (nextLine != null) {
+			lineNumber++;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * To figure out whether or not given line is the first line of a record, that is if it starts with time followed by a tab.
+	 * 
+	 * @param line
+	 *            Line to check.
+	 * @return <code>true</code> if line starts a record, else <code>false</code>.
+	 */
+	private boolean isRecordStart(String line) {
+		timeMatcher.reset(line);
+		return timeMatcher.lookingAt() && line.length() > timeMatcher.end() && line.charAt(timeMatcher.end()) == '\t';
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.fragment;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import ax.ha.it.smsalarm.R;
+import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer.Storm;
+import ax.ha.it.smsalarm.handler.AlertHandler;
+import ax.ha.it.smsalarm.util.Metrics;
+import ax.ha.it.smsalarm.util.Metrics.AlarmStage;
+import ax.ha.it.smsalarm.util.Metrics.Histogram;
+import ax.ha.it.smsalarm.util.Scheduler;
+import ax.ha.it.smsalarm.util.Scheduler.TaskStats;
+import ax.ha.it.smsalarm.util.WakeLocker;
+
+import com.actionbarsherlock.app.SherlockFragment;
+
+/**
+ * {@link Fragment} containing the <b><i>Diagnostics</i></b> view, only reachable through the debug menu. Shows the latency of each stage of the alarm
+ * pipeline, from an SMS is received until the stage is reached, together with all other {@link Metrics}, the statistics of the {@link Scheduler},
+ * the current holders of the {@link WakeLocker} and the statistics of the latest alarm storms.<br>
+ * The view is refreshed every time the fragment is resumed.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class DiagnosticsFragment extends SherlockFragment {
+	// Format of one row in the latency table
+	private static final String LATENCY_ROW_FORMAT = "%-26s %6s %8s %8s %8s %8s%n";
+
+	private TextView diagnosticsTextView;
+
+	/**
+	 * To create a new instance of {@link DiagnosticsFragment}.
+	 */
+	public DiagnosticsFragment() {
+		// Just empty...
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+
+		// Set correct screen name and send hit to Google Analytics
+		GoogleAnalyticsHandler.setScreenNameAndSendScreenViewHit(this);
+
+		diagnosticsTextView.setText(buildDiagnostics());
+	}
+
+	@Override
+	public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+		diagnosticsTextView = new TextView(getActivity());
+		diagnosticsTextView.setTypeface(Typeface.MONOSPACE);
+		diagnosticsTextView.setTextSize(10);
+		diagnosticsTextView.setPadding(10, 10, 10, 10);
+
+		ScrollView scrollView = new ScrollView(getActivity());
+		scrollView.addView(diagnosticsTextView);
+
+		return scrollView;
+	}
+
+	/**
+	 * To build up the diagnostics text.
+	 * 
+	 * @return Diagnostics text.
+	 */
+	private String buildDiagnostics() {
+		StringBuilder sb = new StringBuilder();
+		Map<String, Histogram> histograms = Metrics.getInstance().getHistograms();
+
+		// Alarm pipeline first, in the order the stages are reached
+		sb.append(getString(R.string.DEBUG_DIAGNOSTICS_ALARM_PIPELINE)).append("\n");
+		sb.append(String.format(Locale.ENGLISH, LATENCY_ROW_FORMAT, "", "count", "p50", "p95", "p99", "max"));
+
+		for (AlarmStage stage : AlarmStage.values()) {
+			appendLatencyRow(sb, stage.name(), histograms.remove(stage.getMetricName()));
+		}
+
+		// Any other latencies recorded
+		if (!histograms.isEmpty()) {
+			sb.append("\n").append(getString(R.string.DEBUG_DIAGNOSTICS_LATENCIES)).append("\n");
+
+			for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+				appendLatencyRow(sb, entry.getKey(), entry.getValue());
+			}
+		}
+
+		sb.append("\n").append(getString(R.string.DEBUG_DIAGNOSTICS_COUNTERS)).append("\n");
+
+		for (Map.Entry<String, Long> entry : Metrics.getInstance().getCounters().entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		}
+
+		sb.append("\n").append(getString(R.string.DEBUG_DIAGNOSTICS_SCHEDULER)).append("\n");
+
+		for (Map.Entry<String, TaskStats> entry : Scheduler.getInstance().getStats().entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+		}
+
+		sb.append("\n").append(getString(R.string.DEBUG_DIAGNOSTICS_WAKE_LOCKS)).append("\n");
+
+		List<String> holders = WakeLocker.getHolders();
+
+		for (String holder : holders) {
+			sb.append(holder).append("\n");
+		}
+
+		if (holders.isEmpty()) {
+			sb.append("-\n");
+		}
+
+		sb.append("\n").append(getString(R.string.DEBUG_DIAGNOSTICS_ALARM_STORMS)).append("\n");
+
+		List<Storm> storms = AlertHandler.getInstance().getStorms();
+
+		for (Storm storm : storms) {
+			sb.append(storm).append("\n");
+		}
+
+		if (storms.isEmpty()) {
+			sb.append("-\n");
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * To append a row with the latencies of given {@link Histogram}, in milliseconds, to given <code>StringBuilder</code>.
+	 * 
+	 * @param sb
+	 *            StringBuilder to append to.
+	 * @param name
+	 *            Name of row.
+	 * @param histogram
+	 *            Histogram of latencies, <code>null</code> if nothing has been recorded.
+	 */
+	private void appendLatencyRow(StringBuilder sb, String name, Histogram histogram) {
+		if (histogram == null || histogram.getCount() == 0) {
+			sb.append(String.format(Locale.ENGLISH, LATENCY_ROW_FORMAT, name, "0", "-", "-", "-", "-"));
+		} else {
+			// @formatter:off
+			sb.append(String.format(Locale.ENGLISH, LATENCY_ROW_FORMAT, name, histogram.getCount(),
+					formatMillis(histogram.getPercentileMillis(50)), formatMillis(histogram.getPercentileMillis(95)),
+					formatMillis(histogram.getPercentileMillis(99)), formatMillis(histogram.getMaxMillis())));
+			// @formatter:on
+		}
+	}
+
+	/**
+	 * To format given milliseconds.
+	 * 
+	 * @param millis
+	 *            Milliseconds to format.
+	 * @return Formatted milliseconds, with one decimal.
+	 */
+	private static String formatMillis(double millis) {
+		return String.format(Locale.ENGLISH, "%.1f", millis);
+	}
+}
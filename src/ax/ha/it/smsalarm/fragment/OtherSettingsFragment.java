@@ -19,12 +19,15 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.EditText;
 import android.widget.RelativeLayout;
 import android.widget.RelativeLayout.LayoutParams;
+import android.widget.Spinner;
 import android.widget.TextView;
 import ax.ha.it.smsalarm.R;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler;
@@ -33,6 +36,7 @@ import ax.ha.it.smsalarm.handler.CameraHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+import ax.ha.it.smsalarm.receiver.SmsReceiver;
 
 import com.actionbarsherlock.app.SherlockFragment;
 import com.google.common.base.Optional;
@@ -66,6 +70,9 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 	private CheckBox useFlashNotificationCheckBox;
 	private CheckBox showSplashScreenCheckBox;
 
+	// ...Spinner...
+	private Spinner duplicateAlarmWindowSpinner;
+
 	// ...and TextViews
 	private TextView enableSmsAlarmInfoTextView;
 	private TextView enableSMSDebugLoggingInfoTextView;
@@ -82,6 +89,10 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 	private boolean useFlashNotification = false;
 	private boolean showSplashScreen = true;
 
+	// To store the duplicate alarm window in seconds and the selectable windows, in same order as in the Spinner
+	private int duplicateAlarmWindow = SmsReceiver.DEFAULT_DUPLICATE_ALARM_WINDOW;
+	private int[] duplicateAlarmWindows;
+
 	// Could contain an error describing why Flash Notification isn't supported, if absent it's supported
 	private Optional<String> flashNotificationSupportError;
 
@@ -139,6 +150,15 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 		useFlashNotificationCheckBox = (CheckBox) view.findViewById(R.id.useFlashNotification_chk);
 		showSplashScreenCheckBox = (CheckBox) view.findViewById(R.id.showSplashScreen_chk);
 
+		// Finding Spinner
+		duplicateAlarmWindowSpinner = (Spinner) view.findViewById(R.id.duplicateAlarmWindowSpinner_sp);
+
+		// Populate the spinner with items directly after it has been found, the windows are resolved along with it as they must be in the same order
+		ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(context, R.array.duplicate_alarm_windows, android.R.layout.simple_spinner_item);
+		adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		duplicateAlarmWindowSpinner.setAdapter(adapter);
+		duplicateAlarmWindows = getResources().getIntArray(R.array.duplicate_alarm_window_values);
+
 		// Finding TextView, views
 		enableSmsAlarmInfoTextView = (TextView) view.findViewById(R.id.enableSmsAlarmHint_tv);
 		enableSMSDebugLoggingInfoTextView = (TextView) view.findViewById(R.id.enableSMSDebugLoggingHint_tv);
@@ -250,6 +270,7 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 		useFlashNotification = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.USE_FLASH_NOTIFICATION, DataType.BOOLEAN, context);
 		showSplashScreen = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SHOW_SPLASH_SCREEN_KEY, DataType.BOOLEAN, context, true);
 		organization = (String) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ORGANIZATION_KEY, DataType.STRING, context);
+		duplicateAlarmWindow = (Integer) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.DUPLICATE_ALARM_WINDOW_KEY, DataType.INTEGER, context, SmsReceiver.DEFAULT_DUPLICATE_ALARM_WINDOW);
 	}
 
 	@Override
@@ -259,6 +280,7 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 		updateEnableSMSDebugLoggingCheckBox();
 		updateUseFlashNotificationCheckBox();
 		updateShowSplashScreenCheckBox();
+		updateDuplicateAlarmWindowSpinner();
 	}
 
 	@Override
@@ -273,6 +295,23 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 			}
 		});
 
+		// Set listener to the duplicate alarm window spinner
+		duplicateAlarmWindowSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+			@Override
+			public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+				// Get the new duplicate alarm window
+				duplicateAlarmWindow = duplicateAlarmWindows[duplicateAlarmWindowSpinner.getSelectedItemPosition()];
+
+				// Persist the duplicate alarm window
+				prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.DUPLICATE_ALARM_WINDOW_KEY, duplicateAlarmWindow, context);
+			}
+
+			@Override
+			public void onNothingSelected(AdapterView<?> parent) {
+				// DO NOTHING!
+			}
+		});
+
 		// Set listener to Enable Sms Alarm CheckBox
 		enableSmsAlarmCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
 			@Override
@@ -390,6 +429,20 @@ public class OtherSettingsFragment extends SherlockFragment implements Applicati
 		showSplashScreenCheckBox.setChecked(showSplashScreen);
 	}
 
+	/**
+	 * To update duplicate alarm window {@link Spinner} by setting correct selection.
+	 */
+	private void updateDuplicateAlarmWindowSpinner() {
+		for (int i = 0; i < duplicateAlarmWindows.length; i++) {
+			if (duplicateAlarmWindows[i] == duplicateAlarmWindow) {
+				duplicateAlarmWindowSpinner.setSelection(i);
+				return;
+			}
+		}
+
+		Log.e(LOG_TAG + ":updateDuplicateAlarmWindowSpinner()", "A duplicate alarm window not selectable in the spinner has been set. Duplicate alarm window: \"" + duplicateAlarmWindow + "\"");
+	}
+
 	/**
 	 * To check whether or not the device fulfills the requirements to dispatch a <b><i>Flash Notification</i></b>.<br>
 	 * Following requirements needs to be fulfilled:<br>
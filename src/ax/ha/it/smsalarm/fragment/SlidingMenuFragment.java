@@ -3,6 +3,9 @@
  */
 package ax.ha.it.smsalarm.fragment;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.os.Bundle;
@@ -18,12 +21,20 @@ import ax.ha.it.smsalarm.activity.SmsAlarm;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler.EventAction;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler.EventCategory;
+import ax.ha.it.smsalarm.fragment.dialog.ConfirmImportRulesDialog;
 import ax.ha.it.smsalarm.fragment.dialog.ConfirmInsertMockAlarmsDialog;
 import ax.ha.it.smsalarm.fragment.dialog.ConfirmMockSharedPreferencesDialog;
+import ax.ha.it.smsalarm.fragment.dialog.LoadGeneratorDialog;
 import ax.ha.it.smsalarm.fragment.dialog.MockSmsDialog;
+import ax.ha.it.smsalarm.handler.RuleImportHandler;
+import ax.ha.it.smsalarm.handler.RuleImportHandler.ImportReport;
 import ax.ha.it.smsalarm.slidingmenu.adapter.SlidingMenuAdapter;
 import ax.ha.it.smsalarm.slidingmenu.model.SlidingMenuItem;
 import ax.ha.it.smsalarm.util.DebugUtils;
+import ax.ha.it.smsalarm.util.FlightRecorder;
+import ax.ha.it.smsalarm.util.SmsLoadGenerator;
+import ax.ha.it.smsalarm.util.SmsLoadGenerator.MessageKind;
+import ax.ha.it.smsalarm.util.Tracer;
 
 import com.actionbarsherlock.app.SherlockListFragment;
 import com.jeremyfeinstein.slidingmenu.lib.SlidingMenu;
@@ -44,6 +55,12 @@ public class SlidingMenuFragment extends SherlockListFragment {
 	// Label used for events sent to Google Analytics
 	private static final String DEBUG_MENU_FORCED_SHOW_LABEL = "Debug menu forced to show";
 
+	// Number of alarms recorded to an alarm trace
+	private static final int ALARMS_TO_TRACE = 3;
+
+	// Reason written in the header of flight recorder dumps made from the debug menu
+	private static final String FLIGHT_RECORDER_DUMP_REASON = "Dumped from debug menu";
+
 	// A forceful way of displaying the debug/testing menu items
 	private boolean imposeDebugMenu = false;
 
@@ -136,6 +153,11 @@ public class SlidingMenuFragment extends SherlockListFragment {
 			adapter.add(new SlidingMenuItem(403, getString(R.string.DEBUG_MENU_TITLE_ACKNOWLEDGE_NOTIFICATION)));
 			adapter.add(new SlidingMenuItem(404, getString(R.string.DEBUG_MENU_TITLE_INSERT_MOCK_ALARMS)));
 			adapter.add(new SlidingMenuItem(405, getString(R.string.DEBUG_MENU_TITLE_MOCK_SHARED_PREFS)));
+			adapter.add(new SlidingMenuItem(406, getString(R.string.DEBUG_MENU_TITLE_IMPORT_RULES)));
+			adapter.add(new SlidingMenuItem(407, getString(R.string.DEBUG_MENU_TITLE_LOAD_GENERATOR)));
+			adapter.add(new SlidingMenuItem(408, getString(R.string.DEBUG_MENU_TITLE_DIAGNOSTICS)));
+			adapter.add(new SlidingMenuItem(409, getString(R.string.DEBUG_MENU_TITLE_RECORD_ALARM_TRACE)));
+			adapter.add(new SlidingMenuItem(410, getString(R.string.DEBUG_MENU_TITLE_DUMP_FLIGHT_RECORDER)));
 		}
 	}
 
@@ -203,6 +225,39 @@ public class SlidingMenuFragment extends SherlockListFragment {
 				confirmMockSharedPrefsDialog.setTargetFragment(SlidingMenuFragment.this, ConfirmMockSharedPreferencesDialog.CONFIRM_MOCK_SHARED_PREFERENCES_REQUEST_CODE);
 				confirmMockSharedPrefsDialog.show(getFragmentManager(), ConfirmMockSharedPreferencesDialog.CONFIRM_MOCK_SHARED_PREFERENCES_TAG);
 				break;
+			case (406):
+				ConfirmImportRulesDialog confirmImportRulesDialog = new ConfirmImportRulesDialog();
+				confirmImportRulesDialog.setTargetFragment(SlidingMenuFragment.this, ConfirmImportRulesDialog.CONFIRM_IMPORT_RULES_REQUEST_CODE);
+				confirmImportRulesDialog.show(getFragmentManager(), ConfirmImportRulesDialog.CONFIRM_IMPORT_RULES_TAG);
+				break;
+			case (407):
+				// A run in progress is stopped instead of starting a new one
+				if (SmsLoadGenerator.getInstance().isRunning()) {
+					SmsLoadGenerator.getInstance().stop();
+					Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_LOAD_GENERATOR_STOPPED), Toast.LENGTH_LONG).show();
+				} else {
+					LoadGeneratorDialog loadGeneratorDialog = new LoadGeneratorDialog();
+					loadGeneratorDialog.setTargetFragment(SlidingMenuFragment.this, LoadGeneratorDialog.LOAD_GENERATOR_DIALOG_REQUEST_CODE);
+					loadGeneratorDialog.show(getFragmentManager(), LoadGeneratorDialog.LOAD_GENERATOR_DIALOG_TAG);
+				}
+				break;
+			case (408):
+				fragment = new DiagnosticsFragment();
+				break;
+			case (409):
+				// A recording in progress is stopped and written instead of starting a new one
+				if (Tracer.isRecording()) {
+					Tracer.stopRecording();
+					Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_ALARM_TRACE_STOPPED), Toast.LENGTH_LONG).show();
+				} else {
+					Tracer.recordAlarms(ALARMS_TO_TRACE);
+					Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_ALARM_TRACE_RECORDING, ALARMS_TO_TRACE), Toast.LENGTH_LONG).show();
+				}
+				break;
+			case (410):
+				FlightRecorder.dump(FLIGHT_RECORDER_DUMP_REASON);
+				Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_FLIGHT_RECORDER_DUMPED), Toast.LENGTH_LONG).show();
+				break;
 			default:
 				Log.e(LOG_TAG + ":onListItemClick()", "Unable to resolve a Fragment for given menu item id: \"" + menuItem.getId() + "\", check if implementation exist for menu item");
 		}
@@ -248,6 +303,32 @@ public class SlidingMenuFragment extends SherlockListFragment {
 					DebugUtils.insertMockAlarms(getActivity());
 					Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_MOCK_ALARMS_INSERTED), Toast.LENGTH_LONG).show();
 					break;
+				case (ConfirmImportRulesDialog.CONFIRM_IMPORT_RULES_REQUEST_CODE):
+					// User wants to import rules, import them from the default file and present the outcome
+					RuleImportHandler ruleImportHandler = RuleImportHandler.getInstance();
+					ImportReport report = ruleImportHandler.importRules(getActivity(), ruleImportHandler.getDefaultImportFile());
+
+					if (report.isCompleted()) {
+						Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_RULES_IMPORTED, report.getImported(), report.getFileName(), report.getDuplicates(), report.getCrossTierDuplicates(), report.getInvalidRegexs(), report.getMalformedLines()), Toast.LENGTH_LONG).show();
+					} else {
+						Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_RULES_IMPORT_FAILED, report.getFileName()), Toast.LENGTH_LONG).show();
+					}
+					break;
+				case (LoadGeneratorDialog.LOAD_GENERATOR_DIALOG_REQUEST_CODE):
+					// Build up the mix of message kinds, given in the order of the kinds, and start the load generator
+					int[] weights = data.getIntArrayExtra(LoadGeneratorDialog.MIX);
+					Map<MessageKind, Integer> mix = new EnumMap<MessageKind, Integer>(MessageKind.class);
+
+					for (MessageKind kind : MessageKind.values()) {
+						mix.put(kind, weights[kind.ordinal()]);
+					}
+
+					if (SmsLoadGenerator.getInstance().start(getActivity(), data.getIntExtra(LoadGeneratorDialog.COUNT, 0), data.getIntExtra(LoadGeneratorDialog.RATE, 0), mix)) {
+						Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_LOAD_GENERATOR_STARTED), Toast.LENGTH_LONG).show();
+					} else {
+						Toast.makeText(getActivity(), getString(R.string.DEBUG_TOAST_LOAD_GENERATOR_NOT_STARTED), Toast.LENGTH_LONG).show();
+					}
+					break;
 				default:
 					Log.e(LOG_TAG + ":onActivityResult()", "An unsupported result occurred, result code: \"" + resultCode + "\" and request code: \"" + requestCode + "\"");
 			}
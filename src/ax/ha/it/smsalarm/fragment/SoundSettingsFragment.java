@@ -38,6 +38,8 @@ import ax.ha.it.smsalarm.R;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler;
 import ax.ha.it.smsalarm.fragment.dialog.AlarmSignalDialog;
 import ax.ha.it.smsalarm.fragment.dialog.AlarmVibrationDialog;
+import ax.ha.it.smsalarm.handler.AlarmSignalCatalog;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
@@ -358,12 +360,16 @@ public class SoundSettingsFragment extends SherlockFragment implements Applicati
 
 				// Update selected primary alarm signal TextView
 				updateSelectedPrimaryAlarmSignalTextView();
+
+				// Get the new alarm signal ready for next alarm
+				AlertHandler.getInstance().prepareAlarmSignals(context);
 				break;
 			case (AlarmSignalDialog.SECONDARY_ALARM_SIGNAL_DIALOG_REQUEST_CODE):
 				secondaryAlarmSignal = data.getStringExtra(AlarmSignalDialog.ALARM_SIGNAL);
 				prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_ALARM_SIGNAL_KEY, secondaryAlarmSignal, context);
 
 				updateSelectedSecondaryAlarmSignalTextView();
+				AlertHandler.getInstance().prepareAlarmSignals(context);
 				break;
 			case (AlarmVibrationDialog.PRIMARY_ALARM_VIBRATION_DIALOG_REQUEST_CODE):
 				primaryAlarmVibration = data.getStringExtra(AlarmVibrationDialog.ALARM_VIBRATION);
@@ -467,15 +473,8 @@ public class SoundSettingsFragment extends SherlockFragment implements Applicati
 	 * alarm signal, and also stored to <code>SharedPreferences</code>.
 	 */
 	private void validateUserAddedAlarmSignals() {
-		// Need a temporary list of alarm signal, the once that doesn't exist on the file system will be placed here for removal
-		List<String> missingAlarmSignals = new ArrayList<String>();
-
-		// Check that all user added alarm signals exist in the file system if not add them to another list for later removal
-		for (String alarmSignalPath : userAddedAlarmSignals) {
-			if (!Utils.fileExists(alarmSignalPath)) {
-				missingAlarmSignals.add(alarmSignalPath);
-			}
-		}
+		// Let the alarm signal catalog validate all user added alarm signals against the file system, it knows which of them that are missing
+		List<String> missingAlarmSignals = AlarmSignalCatalog.getInstance().getMissingUserAddedAlarmSignals(context);
 
 		// If there was any missing alarm signals
 		if (!missingAlarmSignals.isEmpty()) {
@@ -510,6 +509,9 @@ public class SoundSettingsFragment extends SherlockFragment implements Applicati
 				prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_ALARM_SIGNAL_KEY, secondaryAlarmSignal, context);
 			}
 
+			// Alarm signals might have been reset to the defaults, get them ready for next alarm
+			AlertHandler.getInstance().prepareAlarmSignals(context);
+
 			// Show toast for the user
 			Toast.makeText(context, missingAlarmSignalsMessage.toString() + getString(R.string.TOAST_ALARM_SIGNALS_REMOVED_DUE_TO_MISSING_PATHS), Toast.LENGTH_LONG).show();
 		}
@@ -22,6 +22,7 @@ import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SoundHandler;
 import ax.ha.it.smsalarm.util.Utils;
 
@@ -61,6 +62,7 @@ public class AlarmSignalDialog extends DialogFragment {
 	// Need to get instances of both Shared Preferences and Sound Handler
 	private final SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
 	private final SoundHandler soundHandler = SoundHandler.getInstance();
+	private final AlertHandler alertHandler = AlertHandler.getInstance();
 
 	// Must have application context
 	private Context context;
@@ -130,7 +132,7 @@ public class AlarmSignalDialog extends DialogFragment {
 						selectedAlarmSignalId = listPosition;
 
 						// Play selected tone
-						soundHandler.previewSignal(context, allAlarmSignals.get(listPosition));
+						alertHandler.previewSignal(context, allAlarmSignals.get(listPosition));
 					}
 				})
 
@@ -138,7 +140,7 @@ public class AlarmSignalDialog extends DialogFragment {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
 						// Want to stop media player if it's already playing
-						soundHandler.stopMediaPlayer(context);
+						alertHandler.stopSignal(context);
 
 						// Create an intent and put selected alarm signal in it and associate it with a certain key
 						Intent intent = new Intent();
@@ -152,7 +154,7 @@ public class AlarmSignalDialog extends DialogFragment {
 				.setNeutralButton(R.string.ADD, new DialogInterface.OnClickListener() {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
-						soundHandler.stopMediaPlayer(context);
+						alertHandler.stopSignal(context);
 
 						// Resolve the request code
 						int resolvedRequestCode = fromDialogToIntentRequestCode(getTargetRequestCode());
@@ -171,7 +173,7 @@ public class AlarmSignalDialog extends DialogFragment {
 				.setNegativeButton(R.string.CANCEL, new DialogInterface.OnClickListener() {
 					@Override
 					public void onClick(DialogInterface dialog, int whichButton) {
-						soundHandler.stopMediaPlayer(context);
+						alertHandler.stopSignal(context);
 						getTargetFragment().onActivityResult(getTargetRequestCode(), Activity.RESULT_CANCELED, null);
 					}
 				})
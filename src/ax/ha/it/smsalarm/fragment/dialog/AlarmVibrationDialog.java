@@ -17,6 +17,7 @@ import android.util.Log;
 import android.widget.ListView;
 import ax.ha.it.smsalarm.R;
 import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
@@ -47,6 +48,7 @@ public class AlarmVibrationDialog extends DialogFragment {
 	// Need to get instances of both Shared Preferences and Vibration Handler
 	private final SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
 	private final VibrationHandler vibrationHandler = VibrationHandler.getInstance();
+	private final AlertHandler alertHandler = AlertHandler.getInstance();
 
 	// Must have application context
 	private Context context;
@@ -98,7 +100,7 @@ public class AlarmVibrationDialog extends DialogFragment {
 						selectedAlarmVibrationId = listPosition;
 
 						// Preview the vibration
-						vibrationHandler.previewVibration(context, vibrations.get(selectedAlarmVibrationId));
+						alertHandler.previewVibration(context, vibrations.get(selectedAlarmVibrationId));
 					}
 				})
 
@@ -106,7 +108,7 @@ public class AlarmVibrationDialog extends DialogFragment {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
 						// Want to stop the vibration from vibrating
-						vibrationHandler.cancelVibrator();
+						alertHandler.stopVibration(context);
 
 						// Create an intent and put the selected alarm vibration in it and associate it with a certain key
 						Intent intent = new Intent();
@@ -120,7 +122,7 @@ public class AlarmVibrationDialog extends DialogFragment {
 				.setNegativeButton(R.string.CANCEL, new DialogInterface.OnClickListener() {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
-						vibrationHandler.cancelVibrator();
+						alertHandler.stopVibration(context);
 						getTargetFragment().onActivityResult(getTargetRequestCode(), Activity.RESULT_CANCELED, null);
 					}
 				})
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.fragment.dialog;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v4.app.DialogFragment;
+import android.text.InputType;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import ax.ha.it.smsalarm.R;
+import ax.ha.it.smsalarm.util.SmsLoadGenerator;
+import ax.ha.it.smsalarm.util.SmsLoadGenerator.MessageKind;
+
+/**
+ * {@link DialogFragment} which let's the user configure a run of the {@link SmsLoadGenerator}, that is number of SMS, rate and mix of
+ * {@link MessageKind}'s.
+ *
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ * @see #COUNT
+ * @see #RATE
+ * @see #MIX
+ * @see #LOAD_GENERATOR_DIALOG_TAG
+ * @see #LOAD_GENERATOR_DIALOG_REQUEST_CODE
+ */
+public class LoadGeneratorDialog extends DialogFragment {
+	// Used as a key when putting data into bundles and intents, dialog tag can come in handy for classes using this dialog
+	public static final String COUNT = "count";
+	public static final String RATE = "rate";
+	public static final String MIX = "mix";
+	public static final String LOAD_GENERATOR_DIALOG_TAG = "loadGeneratorDialog";
+
+	// Request code used for this dialog
+	public static final int LOAD_GENERATOR_DIALOG_REQUEST_CODE = 33;
+
+	// Default values of the dialog, mix is given in the order of MessageKind
+	private static final int DEFAULT_COUNT = 100;
+	private static final int DEFAULT_RATE = 10;
+	private static final int[] DEFAULT_MIX = { 40, 20, 30, 5, 5 };
+
+	// Must have application context
+	private Context context;
+
+	// Must be declared as class variable as it will be used when handling instance states
+	private EditText countEditText;
+	private EditText rateEditText;
+	private final EditText[] mixEditTexts = new EditText[MessageKind.values().length];
+
+	/**
+	 * To create a new instance of {@link LoadGeneratorDialog}.
+	 */
+	public LoadGeneratorDialog() {
+		// Just empty...
+	}
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		// Set context here, it's safe because this dialog fragment has been attached to it's container, hence we have access to context
+		context = getActivity();
+	}
+
+	@Override
+	public Dialog onCreateDialog(Bundle savedInstanceState) {
+		LinearLayout layout = new LinearLayout(context);
+		layout.setOrientation(LinearLayout.VERTICAL);
+		layout.setPadding(5, 5, 5, 5);
+
+		// Restore values from saved instance, if the fragment is being re-created
+		int count = savedInstanceState != null ? savedInstanceState.getInt(COUNT, DEFAULT_COUNT) : DEFAULT_COUNT;
+		int rate = savedInstanceState != null ? savedInstanceState.getInt(RATE, DEFAULT_RATE) : DEFAULT_RATE;
+		int[] mix = savedInstanceState != null && savedInstanceState.getIntArray(MIX) != null ? savedInstanceState.getIntArray(MIX) : DEFAULT_MIX;
+
+		countEditText = addNumberField(layout, getString(R.string.DEBUG_LOAD_GENERATOR_COUNT_DIALOG_TITLE), count);
+		rateEditText = addNumberField(layout, getString(R.string.DEBUG_LOAD_GENERATOR_RATE_DIALOG_TITLE), rate);
+
+		for (MessageKind kind : MessageKind.values()) {
+			mixEditTexts[kind.ordinal()] = addNumberField(layout, getString(R.string.DEBUG_LOAD_GENERATOR_MIX_DIALOG_TITLE, kind.name()), mix[kind.ordinal()]);
+		}
+
+		ScrollView scrollView = new ScrollView(context);
+		scrollView.addView(layout);
+
+		// Setup the dialog with correct resources, listeners and values
+		// @formatter:off
+		return new AlertDialog.Builder(context)
+				.setIcon(android.R.drawable.ic_dialog_info) 					// Set icon
+				.setTitle(R.string.DEBUG_LOAD_GENERATOR_DIALOG_TITLE) 			// Set title
+				.setView(scrollView) 											// Bind dialog to Layout
+				// @formatter:on
+
+				.setPositiveButton(R.string.OK, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int whichButton) {
+						// Create an intent and put data from this dialogs EditTexts and associate it with a certain key
+						Intent intent = new Intent();
+						intent.putExtra(COUNT, parseNumber(countEditText));
+						intent.putExtra(RATE, parseNumber(rateEditText));
+						intent.putExtra(MIX, parseMix());
+
+						// Make a call to this dialog fragments owning fragments onAcitivityResult with correct request code, result code and intent
+						getTargetFragment().onActivityResult(getTargetRequestCode(), Activity.RESULT_OK, intent);
+					}
+				})
+
+				.setNegativeButton(R.string.DEBUG_CANCEL, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int whichButton) {
+						getTargetFragment().onActivityResult(getTargetRequestCode(), Activity.RESULT_CANCELED, null);
+					}
+				})
+
+				.create();
+	}
+
+	@Override
+	public void onSaveInstanceState(Bundle arg0) {
+		super.onSaveInstanceState(arg0);
+		arg0.putInt(COUNT, parseNumber(countEditText));
+		arg0.putInt(RATE, parseNumber(rateEditText));
+		arg0.putIntArray(MIX, parseMix());
+	}
+
+	/**
+	 * To add a titled {@link EditText}, only accepting numbers, to given layout.
+	 * 
+	 * @param layout
+	 *            Layout to add to.
+	 * @param title
+	 *            Title of field.
+	 * @param value
+	 *            Initial value of field.
+	 * @return Added <code>EditText</code>.
+	 */
+	private EditText addNumberField(LinearLayout layout, String title, int value) {
+		TextView titleTextView = new TextView(context);
+		titleTextView.setText(title);
+
+		EditText editText = new EditText(context);
+		editText.setInputType(InputType.TYPE_CLASS_NUMBER);
+		editText.setText(String.valueOf(value));
+
+		layout.addView(titleTextView);
+		layout.addView(editText);
+
+		return editText;
+	}
+
+	/**
+	 * To parse the number entered in given {@link EditText}.
+	 * 
+	 * @param editText
+	 *            EditText to parse number of.
+	 * @return Parsed number, <code>0</code> if no valid number was entered.
+	 */
+	private int parseNumber(EditText editText) {
+		try {
+			return Integer.parseInt(editText.getText().toString());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * To parse the entered mix, in the order of {@link MessageKind}.
+	 * 
+	 * @return Entered mix.
+	 */
+	private int[] parseMix() {
+		int[] mix = new int[mixEditTexts.length];
+
+		for (int i = 0; i < mix.length; i++) {
+			mix[i] = parseNumber(mixEditTexts[i]);
+		}
+
+		return mix;
+	}
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.util.Log;
+import ax.ha.it.smsalarm.R;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+
+/**
+ * Catalog of all available <b><i>Alarm Signals</i></b>, both <b><i>Application Provided</i></b> and <b><i>User Added</i></b>. The catalog maps the
+ * name of each alarm signal to a validated {@link AlarmSignal}, hence resolving an alarm signal is a single map lookup without any need to decode
+ * {@link SharedPreferences} or hit the file system.<br>
+ * The catalog is built once and rebuilt whenever the user added alarm signals are changed or external media is mounted or unmounted.
+ * <p>
+ * <b><i>AlarmSignalCatalog is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ *
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class AlarmSignalCatalog {
+	/**
+	 * A validated <b><i>Alarm Signal</i></b>, knows where the alarm signal is located and some metadata of it.
+	 *
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class AlarmSignal {
+		// Name of alarm signal, name of asset or path of file
+		private final String name;
+
+		// Path within assets or on file system
+		private final String path;
+
+		// Whether or not this alarm signal is provided by the application within it's assets
+		private final boolean asset;
+
+		// Size in bytes, and duration in milliseconds which is resolved lazily as it's expensive
+		private final long length;
+		private volatile long durationMillis = UNKNOWN_DURATION;
+
+		private AlarmSignal(String name, String path, boolean asset, long length) {
+			this.name = name;
+			this.path = path;
+			this.asset = asset;
+			this.length = length;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public boolean isAsset() {
+			return asset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * To open an {@link AssetFileDescriptor} to this <b><i>Application Provided</i></b> alarm signal. The caller is responsible for closing it.
+		 *
+		 * @param context
+		 *            Context from which assets are accessed.
+		 * @return Opened asset file descriptor.
+		 * @throws IOException
+		 *             If the asset couldn't be opened.
+		 */
+		public AssetFileDescriptor openAssetFd(Context context) throws IOException {
+			return context.getAssets().openFd(path);
+		}
+
+		/**
+		 * To get the duration of this alarm signal. The duration is resolved the first time it's asked for and then cached.<br>
+		 * <b><i>Note. Resolving duration is only supported on Gingerbread MR1 and higher.</i></b>
+		 *
+		 * @param context
+		 *            Context from which assets are accessed.
+		 * @return Duration in milliseconds, or {@link AlarmSignalCatalog#UNKNOWN_DURATION} if it couldn't be resolved.
+		 */
+		@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+		public long getDurationMillis(Context context) {
+			if (durationMillis == UNKNOWN_DURATION && Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+				MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+
+				try {
+					if (asset) {
+						AssetFileDescriptor afd = openAssetFd(context);
+						retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+						afd.close();
+					} else {
+						retriever.setDataSource(path);
+					}
+
+					durationMillis = Long.parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+				} catch (Exception e) {
+					Log.e(LOG_TAG + ":getDurationMillis()", "Unable to resolve duration of alarm signal: \"" + name + "\"", e);
+				} finally {
+					retriever.release();
+				}
+			}
+
+			return durationMillis;
+		}
+	}
+
+	// Singleton instance of this class, eagerly initialized
+	private static final AlarmSignalCatalog INSTANCE = new AlarmSignalCatalog();
+
+	private static final String LOG_TAG = AlarmSignalCatalog.class.getSimpleName();
+
+	// Returned when duration of an alarm signal can't be resolved
+	public static final long UNKNOWN_DURATION = -1;
+
+	// Directory within assets in which the application provided alarm signals are located
+	private static final String ALARM_SIGNAL_ASSETS_DIRECTORY = "alarm-signals";
+	private static final String MP3_EXTENSION = ".mp3";
+
+	// The catalog, replaced as a whole on each rebuild so readers never see a half built catalog
+	private volatile Map<String, AlarmSignal> alarmSignals;
+
+	// User added alarm signals that couldn't be found on the file system at last rebuild
+	private volatile List<String> missingUserAddedAlarmSignals = Collections.emptyList();
+
+	// Must keep strong references to the listener and receiver, shared preferences only keeps weak references to it's listeners
+	private OnSharedPreferenceChangeListener userAddedAlarmSignalsListener;
+	private BroadcastReceiver mediaMountReceiver;
+
+	/**
+	 * Creates a new instance of {@link AlarmSignalCatalog}.
+	 */
+	private AlarmSignalCatalog() {
+		if (INSTANCE != null) {
+			Log.e(LOG_TAG + ":AlarmSignalCatalog()", "AlarmSignalCatalog already instantiated");
+		}
+	}
+
+	/**
+	 * To get the <b><i>singleton</i></b> instance of {@link AlarmSignalCatalog}.
+	 *
+	 * @return Instance of <code>AlarmSignalCatalog</code>.
+	 */
+	public static AlarmSignalCatalog getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * To initialize the {@link AlarmSignalCatalog}. Builds the catalog and starts to listen to changes of the user added alarm signals and to media
+	 * mount events, on which the catalog is rebuilt. Calling this method more than once has no further effect.
+	 *
+	 * @param context
+	 *            Context from which resources, assets and shared preferences are accessed.
+	 */
+	public synchronized void initialize(Context context) {
+		if (userAddedAlarmSignalsListener != null) {
+			return;
+		}
+
+		final Context applicationContext = context.getApplicationContext();
+
+		userAddedAlarmSignalsListener = new OnSharedPreferenceChangeListener() {
+			@Override
+			public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+				if (PrefKey.USER_ADDED_ALARM_SIGNALS_KEY.getKey().equals(key)) {
+					rebuild(applicationContext);
+				}
+			}
+		};
+		applicationContext.getSharedPreferences(PrefKey.SHARED_PREF.getKey(), Context.MODE_PRIVATE).registerOnSharedPreferenceChangeListener(userAddedAlarmSignalsListener);
+
+		// User added alarm signals are most likely located on external storage, which comes and goes
+		mediaMountReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				rebuild(applicationContext);
+			}
+		};
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+		filter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+		filter.addAction(Intent.ACTION_MEDIA_EJECT);
+		filter.addDataScheme("file");
+		applicationContext.registerReceiver(mediaMountReceiver, filter);
+
+		rebuild(applicationContext);
+	}
+
+	/**
+	 * To lookup the {@link AlarmSignal} of given name.
+	 *
+	 * @param context
+	 *            Context from which resources, assets and shared preferences are accessed, if catalog needs to be built.
+	 * @param alarmSignal
+	 *            Name of alarm signal, name of application provided alarm signal or path of user added alarm signal.
+	 * @return Corresponding <code>AlarmSignal</code>, <code>null</code> if no valid alarm signal of given name exists.
+	 */
+	public AlarmSignal lookup(Context context, String alarmSignal) {
+		Map<String, AlarmSignal> catalog = alarmSignals;
+
+		// Catalog not built yet, could be that an alarm is received before the application is fully initialized
+		if (catalog == null) {
+			catalog = rebuild(context);
+		}
+
+		return catalog.get(alarmSignal);
+	}
+
+	/**
+	 * To get the <b><i>User Added</i></b> alarm signals that couldn't be found on the file system at last rebuild of the catalog.
+	 *
+	 * @param context
+	 *            Context from which resources, assets and shared preferences are accessed, if catalog needs to be built.
+	 * @return Paths of missing user added alarm signals, empty list if none is missing.
+	 */
+	public List<String> getMissingUserAddedAlarmSignals(Context context) {
+		if (alarmSignals == null) {
+			rebuild(context);
+		}
+
+		return missingUserAddedAlarmSignals;
+	}
+
+	/**
+	 * To rebuild the catalog. All application provided alarm signals are validated against the content of the assets, and all user added alarm
+	 * signals against the file system.
+	 *
+	 * @param context
+	 *            Context from which resources, assets and shared preferences are accessed.
+	 * @return The rebuilt catalog.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized Map<String, AlarmSignal> rebuild(Context context) {
+		Map<String, AlarmSignal> catalog = new HashMap<String, AlarmSignal>();
+		List<String> missing = new ArrayList<String>();
+
+		// List the assets once instead of opening each and every one of them
+		Set<String> assets = new HashSet<String>();
+
+		try {
+			assets.addAll(Arrays.asList(context.getAssets().list(ALARM_SIGNAL_ASSETS_DIRECTORY)));
+		} catch (IOException e) {
+			Log.e(LOG_TAG + ":rebuild()", "An error occurred while listing alarm signal assets", e);
+		}
+
+		for (String alarmSignal : context.getResources().getStringArray(R.array.alarm_signals)) {
+			if (assets.contains(alarmSignal + MP3_EXTENSION)) {
+				catalog.put(alarmSignal, new AlarmSignal(alarmSignal, ALARM_SIGNAL_ASSETS_DIRECTORY + "/" + alarmSignal + MP3_EXTENSION, true, UNKNOWN_DURATION));
+			} else {
+				Log.e(LOG_TAG + ":rebuild()", "Application provided alarm signal: \"" + alarmSignal + "\" couldn't be found in assets");
+			}
+		}
+
+		List<String> userAddedAlarmSignals = (List<String>) SharedPreferencesHandler.getInstance().fetchPrefs(PrefKey.SHARED_PREF, PrefKey.USER_ADDED_ALARM_SIGNALS_KEY, DataType.LIST, context);
+
+		for (String alarmSignalPath : userAddedAlarmSignals) {
+			File file = new File(alarmSignalPath);
+
+			if (alarmSignalPath.length() > 0 && file.exists()) {
+				catalog.put(alarmSignalPath, new AlarmSignal(alarmSignalPath, alarmSignalPath, false, file.length()));
+			} else {
+				missing.add(alarmSignalPath);
+			}
+		}
+
+		missingUserAddedAlarmSignals = Collections.unmodifiableList(missing);
+		alarmSignals = Collections.unmodifiableMap(catalog);
+
+		return alarmSignals;
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.handler;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coalescing policy for <b><i>Alarm Storms</i></b>, that is many alarms received within a short time during a large incident. Instead of restarting
+ * the alarm signal, vibration and posting a new notification for each alarm, all alarms of a storm are merged into one ongoing alert:
+ * <ul>
+ * <li>The first alarm starts a new storm, and is raised as usual.</li>
+ * <li>A primary alarm received while the storm is of secondary alarms preempts it, and is raised as usual.</li>
+ * <li>Any other alarm is coalesced into the ongoing alert, only the count of alarms is updated.</li>
+ * </ul>
+ * A storm ends once the storm window, counted from the first alarm of the storm, has passed, or when the ongoing alert has been stopped or
+ * acknowledged, see {@link #endStorm()}. A storm doesn't end when it's alarm signal has finished, as then the storm would only last as long as the
+ * alarm signal and every alarm would start a new storm when no alarm signal is played at all, in silent or vibrate mode. Statistics are kept for the
+ * latest storms.
+ * <p>
+ * <b><i>Note. This class must not depend on anything Android specific.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class AlarmStormCoalescer {
+	/**
+	 * The different decisions of how an alarm should be raised.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public enum Decision {
+		// @formatter:off
+		START,			// First alarm of a new storm, raise it
+		PREEMPT,		// Primary alarm within a storm of secondary alarms, raise it
+		COALESCE;		// Alarm within a storm of same or higher tier, only update the ongoing alert
+		// @formatter:on
+	}
+
+	/**
+	 * Statistics of an <b><i>Alarm Storm</i></b>, and the decision made for the latest alarm of it.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class Storm {
+		private final int id;
+		private final long startMillis;
+		private long lastAlarmMillis;
+		private boolean primary;
+		private int primaryAlarms;
+		private int secondaryAlarms;
+		private int preemptions;
+		private Decision decision = Decision.START;
+
+		private Storm(int id, long startMillis) {
+			this.id = id;
+			this.startMillis = startMillis;
+		}
+
+		private Storm(Storm storm) {
+			id = storm.id;
+			startMillis = storm.startMillis;
+			lastAlarmMillis = storm.lastAlarmMillis;
+			primary = storm.primary;
+			primaryAlarms = storm.primaryAlarms;
+			secondaryAlarms = storm.secondaryAlarms;
+			preemptions = storm.preemptions;
+			decision = storm.decision;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		public long getDurationMillis() {
+			return lastAlarmMillis - startMillis;
+		}
+
+		public boolean isPrimary() {
+			return primary;
+		}
+
+		public int getPrimaryAlarms() {
+			return primaryAlarms;
+		}
+
+		public int getSecondaryAlarms() {
+			return secondaryAlarms;
+		}
+
+		public int getAlarms() {
+			return primaryAlarms + secondaryAlarms;
+		}
+
+		public int getPreemptions() {
+			return preemptions;
+		}
+
+		public Decision getDecision() {
+			return decision;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ENGLISH, "#%d alarms=%d primary=%d secondary=%d preemptions=%d duration=%ds", id, getAlarms(), primaryAlarms, secondaryAlarms, preemptions, getDurationMillis() / 1000);
+		}
+	}
+
+	// Number of ended storms to keep statistics of
+	private static final int MAX_ENDED_STORMS = 10;
+
+	// Time, in milliseconds, after first alarm of a storm within which a new alarm belongs to the same storm
+	private final long windowMillis;
+
+	// The ongoing, or latest, storm and statistics of ended storms with the latest last
+	private Storm currentStorm;
+	private final LinkedList<Storm> endedStorms = new LinkedList<Storm>();
+
+	// Id of next storm, ids are unique within the process
+	private int nextStormId = 1;
+
+	/**
+	 * Creates a new instance of {@link AlarmStormCoalescer}.
+	 * 
+	 * @param windowMillis
+	 *            Time, in milliseconds, after first alarm of a storm within which a new alarm belongs to the same storm.
+	 */
+	public AlarmStormCoalescer(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * To decide how an alarm of given tier should be raised, and to count it within it's storm.
+	 * 
+	 * @param primary
+	 *            Whether the alarm is a primary alarm or a secondary alarm.
+	 * @param nowMillis
+	 *            Current time in milliseconds.
+	 * @return Copy of the storm the alarm belongs to, holding the decision made for the alarm.
+	 */
+	public synchronized Storm alarm(boolean primary, long nowMillis) {
+		if (currentStorm == null || nowMillis - currentStorm.startMillis > windowMillis) {
+			if (currentStorm != null) {
+				endStorm();
+			}
+
+			currentStorm = new Storm(nextStormId++, nowMillis);
+			currentStorm.primary = primary;
+			currentStorm.decision = Decision.START;
+		} else if (primary && !currentStorm.primary) {
+			currentStorm.primary = true;
+			currentStorm.preemptions++;
+			currentStorm.decision = Decision.PREEMPT;
+		} else {
+			currentStorm.decision = Decision.COALESCE;
+		}
+
+		if (primary) {
+			currentStorm.primaryAlarms++;
+		} else {
+			currentStorm.secondaryAlarms++;
+		}
+
+		currentStorm.lastAlarmMillis = nowMillis;
+
+		return new Storm(currentStorm);
+	}
+
+	/**
+	 * To end the ongoing storm, if any, so that next alarm starts a new storm no matter when it's received. Should be called when the ongoing alert
+	 * has been stopped or acknowledged by the user.
+	 */
+	public synchronized void endStorm() {
+		if (currentStorm != null) {
+			endedStorms.add(currentStorm);
+			currentStorm = null;
+
+			if (endedStorms.size() > MAX_ENDED_STORMS) {
+				endedStorms.removeFirst();
+			}
+		}
+	}
+
+	/**
+	 * To get statistics of the latest storms, including any ongoing storm.
+	 * 
+	 * @return Copies of storms, oldest first.
+	 */
+	public synchronized List<Storm> getStorms() {
+		List<Storm> storms = new ArrayList<Storm>();
+
+		for (Storm storm : endedStorms) {
+			storms.add(new Storm(storm));
+		}
+
+		if (currentStorm != null) {
+			storms.add(new Storm(currentStorm));
+		}
+
+		return storms;
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.handler;
+
+import java.util.List;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer.Decision;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer.Storm;
+import ax.ha.it.smsalarm.service.FlashNotificationService;
+import ax.ha.it.smsalarm.util.Metrics;
+import ax.ha.it.smsalarm.util.Metrics.AlarmStage;
+import ax.ha.it.smsalarm.util.WakeLocker;
+import ax.ha.it.smsalarm.util.WakeLocker.WakeLockHandle;
+
+/**
+ * Class responsible for coordinating all alert output of the application, that is <b><i>sound</i></b>, <b><i>vibration</i></b>, <b><i>flash</i></b>
+ * and <b><i>wake locks</i></b>. All interaction with {@link SoundHandler}, {@link VibrationHandler} and {@link FlashNotificationService} is made
+ * through commands that are queued and executed one by one on a dedicated thread, hence they are all handled on the same timeline and a start can
+ * never race with a stop.<br>
+ * As the <code>MediaPlayer</code>'s are created on this thread their callbacks are delivered on this thread too.
+ * <p>
+ * Alarms received within a short time of each other are coalesced by an {@link AlarmStormCoalescer}, only the first alarm of an
+ * <b><i>Alarm Storm</i></b>, or a primary alarm preempting a storm of secondary alarms, restarts the alarm signal and vibration.
+ * <p>
+ * <b><i>AlertHandler is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ *
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class AlertHandler {
+	// Singleton instance of this class, eagerly initialized
+	private static final AlertHandler INSTANCE = new AlertHandler();
+
+	private static final String LOG_TAG = AlertHandler.class.getSimpleName();
+
+	// @formatter:off
+	// The different commands supported by this handler
+	private static final int ALARM = 1;					// Argument is AlarmType
+	private static final int PREVIEW_SIGNAL = 2;		// Argument is alarm signal
+	private static final int STOP_SIGNAL = 3;
+	private static final int PREVIEW_VIBRATION = 4;		// Argument is vibration pattern
+	private static final int STOP_VIBRATION = 5;
+	private static final int START_FLASH = 6;
+	private static final int STOP_ALL = 7;
+	private static final int PREPARE_ALARM_SIGNALS = 8;
+	// @formatter:on
+
+	// Maximum time for how long a wake lock is held when an alarm is received while screen is off, normally it's released earlier
+	private static final int WAKE_LOCK_TIME = 20000;
+
+	// Alarms received within this time, in milliseconds, after the first alarm of an alarm storm belongs to the same storm
+	private static final long STORM_WINDOW = 60000;
+
+	// Names of metrics counting alarms coalesced into an ongoing alert and alarms preempting one
+	private static final String METRIC_ALARM_COALESCED = "alarm.coalesced";
+	private static final String METRIC_ALARM_PREEMPTED = "alarm.preempted";
+
+	// Owners of the wake locks held while alarm signal is played and until notification is posted
+	private static final String WAKE_LOCK_OWNER_ALARM_SIGNAL = LOG_TAG + ":alarmSignal";
+	private static final String WAKE_LOCK_OWNER_NOTIFICATION = LOG_TAG + ":notification";
+
+	// Extra of the notification intent holding id of the wake lock to release once the notification is posted
+	private static final String EXTRA_WAKE_LOCK_ID = "ax.ha.it.smsalarm.WAKE_LOCK_ID";
+
+	// The thread on which all commands are executed, and the handler used to queue commands to it
+	private final HandlerThread alertThread;
+	private final Handler alertThreadHandler;
+
+	// Decides whether an alarm is raised or coalesced into the ongoing alert
+	private final AlarmStormCoalescer stormCoalescer = new AlarmStormCoalescer(STORM_WINDOW);
+
+	/**
+	 * A command with it's argument, passed as object to the alert thread within a {@link Message}.
+	 *
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class Command {
+		private final Context context;
+		private final Object argument;
+
+		private Command(Context context, Object argument) {
+			// Always use application context as a command may be executed after an activity has gone
+			this.context = context.getApplicationContext();
+			this.argument = argument;
+		}
+	}
+
+	/**
+	 * Argument of an {@link AlertHandler#ALARM} command.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class AlarmArgument {
+		private final AlarmType alarmType;
+
+		// Wake lock to release once alarm signal has finished or has started looping, null if no wake lock was needed
+		private final WakeLockHandle wakeLock;
+
+		private AlarmArgument(AlarmType alarmType, WakeLockHandle wakeLock) {
+			this.alarmType = alarmType;
+			this.wakeLock = wakeLock;
+		}
+	}
+
+	/**
+	 * Creates a new instance of {@link AlertHandler} and starts it's alert thread.
+	 */
+	private AlertHandler() {
+		if (INSTANCE != null) {
+			Log.e(LOG_TAG + ":AlertHandler()", "AlertHandler already instantiated");
+		}
+
+		// Alarm signals are time critical, so give the thread audio priority
+		alertThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_AUDIO);
+		alertThread.start();
+
+		alertThreadHandler = new Handler(alertThread.getLooper()) {
+			@Override
+			public void handleMessage(Message msg) {
+				execute(msg.what, (Command) msg.obj);
+			}
+		};
+	}
+
+	/**
+	 * To get the <b><i>singleton</i></b> instance of {@link AlertHandler}.
+	 *
+	 * @return Instance of <code>AlertHandler</code>.
+	 */
+	public static AlertHandler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * To raise the <b><i>Alarm</i></b>, alarm signal and vibration, for given {@link AlarmType}.<br>
+	 * If the alarm belongs to an ongoing <b><i>Alarm Storm</i></b> of same or higher tier it's coalesced into the ongoing alert, that is the alarm
+	 * signal and vibration are left as they are. The storm ends when it's window has passed, or when the alert is stopped or acknowledged. The
+	 * decision is made directly on the calling thread so the notification of the alarm can replace the notification of the storm, see
+	 * {@link Storm#getStartMillis()}.<br>
+	 * If the alarm is raised and the screen is off {@link WakeLocker} wake locks are acquired directly on the calling thread, this is to ensure that
+	 * the device is awake when the alarm is raised on the alert thread. One is released when the alarm signal has finished, or has started if it's
+	 * played repeatedly, and the other one when the notification has been posted, see {@link #notificationPosted(Intent)}. The latter is passed
+	 * along within given notification intent, so that exactly that wake lock is released when the notification is posted.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @param alarmType
+	 *            Type of alarm to raise.
+	 * @param notificationIntent
+	 *            Intent starting the service posting the notification of the alarm.
+	 * @return The storm the alarm belongs to.
+	 */
+	public Storm alarm(Context context, AlarmType alarmType, Intent notificationIntent) {
+		Storm storm = stormCoalescer.alarm(AlarmType.PRIMARY.equals(alarmType), System.currentTimeMillis());
+
+		if (Decision.COALESCE.equals(storm.getDecision())) {
+			Metrics.getInstance().increment(METRIC_ALARM_COALESCED);
+			return storm;
+		}
+
+		if (Decision.PREEMPT.equals(storm.getDecision())) {
+			Metrics.getInstance().increment(METRIC_ALARM_PREEMPTED);
+		}
+
+		// Detect whether screen is on or off, if it's off we need to wake it
+		PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+
+		WakeLockHandle alarmSignalWakeLock = null;
+
+		if (!pm.isScreenOn()) {
+			// Wake up device by acquire wake locks, they are released as soon as their work is done but at latest after given time, the time
+			// depends on if device runs on KitKat(or higher) or not
+			int wakeLockTime = WAKE_LOCK_TIME;
+
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+				wakeLockTime += KitKatHandler.RINGER_MODE_DELAY;
+			}
+
+			alarmSignalWakeLock = WakeLocker.acquire(context, WAKE_LOCK_OWNER_ALARM_SIGNAL, wakeLockTime);
+			notificationIntent.putExtra(EXTRA_WAKE_LOCK_ID, WakeLocker.acquire(context, WAKE_LOCK_OWNER_NOTIFICATION, wakeLockTime).getId());
+		}
+
+		send(ALARM, context, new AlarmArgument(alarmType, alarmSignalWakeLock));
+
+		return storm;
+	}
+
+	/**
+	 * To end the ongoing <b><i>Alarm Storm</i></b>, if any, so that next alarm is raised again. Should be called when an alarm is acknowledged.
+	 */
+	public void endStorm() {
+		stormCoalescer.endStorm();
+	}
+
+	/**
+	 * To get statistics of the latest <b><i>Alarm Storms</i></b>, including any ongoing storm.
+	 *
+	 * @return Statistics of storms, oldest first.
+	 */
+	public List<Storm> getStorms() {
+		return stormCoalescer.getStorms();
+	}
+
+	/**
+	 * To signal that the notification of an alarm has been posted, the wake lock held for it since the alarm was raised is released. Safe to call even
+	 * if no wake lock is held, as for an alarm coalesced into an ongoing alarm storm.
+	 * 
+	 * @param notificationIntent
+	 *            Intent which started the service posting the notification.
+	 * @see #alarm(Context, AlarmType, Intent)
+	 */
+	public void notificationPosted(Intent notificationIntent) {
+		Metrics.getInstance().alarmStage(AlarmStage.NOTIFICATION_POSTED);
+
+		if (notificationIntent.hasExtra(EXTRA_WAKE_LOCK_ID)) {
+			WakeLocker.release(notificationIntent.getIntExtra(EXTRA_WAKE_LOCK_ID, 0));
+		}
+	}
+
+	/**
+	 * To preview given <code>alarmSignal</code>.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @param alarmSignal
+	 *            Alarm signal to preview.
+	 * @see SoundHandler#previewSignal(Context, String)
+	 */
+	public void previewSignal(Context context, String alarmSignal) {
+		send(PREVIEW_SIGNAL, context, alarmSignal);
+	}
+
+	/**
+	 * To stop any alarm signal from being played.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @see SoundHandler#stopMediaPlayer(Context)
+	 */
+	public void stopSignal(Context context) {
+		send(STOP_SIGNAL, context, null);
+	}
+
+	/**
+	 * To preview given <code>vibrationPattern</code>.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @param vibrationPattern
+	 *            Vibration pattern to preview.
+	 * @see VibrationHandler#previewVibration(Context, String)
+	 */
+	public void previewVibration(Context context, String vibrationPattern) {
+		send(PREVIEW_VIBRATION, context, vibrationPattern);
+	}
+
+	/**
+	 * To stop any vibration.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @see VibrationHandler#cancelVibrator()
+	 */
+	public void stopVibration(Context context) {
+		send(STOP_VIBRATION, context, null);
+	}
+
+	/**
+	 * To start the <b><i>Flash Notification</i></b>, it's only started if the application is set to use it.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @see FlashNotificationService#startFlashNotificationService(Context)
+	 */
+	public void startFlashNotification(Context context) {
+		send(START_FLASH, context, null);
+	}
+
+	/**
+	 * To stop all alert output at once, alarm signal, vibration and flash notification. Any previews not yet started are dropped, alarms not yet
+	 * raised are not.<br>
+	 * The ongoing alarm storm, if any, is ended so that next alarm is raised again.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 */
+	public void stopAll(Context context) {
+		alertThreadHandler.removeMessages(PREVIEW_SIGNAL);
+		alertThreadHandler.removeMessages(PREVIEW_VIBRATION);
+
+		stormCoalescer.endStorm();
+
+		send(STOP_ALL, context, null);
+	}
+
+	/**
+	 * To prepare the configured alarm signals ahead of time, on the alert thread.
+	 *
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @see SoundHandler#prepareAlarmSignals(Context)
+	 */
+	public void prepareAlarmSignals(Context context) {
+		// No need to prepare more than once if the command already is queued
+		alertThreadHandler.removeMessages(PREPARE_ALARM_SIGNALS);
+
+		send(PREPARE_ALARM_SIGNALS, context, null);
+	}
+
+	/**
+	 * To queue given command, with given argument, to the alert thread.
+	 *
+	 * @param command
+	 *            Command to queue.
+	 * @param context
+	 *            The Context in which {@link AlertHandler} runs.
+	 * @param argument
+	 *            Argument of command, can be <code>null</code>.
+	 */
+	private void send(int command, Context context, Object argument) {
+		alertThreadHandler.obtainMessage(command, new Command(context, argument)).sendToTarget();
+	}
+
+	/**
+	 * To execute given command, <b><i>must only be called from the alert thread</i></b>.
+	 *
+	 * @param command
+	 *            Command to execute.
+	 * @param cmd
+	 *            Context and argument of command.
+	 */
+	private void execute(int command, Command cmd) {
+		switch (command) {
+			case ALARM:
+				final AlarmArgument alarmArgument = (AlarmArgument) cmd.argument;
+
+				SoundHandler.getInstance().alarm(cmd.context, alarmArgument.alarmType, new Runnable() {
+					@Override
+					public void run() {
+						if (alarmArgument.wakeLock != null) {
+							alarmArgument.wakeLock.release();
+						}
+					}
+				});
+				VibrationHandler.getInstance().alarm(cmd.context, alarmArgument.alarmType);
+
+				// The prepared alarm signal has most likely been consumed, get a new one ready for next alarm
+				prepareAlarmSignals(cmd.context);
+				break;
+			case PREVIEW_SIGNAL:
+				SoundHandler.getInstance().previewSignal(cmd.context, (String) cmd.argument);
+				break;
+			case STOP_SIGNAL:
+				SoundHandler.getInstance().stopMediaPlayer(cmd.context);
+				break;
+			case PREVIEW_VIBRATION:
+				VibrationHandler.getInstance().previewVibration(cmd.context, (String) cmd.argument);
+				break;
+			case STOP_VIBRATION:
+				VibrationHandler.getInstance().cancelVibrator();
+				break;
+			case START_FLASH:
+				FlashNotificationService.startFlashNotificationService(cmd.context);
+				break;
+			case STOP_ALL:
+				FlashNotificationService.stopFlashNotificationService(cmd.context);
+				SoundHandler.getInstance().stopMediaPlayer(cmd.context);
+				VibrationHandler.getInstance().cancelVibrator();
+				break;
+			case PREPARE_ALARM_SIGNALS:
+				SoundHandler.getInstance().prepareAlarmSignals(cmd.context);
+				break;
+			default:
+				Log.e(LOG_TAG + ":execute()", "An unsupported command: \"" + command + "\" was given, check why");
+		}
+	}
+}
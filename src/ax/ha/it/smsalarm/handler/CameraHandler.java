@@ -35,9 +35,18 @@ public class CameraHandler {
 
 	private Camera camera = null;
 
+	// Parameters are fetched once when camera is opened and then reused, to avoid round trips to the camera for each flash
+	private Parameters parameters = null;
+
 	// To store supported FlashMode to use
 	private Optional<String> flashModeToUse = Optional.<String> absent();
 
+	// Whether or not device has a camera with flash, resolved once as it never changes
+	private Optional<Boolean> flashSupported = Optional.<Boolean> absent();
+
+	// Current state of the flash
+	private boolean flashOn = false;
+
 	/**
 	 * Creates a new instance of {@link CameraHandler}.
 	 */
@@ -66,80 +75,119 @@ public class CameraHandler {
 	/**
 	 * To toggle {@link CameraHandler}'s {@link Camera} objects <b><i>Flash Light</i></b> on or off. If it's currently being on ON then it's switched
 	 * OFF and vice versa.
+	 * 
+	 * @see #setCameraFlash(boolean)
 	 */
 	public void toggleCameraFlash() {
-		// Get the package manager in order to figure out if system service exists
-		PackageManager packageManager = context.getPackageManager();
-
-		// Only if device supports support camera and flash
-		if (packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA) && packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA_FLASH)) {
-			// Initialize if null
-			if (camera == null) {
-				try {
-					Optional<Integer> optionalCameraId = findBackFacingCamera();
-
-					// If device got any BackFacing camera
-					if (optionalCameraId.isPresent()) {
-						camera = Camera.open(optionalCameraId.get());
-
-						// Figure out correct FlashMode
-						flashModeToUse = resolveFlashMode();
-					}
-				} catch (RuntimeException e) {
-					Log.e(LOG_TAG + ":toggleCameraFlash()", "An error occurred while initializing the camera", e);
-				}
-			}
+		setCameraFlash(!flashOn);
+	}
 
-			// In case of camera failed to initialize, could be that device has no camera, FlashMode must also be successfully
-			// resolved(Parameters.FLASH_MODE_TORCH or Parameters.FLASH_MODE_ON)
-			if (camera != null && flashModeToUse.isPresent()) {
-				// Get the parameters of from the camera, and especially the FlashMode
-				Parameters parameters = camera.getParameters();
-				String currentFlashMode = parameters.getFlashMode();
-
-				// If FlashMode hasn't been set or it's off then switch it On and startPreview - IMPORTANT!
-				if (currentFlashMode == null || Parameters.FLASH_MODE_OFF.equals(currentFlashMode)) {
-					// Torch mode as we wan't the camera flash to light as bright as possible
-					parameters.setFlashMode(flashModeToUse.get());
-					camera.setParameters(parameters);
-				} else if (flashModeToUse.get().equals(currentFlashMode)) {
-					parameters.setFlashMode(Parameters.FLASH_MODE_OFF);
-					camera.setParameters(parameters);
-				}
+	/**
+	 * To switch {@link CameraHandler}'s {@link Camera} objects <b><i>Flash Light</i></b> on or off. The camera is opened, and it's parameters
+	 * resolved, on first call only. After that switching the flash is just a matter of setting the cached parameters with correct
+	 * <b><i>FlashMode</i></b>.<br>
+	 * If the camera supports <b><i>Parameters.FLASH_MODE_TORCH</i></b> the preview is started once and kept running, only devices that falls back to
+	 * <b><i>Parameters.FLASH_MODE_ON</i></b> needs to restart the preview for each flash.
+	 * 
+	 * @param on
+	 *            <code>true</code> to switch flash on, <code>false</code> to switch it off.
+	 */
+	public void setCameraFlash(boolean on) {
+		// Nothing to do if flash already is in wanted state or if camera can't be opened
+		if (on == flashOn || !openCamera()) {
+			return;
+		}
 
-				// Stopping preview in order to start it correctly again
-				camera.stopPreview();
+		try {
+			parameters.setFlashMode(on ? flashModeToUse.get() : Parameters.FLASH_MODE_OFF);
+			camera.setParameters(parameters);
+			flashOn = on;
 
-				// Try to start preview again, surrounded within try catch clause because this can fail sometimes
-				try {
-					camera.startPreview();
-
-					// Set AutoFocus even if we don't use it, recommended according to
-					// http://http://stackoverflow.com/questions/5503480/use-camera-flashlight-in-android
-					camera.autoFocus(new AutoFocusCallback() {
-						@Override
-						public void onAutoFocus(boolean success, Camera camera) {
-						}
-					});
-				} catch (RuntimeException re) {
-					Log.e(LOG_TAG + ":toggleCameraFlash()", "An error occurred while starting preview", re);
-				}
+			// Flash mode on only lights the flash while focusing, hence preview must be restarted with a new auto focus
+			if (on && !Parameters.FLASH_MODE_TORCH.equals(flashModeToUse.get())) {
+				camera.stopPreview();
+				startPreview();
 			}
+		} catch (RuntimeException e) {
+			Log.e(LOG_TAG + ":setCameraFlash()", "An error occurred while switching camera flash " + (on ? "on" : "off"), e);
 		}
 	}
 
 	/**
-	 * To release {@link CameraHandler}'s {@link Camera} object if it has been initialized.
-	 * <p>
-	 * <b><i>Note. </i></b>A small delay is added before the actual {@link Camera#release()} call is made, this little delay gives the Camera some
-	 * time to finish up any current handling.
+	 * To release {@link CameraHandler}'s {@link Camera} object if it has been initialized. The flash is switched off before the camera is released.
 	 */
 	public void releaseCamera() {
 		if (camera != null) {
+			setCameraFlash(false);
 			camera.stopPreview();
 			camera.release();
 			camera = null;
 		}
+
+		parameters = null;
+		flashOn = false;
+	}
+
+	/**
+	 * To open the {@link Camera} and resolve it's <b><i>FlashMode</i></b> and {@link Parameters}, if it isn't already opened.
+	 * 
+	 * @return <code>true</code> if the camera is open and has a usable flash, else <code>false</code>.
+	 */
+	private boolean openCamera() {
+		// Resolve only once if device supports camera and flash
+		if (!flashSupported.isPresent()) {
+			PackageManager packageManager = context.getPackageManager();
+			flashSupported = Optional.<Boolean> of(packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA) && packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA_FLASH));
+		}
+
+		if (!flashSupported.get()) {
+			return false;
+		}
+
+		// Initialize if null
+		if (camera == null) {
+			try {
+				Optional<Integer> optionalCameraId = findBackFacingCamera();
+
+				// If device got any BackFacing camera
+				if (optionalCameraId.isPresent()) {
+					camera = Camera.open(optionalCameraId.get());
+
+					// Figure out correct FlashMode and cache parameters
+					flashModeToUse = resolveFlashMode();
+					parameters = camera.getParameters();
+
+					// Preview must be running for the flash to light on most devices
+					startPreview();
+				}
+			} catch (RuntimeException e) {
+				Log.e(LOG_TAG + ":openCamera()", "An error occurred while initializing the camera", e);
+			}
+		}
+
+		// In case of camera failed to initialize, could be that device has no camera, FlashMode must also be successfully
+		// resolved(Parameters.FLASH_MODE_TORCH or Parameters.FLASH_MODE_ON)
+		return camera != null && parameters != null && flashModeToUse.isPresent();
+	}
+
+	/**
+	 * To start the preview of {@link CameraHandler}'s {@link Camera} object.
+	 */
+	private void startPreview() {
+		// Try to start preview, surrounded within try catch clause because this can fail sometimes
+		try {
+			camera.startPreview();
+
+			// Set AutoFocus even if we don't use it, recommended according to
+			// http://http://stackoverflow.com/questions/5503480/use-camera-flashlight-in-android
+			camera.autoFocus(new AutoFocusCallback() {
+				@Override
+				public void onAutoFocus(boolean success, Camera camera) {
+				}
+			});
+		} catch (RuntimeException re) {
+			Log.e(LOG_TAG + ":startPreview()", "An error occurred while starting preview", re);
+		}
 	}
 
 	/**
@@ -25,6 +25,7 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 import ax.ha.it.smsalarm.alarm.Alarm;
 import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.util.Tracer;
 
 /**
  * Class responsible for all <code>Database</code> access and handling. <code>Database</code> access and handling are done via the
@@ -38,9 +39,10 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	private static final String LOG_TAG = DatabaseHandler.class.getSimpleName();
 
 	// Database Version and the upgrade versions
-	private static final int DB_VERSION = 3;
+	private static final int DB_VERSION = 4;
 	private static final int DB_VERSION_ADD_TRIGGER_TEXT_COL = 2;
-	private static final int DB_VERSION_CHANGE_DATE_FORMAT = DB_VERSION;
+	private static final int DB_VERSION_CHANGE_DATE_FORMAT = 3;
+	private static final int DB_VERSION_ADD_REPEATS_COL = DB_VERSION;
 
 	// Database Name
 	private static final String DB_NAME = "alarmsManager";
@@ -59,6 +61,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	private static final String KEY_TRIGGER_TEXT = "triggerText";
 	private static final String KEY_ACKNOWLEDGED = "acknowledged";
 	private static final String KEY_ALARM_TYPE = "alarmType";
+	private static final String KEY_REPEATS = "repeats";
 
 	/**
 	 * Creates a new instance of {@link DatabaseHandler} with given {@link Context}.
@@ -76,7 +79,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		// Build up the query for creating the table
-		String CREATE_ALARMS_TABLE = "CREATE TABLE " + TABLE_ALARMS + "(" + KEY_ID + " INTEGER PRIMARY KEY," + KEY_RECEIVED + " TEXT DEFAULT ''," + KEY_SENDER + " TEXT DEFAULT ''," + KEY_MESSAGE + " TEXT DEFAULT ''," + KEY_TRIGGER_TEXT + " TEXT DEFAULT '-'," + KEY_ACKNOWLEDGED + " TEXT DEFAULT ''," + KEY_ALARM_TYPE + " INTEGER)";
+		String CREATE_ALARMS_TABLE = "CREATE TABLE " + TABLE_ALARMS + "(" + KEY_ID + " INTEGER PRIMARY KEY," + KEY_RECEIVED + " TEXT DEFAULT ''," + KEY_SENDER + " TEXT DEFAULT ''," + KEY_MESSAGE + " TEXT DEFAULT ''," + KEY_TRIGGER_TEXT + " TEXT DEFAULT '-'," + KEY_ACKNOWLEDGED + " TEXT DEFAULT ''," + KEY_ALARM_TYPE + " INTEGER," + KEY_REPEATS + " INTEGER DEFAULT 0)";
 		// Run query
 		db.execSQL(CREATE_ALARMS_TABLE);
 	}
@@ -172,6 +175,11 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 			// Now drop the temporary table
 			db.execSQL(DROP_QUERY);
 		}
+
+		// Upgrade handling for adding repeats column, any older database has already got the column as the table has been recreated
+		if (oldVersion < DB_VERSION_ADD_REPEATS_COL && oldVersion >= DB_VERSION_CHANGE_DATE_FORMAT) {
+			db.execSQL("ALTER TABLE " + TABLE_ALARMS + " ADD COLUMN " + KEY_REPEATS + " INTEGER DEFAULT 0");
+		}
 	}
 
 	/**
@@ -182,26 +190,33 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	 * @return Given alarm after it has been persisted.
 	 */
 	public Alarm insertAlarm(Alarm alarm) {
-		// Get a writable database handle
-		SQLiteDatabase db = getWritableDatabase();
-
-		// @formatter:off
-		// Fetch values from alarm and put the into a ContentValues variable
-		ContentValues values = new ContentValues();
-		values.put(KEY_RECEIVED, alarm.getReceivedMillisecs()); 		// Date and time when alarm was received
-		values.put(KEY_SENDER, alarm.getSender()); 						// Sender of the alarm
-		values.put(KEY_MESSAGE, alarm.getMessage()); 					// Alarm message
-		values.put(KEY_TRIGGER_TEXT, alarm.getTriggerText()); 			// Triggering text of a free text alarm
-		values.put(KEY_ACKNOWLEDGED, alarm.getAcknowledgedMillisecs());	// Date and time the alarm was acknowledged
-		values.put(KEY_ALARM_TYPE, alarm.getAlarmType().ordinal()); 	// Type of alarm
-		// @formatter:on
-
-		// Inserting row and get the (row) id
-		long rowId = db.insert(TABLE_ALARMS, null, values);
-		db.close(); // Closing database connection
-
-		// Fetch and return inserted alarm
-		return fetchAlarm((int) rowId);
+		Tracer.begin("DatabaseHandler.insertAlarm");
+
+		try {
+			// Get a writable database handle
+			SQLiteDatabase db = getWritableDatabase();
+
+			// @formatter:off
+			// Fetch values from alarm and put the into a ContentValues variable
+			ContentValues values = new ContentValues();
+			values.put(KEY_RECEIVED, alarm.getReceivedMillisecs()); 		// Date and time when alarm was received
+			values.put(KEY_SENDER, alarm.getSender()); 						// Sender of the alarm
+			values.put(KEY_MESSAGE, alarm.getMessage()); 					// Alarm message
+			values.put(KEY_TRIGGER_TEXT, alarm.getTriggerText()); 			// Triggering text of a free text alarm
+			values.put(KEY_ACKNOWLEDGED, alarm.getAcknowledgedMillisecs());	// Date and time the alarm was acknowledged
+			values.put(KEY_ALARM_TYPE, alarm.getAlarmType().ordinal()); 	// Type of alarm
+			values.put(KEY_REPEATS, alarm.getRepeats()); 					// Number of duplicates of alarm received
+			// @formatter:on
+
+			// Inserting row and get the (row) id
+			long rowId = db.insert(TABLE_ALARMS, null, values);
+			db.close(); // Closing database connection
+
+			// Fetch and return inserted alarm
+			return fetchAlarm((int) rowId);
+		} finally {
+			Tracer.end();
+		}
 	}
 
 	/**
@@ -212,27 +227,33 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	 * @return Fetched Alarm.
 	 */
 	public Alarm fetchAlarm(int id) {
-		// Get a readable database handle
-		SQLiteDatabase db = getReadableDatabase();
+		Tracer.begin("DatabaseHandler.fetchAlarm");
 
-		// Create query and execute it, store result in cursor
-		Cursor cursor = db.query(TABLE_ALARMS, new String[] { KEY_ID, KEY_RECEIVED, KEY_SENDER, KEY_MESSAGE, KEY_TRIGGER_TEXT, KEY_ACKNOWLEDGED, KEY_ALARM_TYPE }, KEY_ID + "=?", new String[] { String.valueOf(id) }, null, null, null, null);
+		try {
+			// Get a readable database handle
+			SQLiteDatabase db = getReadableDatabase();
 
-		// Check if we got any results from the query
-		if (cursor != null) {
-			// Move to first element so we can fetch data from the cursor later
-			cursor.moveToFirst();
-		}
+			// Create query and execute it, store result in cursor
+			Cursor cursor = db.query(TABLE_ALARMS, new String[] { KEY_ID, KEY_RECEIVED, KEY_SENDER, KEY_MESSAGE, KEY_TRIGGER_TEXT, KEY_ACKNOWLEDGED, KEY_ALARM_TYPE, KEY_REPEATS }, KEY_ID + "=?", new String[] { String.valueOf(id) }, null, null, null, null);
 
-		// Create a new alarm object with data resolved from cursor
-		Alarm alarm = new Alarm(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3), cursor.getString(4), cursor.getString(5), AlarmType.of(cursor.getInt(6)));
+			// Check if we got any results from the query
+			if (cursor != null) {
+				// Move to first element so we can fetch data from the cursor later
+				cursor.moveToFirst();
+			}
 
-		// Close cursor and database
-		cursor.close();
-		db.close();
+			// Create a new alarm object with data resolved from cursor
+			Alarm alarm = new Alarm(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3), cursor.getString(4), cursor.getString(5), AlarmType.of(cursor.getInt(6)), cursor.getInt(7));
+
+			// Close cursor and database
+			cursor.close();
+			db.close();
 
-		// Return alarm
-		return alarm;
+			// Return alarm
+			return alarm;
+		} finally {
+			Tracer.end();
+		}
 	}
 
 	/**
@@ -258,7 +279,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 		if (cursor.moveToFirst()) {
 			do {
 				// Create a new alarm object and fill it with data from cursor and add it to the list
-				alarmList.add(new Alarm(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3), cursor.getString(4), cursor.getString(5), AlarmType.of(cursor.getInt(6))));
+				alarmList.add(new Alarm(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3), cursor.getString(4), cursor.getString(5), AlarmType.of(cursor.getInt(6)), cursor.getInt(7)));
 			} while (cursor.moveToNext());
 		}
 
@@ -397,27 +418,33 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	 * @return Number of alarms.
 	 */
 	public int getAlarmsCount() {
-		// Select all query
-		String countQuery = "SELECT  * FROM " + TABLE_ALARMS;
+		Tracer.begin("DatabaseHandler.getAlarmsCount");
 
-		// To store number of alarms in database in
-		int alarmsCount = 0;
+		try {
+			// Select all query
+			String countQuery = "SELECT  * FROM " + TABLE_ALARMS;
 
-		// Get a readable database handle
-		SQLiteDatabase db = getReadableDatabase();
+			// To store number of alarms in database in
+			int alarmsCount = 0;
 
-		// Execute query, store result in cursor
-		Cursor cursor = db.rawQuery(countQuery, null);
+			// Get a readable database handle
+			SQLiteDatabase db = getReadableDatabase();
 
-		// Store number of elements in cursor before closing it
-		alarmsCount = cursor.getCount();
+			// Execute query, store result in cursor
+			Cursor cursor = db.rawQuery(countQuery, null);
 
-		// Close cursor and database
-		cursor.close();
-		db.close();
+			// Store number of elements in cursor before closing it
+			alarmsCount = cursor.getCount();
 
-		// Return number of entries in database
-		return alarmsCount;
+			// Close cursor and database
+			cursor.close();
+			db.close();
+
+			// Return number of entries in database
+			return alarmsCount;
+		} finally {
+			Tracer.end();
+		}
 	}
 
 	/**
@@ -438,22 +465,69 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 	 * @return Id of updated Alarm DON'T REALLY KNOW HOW AND WHY!?!?
 	 */
 	public int updateAlarm(Alarm alarm) {
-		// Get a writable database handle
-		SQLiteDatabase db = getWritableDatabase();
+		Tracer.begin("DatabaseHandler.updateAlarm");
+
+		try {
+			// Get a writable database handle
+			SQLiteDatabase db = getWritableDatabase();
+
+			// @formatter:off
+			// Fetch values from alarm and put the into a ContentValues variable
+			ContentValues values = new ContentValues();
+			values.put(KEY_RECEIVED, alarm.getReceivedMillisecs()); 		// Date and time when alarm was received
+			values.put(KEY_SENDER, alarm.getSender()); 						// Sender of the alarm
+			values.put(KEY_MESSAGE, alarm.getMessage()); 					// Alarm message
+			values.put(KEY_TRIGGER_TEXT, alarm.getTriggerText()); 			// Triggering text of a free text alarm
+			values.put(KEY_ACKNOWLEDGED, alarm.getAcknowledgedMillisecs());	// Date and time the alarm was acknowledged
+			values.put(KEY_ALARM_TYPE, alarm.getAlarmType().ordinal()); 	// Type of alarm
+			values.put(KEY_REPEATS, alarm.getRepeats()); 					// Number of duplicates of alarm received
+			// @formatter:on
+
+			// Updating row
+			return db.update(TABLE_ALARMS, values, KEY_ID + " = ?", new String[] { String.valueOf(alarm.getId()) });
+		} finally {
+			Tracer.end();
+		}
+	}
+
+	/**
+	 * To increment the number of duplicates received of the {@link Alarm} with given <code>id</code>. The increment is made within the database,
+	 * hence the alarm doesn't need to be fetched first.
+	 * 
+	 * @param id
+	 *            The id of the Alarm of which a duplicate has been received.
+	 */
+	public void incrementRepeats(int id) {
+		Tracer.begin("DatabaseHandler.incrementRepeats");
+
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			db.execSQL("UPDATE " + TABLE_ALARMS + " SET " + KEY_REPEATS + " = " + KEY_REPEATS + " + 1 WHERE " + KEY_ID + " = ?", new Object[] { id });
+			db.close();
+		} finally {
+			Tracer.end();
+		}
+	}
 
-		// @formatter:off
-		// Fetch values from alarm and put the into a ContentValues variable
-		ContentValues values = new ContentValues();
-		values.put(KEY_RECEIVED, alarm.getReceivedMillisecs()); 		// Date and time when alarm was received
-		values.put(KEY_SENDER, alarm.getSender()); 						// Sender of the alarm
-		values.put(KEY_MESSAGE, alarm.getMessage()); 					// Alarm message
-		values.put(KEY_TRIGGER_TEXT, alarm.getTriggerText()); 			// Triggering text of a free text alarm
-		values.put(KEY_ACKNOWLEDGED, alarm.getAcknowledgedMillisecs());	// Date and time the alarm was acknowledged
-		values.put(KEY_ALARM_TYPE, alarm.getAlarmType().ordinal()); 	// Type of alarm
-		// @formatter:on
-
-		// Updating row
-		return db.update(TABLE_ALARMS, values, KEY_ID + " = ?", new String[] { String.valueOf(alarm.getId()) });
+	/**
+	 * To update the message of the {@link Alarm} with given <code>id</code>. Only the message is updated, hence repeats or acknowledgement
+	 * registered on the alarm meanwhile aren't overwritten.
+	 * 
+	 * @param id
+	 *            The id of the Alarm which message is updated.
+	 * @param message
+	 *            The new message of the Alarm.
+	 */
+	public void updateMessage(int id, String message) {
+		Tracer.begin("DatabaseHandler.updateMessage");
+
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			db.execSQL("UPDATE " + TABLE_ALARMS + " SET " + KEY_MESSAGE + " = ? WHERE " + KEY_ID + " = ?", new Object[] { message, id });
+			db.close();
+		} finally {
+			Tracer.end();
+		}
 	}
 
 	/**
@@ -5,12 +5,14 @@ package ax.ha.it.smsalarm.handler;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import android.media.AudioManager;
 import android.util.Log;
+import ax.ha.it.smsalarm.util.Scheduler;
+import ax.ha.it.smsalarm.util.Tracer;
 
 /**
  * Class responsible for any special handling that needs to be done according to <b><i>KitKat</i></b>'s (and higher) retarded behavior when receiving
@@ -52,8 +54,11 @@ public class KitKatHandler {
 	// Devices original ringer mode are stored in this variable during ringer mode change
 	private int RINGER_MODE = -1;
 
-	// Indicates whether a ringer mode switch is in progress or not
-	private boolean ringerModeSwitchInProgress = false;
+	// Indicates whether a ringer mode switch is in progress or not, written from timer thread hence volatile
+	private volatile boolean ringerModeSwitchInProgress = false;
+
+	// Latch counted down as soon as the ringer mode has been restored, threads waiting for this object to become idle awaits it
+	private volatile CountDownLatch ringerModeRestoredLatch = new CountDownLatch(0);
 
 	/**
 	 * Creates a new instance of {@link KitKatHandler}.
@@ -84,12 +89,18 @@ public class KitKatHandler {
 	 *            Context from which to get system services.
 	 */
 	public void handleKitKat(Context context) {
-		// Set context, needed later, also get AudioManager from context
-		this.context = context;
-		am = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+		Tracer.begin("KitKatHandler.handleKitKat");
+
+		try {
+			// Set context, needed later, also get AudioManager from context
+			this.context = context;
+			am = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
 
-		setSilentModeWithDelay();
-		expandCollapseNotificationsBarWithDelay();
+			setSilentModeWithDelay();
+			expandCollapseNotificationsBarWithDelay();
+		} finally {
+			Tracer.end();
+		}
 	}
 
 	/**
@@ -161,8 +172,7 @@ public class KitKatHandler {
 		// Expand the NotificationBar
 		expandNotificationBar();
 
-		Timer timer = new Timer();
-		timer.schedule(new TimerTask() {
+		Scheduler.getInstance().schedule(LOG_TAG + ":collapseNotificationBar", new Runnable() {
 			@Override
 			public void run() {
 				// After elapsed time the notifications bar is collapsed
@@ -178,11 +188,11 @@ public class KitKatHandler {
 	private void setSilentModeWithDelay() {
 		// If we successfully switched ringer mode we start the delay
 		if (!ringerModeSwitchInProgress && setSilent()) {
-			// Object is running
+			// Object is running, new latch must be in place before flag is set so no one awaits an old already counted down latch
+			ringerModeRestoredLatch = new CountDownLatch(1);
 			ringerModeSwitchInProgress = true;
 
-			Timer timer = new Timer();
-			timer.schedule(new TimerTask() {
+			Scheduler.getInstance().schedule(LOG_TAG + ":restoreRingerMode", new Runnable() {
 				@Override
 				public void run() {
 					restoreRingerMode();
@@ -221,11 +231,14 @@ public class KitKatHandler {
 		// Only needed if this object is initialized and it holds a valid ringer mode
 		if (isInitialized() && isValidRingerMode()) {
 			am.setRingerMode(RINGER_MODE);
-
-			// Set default values
-			RINGER_MODE = -1;
-			ringerModeSwitchInProgress = false;
 		}
+
+		// Set default values, always, else anyone waiting for this object to become idle would wait in vain
+		RINGER_MODE = -1;
+		ringerModeSwitchInProgress = false;
+
+		// Signal anyone waiting that the ringer mode has been restored
+		ringerModeRestoredLatch.countDown();
 	}
 
 	/**
@@ -237,6 +250,28 @@ public class KitKatHandler {
 		return !ringerModeSwitchInProgress;
 	}
 
+	/**
+	 * To wait until this object is <b><i>idle</i></b>, in other words until the devices ringer mode has been restored, or until given timeout has
+	 * elapsed. The calling thread is blocked without consuming any CPU while waiting and is released as soon as the ringer mode is restored.<br>
+	 * If this object already is idle this method returns immediately.
+	 * 
+	 * @param timeoutMillis
+	 *            Maximum time in milliseconds to wait.
+	 * @return <code>true</code> if object is idle else <code>false</code>, that is if the timeout elapsed or if the waiting thread was interrupted.
+	 * @see #isIdle()
+	 */
+	public boolean awaitIdle(long timeoutMillis) {
+		try {
+			return ringerModeRestoredLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			// Preserve interrupt status and let caller decide what to do
+			Thread.currentThread().interrupt();
+			Log.e(LOG_TAG + ":awaitIdle()", "Interrupted while waiting for ringer mode to be restored", e);
+		}
+
+		return isIdle();
+	}
+
 	/**
 	 * Helper method to figure out if this object has been correctly initialized.<br>
 	 * This object is seen as initialized if it's {@link Context} and {@link AudioManager} is not <code>null</code>.
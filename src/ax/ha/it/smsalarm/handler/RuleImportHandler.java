@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Environment;
+import android.util.Log;
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.Rule;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+import ax.ha.it.smsalarm.classifier.RuleSetReader;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+
+/**
+ * Class responsible for bulk importing of alarm triggering rules, that is <b><i>phone numbers</i></b>, <b><i>free texts</i></b> and <b><i>regular
+ * expressions</i></b>, from a text or CSV file. The file is read, normalized and validated by {@link RuleSetReader} and all accepted rules are at
+ * last written to the {@link SharedPreferences} in one batch.
+ * <p>
+ * Each line of an import file must be on the form <code>TYPE,TIER,VALUE</code>, <code>;</code> is also accepted as separator. Everything after the
+ * second separator is treated as the value, hence a regular expression may contain separators. Empty lines and lines starting with <code>#</code>
+ * are ignored:
+ *
+ * <pre>
+ * # Rules from the dispatch centre
+ * NUMBER,PRIMARY,+358 457 000 0000
+ * FREE_TEXT,SECONDARY,brand
+ * REGEX,PRIMARY,(?i)larm\s+\d+
+ * REGEX,SECONDARY,{112} RVS:\w+
+ * </pre>
+ *
+ * Free texts and regular expressions may start with a sender scope, see {@link Rule}.
+ * <p>
+ * Note that importing is stricter than the classifier, a regular expression that can't be compiled is rejected and counted as an invalid regular
+ * expression in the {@link ImportReport}. A {@link Rule} with such a value would have been matched literally, but in a rule file it's most likely
+ * a mistake.
+ *
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ * @see ImportReport
+ */
+public class RuleImportHandler {
+	/**
+	 * Summary of an import made by {@link RuleImportHandler}, holds the number of imported rules and the number of rejected lines together with the
+	 * reason of the rejection.
+	 *
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class ImportReport {
+		// Name of file that was imported
+		private final String fileName;
+
+		// @formatter:off
+		private int linesRead;				// Every line read from file, including empty lines and comments
+		private int imported;				// Rules accepted and stored
+		private int duplicates;				// Rules that already existed within the same tier
+		private int crossTierDuplicates;	// Rules that already existed in the opposite tier
+		private int invalidRegexs;			// Regular expressions that couldn't be compiled, rejected rather than matched literally
+		private int malformedLines;			// Lines not on the form TYPE,TIER,VALUE
+		// @formatter:on
+
+		// Whether or not the import could be completed, it can't if the file can't be read or the rules couldn't be stored
+		private boolean completed = false;
+
+		/**
+		 * Creates a new instance of {@link ImportReport} for import of given file.
+		 *
+		 * @param fileName
+		 *            Name of imported file.
+		 */
+		private ImportReport(String fileName) {
+			this.fileName = fileName;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public int getLinesRead() {
+			return linesRead;
+		}
+
+		public int getImported() {
+			return imported;
+		}
+
+		public int getDuplicates() {
+			return duplicates;
+		}
+
+		public int getCrossTierDuplicates() {
+			return crossTierDuplicates;
+		}
+
+		/**
+		 * To get the number of regular expressions that couldn't be compiled. These are rejected, even though the classifier would have matched them
+		 * literally.
+		 *
+		 * @return Number of rejected invalid regular expressions.
+		 */
+		public int getInvalidRegexs() {
+			return invalidRegexs;
+		}
+
+		public int getMalformedLines() {
+			return malformedLines;
+		}
+
+		public boolean isCompleted() {
+			return completed;
+		}
+
+		@Override
+		public String toString() {
+			return "File: \"" + fileName + "\", lines read: " + linesRead + ", imported: " + imported + ", duplicates: " + duplicates + ", primary/secondary duplicates: " + crossTierDuplicates + ", invalid regular expressions (not matched literally): " + invalidRegexs + ", malformed lines: " + malformedLines + ", completed: " + completed;
+		}
+	}
+
+	private static final String LOG_TAG = RuleImportHandler.class.getSimpleName();
+
+	// Singleton instance of this class, eagerly initialized
+	private static final RuleImportHandler INSTANCE = new RuleImportHandler();
+
+	// Default location of import file, placed in the same directory as the application log files
+	public static final String IMPORT_DIRECTORY = "SmsAlarm";
+	public static final String IMPORT_FILE_NAME = "rules.txt";
+
+	private final SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
+
+	/**
+	 * Creates a new instance of {@link RuleImportHandler}.
+	 */
+	private RuleImportHandler() {
+		if (INSTANCE != null) {
+			Log.e(LOG_TAG + ":RuleImportHandler()", "RuleImportHandler already instantiated");
+		}
+	}
+
+	/**
+	 * To get the <b><i>singleton</i></b> instance of {@link RuleImportHandler}.
+	 *
+	 * @return Instance of <code>RuleImportHandler</code>.
+	 */
+	public static RuleImportHandler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * To get the default import file, <code>rules.txt</code> in the directory <code>SmsAlarm</code> on the external storage.
+	 *
+	 * @return Default import file.
+	 */
+	public File getDefaultImportFile() {
+		return new File(Environment.getExternalStorageDirectory(), IMPORT_DIRECTORY + "/" + IMPORT_FILE_NAME);
+	}
+
+	/**
+	 * To import rules from given file. The file is read by a {@link RuleSetReader}, to which the already existing rules are added so that duplicates
+	 * of them are rejected. Accepted rules are appended to the existing ones and stored in one batch when the whole file has been read. If the file
+	 * can't be read nothing is stored.
+	 *
+	 * @param context
+	 *            Context in which <code>Shared Preferences</code> handling is done.
+	 * @param file
+	 *            File to import rules from.
+	 * @return {@link ImportReport} summarizing the import.
+	 */
+	@SuppressWarnings("unchecked")
+	public ImportReport importRules(Context context, File file) {
+		ImportReport report = new ImportReport(file.getName());
+		RuleSetReader reader = new RuleSetReader();
+
+		// Fetch existing rules, rules are appended to these and duplicates are resolved against them
+		Map<PrefKey, List<String>> rules = new HashMap<PrefKey, List<String>>();
+
+		for (Kind kind : Kind.values()) {
+			for (Type type : new Type[] { Type.PRIMARY, Type.SECONDARY }) {
+				PrefKey prefKey = resolvePrefKey(kind, type);
+				List<String> existingRules = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, prefKey, DataType.LIST, context);
+
+				reader.addExistingRules(kind, type, existingRules);
+				rules.put(prefKey, existingRules);
+			}
+		}
+
+		try {
+			reader.read(file);
+		} catch (IOException e) {
+			Log.e(LOG_TAG + ":importRules()", "An exception occurred while reading rules from file: \"" + file.getAbsolutePath() + "\"", e);
+			return report;
+		}
+
+		report.linesRead = reader.getLinesRead();
+		report.duplicates = reader.getDuplicates();
+		report.crossTierDuplicates = reader.getCrossTierDuplicates();
+		report.invalidRegexs = reader.getInvalidRegexs();
+		report.malformedLines = reader.getMalformedLines();
+
+		// Only store the lists that actually has been changed, and do it in one batch
+		Map<PrefKey, Object> batch = new HashMap<PrefKey, Object>();
+
+		for (Kind kind : Kind.values()) {
+			for (Type type : new Type[] { Type.PRIMARY, Type.SECONDARY }) {
+				List<String> acceptedRules = reader.getAcceptedRules(kind, type);
+
+				if (!acceptedRules.isEmpty()) {
+					PrefKey prefKey = resolvePrefKey(kind, type);
+					List<String> changedRules = new ArrayList<String>(rules.get(prefKey));
+					changedRules.addAll(acceptedRules);
+
+					batch.put(prefKey, changedRules);
+					report.imported += acceptedRules.size();
+				}
+			}
+		}
+
+		report.completed = batch.isEmpty() || prefHandler.storePrefs(PrefKey.SHARED_PREF, batch, context);
+
+		return report;
+	}
+
+	/**
+	 * To resolve the {@link PrefKey} to which rules of given {@link Kind} and {@link Type} are stored.
+	 *
+	 * @param kind
+	 *            Kind of rule.
+	 * @param type
+	 *            Type of rule, must be either {@link Type#PRIMARY} or {@link Type#SECONDARY}.
+	 * @return Key to which rules are stored.
+	 */
+	private static PrefKey resolvePrefKey(Kind kind, Type type) {
+		boolean primary = Type.PRIMARY.equals(type);
+
+		switch (kind) {
+			case NUMBER:
+				return primary ? PrefKey.PRIMARY_LISTEN_NUMBERS_KEY : PrefKey.SECONDARY_LISTEN_NUMBERS_KEY;
+			case FREE_TEXT:
+				return primary ? PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY : PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY;
+			default:
+				return primary ? PrefKey.PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY : PrefKey.SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY;
+		}
+	}
+}
@@ -4,7 +4,9 @@
 package ax.ha.it.smsalarm.handler;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -46,64 +48,82 @@ public class SharedPreferencesHandler {
 	 */
 	public enum PrefKey {
 		// @formatter:off
-		SHARED_PREF("smsAlarmPrefs", ReportRule.NO_REPORT, "Shared preferences main key"),  
-		PRIMARY_LISTEN_NUMBER_KEY("primaryListenNumberKey", ReportRule.NO_REPORT, "Primary listen number"), 								// Not used after version code 8
-		PRIMARY_LISTEN_NUMBERS_KEY("primaryListenNumbersKey", ReportRule.REPORT_ANONYMIZE, "Primary alarm triggering phone numbers used"), 
-		SECONDARY_LISTEN_NUMBERS_KEY("secondaryListenNumbersKey", ReportRule.REPORT_ANONYMIZE, "Secondary alarm triggering phone numbers used"), 
-		PRIMARY_LISTEN_FREE_TEXTS_KEY("primaryListenFreeTextsKey", ReportRule.REPORT_ANONYMIZE, "Primary alarm triggering words used"), 
-		SECONDARY_LISTEN_FREE_TEXTS_KEY("secondaryListenFreeTextsKey", ReportRule.REPORT_ANONYMIZE, "Secondary alarm triggering words used"), 
-		PRIMARY_MESSAGE_TONE_KEY("primaryMessageToneKey", ReportRule.NO_REPORT, "Primary message tone"), 									// Not used after version code 13
-		SECONDARY_MESSAGE_TONE_KEY("secondaryMessageToneKey", ReportRule.NO_REPORT, "Secondary message tone"), 								// Not used after version code 13
-		ENABLE_ACK_KEY("enableAckKey", ReportRule.REPORT_RAW, "Enable acknowledgement"), 
-		ACK_NUMBER_KEY("ackNumber", ReportRule.NO_REPORT, "Phone number for acknowledgement"), 
-		ACK_MESSAGE_KEY("ackMessageKey", ReportRule.NO_REPORT, "Message for acknowledgement"),
-		ACK_METHOD_KEY("ackMethodKey", ReportRule.REPORT_RAW, "Method for acknowledgement"),
-		USE_OS_SOUND_SETTINGS_KEY("useOsSoundSettings", ReportRule.REPORT_RAW, "Use operating systems sound settings"), 
-		PLAY_TONE_TWICE_KEY("playToneTwice", ReportRule.NO_REPORT, "Play tone twice"),														// Not used after version code 13
-		PLAY_ALARM_SIGNAL_TWICE_KEY("playAlarmSignalTwice", ReportRule.REPORT_RAW, "Play alarm signal twice"),
-		PLAY_ALARM_SIGNAL_REPEATEDLY_KEY("playAlarmSignalRepeatedly", ReportRule.REPORT_RAW, "Play alarm signal repeatedly"),
-		ENABLE_SMS_ALARM_KEY("enableSmsAlarm", ReportRule.REPORT_RAW, "Enable Sms Alarm"), 
-		RESCUE_SERVICE_KEY("rescueService", ReportRule.NO_REPORT, "Rescue service name used"), 												// Not used after version code 19
-		ORGANIZATION_KEY("organization", ReportRule.REPORT_ANONYMIZE, "Organization name used"),
-		HAS_CALLED_KEY("hasCalled", ReportRule.NO_REPORT, "Has called"), 
-		END_USER_LICENSE_AGREED("userLicenseAgreed", ReportRule.NO_REPORT, "End user license agreed"), 
-		VERSION_CODE("versionCode", ReportRule.NO_REPORT, "Version code"),
-		USE_FLASH_NOTIFICATION("useFlashNotification", ReportRule.REPORT_RAW, "Use flash notification"),
-		PRIMARY_ALARM_SIGNAL_KEY("primaryAlarmSignalKey", ReportRule.NO_REPORT, "Primary alarm signal"),
-		SECONDARY_ALARM_SIGNAL_KEY("secondaryAlarmSignalKey", ReportRule.NO_REPORT, "Secondary alarm signal"),
-		USER_ADDED_ALARM_SIGNALS_KEY("userAddedAlarmSignalsKey", ReportRule.REPORT_ANONYMIZE, "User added alarm signals used"),
-		PRIMARY_ALARM_VIBRATION_KEY("primaryAlarmVibrationKey", ReportRule.NO_REPORT, "Primary alarm vibration"),
-		SECONDARY_ALARM_VIBRATION_KEY("secondaryAlarmVibrationKey", ReportRule.NO_REPORT, "Secondary alarm vibration"),
-		ENABLE_SMS_DEBUG_LOGGING("enableSmsDebugLogging", ReportRule.REPORT_RAW, "Enable SMS debugging"),
-		PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY("primaryListenRegularExpressionsKey", ReportRule.REPORT_ANONYMIZE, "Primary alarm triggering regular expressions used"),
-		SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY("secondaryListenRegularExpressionsKey", ReportRule.REPORT_ANONYMIZE, "Secondary alarm triggering regular expressions used"),
-		SHOW_SPLASH_SCREEN_KEY("showSplashScreenKey", ReportRule.REPORT_RAW, "Show splash screen"),
-		UNDEFINED_KEY("undefinedKey", ReportRule.NO_REPORT, "Undefined setting");
+		SHARED_PREF("smsAlarmPrefs", null, ReportRule.NO_REPORT, "Shared preferences main key"),  
+		PRIMARY_LISTEN_NUMBER_KEY("primaryListenNumberKey", DataType.STRING, ReportRule.NO_REPORT, "Primary listen number"), 								// Not used after version code 8
+		PRIMARY_LISTEN_NUMBERS_KEY("primaryListenNumbersKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "Primary alarm triggering phone numbers used"), 
+		SECONDARY_LISTEN_NUMBERS_KEY("secondaryListenNumbersKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "Secondary alarm triggering phone numbers used"), 
+		PRIMARY_LISTEN_FREE_TEXTS_KEY("primaryListenFreeTextsKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "Primary alarm triggering words used"), 
+		SECONDARY_LISTEN_FREE_TEXTS_KEY("secondaryListenFreeTextsKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "Secondary alarm triggering words used"), 
+		PRIMARY_MESSAGE_TONE_KEY("primaryMessageToneKey", DataType.INTEGER, ReportRule.NO_REPORT, "Primary message tone"), 									// Not used after version code 13
+		SECONDARY_MESSAGE_TONE_KEY("secondaryMessageToneKey", DataType.INTEGER, ReportRule.NO_REPORT, "Secondary message tone"), 								// Not used after version code 13
+		ENABLE_ACK_KEY("enableAckKey", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Enable acknowledgement"), 
+		ACK_NUMBER_KEY("ackNumber", DataType.STRING, ReportRule.NO_REPORT, "Phone number for acknowledgement"), 
+		ACK_MESSAGE_KEY("ackMessageKey", DataType.STRING, ReportRule.NO_REPORT, "Message for acknowledgement"),
+		ACK_METHOD_KEY("ackMethodKey", DataType.INTEGER, ReportRule.REPORT_RAW, "Method for acknowledgement"),
+		USE_OS_SOUND_SETTINGS_KEY("useOsSoundSettings", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Use operating systems sound settings"), 
+		PLAY_TONE_TWICE_KEY("playToneTwice", DataType.BOOLEAN, ReportRule.NO_REPORT, "Play tone twice"),														// Not used after version code 13
+		PLAY_ALARM_SIGNAL_TWICE_KEY("playAlarmSignalTwice", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Play alarm signal twice"),
+		PLAY_ALARM_SIGNAL_REPEATEDLY_KEY("playAlarmSignalRepeatedly", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Play alarm signal repeatedly"),
+		ENABLE_SMS_ALARM_KEY("enableSmsAlarm", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Enable Sms Alarm"), 
+		RESCUE_SERVICE_KEY("rescueService", DataType.STRING, ReportRule.NO_REPORT, "Rescue service name used"), 												// Not used after version code 19
+		ORGANIZATION_KEY("organization", DataType.STRING, ReportRule.REPORT_ANONYMIZE, "Organization name used"),
+		HAS_CALLED_KEY("hasCalled", DataType.BOOLEAN, ReportRule.NO_REPORT, "Has called"), 
+		END_USER_LICENSE_AGREED("userLicenseAgreed", DataType.BOOLEAN, ReportRule.NO_REPORT, "End user license agreed"), 
+		VERSION_CODE("versionCode", DataType.INTEGER, ReportRule.NO_REPORT, "Version code"),
+		USE_FLASH_NOTIFICATION("useFlashNotification", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Use flash notification"),
+		PRIMARY_ALARM_SIGNAL_KEY("primaryAlarmSignalKey", DataType.STRING, ReportRule.NO_REPORT, "Primary alarm signal"),
+		SECONDARY_ALARM_SIGNAL_KEY("secondaryAlarmSignalKey", DataType.STRING, ReportRule.NO_REPORT, "Secondary alarm signal"),
+		USER_ADDED_ALARM_SIGNALS_KEY("userAddedAlarmSignalsKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "User added alarm signals used"),
+		PRIMARY_ALARM_VIBRATION_KEY("primaryAlarmVibrationKey", DataType.STRING, ReportRule.NO_REPORT, "Primary alarm vibration"),
+		SECONDARY_ALARM_VIBRATION_KEY("secondaryAlarmVibrationKey", DataType.STRING, ReportRule.NO_REPORT, "Secondary alarm vibration"),
+		ENABLE_SMS_DEBUG_LOGGING("enableSmsDebugLogging", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Enable SMS debugging"),
+		PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY("primaryListenRegularExpressionsKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "Primary alarm triggering regular expressions used"),
+		SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY("secondaryListenRegularExpressionsKey", DataType.LIST, ReportRule.REPORT_ANONYMIZE, "Secondary alarm triggering regular expressions used"),
+		SHOW_SPLASH_SCREEN_KEY("showSplashScreenKey", DataType.BOOLEAN, ReportRule.REPORT_RAW, "Show splash screen"),
+		FLASH_NOTIFICATION_MAX_DURATION_KEY("flashNotificationMaxDurationKey", DataType.INTEGER, ReportRule.REPORT_RAW, "Flash notification maximum duration"),
+		FLASH_NOTIFICATION_MIN_BATTERY_LEVEL_KEY("flashNotificationMinBatteryLevelKey", DataType.INTEGER, ReportRule.REPORT_RAW, "Flash notification minimum battery level"),
+		DUPLICATE_ALARM_WINDOW_KEY("duplicateAlarmWindowKey", DataType.INTEGER, ReportRule.REPORT_RAW, "Duplicate alarm window"),
+		UNDEFINED_KEY("undefinedKey", null, ReportRule.NO_REPORT, "Undefined setting");
 		// @formatter:on
 
 		// The actual key to which data will be stored and fetched from
 		private final String key;
 
+		// Data type of the data stored with the key, null if the PrefKey isn't a key of any data
+		private final DataType dataType;
+
 		// Text of key written in a more readable way used only when data is sent to Google Analytics
 		private final String reportText;
 
 		// Rule which decide how the shared preference associated to this PrefKey should be reported to Google Analytics, if it should be reported
 		private final ReportRule reportRule;
 
+		// All PrefKeys mapped by their keys, so a PrefKey is resolved by a single lookup
+		private static final Map<String, PrefKey> PREF_KEYS_BY_KEY = new HashMap<String, PrefKey>();
+
+		static {
+			for (PrefKey prefKey : PrefKey.values()) {
+				PREF_KEYS_BY_KEY.put(prefKey.getKey(), prefKey);
+			}
+		}
+
 		/**
 		 * Creates a new {@link PrefKey}.
 		 * 
 		 * @param key
 		 *            Value(key) to associate with the PrefKey enumeration. This key is the actual key that data will be stored to or fetched from
 		 *            {@link SharedPreferences} with.
+		 * @param dataType
+		 *            Data type of the data stored with the key, <code>null</code> if the PrefKey isn't a key of any data.
 		 * @param reportRule
 		 *            Rule which decide how the shared preference associated to this PrefKey should be reported to Google Analytics, if it should be
 		 *            reported.
 		 * @param reportText
 		 *            Text of shared preference used when PrefKey is reported to Google Analytics.
 		 */
-		private PrefKey(String key, ReportRule reportRule, String reportText) {
+		private PrefKey(String key, DataType dataType, ReportRule reportRule, String reportText) {
 			this.key = key;
+			this.dataType = dataType;
 			this.reportRule = reportRule;
 			this.reportText = reportText;
 		}
@@ -117,6 +137,15 @@ public class SharedPreferencesHandler {
 			return key;
 		}
 
+		/**
+		 * To get the {@link DataType} of the data stored with this {@link PrefKey}'s key.
+		 * 
+		 * @return The <code>DataType</code>, <code>null</code> if the PrefKey isn't a key of any data.
+		 */
+		public DataType getDataType() {
+			return dataType;
+		}
+
 		/**
 		 * To get the text of this {@link PrefKey} which should be sent of to Google Analytics.
 		 * 
@@ -143,15 +172,9 @@ public class SharedPreferencesHandler {
 		 * @return Resolved <code>PrefKey</code>, if no <code>PrefKey</code> can be resolved then {@link PrefKey#UNDEFINED_KEY} will be returned.
 		 */
 		public static PrefKey of(String key) {
-			PrefKey resolvedPrefKey = UNDEFINED_KEY;
-
-			for (PrefKey prefKey : PrefKey.values()) {
-				if (prefKey.getKey().equals(key)) {
-					resolvedPrefKey = prefKey;
-				}
-			}
+			PrefKey resolvedPrefKey = PREF_KEYS_BY_KEY.get(key);
 
-			return resolvedPrefKey;
+			return resolvedPrefKey != null ? resolvedPrefKey : UNDEFINED_KEY;
 		}
 	}
 
@@ -397,4 +420,71 @@ public class SharedPreferencesHandler {
 		// Remember to unregister the listener
 		sharedPref.unregisterOnSharedPreferenceChangeListener(listener);
 	}
+
+	/**
+	 * To store several values to {@link SharedPreferences} in one batch. All values are put through the same {@link Editor} which is committed only
+	 * once, hence either all of the values are written or none of them.<br>
+	 * Example usage:
+	 * <p>
+	 * <code>storePrefs(PrefKey.SHARED_PREF, valuesByKey, context)</code>
+	 * 
+	 * @param sharedPreference
+	 *            <code>Shared Preferences</code> to which given objects are stored to.
+	 * @param objects
+	 *            <code>Keys</code> mapped to the objects to be stored to them, supported instances are the same as for
+	 *            {@link #storePrefs(PrefKey, PrefKey, Object, Context)}.
+	 * @param context
+	 *            Context in which <code>Shared Preferences</code> handling is done.
+	 * @return <code>true</code> if the values were successfully written to persistent storage, else <code>false</code>.
+	 * @see #storePrefs(PrefKey, PrefKey, Object, Context)
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean storePrefs(PrefKey sharedPreference, Map<PrefKey, Object> objects, Context context) {
+		// Set shared preferences from context and set listener to it
+		sharedPref = context.getSharedPreferences(sharedPreference.getKey(), Context.MODE_PRIVATE);
+		sharedPref.registerOnSharedPreferenceChangeListener(listener);
+
+		// Resolve editor for the shared preferences, all values are put to this editor before it's committed
+		prefsEditor = sharedPref.edit();
+
+		for (Map.Entry<PrefKey, Object> entry : objects.entrySet()) {
+			String key = entry.getKey().getKey();
+			Object object = entry.getValue();
+
+			if (object instanceof Integer) {
+				prefsEditor.putInt(key, (Integer) object);
+			} else if (object instanceof String) {
+				prefsEditor.putString(key, (String) object);
+			} else if (object instanceof Boolean) {
+				prefsEditor.putBoolean(key, (Boolean) object);
+			} else if (object instanceof List<?>) {
+				List<String> list = (List<String>) object;
+
+				// Use JSON to serialize the list, same as when storing a single list. Empty list is stored as an empty string
+				JSONArray a = new JSONArray();
+
+				for (String string : list) {
+					a.put(string);
+				}
+
+				prefsEditor.putString(key, list.isEmpty() ? "" : a.toString());
+			} else {
+				// Unregister listener, nothing has been committed so the editor can just be thrown away
+				sharedPref.unregisterOnSharedPreferenceChangeListener(listener);
+
+				IllegalArgumentException exception = new IllegalArgumentException("Failed to store objects to shared preferences: \"" + sharedPreference.getKey() + "\", with key: \"" + key + "\" and context: \"" + context.toString() + "\". Cause: \"Object of unsupported instance was given as argument\", given object is instance of: \"" + (object != null ? object.getClass().getSimpleName() : "null") + "\", valid instances are: \"int\", \"String\", \"boolean\" and \"List<String>\"");
+				Log.e(LOG_TAG + ":storePrefs()", "An exception occurred while setting shared preferences", exception);
+
+				throw exception;
+			}
+		}
+
+		// Write everything in one go
+		boolean committed = prefsEditor.commit();
+
+		// Remember to unregister the listener
+		sharedPref.unregisterOnSharedPreferenceChangeListener(listener);
+
+		return committed;
+	}
 }
@@ -4,8 +4,10 @@
 package ax.ha.it.smsalarm.handler;
 
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
 
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
@@ -15,13 +17,19 @@ import android.util.Log;
 import ax.ha.it.smsalarm.R;
 import ax.ha.it.smsalarm.activity.SmsAlarm;
 import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.handler.AlarmSignalCatalog.AlarmSignal;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
-import ax.ha.it.smsalarm.util.Utils;
+import ax.ha.it.smsalarm.util.FlightRecorder;
+import ax.ha.it.smsalarm.util.FlightRecorder.Event;
+import ax.ha.it.smsalarm.util.Metrics;
+import ax.ha.it.smsalarm.util.Metrics.AlarmStage;
+import ax.ha.it.smsalarm.util.Tracer;
 
 /**
  * Class responsible for all sound handling, this means responsible for all interactions with the {@link MediaPlayer} in this application.<br>
- * <b><i> {@link SoundHandler} is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ * <b><i> {@link SoundHandler} is a singleton, eagerly initialized to avoid concurrent modification.</i></b><br>
+ * <b><i>Note. Should only be used through the {@link AlertHandler}, which executes all sound handling on one thread.</i></b>
  * 
  * @author Robert Nyholm <robert.nyholm@aland.net>
  * @version 2.3.1
@@ -33,10 +41,6 @@ public class SoundHandler {
 
 	private static final String LOG_TAG = SoundHandler.class.getSimpleName();
 
-	// Constant defining path to alarm signals within assets
-	private static final String PATH_TO_ALARM_SIGNAL_ASSETS = "alarm-signals/";
-	private static final String MP3_EXTENSION = ".mp3";
-
 	// Constants used as keys when storing respective volumes into a HashMap
 	private static final String ORIGINAL_MEDIA_VOLUME = "originalMediaVolume";
 	private static final String CALCULATED_MEDIA_VOLUME = "calculatedMediaVolume";
@@ -46,8 +50,9 @@ public class SoundHandler {
 	public static final int DEFAULT_SECONDARY_ALARM_SIGNAL_ID = 1;
 
 	// A limit time for how long we can wait for the KitKat handler to be idle, this works as a
-	// security to be sure that noise always going to be made
+	// security to be sure that noise always going to be made even if the ringer mode for some reason never is restored
 	private static final long NOISE_DELAY_LIMIT = 10000;
+	private static final String NOISE_DELAY_OPERATION = "KitKatHandler.awaitIdle";
 
 	// Need to access some shared preferences
 	private SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
@@ -56,9 +61,16 @@ public class SoundHandler {
 	private MediaPlayer mediaPlayer;
 	private AudioManager audioManager;
 
+	// To be run when the alarm signal currently played has finished, or has been stopped, or has started looping
+	private Runnable signalFinishedCallback;
+
 	// Convenience map to store the different volumes
 	private HashMap<String, Integer> volumes = new HashMap<String, Integer>();
 
+	// Media players prepared ahead of time with the configured alarm signals, and the alarm signals they are prepared with, both keyed on alarm type
+	private final Map<AlarmType, MediaPlayer> preparedMediaPlayers = new EnumMap<AlarmType, MediaPlayer>(AlarmType.class);
+	private final Map<AlarmType, String> preparedAlarmSignals = new EnumMap<AlarmType, String>(AlarmType.class);
+
 	/**
 	 * Creates a new instance of {@link SoundHandler}.
 	 */
@@ -112,7 +124,7 @@ public class SoundHandler {
 				});
 
 				// Prepare the media player
-				prepareMediPlayer(context, alarmSignal);
+				prepareMediPlayer(context, mediaPlayer, alarmSignal);
 
 				// Set correct media volume
 				audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, volumes.get(CALCULATED_MEDIA_VOLUME), 0);
@@ -137,19 +149,21 @@ public class SoundHandler {
 	 *            The Context in which {@link SoundHandler} runs.
 	 * @param alarmType
 	 *            Type of alarm from which correct alarm signal is resolved.
+	 * @param onSignalFinished
+	 *            Run once the alarm signal has finished playing or has been stopped, or directly if no alarm signal is played. An alarm signal played
+	 *            repeatedly is looping and never finishes by itself, then it's run as soon as the alarm signal has started. Can be <code>null</code>.
 	 * @see #previewSignal(Context, String)
 	 * @see {@link KitKatHandler}
 	 */
-	public void alarm(final Context context, AlarmType alarmType) {
+	public void alarm(final Context context, AlarmType alarmType, Runnable onSignalFinished) {
 		// Only do further handling if given AlarmType is supported
 		if (AlarmType.PRIMARY.equals(alarmType) || AlarmType.SECONDARY.equals(alarmType)) {
-			// Need to know when called this method
-			long startTimeMillis = System.currentTimeMillis();
+			// Need to wait until KitKat handler is in idle mode, the wait ends as soon as the ringer mode has been restored
+			if (!KitKatHandler.getInstance().awaitIdle(NOISE_DELAY_LIMIT)) {
+				FlightRecorder.timeout(NOISE_DELAY_OPERATION, NOISE_DELAY_LIMIT);
 
-			// Need to wait until KitKat handler is in idle mode
-			while (!KitKatHandler.getInstance().isIdle() && (System.currentTimeMillis() < (startTimeMillis + NOISE_DELAY_LIMIT))) {
 				if (SmsAlarm.DEBUG) {
-					Log.d(LOG_TAG + ":alarm()", "KitKatHandler running, waiting....");
+					Log.d(LOG_TAG + ":alarm()", "KitKatHandler didn't become idle within " + NOISE_DELAY_LIMIT + "ms, making noise anyway");
 				}
 			}
 
@@ -160,38 +174,53 @@ public class SoundHandler {
 
 			// Only if device is in normal ringer mode or if SmsAlarm is setup to not follow the devices sound settings
 			if (AudioManager.RINGER_MODE_NORMAL == audioManager.getRingerMode() || !useOsSoundSettings) {
-				// Alarm signal to be played
-				String alarmSignal;
-
-				// Resolve correct alarm signal id
-				if (AlarmType.PRIMARY.equals(alarmType)) {
-					alarmSignal = (String) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_ALARM_SIGNAL_KEY, DataType.STRING, context, resolveAlarmSignal(context, DEFAULT_PRIMARY_ALARM_SIGNAL_ID));
-				} else {
-					alarmSignal = (String) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_ALARM_SIGNAL_KEY, DataType.STRING, context, resolveAlarmSignal(context, DEFAULT_SECONDARY_ALARM_SIGNAL_ID));
-				}
+				// Resolve correct alarm signal
+				String alarmSignal = resolveConfiguredAlarmSignal(context, alarmType);
 
 				// In case media player is already running stop it, could be that the user is previewing some signals
 				stopMediaPlayer(context);
+				signalFinishedCallback = onSignalFinished;
 
 				// Calculate the different volumes
 				volumes = calculateVolume(audioManager);
 
-				// Ensure we got a fresh MediaPlayer object
-				mediaPlayer = new MediaPlayer();
+				// Use the media player prepared ahead of time if it's prepared with correct alarm signal, then there is no data source to open and no
+				// codec to set up. Else a fresh MediaPlayer must be set up and prepared right now
+				mediaPlayer = takePreparedMediaPlayer(alarmType, alarmSignal);
+
+				if (mediaPlayer == null) {
+					mediaPlayer = new MediaPlayer();
+					prepareMediPlayer(context, mediaPlayer, alarmSignal);
+				}
 
-				// Set DataSource and prepare MediaPlayer
-				prepareMediPlayer(context, alarmSignal);
+				// Figure out if the alarm signal should be played repeatedly, if so let the media player loop it natively without any gaps
+				final boolean playAlarmSignalRepeatedly = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PLAY_ALARM_SIGNAL_REPEATEDLY_KEY, DataType.BOOLEAN, context);
+				mediaPlayer.setLooping(playAlarmSignalRepeatedly);
 
 				// If application use systems sound settings, check if phone is in normal, silent or vibration mode else don't check phones status and
 				// play tone and vibrate even if phone is in silent or vibrate mode
 				if (useOsSoundSettings) {
 					// Set calculated media volume
 					audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, volumes.get(CALCULATED_MEDIA_VOLUME), 0);
-					mediaPlayer.start();
 				} else { // If not take OS sound setting into account, always ring at highest volume and vibrate
 					// Set maximum volume to audio manager
 					audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC), 0);
+				}
+
+				Tracer.begin("SoundHandler.start");
+
+				try {
 					mediaPlayer.start();
+				} finally {
+					Tracer.end();
+				}
+
+				Metrics.getInstance().alarmStage(AlarmStage.AUDIO_STARTED);
+				FlightRecorder.record(Event.AUDIO_STARTED, alarmType.name());
+
+				// A looping alarm signal never completes, the device has been woken up and nothing more needs to be waited for
+				if (playAlarmSignalRepeatedly) {
+					signalFinished();
 				}
 
 				mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
@@ -200,14 +229,11 @@ public class SoundHandler {
 					// Counter variable to count number of times played, we have already played the alarm signal once
 					int timesPlayed = 1;
 
-					// Figure out if the alarm signal should be played repeatedly
-					boolean playAlarmSignalRepeatedly = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PLAY_ALARM_SIGNAL_REPEATEDLY_KEY, DataType.BOOLEAN, context);
-
 					@Override
 					public void onCompletion(MediaPlayer mp) {
-						// If alarm signal havn't been played enough times or if it's wanted to play alarm signal repeatedly, else release media
-						// player
-						if (timesPlayed < toBePlayed || playAlarmSignalRepeatedly) {
+						// If alarm signal havn't been played enough times, else release media player. Note that a media player playing the alarm
+						// signal repeatedly is looping and will never complete
+						if (timesPlayed < toBePlayed) {
 							// Add to counter
 							timesPlayed++;
 							// Seek to beginning of message tone
@@ -219,14 +245,102 @@ public class SoundHandler {
 							mediaPlayer.reset();
 							mediaPlayer.release();
 							mediaPlayer = null;
+							FlightRecorder.record(Event.AUDIO_FINISHED);
+							signalFinished();
 						}
 					}
 				});
+
+				return;
 			}
 		} else {
 			// This is weird, log this case
 			Log.e(LOG_TAG + ":alarm()", "Method called with the unsupported AlarmType: \"" + alarmType.toString() + "\", check why. However application can't decide how to handle this case");
 		}
+
+		// No alarm signal is played
+		if (onSignalFinished != null) {
+			onSignalFinished.run();
+		}
+	}
+
+	/**
+	 * To prepare {@link MediaPlayer}'s ahead of time with the configured <b><i>Primary</i></b> and <b><i>Secondary Alarm Signals</i></b>. When an
+	 * alarm later is raised the already prepared <code>MediaPlayer</code> is used, hence no data source needs to be opened and no codec needs to be
+	 * set up at that time, the alarm signal starts as soon as {@link MediaPlayer#start()} is called.<br>
+	 * Only alarm signals that has changed since last preparation are prepared again, so it's cheap to call this method whenever the configured alarm
+	 * signals might have changed.
+	 * <p>
+	 * <b><i>Note. Preparing a MediaPlayer is blocking, hence this method should not be called from the UI thread.</i></b>
+	 *
+	 * @param context
+	 *            The Context in which {@link SoundHandler} runs.
+	 * @see AlertHandler#prepareAlarmSignals(Context)
+	 */
+	public synchronized void prepareAlarmSignals(Context context) {
+		for (AlarmType alarmType : EnumSet.of(AlarmType.PRIMARY, AlarmType.SECONDARY)) {
+			String alarmSignal = resolveConfiguredAlarmSignal(context, alarmType);
+
+			// Already prepared with correct alarm signal, nothing to do
+			if (preparedMediaPlayers.containsKey(alarmType) && alarmSignal.equals(preparedAlarmSignals.get(alarmType))) {
+				continue;
+			}
+
+			// Release any media player prepared with an old alarm signal before preparing a new one
+			MediaPlayer oldMediaPlayer = preparedMediaPlayers.remove(alarmType);
+			preparedAlarmSignals.remove(alarmType);
+
+			if (oldMediaPlayer != null) {
+				oldMediaPlayer.release();
+			}
+
+			MediaPlayer preparedMediaPlayer = new MediaPlayer();
+
+			if (prepareMediPlayer(context, preparedMediaPlayer, alarmSignal)) {
+				preparedMediaPlayers.put(alarmType, preparedMediaPlayer);
+				preparedAlarmSignals.put(alarmType, alarmSignal);
+			} else {
+				preparedMediaPlayer.release();
+			}
+		}
+	}
+
+	/**
+	 * To take the {@link MediaPlayer} prepared ahead of time for given {@link AlarmType}, if it's prepared with given <code>alarmSignal</code>. The
+	 * <code>MediaPlayer</code> is removed from the prepared ones, hence it's owned by the caller after this call.
+	 *
+	 * @param alarmType
+	 *            Type of alarm for which the prepared media player is taken.
+	 * @param alarmSignal
+	 *            The alarm signal the media player must be prepared with.
+	 * @return Prepared <code>MediaPlayer</code>, or <code>null</code> if there isn't any prepared with given alarm signal.
+	 * @see #prepareAlarmSignals(Context)
+	 */
+	private synchronized MediaPlayer takePreparedMediaPlayer(AlarmType alarmType, String alarmSignal) {
+		if (alarmSignal.equals(preparedAlarmSignals.get(alarmType))) {
+			preparedAlarmSignals.remove(alarmType);
+			return preparedMediaPlayers.remove(alarmType);
+		}
+
+		return null;
+	}
+
+	/**
+	 * To resolve the configured <b><i>Alarm Signal</i></b> for given {@link AlarmType}. If no alarm signal has been configured the default alarm
+	 * signal for the alarm type is resolved.
+	 *
+	 * @param context
+	 *            The Context in which {@link SoundHandler} runs.
+	 * @param alarmType
+	 *            Type of alarm, {@link AlarmType#PRIMARY} or {@link AlarmType#SECONDARY}.
+	 * @return Configured alarm signal.
+	 */
+	private String resolveConfiguredAlarmSignal(Context context, AlarmType alarmType) {
+		if (AlarmType.PRIMARY.equals(alarmType)) {
+			return (String) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_ALARM_SIGNAL_KEY, DataType.STRING, context, resolveAlarmSignal(context, DEFAULT_PRIMARY_ALARM_SIGNAL_ID));
+		}
+
+		return (String) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_ALARM_SIGNAL_KEY, DataType.STRING, context, resolveAlarmSignal(context, DEFAULT_SECONDARY_ALARM_SIGNAL_ID));
 	}
 
 	/**
@@ -287,104 +401,121 @@ public class SoundHandler {
 	}
 
 	/**
-	 * To prepare this {@link SoundHandler}'s instance of {@link MediaPlayer} by setting a correct <b><i>Data Source</i></b> to it and by calling
-	 * {@link MediaPlayer#prepare()} on it.<br>
-	 * The data source will be set with given {@link AssetFileDescriptor}'s data.
-	 * 
+	 * To prepare given {@link MediaPlayer} by setting a correct <b><i>Data Source</i></b> to it and by calling {@link MediaPlayer#prepare()} on it.<br>
+	 * The data source will be set with given {@link AssetFileDescriptor}'s data, the descriptor is closed once the data source has been set.
+	 *
+	 * @param mediaPlayer
+	 *            The media player to prepare.
 	 * @param afd
 	 *            The asset file descriptor to prepare <code>MediaPlayer</code> with.
-	 * @see #prepareMediaPlayer(String)
-	 * @see #prepareMediPlayer(Context, String)
+	 * @return <code>true</code> if the media player was successfully prepared, else <code>false</code>.
+	 * @see #prepareMediaPlayer(MediaPlayer, String)
+	 * @see #prepareMediPlayer(Context, MediaPlayer, String)
 	 */
-	private void prepareMediaPlayer(AssetFileDescriptor afd) {
+	private boolean prepareMediaPlayer(MediaPlayer mediaPlayer, AssetFileDescriptor afd) {
 		// Set data source for media player and prepare it
 		try {
 			if (mediaPlayer != null && afd != null) {
 				mediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+				afd.close();
 				mediaPlayer.prepare();
+
+				return true;
 			}
 		} catch (IllegalStateException e) {
 			Log.e(LOG_TAG + ":prepareMediaPlayer()", "Mediaplayer is in an illegal state for setting datasource or preparing it", e);
 		} catch (IOException e) {
 			Log.e(LOG_TAG + ":prepareMediaPlayer()", "An error occurred while setting datasource to mediaplayer or preparing it", e);
 		}
+
+		return false;
 	}
 
 	/**
-	 * To prepare this {@link SoundHandler}'s instance of {@link MediaPlayer} by setting a correct <b><i>Data Source</i></b> to it and by calling
-	 * {@link MediaPlayer#prepare()} on it.<br>
+	 * To prepare given {@link MediaPlayer} by setting a correct <b><i>Data Source</i></b> to it and by calling {@link MediaPlayer#prepare()} on it.<br>
 	 * The data source will be set with given <code>alarmSignal</code>.
-	 * 
+	 *
+	 * @param mediaPlayer
+	 *            The media player to prepare.
 	 * @param alarmSignal
 	 *            The alarm signal to prepare <code>MediaPlayer</code> with.
-	 * @see #prepareMediaPlayer(AssetFileDescriptor)
-	 * @see #prepareMediPlayer(Context, String)
+	 * @return <code>true</code> if the media player was successfully prepared, else <code>false</code>.
+	 * @see #prepareMediaPlayer(MediaPlayer, AssetFileDescriptor)
+	 * @see #prepareMediPlayer(Context, MediaPlayer, String)
 	 */
-	private void prepareMediaPlayer(String alarmSignal) {
+	private boolean prepareMediaPlayer(MediaPlayer mediaPlayer, String alarmSignal) {
 		// Set data source for media player and prepare it
 		try {
 			if (mediaPlayer != null && alarmSignal != null) {
 				mediaPlayer.setDataSource(alarmSignal);
 				mediaPlayer.prepare();
+
+				return true;
 			}
 		} catch (IllegalStateException e) {
 			Log.e(LOG_TAG + ":prepareMediaPlayer()", "Mediaplayer is in an illegal state for setting datasource or preparing it", e);
 		} catch (IOException e) {
 			Log.e(LOG_TAG + ":prepareMediaPlayer()", "An error occurred while setting datasource to mediaplayer or preparing it", e);
 		}
+
+		return false;
 	}
 
 	/**
-	 * To prepare this {@link SoundHandler}'s instance of {@link MediaPlayer} by setting a correct <b><i>Data Source</i></b> to it and by calling
-	 * {@link MediaPlayer#prepare()} on it.<br>
-	 * This method figures out if given <code>alarmSignal</code> is <b><i>User Added</i></b> or <b><i>Application Provided</i></b>, and prepares the
-	 * <code>MediaPlayer</code> correctly corresponding to that info.<br>
-	 * If the given <code>alarmSignal</code> wasn't found on the device then a default application provided alarm signal is used.
-	 * 
+	 * To prepare given {@link MediaPlayer} by setting a correct <b><i>Data Source</i></b> to it and by calling {@link MediaPlayer#prepare()} on it.<br>
+	 * The <code>alarmSignal</code> is looked up in the {@link AlarmSignalCatalog}, which tells if it's <b><i>User Added</i></b> or <b><i>Application
+	 * Provided</i></b>, and the <code>MediaPlayer</code> is prepared correctly corresponding to that info.<br>
+	 * If the given <code>alarmSignal</code> wasn't found on the device, or couldn't be prepared, then a default application provided alarm signal is
+	 * used.
+	 *
 	 * @param context
 	 *            The Context in which {@link SoundHandler} runs.
+	 * @param mediaPlayer
+	 *            The media player to prepare.
 	 * @param alarmSignal
 	 *            The alarm signal to prepare <code>MediaPlayer</code> with.
-	 * @see #prepareMediaPlayer(AssetFileDescriptor)
-	 * @see #prepareMediaPlayer(String)
+	 * @return <code>true</code> if the media player was successfully prepared, else <code>false</code>.
+	 * @see #prepareMediaPlayer(MediaPlayer, AssetFileDescriptor)
+	 * @see #prepareMediaPlayer(MediaPlayer, String)
 	 */
-	@SuppressWarnings("unchecked")
-	private void prepareMediPlayer(Context context, String alarmSignal) {
-		// Fetch all user added alarm signal paths
-		List<String> userAddedAlarmSignals = (List<String>) SharedPreferencesHandler.getInstance().fetchPrefs(PrefKey.SHARED_PREF, PrefKey.USER_ADDED_ALARM_SIGNALS_KEY, DataType.LIST, context);
-
-		boolean prepareWithAfd = true;
-
-		// If file exists then it's a user added alarm signal that's going to be played, hence we don't need to set up any assets
-		// file descriptor
-		if (Utils.existsInConsiderCases(alarmSignal, userAddedAlarmSignals)) {
-			// Check that the file actually exists
-			if (Utils.fileExists(alarmSignal)) {
-				prepareWithAfd = false;
-			} else {
-				// As the file wasn't found on the system set the alarm signal to the default that we know exists
-				alarmSignal = resolveAlarmSignal(context, DEFAULT_PRIMARY_ALARM_SIGNAL_ID);
+	private boolean prepareMediPlayer(Context context, MediaPlayer mediaPlayer, String alarmSignal) {
+		Tracer.begin("SoundHandler.prepareMediPlayer");
+
+		try {
+			AlarmSignalCatalog catalog = AlarmSignalCatalog.getInstance();
+			AlarmSignal signal = catalog.lookup(context, alarmSignal);
+
+			// User added alarm signal, prepare media player directly with the file
+			if (signal != null && !signal.isAsset()) {
+				if (prepareMediaPlayer(mediaPlayer, signal.getPath())) {
+					return true;
+				}
+
+				// The file could have been removed after the catalog was built, media player must be reset before it can be given a new data source
+				mediaPlayer.reset();
+				signal = null;
+			}
+
+			// As the alarm signal wasn't found on the system set the alarm signal to the default that we know exists
+			if (signal == null) {
+				signal = catalog.lookup(context, resolveAlarmSignal(context, DEFAULT_PRIMARY_ALARM_SIGNAL_ID));
 			}
-		}
 
-		// The given alarm signal was either not found or the alarm signal simply is an application defined one, hence it's need to be loaded from the
-		// application assets
-		if (prepareWithAfd) {
-			// AssetFileDescriptor to get needed assets
+			// Open file descriptor to the application provided alarm signal, offset and length within the package are resolved by the asset manager
 			AssetFileDescriptor afd = null;
 
-			// Open file descriptor with correct path
 			try {
-				afd = context.getAssets().openFd(PATH_TO_ALARM_SIGNAL_ASSETS + alarmSignal + MP3_EXTENSION);
+				if (signal != null) {
+					afd = signal.openAssetFd(context);
+				}
 			} catch (IOException e) {
-				Log.e(LOG_TAG + ":previewSignal()", "An error occurred while opening the FileDescriptor", e);
+				Log.e(LOG_TAG + ":prepareMediPlayer()", "An error occurred while opening the FileDescriptor", e);
 			}
 
 			// Set DataSource and prepare MediaPlayer
-			prepareMediaPlayer(afd);
-		} else {
-			// User defined alarm signal just set prepare media player with that one
-			prepareMediaPlayer(alarmSignal);
+			return prepareMediaPlayer(mediaPlayer, afd);
+		} finally {
+			Tracer.end();
 		}
 	}
 
@@ -399,7 +530,8 @@ public class SoundHandler {
 	 * <p>
 	 * At last the <code>MediaPlayer</code> object will be <code>nullified</code>.
 	 * <p>
-	 * This method does also restore the original <b><i>Media Volume</i></b>.
+	 * This method does also restore the original <b><i>Media Volume</i></b>, and signals that any alarm signal played by
+	 * {@link #alarm(Context, AlarmType, Runnable)} has finished.
 	 * 
 	 * @param context
 	 *            The Context in which {@link SoundHandler} runs.
@@ -417,6 +549,21 @@ public class SoundHandler {
 			audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
 			// Restore the media volume
 			restoreMediaVolume(audioManager);
+
+			FlightRecorder.record(Event.AUDIO_STOPPED);
+		}
+
+		signalFinished();
+	}
+
+	/**
+	 * To run, and clear, the callback waiting for the currently played alarm signal to finish, if any.
+	 */
+	private void signalFinished() {
+		if (signalFinishedCallback != null) {
+			Runnable callback = signalFinishedCallback;
+			signalFinishedCallback = null;
+			callback.run();
 		}
 	}
 
@@ -14,10 +14,13 @@ import android.util.Log;
 import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+import ax.ha.it.smsalarm.util.Metrics;
+import ax.ha.it.smsalarm.util.Metrics.AlarmStage;
 
 /**
  * Class responsible for all vibration handling, this means responsible for all interactions with the {@link Vibrator} in this application.<br>
- * <b><i> {@link VibrationHandler} is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ * <b><i> {@link VibrationHandler} is a singleton, eagerly initialized to avoid concurrent modification.</i></b><br>
+ * <b><i>Note. Should only be used through the {@link AlertHandler}, which executes all vibration handling on one thread.</i></b>
  * 
  * @author Robert Nyholm <robert.nyholm@aland.net>
  * @version 2.3.1
@@ -136,6 +139,8 @@ public class VibrationHandler {
 
 				// Start vibrate
 				vibrator.vibrate(vibrationPatterns.get(vibration), -1);
+
+				Metrics.getInstance().alarmStage(AlarmStage.VIBRATION_STARTED);
 			}
 		} else {
 			// This is weird, log this case
@@ -23,6 +23,7 @@ import ax.ha.it.smsalarm.handler.DatabaseHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+import ax.ha.it.smsalarm.util.Tracer;
 
 /**
  * Provider class for the application widgets. This class is responsible for all updates, data population, data presentation and so on for a widget.<br>
@@ -113,57 +114,63 @@ public class WidgetProvider extends AppWidgetProvider {
 	 */
 	@Override
 	public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-		// Get Shared preferences needed by widget
-		fetchSharedPrefs(context);
-		// Initialize database handler object from context
-		db = new DatabaseHandler(context);
-		// RemoteViews object needed to configure layout of widget
-		RemoteViews rv = new RemoteViews(context.getPackageName(), R.layout.widget);
-
-		// Update each of the application widgets with the remote adapter
-		for (int i = 0; i < appWidgetIds.length; ++i) {
-			// Set intent to start Sms Alarm and wrap it into a pending intent, rest of the intents
-			// are configured in the same way
-			Intent smsAlarmIntent = new Intent(context, Splash.class);
-			smsAlarmIntent.setAction(Splash.ACTION_REPORT_OPENED_THROUGH_WIDGET);
-			smsAlarmIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
-			PendingIntent smsAlarmPendingIntent = PendingIntent.getActivity(context, 0, smsAlarmIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-			Intent enableSmsAlarmIntent = new Intent(context, WidgetProvider.class);
-			enableSmsAlarmIntent.setAction(WidgetProvider.TOGGLE_ENABLE_SMS_ALARM);
-			enableSmsAlarmIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
-			PendingIntent enableSmsAlarmPendingIntent = PendingIntent.getBroadcast(context, 0, enableSmsAlarmIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-			Intent useOsSoundSettingsIntent = new Intent(context, WidgetProvider.class);
-			useOsSoundSettingsIntent.setAction(WidgetProvider.TOGGLE_USE_OS_SOUND_SETTINGS);
-			useOsSoundSettingsIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
-			PendingIntent useOsSoundSettingsPendingIntent = PendingIntent.getBroadcast(context, 0, useOsSoundSettingsIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-			Intent showAlarmLogIntent = new Intent(context, SmsAlarm.class);
-			showAlarmLogIntent.setAction(SmsAlarm.ACTION_SWITCH_TO_ALARM_LOG_FRAGMENT);
-			showAlarmLogIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
-			PendingIntent showAlarmLogPendingIntent = PendingIntent.getActivity(context, 0, showAlarmLogIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-			// Set widget texts
-			setWidgetTextViews(rv, context);
-
-			// Set onClick pending intent to start Sms Alarm, this is always set
-			rv.setOnClickPendingIntent(R.id.widget_logo_iv, smsAlarmPendingIntent);
-
-			// If user has agreed the end user license, set the rest of the on click pending intents
-			// also
-			if (endUserLicenseAgreed) {
-				rv.setOnClickPendingIntent(R.id.widget_smsalarm_status_tv, enableSmsAlarmPendingIntent);
-				rv.setOnClickPendingIntent(R.id.widget_soundsettings_status_tv, useOsSoundSettingsPendingIntent);
-				rv.setOnClickPendingIntent(R.id.widget_latest_received_alarm_tv, showAlarmLogPendingIntent);
+		Tracer.begin("WidgetProvider.onUpdate");
+
+		try {
+			// Get Shared preferences needed by widget
+			fetchSharedPrefs(context);
+			// Initialize database handler object from context
+			db = new DatabaseHandler(context);
+			// RemoteViews object needed to configure layout of widget
+			RemoteViews rv = new RemoteViews(context.getPackageName(), R.layout.widget);
+
+			// Update each of the application widgets with the remote adapter
+			for (int i = 0; i < appWidgetIds.length; ++i) {
+				// Set intent to start Sms Alarm and wrap it into a pending intent, rest of the intents
+				// are configured in the same way
+				Intent smsAlarmIntent = new Intent(context, Splash.class);
+				smsAlarmIntent.setAction(Splash.ACTION_REPORT_OPENED_THROUGH_WIDGET);
+				smsAlarmIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
+				PendingIntent smsAlarmPendingIntent = PendingIntent.getActivity(context, 0, smsAlarmIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+				Intent enableSmsAlarmIntent = new Intent(context, WidgetProvider.class);
+				enableSmsAlarmIntent.setAction(WidgetProvider.TOGGLE_ENABLE_SMS_ALARM);
+				enableSmsAlarmIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
+				PendingIntent enableSmsAlarmPendingIntent = PendingIntent.getBroadcast(context, 0, enableSmsAlarmIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+				Intent useOsSoundSettingsIntent = new Intent(context, WidgetProvider.class);
+				useOsSoundSettingsIntent.setAction(WidgetProvider.TOGGLE_USE_OS_SOUND_SETTINGS);
+				useOsSoundSettingsIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
+				PendingIntent useOsSoundSettingsPendingIntent = PendingIntent.getBroadcast(context, 0, useOsSoundSettingsIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+				Intent showAlarmLogIntent = new Intent(context, SmsAlarm.class);
+				showAlarmLogIntent.setAction(SmsAlarm.ACTION_SWITCH_TO_ALARM_LOG_FRAGMENT);
+				showAlarmLogIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetIds[i]);
+				PendingIntent showAlarmLogPendingIntent = PendingIntent.getActivity(context, 0, showAlarmLogIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+				// Set widget texts
+				setWidgetTextViews(rv, context);
+
+				// Set onClick pending intent to start Sms Alarm, this is always set
+				rv.setOnClickPendingIntent(R.id.widget_logo_iv, smsAlarmPendingIntent);
+
+				// If user has agreed the end user license, set the rest of the on click pending intents
+				// also
+				if (endUserLicenseAgreed) {
+					rv.setOnClickPendingIntent(R.id.widget_smsalarm_status_tv, enableSmsAlarmPendingIntent);
+					rv.setOnClickPendingIntent(R.id.widget_soundsettings_status_tv, useOsSoundSettingsPendingIntent);
+					rv.setOnClickPendingIntent(R.id.widget_latest_received_alarm_tv, showAlarmLogPendingIntent);
+				}
+
+				// Update widget
+				appWidgetManager.updateAppWidget(appWidgetIds[i], rv);
 			}
 
-			// Update widget
-			appWidgetManager.updateAppWidget(appWidgetIds[i], rv);
+			// Call to super class onUpdate method, so the Operating System can run it's native methods
+			super.onUpdate(context, appWidgetManager, appWidgetIds);
+		} finally {
+			Tracer.end();
 		}
-
-		// Call to super class onUpdate method, so the Operating System can run it's native methods
-		super.onUpdate(context, appWidgetManager, appWidgetIds);
 	}
 
 	/**
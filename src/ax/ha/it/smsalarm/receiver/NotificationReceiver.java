@@ -9,11 +9,9 @@ import android.content.Context;
 import android.content.Intent;
 import ax.ha.it.smsalarm.activity.Acknowledge;
 import ax.ha.it.smsalarm.alarm.Alarm;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
-import ax.ha.it.smsalarm.handler.SoundHandler;
-import ax.ha.it.smsalarm.handler.VibrationHandler;
-import ax.ha.it.smsalarm.service.FlashNotificationService;
 
 /**
  * Class responsible for all actions in conjunction with all {@link Notification} interaction, more exactly Notifications dispatched from
@@ -38,13 +36,8 @@ public class NotificationReceiver extends BroadcastReceiver {
 
 	@Override
 	public void onReceive(Context context, Intent intent) {
-		// Stop flash notification
-		FlashNotificationService.stopFlashNotificationService(context);
-
-		// Stop alarm signal from being played, if it's played..
-		SoundHandler.getInstance().stopMediaPlayer(context);
-		// ...also cancel the vibration if it vibrates
-		VibrationHandler.getInstance().cancelVibrator();
+		// Stop flash notification, alarm signal from being played and cancel the vibration, all in one go
+		AlertHandler.getInstance().stopAll(context);
 
 		// Get action from intent, if it holds any, and figure out correct action depending on it
 		String intentAction = intent.getAction();
@@ -4,11 +4,9 @@
 package ax.ha.it.smsalarm.receiver;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import android.content.BroadcastReceiver;
 import android.content.ContentValues;
@@ -18,31 +16,47 @@ import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.PowerManager;
 import android.telephony.SmsMessage;
+import android.telephony.TelephonyManager;
 import ax.ha.it.smsalarm.alarm.Alarm;
 import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler.EventAction;
 import ax.ha.it.smsalarm.application.SmsAlarmApplication.GoogleAnalyticsHandler.EventCategory;
+import ax.ha.it.smsalarm.classifier.AlarmClassifier;
+import ax.ha.it.smsalarm.classifier.Classification;
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.DuplicateAlarmFilter;
+import ax.ha.it.smsalarm.classifier.MultipartSmsBuffer;
+import ax.ha.it.smsalarm.classifier.MultipartSmsBuffer.ConcatHeader;
+import ax.ha.it.smsalarm.classifier.MultipartSmsBuffer.PartialSms;
+import ax.ha.it.smsalarm.classifier.Rule;
+import ax.ha.it.smsalarm.classifier.RuleSet;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer.Storm;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.DatabaseHandler;
 import ax.ha.it.smsalarm.handler.KitKatHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
-import ax.ha.it.smsalarm.handler.SoundHandler;
-import ax.ha.it.smsalarm.handler.VibrationHandler;
 import ax.ha.it.smsalarm.provider.WidgetProvider;
 import ax.ha.it.smsalarm.service.AcknowledgeNotificationService;
 import ax.ha.it.smsalarm.service.NotificationService;
+import ax.ha.it.smsalarm.util.FlightRecorder;
+import ax.ha.it.smsalarm.util.FlightRecorder.Event;
 import ax.ha.it.smsalarm.util.Logger;
+import ax.ha.it.smsalarm.util.Metrics;
+import ax.ha.it.smsalarm.util.Metrics.AlarmStage;
+import ax.ha.it.smsalarm.util.Scheduler;
+import ax.ha.it.smsalarm.util.SmsCaptureLog;
+import ax.ha.it.smsalarm.util.SmsCaptureLog.CapturedSms;
+import ax.ha.it.smsalarm.util.SmsLoadGenerator;
+import ax.ha.it.smsalarm.util.Tracer;
 import ax.ha.it.smsalarm.util.Utils;
-import ax.ha.it.smsalarm.util.WakeLocker;
-
-import com.google.common.base.Optional;
 
 /**
- * Class responsible for receiving SMS and handle them accordingly to the application settings.
+ * Class responsible for receiving SMS and handle them accordingly to the application settings. Whether or not an income SMS is an alarm is decided by
+ * the {@link AlarmClassifier}, this class only feeds it with the rules from the application settings and acts on the result.
  * <p>
  * <b><i>Note.</i></b><br>
  * After the introduction of KitKat(API Level 19) the call to {@link BroadcastReceiver#abortBroadcast()} is no longer of use. This means some special
@@ -57,6 +71,9 @@ public class SmsReceiver extends BroadcastReceiver {
 	// then the income SMS will not be stored into the inbox
 	public static final String ACTION_SKIP_ABORT_BROADCAST = "ax.ha.it.smsalarm.SKIP_ABORT_BROADCAST";
 
+	// Action of the broadcast by which timed out multipart SMS are handed over from the scheduler to the receiver
+	private static final String ACTION_MULTIPART_TIMED_OUT = "ax.ha.it.smsalarm.MULTIPART_TIMED_OUT";
+
 	// Some different labels used when sending events to Google Analytics
 	private static final String ALARM_TRIGGERED_LABEL = "Alarm triggered";
 	private static final String SMS_TRIGGERED_ALARM_LABEL = "Alarm triggered by income SMS(phone number matching)";
@@ -66,32 +83,62 @@ public class SmsReceiver extends BroadcastReceiver {
 	// URI to SMS inbox
 	private static final String SMS_INBOX_URI = "content://sms/inbox";
 
+	// Names of metrics counting received SMS, and classified SMS of each alarm type
+	private static final String METRIC_SMS_RECEIVED = "sms.received";
+	private static final String METRIC_SMS_CLASSIFIED = "sms.classified.";
+	private static final String METRIC_SMS_REJECTED = "sms.rejected";
+	private static final String METRIC_SMS_SEGMENTED = "sms.segmented";
+	private static final String METRIC_SMS_DUPLICATE = "sms.duplicate";
+
+	// A receiver is killed with an ANR after 10 seconds, the flight recorder is dumped if a SMS takes longer than this to handle
+	private static final long RECEIVER_TIMEOUT = 5000;
+	private static final String RECEIVER_TIMEOUT_OPERATION = "SmsReceiver.onReceive";
+
 	// Name of SMS log file
 	private static final String SMS_LOG_FILE = "smslog.txt";
 
-	// How long we should acquire a wake lock
-	private static final int WAKE_LOCKER_ACQUIRE_TIME = 20000;
+	// Binary capture log of income SMS, shared by all receivers as it keeps the file open
+	private static final SmsCaptureLog smsCaptureLog = new SmsCaptureLog("smscapture.bin");
+
+	// Format of SMS PDUs on GSM/UMTS networks, only PDUs of this format are checked for concatenation headers
+	private static final String FORMAT_3GPP = "3gpp";
+
+	// Segments of multipart SMS arriving in separate broadcasts are reassembled here, shared by all receivers. A multipart SMS is given up after the
+	// timeout if not all of it's segments has arrived, and handled with the segments received so far
+	private static final long MULTIPART_TIMEOUT = 60000;
+	private static final String MULTIPART_TIMEOUT_TASK = "SmsReceiver.multipartTimeout";
+	private static final MultipartSmsBuffer multipartSmsBuffer = new MultipartSmsBuffer(MULTIPART_TIMEOUT);
+
+	// Timed out multipart SMS waiting to be handled by the receiver
+	private static final Queue<PartialSms> timedOutSms = new ConcurrentLinkedQueue<PartialSms>();
+
+	// An alarm received again within this time window, in seconds, is a duplicate and only counted on the already raised alarm, 0 disables this
+	public static final int DEFAULT_DUPLICATE_ALARM_WINDOW = 120;
+	private static final DuplicateAlarmFilter duplicateAlarmFilter = new DuplicateAlarmFilter();
 
 	// Objects needed shared preferences, noise and KitKat handling
 	private final SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
 	private final KitKatHandler kitKatHandler = KitKatHandler.getInstance();
 
-	// Lists of Strings containing primary- and secondary SMS numbers
-	private List<String> primarySmsNumbers = new ArrayList<String>();
-	private List<String> secondarySmsNumbers = new ArrayList<String>();
-
-	// List of Strings containing free texts triggering an alarm
-	private List<String> primaryFreeTexts = new ArrayList<String>();
-	private List<String> secondaryFreeTexts = new ArrayList<String>();
+	// Shared preferences of the rules, and the rule set built from them. Shared by all receivers and only rebuilt when any of the rules has changed,
+	// this is detected by comparing the stored JSON strings of the rules
+	// @formatter:off
+	private static final PrefKey[] RULE_PREF_KEYS = { 
+		PrefKey.PRIMARY_LISTEN_NUMBERS_KEY, PrefKey.SECONDARY_LISTEN_NUMBERS_KEY, 
+		PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY, PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY, 
+		PrefKey.PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY, PrefKey.SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY };
+	// @formatter:on
+	private static final String[] cachedRulePrefs = new String[RULE_PREF_KEYS.length];
+	private static RuleSet cachedRuleSet = RuleSet.EMPTY;
 
-	// List of string containing regular expressions triggering an alarm
-	private List<String> primaryRegexs = new ArrayList<String>();
-	private List<String> secondaryRegexs = new ArrayList<String>();
+	// Rules, phone numbers, free texts and regular expressions, which the income SMS is classified against
+	private RuleSet ruleSet = RuleSet.EMPTY;
 
 	// To handle an incoming alarm properly
 	private boolean enableAlarmAck = false;
 	private boolean enableSMSDebugLogging = false;
 	private boolean enableSmsAlarm = false;
+	private int duplicateAlarmWindow = DEFAULT_DUPLICATE_ALARM_WINDOW;
 
 	private AlarmType alarmType = AlarmType.UNDEFINED;
 
@@ -102,6 +149,10 @@ public class SmsReceiver extends BroadcastReceiver {
 	// Text which triggered an alarm if free text triggering is used
 	private String triggerText = "";
 
+	// Multipart SMS the income SMS is a segment of, null if the income SMS is complete, and sequence numbers of the segments within the income SMS
+	private PartialSms partialSms;
+	private final List<Integer> segmentSequences = new ArrayList<Integer>();
+
 	/**
 	 * To take proper actions depending on application settings and SMS senders phone number and/or the text contained within that SMS.
 	 * 
@@ -112,52 +163,140 @@ public class SmsReceiver extends BroadcastReceiver {
 	 */
 	@Override
 	public void onReceive(Context context, Intent intent) {
+		// Not an income SMS, but multipart SMS which has timed out
+		if (ACTION_MULTIPART_TIMED_OUT.equals(intent.getAction())) {
+			handleTimedOut(context);
+			return;
+		}
+
+		// Start tracing the alarm pipeline as early as possible
+		Metrics.getInstance().alarmReceived();
+		Metrics.getInstance().increment(METRIC_SMS_RECEIVED);
+		FlightRecorder.record(Event.SMS_RECEIVED);
+
+		long receivedAt = System.currentTimeMillis();
+
 		fetchSharedPrefs(context);
 
 		// Only if SmsAlarm is enabled
 		if (enableSmsAlarm) {
 			// Catch the SMS passed in
 			Bundle bundle = intent.getExtras();
-			SmsMessage[] msgs = null;
 
 			if (bundle != null) {
-				// Get some data from the SMS
+				// Get some data from the SMS, format is only available from KitKat and later
 				Object[] pdus = (Object[]) bundle.get("pdus");
-				msgs = new SmsMessage[pdus.length];
-
-				for (int i = 0; i < msgs.length; i++) {
-					msgs[i] = SmsMessage.createFromPdu((byte[]) pdus[i]);
-					msgHeader = msgs[i].getOriginatingAddress();
-					msgBody += msgs[i].getMessageBody().toString();
-				}
-
-				// Get rid of any eventual white spaces in incoming phone number
-				msgHeader = Utils.removeSpaces(msgHeader);
-
-				// Check if income SMS was an alarm
-				if (checkAlarm(context)) {
-					// If Android API level is greater or equals to KitKat necessary that we do check this as soon as possible
-					if (isKitKatOrHigher()) {
-						kitKatHandler.handleKitKat(context);
+				String format = bundle.getString("format");
+
+				// Only classify the SMS if it might be an alarm at all, most SMS are rejected here
+				if (decodeSms(context, pdus, format)) {
+					if (partialSms != null && partialSms.isAlarmRaised()) {
+						// Segment of a multipart SMS which already has raised an alarm
+						handleRaisedSegment(context, intent);
+					} else if (checkAlarm()) {
+						// A multipart SMS not yet complete only raises a primary alarm at once, a secondary alarm could still become a primary one
+						if (partialSms != null && !partialSms.isComplete() && !AlarmType.PRIMARY.equals(alarmType)) {
+							alarmType = AlarmType.UNDEFINED;
+						} else if (isKitKatOrHigher()) {
+							// If Android API level is greater or equals to KitKat necessary that we do check this as soon as possible
+							kitKatHandler.handleKitKat(context);
+						}
 					}
+				} else {
+					Metrics.getInstance().increment(METRIC_SMS_REJECTED);
 				}
 
 				// Check if the income SMS was any alarm
 				if (!alarmType.equals(AlarmType.UNDEFINED)) {
 					// Continue handling of received SMS
-					handleSMS(context, intent);
+					handleAlarm(context, intent);
+				}
 
-					// Report alarm triggered
-					GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.ALARM_TRIGGERED, ALARM_TRIGGERED_LABEL);
+				// Segments of a multipart SMS which broadcast wasn't aborted are delivered to the inbox by the system, they must never be stored again
+				if (partialSms != null && !getAbortBroadcast()) {
+					multipartSmsBuffer.segmentsDelivered(partialSms, segmentSequences);
 				}
 
 				// At last if SMS Debug logging is enabled do the logging of income SMS
 				if (enableSMSDebugLogging) {
-					// Instantiate a new Logger object at this point, only if it's needed, we don't want to do unnecessary work in the receiver
+					// Instantiate a new Logger object at this point, only if it's needed, the record is only queued here and written to file on a
+					// background thread so no I/O is made in the receiver
 					new Logger(SMS_LOG_FILE).log2File(msgHeader + "\t" + msgBody);
+
+					// Capture the raw PDUs and the classification too, so the SMS can be replayed exactly as it was received
+					byte[][] rawPdus = new byte[pdus.length][];
+
+					for (int i = 0; i < pdus.length; i++) {
+						rawPdus[i] = (byte[]) pdus[i];
+					}
+
+					smsCaptureLog.append(new CapturedSms(System.currentTimeMillis(), rawPdus, format, msgHeader, msgBody, alarmType.name(), triggerText));
 				}
 			}
 		}
+
+		// Analytics events queued while handling the SMS are sent in the background, once the alarm has been raised
+		GoogleAnalyticsHandler.dispatchQueuedEvents();
+
+		// Mock SMS dispatched by the load generator records their latency, ignored for any other SMS
+		SmsLoadGenerator.getInstance().messageHandled(intent, alarmType);
+
+		long handledMillis = System.currentTimeMillis() - receivedAt;
+
+		if (handledMillis > RECEIVER_TIMEOUT) {
+			FlightRecorder.timeout(RECEIVER_TIMEOUT_OPERATION, handledMillis);
+		}
+	}
+
+	/**
+	 * To handle the income SMS, classified as an alarm. If the SMS is a duplicate of an alarm received within the duplicate alarm window it's only
+	 * counted as a repeat of that alarm, else it's handled as a new alarm.
+	 * 
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @param intent
+	 *            Intent from which data are fetched.
+	 * @see DuplicateAlarmFilter
+	 */
+	private void handleAlarm(Context context, Intent intent) {
+		int duplicateOf = DuplicateAlarmFilter.NO_ALARM;
+
+		// Segments of a multipart SMS not yet complete can't be compared with complete alarms
+		if (duplicateAlarmWindow > 0 && (partialSms == null || partialSms.isComplete())) {
+			duplicateOf = duplicateAlarmFilter.findDuplicate(msgHeader, msgBody, duplicateAlarmWindow * 1000L, System.currentTimeMillis());
+		}
+
+		if (duplicateOf != DuplicateAlarmFilter.NO_ALARM) {
+			handleDuplicate(context, intent, duplicateOf);
+		} else {
+			handleSMS(context, intent);
+
+			// Report alarm triggered
+			GoogleAnalyticsHandler.queueEvent(EventCategory.ALARM, EventAction.ALARM_TRIGGERED, ALARM_TRIGGERED_LABEL);
+		}
+	}
+
+	/**
+	 * To handle the income SMS as a duplicate of an already raised alarm. The SMS is stored in the inbox as any alarm, but no alarm is raised, instead
+	 * the number of repeats of the already raised alarm is incremented.
+	 * 
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @param intent
+	 *            Intent from which data are fetched.
+	 * @param alarmId
+	 *            Id of the alarm the SMS is a duplicate of.
+	 */
+	private void handleDuplicate(Context context, Intent intent, int alarmId) {
+		if (!ACTION_SKIP_ABORT_BROADCAST.equals(intent.getAction())) {
+			abortBroadcast();
+			storeInInbox(context, msgHeader, resolveInboxBody());
+		}
+
+		new DatabaseHandler(context).incrementRepeats(alarmId);
+
+		Metrics.getInstance().increment(METRIC_SMS_DUPLICATE);
+		FlightRecorder.record(Event.ALARM_DUPLICATE, alarmId);
 	}
 
 	/**
@@ -172,371 +311,411 @@ public class SmsReceiver extends BroadcastReceiver {
 	 *            Intent from which data are fetched.
 	 */
 	private void handleSMS(Context context, Intent intent) {
-		// Only abort broadcast if not intent action skip abort broadcast are set, this action is used for debug/testing purpose
-		if (!ACTION_SKIP_ABORT_BROADCAST.equals(intent.getAction())) {
-			// Abort broadcast, SmsAlarm will handle income SMS on it's own
-			abortBroadcast();
-
-			// Due to previous abort we have to store the SMS manually in phones inbox
-			// for some reason this must also be done even if application runs on KitKat, this is strange because abortBroadcast() should be totally
-			// ignored on that version, therefore the SMS should be placed in inbox without this snippet. Almost seems like a bug in Android....
-			ContentValues values = new ContentValues();
-			values.put("address", msgHeader);
-			values.put("body", msgBody);
-			context.getContentResolver().insert(Uri.parse(SMS_INBOX_URI), values);
-		}
+		// Counts down the alarms left to record, if an alarm trace is being recorded
+		Tracer.alarmReceived();
+		Tracer.begin("SmsReceiver.handleSMS");
+
+		try {
+			// Only abort broadcast if not intent action skip abort broadcast are set, this action is used for debug/testing purpose
+			if (!ACTION_SKIP_ABORT_BROADCAST.equals(intent.getAction())) {
+				// Abort broadcast, SmsAlarm will handle income SMS on it's own
+				abortBroadcast();
+
+				// Due to previous abort we have to store the SMS manually in phones inbox
+				// for some reason this must also be done even if application runs on KitKat, this is strange because abortBroadcast() should be totally
+				// ignored on that version, therefore the SMS should be placed in inbox without this snippet. Almost seems like a bug in Android....
+				// A multipart SMS not yet complete is stored once all of it's segments has arrived
+				if (partialSms == null || partialSms.isComplete()) {
+					storeInInbox(context, msgHeader, resolveInboxBody());
+				}
+			}
 
-		// Create a new alarm from this income SMS(alarm)...
-		Alarm alarm = new Alarm(msgHeader, msgBody, triggerText, alarmType);
+			// Create a new alarm from this income SMS(alarm)...
+			Alarm alarm = new Alarm(msgHeader, msgBody, triggerText, alarmType);
 
-		// ...get database access and insert the alarm into database
-		DatabaseHandler db = new DatabaseHandler(context);
-		alarm = db.insertAlarm(alarm);
+			// ...get database access and insert the alarm into database
+			DatabaseHandler db = new DatabaseHandler(context);
+			alarm = db.insertAlarm(alarm);
 
-		// Update all widgets associated with this application
-		WidgetProvider.updateWidgets(context);
-
-		// Detect whether screen is on or off, if it's off we need to wake it
-		PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-		if (!pm.isScreenOn()) {
-			// Wake up device by acquire a wake lock and then release it after given time,
-			// the time depends on if device runs on KitKat(or higher) or not
-			if (isKitKatOrHigher()) {
-				WakeLocker.acquireAndRelease(context, (WAKE_LOCKER_ACQUIRE_TIME + KitKatHandler.RINGER_MODE_DELAY));
+			// The alarm is completed with the rest of the message once all segments has arrived, only complete SMS can be found as duplicates
+			if (partialSms != null && !partialSms.isComplete()) {
+				multipartSmsBuffer.alarmRaised(partialSms, alarm.getId());
 			} else {
-				WakeLocker.acquireAndRelease(context, WAKE_LOCKER_ACQUIRE_TIME);
+				duplicateAlarmFilter.alarmRaised(msgHeader, msgBody, alarm.getId(), System.currentTimeMillis());
 			}
-		}
 
-		// Play alarm signal and vibrate
-		SoundHandler.getInstance().alarm(context, alarmType);
-		VibrationHandler.getInstance().alarm(context, alarmType);
+			Metrics.getInstance().alarmStage(AlarmStage.STORED);
+			FlightRecorder.record(Event.ALARM_STORED, alarm.getId());
 
-		// Acknowledge is enabled and it is a primary alarm, show acknowledge notification, else show "ordinary" notification
-		if (enableAlarmAck && alarmType.equals(AlarmType.PRIMARY)) {
-			// Start intent, AcknowledgeNotificationService with the received alarm as extra
-			Intent ackNotIntent = new Intent(context, AcknowledgeNotificationService.class);
-			ackNotIntent.putExtra(Alarm.TAG, alarm);
-			context.startService(ackNotIntent);
-		} else {
-			// Start intent, NotificationService
-			Intent notIntent = new Intent(context, NotificationService.class);
+			// Update all widgets associated with this application
+			WidgetProvider.updateWidgets(context);
+
+			// Acknowledge is enabled and it is a primary alarm, show acknowledge notification, else show "ordinary" notification
+			boolean acknowledgeNotification = enableAlarmAck && alarmType.equals(AlarmType.PRIMARY);
+			Intent notIntent = new Intent(context, acknowledgeNotification ? AcknowledgeNotificationService.class : NotificationService.class);
 			notIntent.putExtra(Alarm.TAG, alarm);
+
+			// Play alarm signal and vibrate, the alert handler wakes the device if needed and raises the alarm on it's own thread, unless the alarm is
+			// coalesced into an ongoing alarm storm. Any wake lock held until the notification is posted is passed along with the notification intent
+			Storm storm = AlertHandler.getInstance().alarm(context, alarmType, notIntent);
+
+			// Each alarm to acknowledge gets a notification of it's own as each alarm must be acknowledged on it's own, else alarms of same storm and
+			// type shares one notification
+			if (!acknowledgeNotification) {
+				notIntent.putExtra(NotificationService.EXTRA_STORM_START, storm.getStartMillis());
+				notIntent.putExtra(NotificationService.EXTRA_STORM_ALARMS, AlarmType.PRIMARY.equals(alarmType) ? storm.getPrimaryAlarms() : storm.getSecondaryAlarms());
+			}
+
 			context.startService(notIntent);
+		} finally {
+			Tracer.end();
 		}
 	}
 
 	/**
-	 * To fetch all {@link SharedPreferences} used by {@link SmsReceiver} class.
+	 * To handle a segment of a multipart SMS for which an alarm already has been raised, by an earlier segment. The segment is kept out of the inbox
+	 * and once all segments has arrived the segments kept out of the inbox are stored in the inbox and the message of the raised alarm is completed.
 	 * 
 	 * @param context
 	 *            The Context in which the receiver is running.
+	 * @param intent
+	 *            Intent from which data are fetched.
 	 */
-	@SuppressWarnings("unchecked")
-	private void fetchSharedPrefs(Context context) {
-		primarySmsNumbers = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_NUMBERS_KEY, DataType.LIST, context);
-		secondarySmsNumbers = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_NUMBERS_KEY, DataType.LIST, context);
-		primaryFreeTexts = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY, DataType.LIST, context);
-		secondaryFreeTexts = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY, DataType.LIST, context);
-		primaryRegexs = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY, DataType.LIST, context);
-		secondaryRegexs = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY, DataType.LIST, context);
-		enableAlarmAck = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ENABLE_ACK_KEY, DataType.BOOLEAN, context);
-		enableSMSDebugLogging = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ENABLE_SMS_DEBUG_LOGGING, DataType.BOOLEAN, context);
-		enableSmsAlarm = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ENABLE_SMS_ALARM_KEY, DataType.BOOLEAN, context, true);
+	private void handleRaisedSegment(Context context, Intent intent) {
+		if (!ACTION_SKIP_ABORT_BROADCAST.equals(intent.getAction())) {
+			abortBroadcast();
+
+			if (partialSms.isComplete()) {
+				storeInInbox(context, msgHeader, partialSms.getUndeliveredBody());
+			}
+		}
+
+		if (partialSms.isComplete()) {
+			completeAlarm(context, partialSms);
+		}
 	}
 
 	/**
-	 * <b><i>Alarm</i></b>. For this to happen the income SMS must fulfill criteria for either a {@link AlarmType#PRIMARY} or
-	 * {@link AlarmType#SECONDARY}.
+	 * To resolve the body of the income SMS to store in the inbox, as it's broadcast is aborted. For a multipart SMS reassembled from segments
+	 * delivered in separate broadcasts only the segments not already delivered to the inbox are stored, see {@link PartialSms#getUndeliveredBody()}.
+	 * 
+	 * @return Body of SMS to store in the inbox.
+	 */
+	private String resolveInboxBody() {
+		return partialSms != null ? partialSms.getUndeliveredBody() : msgBody;
+	}
+
+	/**
+	 * To store a SMS with given sender and body in the phones inbox.
 	 * 
 	 * @param context
 	 *            The Context in which the receiver is running.
-	 * @return <code>true</code> if income SMS was an alarm else <code>false</code>.
-	 * @see #checkSmsAlarm(Context)
-	 * @see #checkFreeTextAlarm(Context)
-	 * @see #checkRegexAlarm(Context)
+	 * @param sender
+	 *            Senders phone number.
+	 * @param body
+	 *            Body of SMS.
 	 */
-	private boolean checkAlarm(Context context) {
-		// Figure out if we got an alarm and return appropriate value
-		boolean isSmsAlarm = checkSmsAlarm(context);
-		boolean isFreeTextAlarm = checkFreeTextAlarm(context);
-		boolean isRegexAlarm = checkRegexAlarm(context);
-
-		return isSmsAlarm || isFreeTextAlarm || isRegexAlarm;
+	private static void storeInInbox(Context context, String sender, String body) {
+		ContentValues values = new ContentValues();
+		values.put("address", sender);
+		values.put("body", body);
+		context.getContentResolver().insert(Uri.parse(SMS_INBOX_URI), values);
 	}
 
 	/**
-	 * To check if received SMS is an <b><i>Alarm</i></b>. The check is done by a <b><i>equality control</i></b> of the senders phone number.
+	 * To complete the message of the alarm raised before all segments of given multipart SMS had arrived, with the body of all segments received.
 	 * 
 	 * @param context
 	 *            The Context in which the receiver is running.
-	 * @return <code>true</code> if income SMS was an <b><i>Number Triggered</i></b> alarm else <code>false</code>.
+	 * @param sms
+	 *            Multipart SMS which has raised an alarm.
 	 */
-	private boolean checkSmsAlarm(Context context) {
-		// Needed to figure out if income SMS is an alarm
-		boolean isAlarm = false;
-
-		// First check for primary alarm...
-		for (String primarySmsNumber : primarySmsNumbers) {
-			// If msgHeader(senders phone number) exists in the list of primary SMS numbers, store alarm type and indicate that the SMS is an alarm.
-			// Only needed to check this also if the income SMS hasn't been recognized as an alarm yet
-			if (!isAlarm && msgHeader.equals(primarySmsNumber)) {
-				alarmType = AlarmType.PRIMARY;
-				isAlarm = true;
-
-				// Report alarm was triggered to Google Analytics
-				GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.PRIMARY_ALARM_TRIGGERED, SMS_TRIGGERED_ALARM_LABEL);
-			}
-		}
+	private static void completeAlarm(Context context, PartialSms sms) {
+		// Only the message is updated, duplicates of the alarm may be counted on it meanwhile
+		new DatabaseHandler(context).updateMessage(sms.getAlarmId(), sms.getBody());
 
-		// Income SMS already figured out to be a primary alarm as it triggered on number, no need for further checks
-		if (!isAlarm) {
-			// / ...then secondary alarm if income SMS wasn't resolved as a primary alarm from number triggering
-			for (String secondarySmsNumber : secondarySmsNumbers) {
-				if (!isAlarm && msgHeader.equals(secondarySmsNumber)) {
-					alarmType = AlarmType.SECONDARY;
-					isAlarm = true;
+		// Now the alarm can be found as a duplicate, by it's complete message
+		duplicateAlarmFilter.alarmRaised(sms.getSender(), sms.getBody(), sms.getAlarmId(), System.currentTimeMillis());
 
-					// Again report alarm was triggered to Google Analytics
-					GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.SECONDARY_ALARM_TRIGGERED, SMS_TRIGGERED_ALARM_LABEL);
-				}
-			}
-		}
+		WidgetProvider.updateWidgets(context);
+	}
 
-		return isAlarm;
+	/**
+	 * To complete the alarm raised for given multipart SMS which has timed out, or been evicted from {@link #multipartSmsBuffer}, before all of it's
+	 * segments has arrived. The segments received since the alarm was raised were kept from the inbox, so they are stored in the inbox now.
+	 * 
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @param sms
+	 *            Multipart SMS which has raised an alarm.
+	 */
+	private static void completeTimedOutAlarm(Context context, PartialSms sms) {
+		storeInInbox(context, sms.getSender(), sms.getUndeliveredBody());
+		completeAlarm(context, sms);
 	}
 
 	/**
-	 * To check if received SMS is a <b><i>Alarm</i></b>.The check is done by a <b><i>equality control</i></b> of the <b><i>words</i></b> within the
-	 * income SMS.
+	 * To schedule handling of multipart SMS which haven't got all of their segments within {@link #MULTIPART_TIMEOUT}. As tasks of the
+	 * {@link Scheduler} must never block the scheduled task only hands the timed out SMS over to the receiver, by a broadcast, on which they are
+	 * handled, see {@link #handleTimedOut(Context)}.
 	 * 
 	 * @param context
 	 *            The Context in which the receiver is running.
-	 * @return <code>true</code> if income SMS was an <b><i>Free Text Triggered</i></b> alarm else <code>false</code>.
 	 */
-	private boolean checkFreeTextAlarm(Context context) {
-		// Needed to figure out if income SMS is an alarm
-		boolean isAlarm = false;
-
-		// First check for primary alarm...
-		for (String primaryFreeText : primaryFreeTexts) {
-			// If any of the words within the msgBody exists in the list of primary free texts, store alarm, set the trigger texts and indicate alarm
-			if (findWordEqualsIgnore(primaryFreeText, msgBody)) {
-				alarmType = AlarmType.PRIMARY;
-				isAlarm = true;
-
-				// Report alarm was triggered to Google Analytics
-				GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.PRIMARY_ALARM_TRIGGERED, FREE_TEXT_TRIGGERED_ALARM_LABEL);
-			}
-		}
+	private static void scheduleMultipartTimeout(Context context) {
+		final Context applicationContext = context.getApplicationContext();
 
-		// Income SMS already figured out to be a primary alarm as it triggered on free text, no need for further checks
-		if (!isAlarm) {
-			// Only proceed if current, resolved alarm type isn't primary, we don't want to down grade a primary alarm
-			if (!AlarmType.PRIMARY.equals(alarmType)) {
-				// Check if received message trigger primary alarm on regular expression, if so don't proceed, this is to prevent alarm being set to
-				// secondary when it's actually a primary alarm, this is a bit ugly but it works
-				if (notPrimaryRegexAlarm()) {
-					// ...then secondary alarm if income SMS wasn't resolved as a primary alarm from free text triggering
-					for (String secondaryFreeText : secondaryFreeTexts) {
-						if (findWordEqualsIgnore(secondaryFreeText, msgBody)) {
-							alarmType = AlarmType.SECONDARY;
-							isAlarm = true;
-
-							GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.SECONDARY_ALARM_TRIGGERED, FREE_TEXT_TRIGGERED_ALARM_LABEL);
-						}
-					}
+		Scheduler.getInstance().schedule(MULTIPART_TIMEOUT_TASK, new Runnable() {
+			@Override
+			public void run() {
+				List<PartialSms> expired = multipartSmsBuffer.expire(System.currentTimeMillis());
+
+				if (!expired.isEmpty()) {
+					timedOutSms.addAll(expired);
+					applicationContext.sendBroadcast(new Intent(applicationContext, SmsReceiver.class).setAction(ACTION_MULTIPART_TIMED_OUT));
 				}
 			}
-		}
-
-		return isAlarm;
+		}, MULTIPART_TIMEOUT);
 	}
 
 	/**
-	 * To check if received SMS is a <b><i>Alarm</i></b>.The check is done by a <b><i>regular expression pattern matching</i></b> of the
-	 * <b><i>contents</i></b> of the income SMS.
+	 * To handle the multipart SMS handed over by the scheduler as they have timed out. A timed out SMS which already has raised an alarm is stored in
+	 * the inbox and gets the message of the alarm completed with the segments received. Any other is classified on the segments received and handled
+	 * as any SMS if it's an alarm, as it's segments never were kept from the inbox they are not stored again.
 	 * 
 	 * @param context
 	 *            The Context in which the receiver is running.
-	 * @return <code>true</code> if income SMS was an <b><i>Regular Expression Match Triggered</i></b> alarm else <code>false</code>.
 	 */
-	private boolean checkRegexAlarm(Context context) {
-		boolean isAlarm = false;
-
-		// First check for primary alarm..
-		for (String primaryRegex : primaryRegexs) {
-			// If contents within the msgBody does match any of the regular expressions within the list of primary regular expressions, store alarm,
-			// set the trigger regular expression and indicate alarm
-			if (matchRegex(primaryRegex, msgBody)) {
-				alarmType = AlarmType.PRIMARY;
-				isAlarm = true;
-
-				GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.PRIMARY_ALARM_TRIGGERED, REGEX_TRIGGERED_ALARM_LABEL);
-			}
-		}
+	private void handleTimedOut(Context context) {
+		fetchSharedPrefs(context);
 
-		// Income SMS already figured out to be a primary alarm as it triggered on regular expression, no need for further checks
-		if (!isAlarm) {
-			// Only if current, resolved alarm type isn't primary, we don't want to down grade a primary alarm
-			if (!AlarmType.PRIMARY.equals(alarmType)) {
-				// ...then secondary alarm if income SMS wasn't resolved as a primary alarm from regular expression triggering
-				for (String secondaryRegex : secondaryRegexs) {
-					if (matchRegex(secondaryRegex, msgBody)) {
-						alarmType = AlarmType.SECONDARY;
-						isAlarm = true;
-
-						GoogleAnalyticsHandler.sendEvent(EventCategory.ALARM, EventAction.SECONDARY_ALARM_TRIGGERED, REGEX_TRIGGERED_ALARM_LABEL);
-					}
+		PartialSms sms;
+
+		while ((sms = timedOutSms.poll()) != null) {
+			if (sms.isAlarmRaised()) {
+				completeTimedOutAlarm(context, sms);
+			} else if (enableSmsAlarm) {
+				msgHeader = sms.getSender();
+				msgBody = sms.getBody();
+				alarmType = AlarmType.UNDEFINED;
+				triggerText = "";
+
+				if (checkAlarm()) {
+					// Segments are already delivered to the inbox, so the broadcast must not be aborted
+					handleAlarm(context, new Intent(ACTION_SKIP_ABORT_BROADCAST));
 				}
 			}
 		}
 
-		return isAlarm;
+		GoogleAnalyticsHandler.dispatchQueuedEvents();
 	}
 
 	/**
-	 * Convenience method to set the <b><i>Trigger Text</i></b> of income SMS.
+	 * To fetch all {@link SharedPreferences} used by {@link SmsReceiver} class.
 	 * 
-	 * @param triggerText
-	 *            Text to be set as trigger text.
+	 * @param context
+	 *            The Context in which the receiver is running.
 	 */
-	private void setTriggerText(String triggerText) {
-		// If existing text is empty just add trigger text else concatenate and add trigger text
-		if (this.triggerText.length() == 0) {
-			this.triggerText = triggerText;
-		} else {
-			this.triggerText = this.triggerText + ", " + triggerText;
+	private void fetchSharedPrefs(Context context) {
+		ruleSet = resolveRuleSet(context);
+		enableAlarmAck = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ENABLE_ACK_KEY, DataType.BOOLEAN, context);
+		enableSMSDebugLogging = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ENABLE_SMS_DEBUG_LOGGING, DataType.BOOLEAN, context);
+		enableSmsAlarm = (Boolean) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.ENABLE_SMS_ALARM_KEY, DataType.BOOLEAN, context, true);
+		duplicateAlarmWindow = (Integer) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.DUPLICATE_ALARM_WINDOW_KEY, DataType.INTEGER, context, DEFAULT_DUPLICATE_ALARM_WINDOW);
+	}
+
+	/**
+	 * To resolve the {@link RuleSet} built from the rules stored in {@link SharedPreferences}. The rule set is only built again if any of the rules
+	 * has changed since last time, else the previously built rule set is returned.
+	 * 
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @return Resolved rule set.
+	 */
+	@SuppressWarnings("unchecked")
+	private synchronized static RuleSet resolveRuleSet(Context context) {
+		SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
+		boolean changed = false;
+
+		// The rules are stored as JSON strings, compare them as they are without parsing them
+		for (int i = 0; i < RULE_PREF_KEYS.length; i++) {
+			String rulePrefs = (String) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, RULE_PREF_KEYS[i], DataType.STRING, context);
+
+			if (!rulePrefs.equals(cachedRulePrefs[i])) {
+				cachedRulePrefs[i] = rulePrefs;
+				changed = true;
+			}
 		}
+
+		if (changed) {
+			// @formatter:off
+			cachedRuleSet = new RuleSet(
+					(List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_NUMBERS_KEY, DataType.LIST, context), 
+					(List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_NUMBERS_KEY, DataType.LIST, context), 
+					(List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY, DataType.LIST, context), 
+					(List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY, DataType.LIST, context), 
+					(List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY, DataType.LIST, context), 
+					(List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY, DataType.LIST, context));
+			// @formatter:on
+		}
+
+		return cachedRuleSet;
 	}
 
 	/**
-	 * To check if <code>String</code>(textToParse) passed in as argument contains another <code>String</code>(wordToFind) passed in as argument. This
-	 * method only checks whole words and not a <code>CharSequence</code>.<br>
-	 * This method does also set the triggering text, the text which triggered an alarm, in this case a specific word was found.<br>
-	 * <b><i>Note. Method is not case sensitive.</i></b>
+	 * To decode the income SMS from given PDUs into sender and body, but only as far as needed to figure out whether it might be an alarm at all.
+	 * This is done in stages, each more expensive than the previous:
+	 * <ol>
+	 * <li>If there are no rules, nothing is decoded.</li>
+	 * <li>If there are only number rules, only the first PDU is decoded for the sender. The rest of the SMS is only decoded if the sender is the
+	 * phone number of any number rule, as the whole body is needed when the alarm is raised.</li>
+	 * <li>The whole body is decoded and run through the prefilter, see {@link AlarmClassifier#mightBeAlarm(RuleSet, String, String)}.</li>
+	 * </ol>
+	 * If SMS debug logging is enabled the whole SMS is always decoded, as it's logged. If the income SMS is only some of the segments of a multipart
+	 * SMS they are reassembled with earlier received segments, see {@link #bufferSegments(Context, SmsMessage, Object[])}.
 	 * 
-	 * @param wordToFind
-	 *            Word to find.
-	 * @param textToParse
-	 *            Text to look for word in.
-	 * @return <code>true</code> if word is found, else <code>false</code>.
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @param pdus
+	 *            PDUs of the income SMS.
+	 * @param format
+	 *            Format of the PDUs, <code>null</code> if not known.
+	 * @return <code>true</code> if SMS might be an alarm and should be classified, else <code>false</code>.
 	 */
-	private boolean findWordEqualsIgnore(String wordToFind, String textToParse) {
-		boolean result = false;
+	private boolean decodeSms(Context context, Object[] pdus, String format) {
+		if (ruleSet.isEmpty() && !enableSMSDebugLogging) {
+			return false;
+		}
 
-		if (wordToFind != null && textToParse != null) {
-			if ((wordToFind.length() != 0) && (textToParse.length() != 0)) {
-				List<String> words = Arrays.asList(textToParse.split(" "));
+		SmsMessage firstMessage = SmsMessage.createFromPdu((byte[]) pdus[0]);
 
-				for (String word : words) {
-					if (wordToFind.equalsIgnoreCase(word)) {
-						result = true;
+		// Get rid of any eventual white spaces in incoming phone number
+		msgHeader = Utils.removeSpaces(firstMessage.getOriginatingAddress());
 
-						// Set triggering text
-						setTriggerText(word);
-					}
-				}
-			}
+		// Segments of a multipart SMS delivered in separate broadcasts must be reassembled before they can be prefiltered and classified
+		ConcatHeader concatHeader = is3gpp(context, format) ? ConcatHeader.parse((byte[]) pdus[0]) : null;
+
+		if (concatHeader != null && pdus.length < concatHeader.getCount()) {
+			bufferSegments(context, firstMessage, pdus);
+
+			return partialSms.isAlarmRaised() || AlarmClassifier.mightBeAlarm(ruleSet, msgHeader, msgBody);
+		}
+
+		if (!ruleSet.hasBodyRules() && !enableSMSDebugLogging && !ruleSet.isRuleSender(msgHeader)) {
+			return false;
+		}
+
+		StringBuilder body = new StringBuilder(msgBody).append(firstMessage.getMessageBody());
+
+		for (int i = 1; i < pdus.length; i++) {
+			body.append(SmsMessage.createFromPdu((byte[]) pdus[i]).getMessageBody());
 		}
 
-		return result;
+		msgBody = body.toString();
+
+		return AlarmClassifier.mightBeAlarm(ruleSet, msgHeader, msgBody);
 	}
 
 	/**
-	 * To check if <code>String</code>(textToParse) passed in as argument has any text sequences that matches the regular expression
-	 * <code>String</code>(regex) passed in as argument.<br>
-	 * This method does also set the triggering text, the text which triggered an alarm, in this case a regular expression pattern match.
+	 * To add the segments of a multipart SMS, delivered in the income SMS, to {@link #multipartSmsBuffer}. If this completes the multipart SMS the
+	 * body is the whole message, else the body is the prefix of it known so far, see {@link PartialSms#getPrefix()}.
 	 * 
-	 * @param regex
-	 *            Regular expression to find matches of.
-	 * @param textToParse
-	 *            Text to find matches of regular expression in.
-	 * @return <code>true</code> if regular expression has any matches, else <code>false</code>.
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @param firstMessage
+	 *            Already decoded first segment.
+	 * @param pdus
+	 *            PDUs of the income SMS.
 	 */
-	private boolean matchRegex(String regex, String textToParse) {
-		boolean result = false;
-
-		if (regex != null && textToParse != null) {
-			if ((regex.length() != 0) && (textToParse.length() != 0)) {
-				// Resolve pattern and try to find a match if possible
-				Optional<Pattern> optionalPattern = resolvePattern(regex);
-				if (optionalPattern.isPresent()) {
-					Pattern pattern = optionalPattern.get();
-					Matcher matcher = pattern.matcher(textToParse);
-
-					// Iterate over all occurrences, often this is just once
-					while (matcher.find()) {
-						result = true;
-
-						// Set triggering text
-						setTriggerText(matcher.group());
-					}
-				}
+	private void bufferSegments(Context context, SmsMessage firstMessage, Object[] pdus) {
+		long now = System.currentTimeMillis();
+
+		for (int i = 0; i < pdus.length; i++) {
+			SmsMessage message = i == 0 ? firstMessage : SmsMessage.createFromPdu((byte[]) pdus[i]);
+			ConcatHeader concatHeader = ConcatHeader.parse((byte[]) pdus[i]);
+
+			if (concatHeader != null) {
+				partialSms = multipartSmsBuffer.add(msgHeader, concatHeader, message.getMessageBody(), now);
+				segmentSequences.add(concatHeader.getSequence());
 			}
 		}
 
-		return result;
+		Metrics.getInstance().increment(METRIC_SMS_SEGMENTED);
+
+		// Evicted SMS having raised alarms are handled as if they had timed out, their segments must not be lost
+		for (PartialSms evicted : multipartSmsBuffer.takeEvicted()) {
+			completeTimedOutAlarm(context, evicted);
+		}
+
+		if (partialSms.isComplete()) {
+			msgBody = partialSms.getBody();
+		} else {
+			msgBody = partialSms.getPrefix();
+			scheduleMultipartTimeout(context);
+		}
 	}
 
 	/**
-	 * Convenience method to check that any of the primary regular expressions doesn't match any text sequence within the received message. In short
-	 * that a primary alarm will not be triggered due to regular expression pattern matching.<br>
-	 * Note. This method is used to prevent a secondary alarm being triggered for free texts, so it's a bit special.
+	 * To figure out if the income SMS is of 3GPP format, that is a GSM/UMTS SMS. Before KitKat the format isn't delivered with the SMS, it's then
+	 * resolved from the phone type.
 	 * 
-	 * @return <code>true</code> if received message doesn't contains any text sequences matching any of the regular expressions set for primary alarm
-	 *         triggering, else <code>false</code>.
+	 * @param context
+	 *            The Context in which the receiver is running.
+	 * @param format
+	 *            Format of the PDUs, <code>null</code> if not known.
+	 * @return <code>true</code> if SMS is of 3GPP format, else <code>false</code>.
 	 */
-	private boolean notPrimaryRegexAlarm() {
-		boolean result = true;
-
-		for (String primaryRegex : primaryRegexs) {
-			if (primaryRegex != null && msgBody != null) {
-				if ((primaryRegex.length() != 0) && (msgBody.length() != 0)) {
-					// Resolve pattern and try to find a match if possible
-					Optional<Pattern> optionalPattern = resolvePattern(primaryRegex);
-					if (optionalPattern.isPresent()) {
-						Pattern pattern = optionalPattern.get();
-						Matcher matcher = pattern.matcher(msgBody);
-
-						if (matcher.find()) {
-							result = false;
-						}
-					}
-				}
-			}
+	private boolean is3gpp(Context context, String format) {
+		if (format != null) {
+			return FORMAT_3GPP.equals(format);
 		}
 
-		return result;
+		TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+
+		return telephonyManager.getPhoneType() == TelephonyManager.PHONE_TYPE_GSM;
 	}
 
 	/**
-	 * To resolve a {@link Pattern} from given <code>regular expression</code>. This method will first try to resolve the <code>Pattern</code> from
-	 * given regular expression straight away, if that's not possible the given regular expression will be escaped then the <code>Pattern</code> will
-	 * be tried to be resolved once more.
+	 * To check if received SMS is an <b><i>Alarm</i></b>. For this to happen the income SMS must fulfill criteria for either a
+	 * {@link AlarmType#PRIMARY} or {@link AlarmType#SECONDARY}. The actual classification is made by the {@link AlarmClassifier}, this method only
+	 * stores the result and reports each matched rule to Google Analytics.
 	 * 
-	 * @param regex
-	 *            Regular expression from which a pattern will be resolved, if possible.
-	 * @return An {@link Optional} containing resolved <code>Pattern</code> if it's possible to be resolved, else an {@link Optional#absent()} is
-	 *         returned.
+	 * @return <code>true</code> if income SMS was an alarm else <code>false</code>.
 	 */
-	private Optional<Pattern> resolvePattern(String regex) {
-		Optional<Pattern> resolvedPattern = Optional.<Pattern> absent();
-
-		if (regex != null && regex.length() != 0) {
-			// Only try to resolve the pattern twice and as long as it hasn't been resolved
-			for (int tries = 0; tries < 2 && !resolvedPattern.isPresent(); tries++) {
-				// Try to compile the regular expression straight away..
-				try {
-					resolvedPattern = Optional.<Pattern> fromNullable(Pattern.compile(regex));
-				} catch (PatternSyntaxException pse) {
-					// ... something was wrong with it, as a fall back try to escape it for the next pattern compilation
-					regex = regex.replaceAll("([^a-zA-Z0-9])", "\\\\$1");
+	private boolean checkAlarm() {
+		Tracer.begin("SmsReceiver.checkAlarm");
+
+		try {
+			Classification classification = AlarmClassifier.classify(ruleSet, msgHeader, msgBody);
+
+			alarmType = AlarmType.valueOf(classification.getType().name());
+			triggerText = classification.getTriggerText();
+
+			Metrics.getInstance().alarmStage(AlarmStage.CLASSIFIED);
+			FlightRecorder.record(Event.SMS_CLASSIFIED, alarmType.name());
+			Metrics.getInstance().increment(METRIC_SMS_CLASSIFIED + alarmType.name());
+
+			// Report each rule which triggered the alarm
+			for (Rule rule : classification.getMatchedRules()) {
+				EventAction eventAction = Type.PRIMARY.equals(rule.getType()) ? EventAction.PRIMARY_ALARM_TRIGGERED : EventAction.SECONDARY_ALARM_TRIGGERED;
+
+				switch (rule.getKind()) {
+					case NUMBER:
+						GoogleAnalyticsHandler.queueEvent(EventCategory.ALARM, eventAction, SMS_TRIGGERED_ALARM_LABEL);
+						break;
+					case FREE_TEXT:
+						GoogleAnalyticsHandler.queueEvent(EventCategory.ALARM, eventAction, FREE_TEXT_TRIGGERED_ALARM_LABEL);
+						break;
+					case REGEX:
+						GoogleAnalyticsHandler.queueEvent(EventCategory.ALARM, eventAction, REGEX_TRIGGERED_ALARM_LABEL);
+						break;
 				}
 			}
-		}
 
-		return resolvedPattern;
+			return classification.isAlarm();
+		} finally {
+			Tracer.end();
+		}
 	}
 
 	/**
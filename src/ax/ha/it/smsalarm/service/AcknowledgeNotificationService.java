@@ -13,6 +13,7 @@ import android.content.Intent;
 import android.support.v4.app.NotificationCompat;
 import ax.ha.it.smsalarm.R;
 import ax.ha.it.smsalarm.alarm.Alarm;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
@@ -60,7 +61,7 @@ public class AcknowledgeNotificationService extends IntentService {
 		// Setup a notification, directly from Android developer site
 		NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
-		// To get a unique refresh id for the intents, to avoid notifications from writing over each other
+		// To get a unique refresh id for the intents, to avoid notifications from writing over each other, each alarm must be acknowledged on it's own
 		long REFRESH_ID = System.currentTimeMillis();
 		long when = System.currentTimeMillis();
 
@@ -101,6 +102,9 @@ public class AcknowledgeNotificationService extends IntentService {
 		notificationManager.notify((int) REFRESH_ID, builder.getNotification());
 		
 		// Start the flash notification
-		FlashNotificationService.startFlashNotificationService(this);
+		AlertHandler.getInstance().startFlashNotification(this);
+
+		// Notification is posted, device no longer needs to be kept awake for it
+		AlertHandler.getInstance().notificationPosted(intent);
 	}
 }
\ No newline at end of file
@@ -4,39 +4,92 @@
 package ax.ha.it.smsalarm.service;
 
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
 import ax.ha.it.smsalarm.handler.CameraHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
 
 /**
- * Service containing functionality for toggling a <b><i>Flash Notification</i></b> using a {@link Handler} and {@link Runnable}. The service also
+ * Service containing functionality for strobing a <b><i>Flash Notification</i></b> using a {@link Handler} and {@link Runnable}. The service also
  * contains a few convenience methods for <b><i>starting</i></b> and <b><i>stopping</i></b> a Flash Notification.<br>
  * A Flash Notification is simply a kind of notification where the devices {@link Camera} flash flashes when the application receives an alarm.
+ * <p>
+ * The strobe runs on it's own thread, so the camera is never accessed from the UI thread, and each flash is scheduled at an absolute time counted
+ * from when the strobe started, hence the timing doesn't drift no matter how long each camera call takes. The strobe stops by itself after a
+ * configurable time or when the battery runs low.
  * 
  * @author Robert Nyholm <robert.nyholm@aland.net>
  * @version 2.3.1
  * @since 2.3.1
  */
 public class FlashNotificationService extends Service {
-	// Time until first camera flash and then the interval between them
+	private static final String LOG_TAG = FlashNotificationService.class.getSimpleName();
+
+	// Time until first camera flash and then the time the flash is on and off
 	private static final int FIRST_FLASH_DELAY = 1000;
-	private static final int FLASH_INTERVAL = 500;
+	private static final int FLASH_ON_TIME = 500;
+	private static final int FLASH_OFF_TIME = 500;
+
+	// Default values for when the strobe is stopped automatically, after 5 minutes or when battery level is 15% or lower
+	private static final int DEFAULT_MAX_DURATION = 300;
+	private static final int DEFAULT_MIN_BATTERY_LEVEL = 15;
 
 	// Must keep track on if this service is running or not
 	private boolean serviceRunning = false;
 
-	// Need handler and runnable for the actual "toggling"
-	private Handler handler = new Handler();
+	// Thread on which the strobe runs and handler scheduling the flashes on it
+	private HandlerThread strobeThread;
+	private Handler handler;
+
+	// Absolute time, in uptime millis, of next toggle and when strobe should stop
+	private long nextToggleTime;
+	private long stopTime;
+
+	// Battery level, in percent, at or below which the strobe is stopped
+	private int minBatteryLevel;
+
+	// Current state of strobe
+	private boolean flashOn = false;
+
 	private Runnable runnable = new Runnable() {
 		@Override
 		public void run() {
-			CameraHandler.getInstance(getApplicationContext()).toggleCameraFlash();
-			handler.postDelayed(this, FLASH_INTERVAL);
+			if (SystemClock.uptimeMillis() >= stopTime) {
+				Log.d(LOG_TAG + ":run()", "Flash notification has been running for maximum time, stopping it");
+				stopSelf();
+				return;
+			}
+
+			flashOn = !flashOn;
+			CameraHandler.getInstance(getApplicationContext()).setCameraFlash(flashOn);
+
+			nextToggleTime += flashOn ? FLASH_ON_TIME : FLASH_OFF_TIME;
+			handler.postAtTime(this, nextToggleTime);
+		}
+	};
+
+	// Receiver listening to battery changes, the strobe is stopped if battery runs low while not charging
+	private BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+			int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+			int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+
+			if (level >= 0 && scale > 0 && plugged == 0 && (level * 100 / scale) <= minBatteryLevel) {
+				Log.d(LOG_TAG + ":onReceive()", "Battery level is low, stopping flash notification");
+				stopSelf();
+			}
 		}
 	};
 
@@ -46,13 +99,26 @@ public class FlashNotificationService extends Service {
 
 		// Flag service isn't running yet
 		serviceRunning = false;
+
+		strobeThread = new HandlerThread(LOG_TAG);
+		strobeThread.start();
+		handler = new Handler(strobeThread.getLooper());
 	}
 
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId) {
 		// Service isn't running, go on and kick off handler
 		if (!serviceRunning) {
-			handler.postDelayed(runnable, FIRST_FLASH_DELAY);
+			SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
+			int maxDuration = (Integer) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.FLASH_NOTIFICATION_MAX_DURATION_KEY, DataType.INTEGER, this, DEFAULT_MAX_DURATION);
+			minBatteryLevel = (Integer) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.FLASH_NOTIFICATION_MIN_BATTERY_LEVEL_KEY, DataType.INTEGER, this, DEFAULT_MIN_BATTERY_LEVEL);
+
+			nextToggleTime = SystemClock.uptimeMillis() + FIRST_FLASH_DELAY;
+			stopTime = nextToggleTime + maxDuration * 1000L;
+			handler.postAtTime(runnable, nextToggleTime);
+
+			// Battery changed is sticky, so the receiver gets current battery level directly
+			registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
 
 			// Flag service as running
 			serviceRunning = true;
@@ -64,12 +130,19 @@ public class FlashNotificationService extends Service {
 	public void onDestroy() {
 		super.onDestroy();
 
-		// Remove runnable from callback and nullify the handler
-		handler.removeCallbacks(runnable);
-		handler = null;
+		if (serviceRunning) {
+			unregisterReceiver(batteryReceiver);
+		}
 
-		// Release the camera
-		CameraHandler.getInstance(getApplicationContext()).releaseCamera();
+		// Remove runnable from callback, release the camera on the strobe thread so it's not released during a flash and then quit the thread
+		handler.removeCallbacks(runnable);
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				CameraHandler.getInstance(getApplicationContext()).releaseCamera();
+				strobeThread.quit();
+			}
+		});
 	}
 
 	@Override
@@ -104,4 +177,4 @@ public class FlashNotificationService extends Service {
 	public static void stopFlashNotificationService(Context context) {
 		context.stopService(new Intent(context, FlashNotificationService.class));
 	}
-}
\ No newline at end of file
+}
@@ -14,6 +14,8 @@ import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import ax.ha.it.smsalarm.R;
 import ax.ha.it.smsalarm.alarm.Alarm;
+import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.handler.AlertHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
 import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
@@ -31,6 +33,13 @@ import ax.ha.it.smsalarm.util.Utils;
 public class NotificationService extends IntentService {
 	private static final String LOG_TAG = NotificationService.class.getSimpleName();
 
+	// Extras holding start time of the alarm storm the alarm belongs to and number of alarms of same type within it, see AlarmStormCoalescer
+	public static final String EXTRA_STORM_START = "ax.ha.it.smsalarm.STORM_START";
+	public static final String EXTRA_STORM_ALARMS = "ax.ha.it.smsalarm.STORM_ALARMS";
+
+	// Returned when an intent doesn't belong to any alarm storm
+	private static final long NO_STORM = -1;
+
 	private final SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
 
 	// @formatter:off
@@ -71,18 +80,18 @@ public class NotificationService extends IntentService {
 		// Setup a notification, directly from Android developer site
 		NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
-		// To get a unique refresh id for the intents, to avoid notifications from writing over each other
-		long REFRESH_ID = System.currentTimeMillis();
+		// Alarms of same storm and type replaces each others notification
+		int notificationId = resolveNotificationId(intent, alarm.getAlarmType());
 		long when = System.currentTimeMillis();
 
 		// Configure notification depending on alarm type
 		switch (alarm.getAlarmType()) {
 			case PRIMARY:
 				// Set proper texts and icon to notification
-				configureNotification(R.drawable.ic_primary_alarm, getString(R.string.PRIMARY_ALARM), organization.toUpperCase(), getString(R.string.PRIMARY_ALARM));
+				configureNotification(R.drawable.ic_primary_alarm, getString(R.string.PRIMARY_ALARM), organization.toUpperCase(), resolveContentTitle(intent, getString(R.string.PRIMARY_ALARM)));
 				break;
 			case SECONDARY:
-				configureNotification(R.drawable.ic_secondary_alarm, getString(R.string.SECONDARY_ALARM), organization.toUpperCase(), getString(R.string.SECONDARY_ALARM));
+				configureNotification(R.drawable.ic_secondary_alarm, getString(R.string.SECONDARY_ALARM), organization.toUpperCase(), resolveContentTitle(intent, getString(R.string.SECONDARY_ALARM)));
 				break;
 			default: // If this happens, something really weird is going on
 				Log.e(LOG_TAG + ":onHandleIntent()", "Alarm type couldn't be find when configuring notification");
@@ -113,10 +122,57 @@ public class NotificationService extends IntentService {
 		// @formatter:off
 
 		// Dispatch the notification
-		notificationManager.notify((int) REFRESH_ID, builder.getNotification());
+		notificationManager.notify(notificationId, builder.getNotification());
 
 		// Start the flash notification
-		FlashNotificationService.startFlashNotificationService(this);
+		AlertHandler.getInstance().startFlashNotification(this);
+
+		// Notification is posted, device no longer needs to be kept awake for it
+		AlertHandler.getInstance().notificationPosted(intent);
+	}
+
+	/**
+	 * To resolve the id of the notification for an alarm of given {@link AlarmType}. All alarms of same type within an <b><i>Alarm Storm</i></b> gets
+	 * the same id, so that the notification of the storm is replaced instead of a new notification being posted for each alarm.<br>
+	 * An alarm not belonging to any storm gets a unique id. Only informational notifications are merged like this, a notification of an alarm that
+	 * must be acknowledged is always kept on it's own, see {@link AcknowledgeNotificationService}.<br>
+	 * The id is derived from the start time of the storm and not from the storm id, as storm ids starts over whenever the process is restarted. Hence
+	 * the notification of a storm never replaces the notification of a storm received before the process was restarted.
+	 * 
+	 * @param intent
+	 *            Intent for notification, holding the start time of the storm.
+	 * @param alarmType
+	 *            Type of alarm.
+	 * @return Id of notification.
+	 */
+	private static int resolveNotificationId(Intent intent, AlarmType alarmType) {
+		long stormStart = intent.getLongExtra(EXTRA_STORM_START, NO_STORM);
+
+		if (stormStart == NO_STORM) {
+			return (int) System.currentTimeMillis();
+		}
+
+		return (int) (stormStart * AlarmType.values().length + alarmType.ordinal());
+	}
+
+	/**
+	 * To resolve the content title of a notification, if more than one alarm has been received within the <b><i>Alarm Storm</i></b> the number of
+	 * alarms is appended to the title.
+	 * 
+	 * @param intent
+	 *            Intent for notification, holding the number of alarms within the storm.
+	 * @param title
+	 *            Title of notification.
+	 * @return Content title of notification.
+	 */
+	private static String resolveContentTitle(Intent intent, String title) {
+		int alarms = intent.getIntExtra(EXTRA_STORM_ALARMS, 1);
+
+		if (alarms > 1) {
+			return title + " (" + alarms + ")";
+		}
+
+		return title;
 	}
 
 	/**
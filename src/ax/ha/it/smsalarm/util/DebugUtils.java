@@ -6,9 +6,12 @@ package ax.ha.it.smsalarm.util;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.content.Intent;
@@ -37,6 +40,55 @@ import ax.ha.it.smsalarm.service.NotificationService;
 public class DebugUtils {
 	private static final String LOG_TAG = DebugUtils.class.getSimpleName();
 
+	// @formatter:off
+	// Maximum number of characters in one SMS, and in each part of a multipart SMS as the concatenation header takes up some space
+	private static final int UCS2_SINGLE_SMS_MAX_CHARACTERS = 70;
+	private static final int UCS2_MULTIPART_SMS_MAX_CHARACTERS = 67;
+	private static final int GSM_7BIT_MULTIPART_SMS_MAX_CHARACTERS = 153;
+	private static final int MAX_MULTIPART_SMS_PARTS = 255;
+	// @formatter:on
+
+	// Information element identifier of a concatenation header with 8 bit reference number, and the last used reference number
+	private static final byte CONCATENATED_SMS_IEI = 0x00;
+	private static final AtomicInteger concatenatedReference = new AtomicInteger();
+
+	/**
+	 * Holder of the reflected methods of <code>com.android.internal.telephony.GsmAlphabet</code>, resolved once when first used instead of on every
+	 * created SMS. A method that couldn't be resolved is <code>null</code>.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class GsmAlphabet {
+		private static final String CLASS_NAME = "com.android.internal.telephony.GsmAlphabet";
+
+		private static final Method STRING_TO_GSM_7BIT_PACKED = resolveMethod("stringToGsm7BitPacked", String.class);
+		private static final Method STRING_TO_GSM_7BIT_PACKED_WITH_HEADER = resolveMethod("stringToGsm7BitPackedWithHeader", String.class, byte[].class);
+
+		/**
+		 * To resolve a method of <code>GsmAlphabet</code> by reflection.
+		 * 
+		 * @param name
+		 *            Name of method.
+		 * @param parameterTypes
+		 *            Parameter types of method.
+		 * @return Resolved method, or <code>null</code> if it couldn't be resolved.
+		 */
+		private static Method resolveMethod(String name, Class<?>... parameterTypes) {
+			try {
+				Method method = Class.forName(CLASS_NAME).getMethod(name, parameterTypes);
+				method.setAccessible(true);
+
+				return method;
+			} catch (Exception e) {
+				Log.e(LOG_TAG + ":resolveMethod()", "Failed to resolve method: \"" + name + "\" of class: \"" + CLASS_NAME + "\"", e);
+			}
+
+			return null;
+		}
+	}
+
 	/**
 	 * To populate the {@link SharedPreferences} with mock data for test purpose.
 	 * 
@@ -121,16 +173,31 @@ public class DebugUtils {
 	public static void dispatchMockSMS(Context context, String sender, String body) {
 		byte[] pdu = createMockSMS(sender, body);
 		if (pdu != null) {
-			Intent intent = new Intent(context, SmsReceiver.class);
-			intent.putExtra("pdus", new Object[] { pdu });
-			intent.putExtra("format", "3gpp");
-			intent.setAction(SmsReceiver.ACTION_SKIP_ABORT_BROADCAST);
-			context.sendBroadcast(intent);
+			context.sendBroadcast(createMockSMSIntent(context, new byte[][] { pdu }));
 		} else {
 			Log.e(LOG_TAG + ":dispatchMockSMS()", "An error seems to have occurred as the created mock SMS (pdu byte[]) is null, see previous error messages");
 		}
 	}
 
+	/**
+	 * To create the {@link Intent} dispatching a mock SMS made up of given PDUs to {@link SmsReceiver}, with the action set to
+	 * {@link SmsReceiver#ACTION_SKIP_ABORT_BROADCAST}. The PDUs of a multipart SMS are all put into the same intent, exactly as the system does.
+	 * 
+	 * @param context
+	 *            Context within SmsReceiver are triggered.
+	 * @param pdus
+	 *            PDUs of the SMS, as created by {@link #createMockSMS(String, String, boolean)}.
+	 * @return Intent to broadcast.
+	 */
+	public static Intent createMockSMSIntent(Context context, byte[][] pdus) {
+		Intent intent = new Intent(context, SmsReceiver.class);
+		intent.putExtra("pdus", (Object[]) pdus);
+		intent.putExtra("format", "3gpp");
+		intent.setAction(SmsReceiver.ACTION_SKIP_ABORT_BROADCAST);
+
+		return intent;
+	}
+
 	/**
 	 * To create a mock SMS. The created SMS will be fully compatible, or in other words, look exactly the same as a real SMS to it's structure.
 	 * 
@@ -141,6 +208,66 @@ public class DebugUtils {
 	 * @return Created mock SMS as a {@link Byte} array.
 	 */
 	public static byte[] createMockSMS(String sender, String body) {
+		return createMockSMSPdu(sender, body, null, false);
+	}
+
+	/**
+	 * To create a mock SMS, encoded in the <b><i>GSM 7 Bit</i></b> alphabet or in <b><i>UCS-2</i></b>. If the body doesn't fit into one SMS it's
+	 * split into a <b><i>Multipart SMS</i></b>, each part carrying a concatenation header.<br>
+	 * <b><i>Note. When splitting a GSM 7 bit encoded body, characters from the extension table are counted as one character.</i></b>
+	 * 
+	 * @param sender
+	 *            Sender of the SMS.
+	 * @param body
+	 *            Message of the SMS.
+	 * @param ucs2
+	 *            Whether or not the SMS should be encoded in UCS-2.
+	 * @return The PDUs of the created mock SMS, one for each part, or <code>null</code> if the SMS couldn't be created.
+	 */
+	public static byte[][] createMockSMS(String sender, String body, boolean ucs2) {
+		int singlePartMax = ucs2 ? UCS2_SINGLE_SMS_MAX_CHARACTERS : Utils.SINGLE_SMS_MAX_CHARACTERS;
+
+		if (body.length() <= singlePartMax) {
+			byte[] pdu = createMockSMSPdu(sender, body, null, ucs2);
+			return pdu != null ? new byte[][] { pdu } : null;
+		}
+
+		List<String> parts = splitBody(body, ucs2 ? UCS2_MULTIPART_SMS_MAX_CHARACTERS : GSM_7BIT_MULTIPART_SMS_MAX_CHARACTERS);
+
+		if (parts.size() > MAX_MULTIPART_SMS_PARTS) {
+			Log.e(LOG_TAG + ":createMockSMS()", "Body of " + body.length() + " characters is to long for a multipart SMS");
+			return null;
+		}
+
+		byte reference = (byte) concatenatedReference.incrementAndGet();
+		byte[][] pdus = new byte[parts.size()][];
+
+		for (int i = 0; i < pdus.length; i++) {
+			byte[] header = new byte[] { CONCATENATED_SMS_IEI, 3, reference, (byte) pdus.length, (byte) (i + 1) };
+			pdus[i] = createMockSMSPdu(sender, parts.get(i), header, ucs2);
+
+			if (pdus[i] == null) {
+				return null;
+			}
+		}
+
+		return pdus;
+	}
+
+	/**
+	 * To create one PDU of a mock SMS.
+	 * 
+	 * @param sender
+	 *            Sender of the SMS.
+	 * @param body
+	 *            Message, or part of message, of the SMS.
+	 * @param header
+	 *            User data header, without the header length, <code>null</code> if SMS has no header.
+	 * @param ucs2
+	 *            Whether or not the body should be encoded in UCS-2.
+	 * @return Created PDU, or <code>null</code> if it couldn't be created.
+	 */
+	private static byte[] createMockSMSPdu(String sender, String body, byte[] header, boolean ucs2) {
 		byte[] pdu = null;
 		byte[] scBytes = PhoneNumberUtils.networkPortionToCalledPartyBCD("0000000000");
 		byte[] senderBytes = PhoneNumberUtils.networkPortionToCalledPartyBCD(sender);
@@ -160,31 +287,77 @@ public class DebugUtils {
 			ByteArrayOutputStream bo = new ByteArrayOutputStream();
 			bo.write(lsmcs);
 			bo.write(scBytes);
-			bo.write(0x04);
+			bo.write(header != null ? 0x44 : 0x04); // SMS-DELIVER, with user data header indicator set if there is a header
 			bo.write((byte) sender.length());
 			bo.write(senderBytes);
 			bo.write(0x00);
-			bo.write(0x00); // encoding: 0 for default 7bit
+			bo.write(ucs2 ? 0x08 : 0x00); // encoding: 8 for UCS-2, 0 for default 7bit
 			bo.write(dateBytes);
-			try {
-				String sReflectedClassName = "com.android.internal.telephony.GsmAlphabet";
-				Class<?> cReflectedNFCExtras = Class.forName(sReflectedClassName);
-				Method stringToGsm7BitPacked = cReflectedNFCExtras.getMethod("stringToGsm7BitPacked", new Class[] { String.class });
-				stringToGsm7BitPacked.setAccessible(true);
-				byte[] bodybytes = (byte[]) stringToGsm7BitPacked.invoke(null, body);
-				bo.write(bodybytes);
-			} catch (Exception e) {
-				Log.e(LOG_TAG + ":createMockSMS()", "Failed convert string: \"" + body + "\" to GSM 7 Bit Packed", e);
+
+			if (ucs2) {
+				byte[] bodyBytes = body.getBytes("UTF-16BE");
+
+				if (header != null) {
+					bo.write(bodyBytes.length + header.length + 1);
+					bo.write(header.length);
+					bo.write(header);
+				} else {
+					bo.write(bodyBytes.length);
+				}
+
+				bo.write(bodyBytes);
+			} else {
+				try {
+					// Packed body starts with the user data length, and the header if one is given
+					byte[] bodybytes;
+
+					if (header != null) {
+						bodybytes = (byte[]) GsmAlphabet.STRING_TO_GSM_7BIT_PACKED_WITH_HEADER.invoke(null, body, header);
+					} else {
+						bodybytes = (byte[]) GsmAlphabet.STRING_TO_GSM_7BIT_PACKED.invoke(null, body);
+					}
+
+					bo.write(bodybytes);
+				} catch (Exception e) {
+					Log.e(LOG_TAG + ":createMockSMSPdu()", "Failed convert string: \"" + body + "\" to GSM 7 Bit Packed", e);
+				}
 			}
 
 			pdu = bo.toByteArray();
 		} catch (IOException e) {
-			Log.e(LOG_TAG + ":createMockSMS()", "Failed to write created mock SMS to ByteArrayOutputStream", e);
+			Log.e(LOG_TAG + ":createMockSMSPdu()", "Failed to write created mock SMS to ByteArrayOutputStream", e);
 		}
 
 		return pdu;
 	}
 
+	/**
+	 * To split given body into parts of given maximum length, a surrogate pair is never split.
+	 * 
+	 * @param body
+	 *            Body to split.
+	 * @param maxPartLength
+	 *            Maximum number of characters in each part.
+	 * @return Parts of body.
+	 */
+	private static List<String> splitBody(String body, int maxPartLength) {
+		List<String> parts = new ArrayList<String>();
+		int start = 0;
+
+		while (start < body.length()) {
+			int end = Math.min(start + maxPartLength, body.length());
+
+			if (end < body.length() && Character.isHighSurrogate(body.charAt(end - 1))) {
+				end--;
+			}
+
+			parts.add(body.substring(start, end));
+			start = end;
+		}
+
+		return parts;
+	}
+
 	/**
 	 * Convenience method to reverse a <code>byte</code>.
 	 * 
@@ -0,0 +1,339 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import android.os.Environment;
+import android.util.Log;
+import ax.ha.it.smsalarm.activity.SmsAlarm;
+
+/**
+ * A <b><i>Flight Recorder</i></b> keeping the latest structured events of the alarm pipeline in memory, so that they can be looked at when an alarm
+ * has misbehaved in the field, long after anything logged to LogCat is gone.<br>
+ * The events are kept in a lock free ring buffer of fixed size, recording an event is a counter increment and a store of a small immutable entry,
+ * no locks are taken and no I/O is made. Once the ring buffer is full the oldest events are overwritten.
+ * <p>
+ * The recorded events are dumped to a file in the directory "SmsAlarm" on external storage on an uncaught exception, see
+ * {@link #installCrashHandler()}, when any of the time critical parts of the alarm pipeline times out and on demand, see {@link #dump(String)}.
+ * <p>
+ * <b><i>Note. All of this functionality should be accessed in a static manner.</i></b>
+ *
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class FlightRecorder {
+	/**
+	 * The different events recorded by the {@link FlightRecorder}.
+	 *
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public enum Event {
+		// @formatter:off
+		SMS_RECEIVED,
+		SMS_CLASSIFIED,			// Detail is alarm type
+		ALARM_STORED,			// Value is id of alarm in database
+		ALARM_ACKNOWLEDGED,		// Value is id of alarm in database
+		ALARM_DUPLICATE,		// Value is id of alarm in database the duplicate is of
+		AUDIO_STARTED,			// Detail is alarm type
+		AUDIO_FINISHED,
+		AUDIO_STOPPED,
+		WAKE_LOCK_ACQUIRED,		// Value is number of holders, detail is owner
+		WAKE_LOCK_RELEASED,		// Value is number of holders, detail is owner
+		TIMEOUT,				// Value is time waited in milliseconds, detail is what timed out
+		CRASH;					// Detail is class of exception
+		// @formatter:on
+	}
+
+	/**
+	 * A recorded event, immutable so it can be read by any thread while the ring buffer is written.
+	 *
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class Entry {
+		private final long sequence;
+		private final long timeMillis;
+		private final String threadName;
+		private final Event event;
+		private final long value;
+		private final String detail;
+
+		private Entry(long sequence, long timeMillis, String threadName, Event event, long value, String detail) {
+			this.sequence = sequence;
+			this.timeMillis = timeMillis;
+			this.threadName = threadName;
+			this.event = event;
+			this.value = value;
+			this.detail = detail;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getTimeMillis() {
+			return timeMillis;
+		}
+
+		public String getThreadName() {
+			return threadName;
+		}
+
+		public Event getEvent() {
+			return event;
+		}
+
+		public long getValue() {
+			return value;
+		}
+
+		public String getDetail() {
+			return detail;
+		}
+	}
+
+	private static final String LOG_TAG = FlightRecorder.class.getSimpleName();
+
+	// Number of events kept, must be a power of two so the slot of an event is found by masking it's sequence number
+	public static final int CAPACITY = 1024;
+	private static final int MASK = CAPACITY - 1;
+
+	// Value of events without any value
+	private static final long NO_VALUE = -1;
+
+	// Dumps due to timeouts are made at most this often, so a misbehaving device doesn't fill the external storage
+	private static final long TIMEOUT_DUMP_INTERVAL = 60000;
+
+	// Name of directory for application, and format of name of dump files
+	private static final String DIRECTORY = "SmsAlarm";
+	private static final String DUMP_FILE_NAME_FORMAT = "'flightrecorder-'yyyyMMdd-HHmmssSSS'.txt'";
+
+	// End of line, same as in the log files
+	private static final String EOL = "\r\n";
+
+	// The ring buffer and sequence number of next event to record
+	private static final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<Entry>(CAPACITY);
+	private static final AtomicLong nextSequence = new AtomicLong();
+
+	// Time of latest dump due to a timeout
+	private static final AtomicLong lastTimeoutDump = new AtomicLong();
+
+	/**
+	 * To record given event without any value or detail.
+	 *
+	 * @param event
+	 *            Event to record.
+	 */
+	public static void record(Event event) {
+		record(event, NO_VALUE, null);
+	}
+
+	/**
+	 * To record given event with given value.
+	 *
+	 * @param event
+	 *            Event to record.
+	 * @param value
+	 *            Value of event, for example an id.
+	 */
+	public static void record(Event event, long value) {
+		record(event, value, null);
+	}
+
+	/**
+	 * To record given event with given detail.
+	 *
+	 * @param event
+	 *            Event to record.
+	 * @param detail
+	 *            Detail of event, should be a constant or an already existing string to keep recording cheap.
+	 */
+	public static void record(Event event, String detail) {
+		record(event, NO_VALUE, detail);
+	}
+
+	/**
+	 * To record given event with given value and detail. Safe to call from any thread, never blocks.
+	 *
+	 * @param event
+	 *            Event to record.
+	 * @param value
+	 *            Value of event, for example an id.
+	 * @param detail
+	 *            Detail of event, should be a constant or an already existing string to keep recording cheap.
+	 */
+	public static void record(Event event, long value, String detail) {
+		long sequence = nextSequence.getAndIncrement();
+
+		// Readers only need to see the entry eventually, no need for a full barrier
+		entries.lazySet((int) (sequence & MASK), new Entry(sequence, System.currentTimeMillis(), Thread.currentThread().getName(), event, value, detail));
+	}
+
+	/**
+	 * To get the recorded events still kept in the ring buffer. Events being recorded while this method runs may or may not be included.
+	 *
+	 * @return Recorded events, oldest first.
+	 */
+	public static List<Entry> getEntries() {
+		long last = nextSequence.get();
+		long first = Math.max(0, last - CAPACITY);
+		List<Entry> snapshot = new ArrayList<Entry>((int) (last - first));
+
+		for (long sequence = first; sequence < last; sequence++) {
+			Entry entry = entries.get((int) (sequence & MASK));
+
+			// Slot is either not written yet or already overwritten by a newer event
+			if (entry != null && entry.sequence == sequence) {
+				snapshot.add(entry);
+			}
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * To clear all recorded events.
+	 */
+	public static void clear() {
+		for (int i = 0; i < CAPACITY; i++) {
+			entries.set(i, null);
+		}
+	}
+
+	/**
+	 * To dump the recorded events to a new file, the file is written on a background thread.
+	 *
+	 * @param reason
+	 *            Reason of the dump, written in the header of the file.
+	 */
+	public static void dump(final String reason) {
+		final List<Entry> snapshot = getEntries();
+
+		Logger.execute(new Runnable() {
+			@Override
+			public void run() {
+				write(reason, snapshot);
+			}
+		});
+	}
+
+	/**
+	 * To record that given time critical operation timed out, and to dump the recorded events to a file. Dumps due to timeouts are made at most once a
+	 * minute.
+	 *
+	 * @param operation
+	 *            Operation that timed out, should be a constant.
+	 * @param waitedMillis
+	 *            Time waited in milliseconds.
+	 */
+	public static void timeout(String operation, long waitedMillis) {
+		record(Event.TIMEOUT, waitedMillis, operation);
+
+		long now = System.currentTimeMillis();
+		long last = lastTimeoutDump.get();
+
+		if (now - last >= TIMEOUT_DUMP_INTERVAL && lastTimeoutDump.compareAndSet(last, now)) {
+			dump("Timeout of " + operation);
+		}
+	}
+
+	/**
+	 * To install a default {@link UncaughtExceptionHandler} which dumps the recorded events before handing the exception over to any previously
+	 * installed handler. As the process is about to die the dump is written directly on the crashing thread.<br>
+	 * Should be called once, as early as possible when the application is created.
+	 */
+	public static void installCrashHandler() {
+		final UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+
+		Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread thread, Throwable throwable) {
+				try {
+					record(Event.CRASH, throwable.getClass().getName());
+					write("Uncaught exception on thread " + thread.getName() + ": " + throwable, getEntries());
+				} catch (Throwable t) {
+					// Nothing more to do, the original exception is the important one
+				}
+
+				if (previousHandler != null) {
+					previousHandler.uncaughtException(thread, throwable);
+				}
+			}
+		});
+	}
+
+	/**
+	 * To write given events to a new dump file. Each event is written on a line of it's own, the time of each event is written as milliseconds since
+	 * the first event:
+	 *
+	 * <pre>
+	 * +1234    thread    EVENT    value    detail
+	 * </pre>
+	 *
+	 * @param reason
+	 *            Reason of the dump.
+	 * @param snapshot
+	 *            Events to write, oldest first.
+	 */
+	private static void write(String reason, List<Entry> snapshot) {
+		if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+			Log.e(LOG_TAG + ":write()", "Unable to dump flight recorder because the external storage isn't available for writing");
+			return;
+		}
+
+		File directory = new File(Environment.getExternalStorageDirectory(), DIRECTORY);
+		directory.mkdirs();
+
+		SimpleDateFormat formatter = new SimpleDateFormat(DUMP_FILE_NAME_FORMAT, Locale.ENGLISH);
+		File file = new File(directory, formatter.format(new Date()));
+		Writer out = null;
+
+		try {
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+
+			long baseMillis = snapshot.isEmpty() ? 0 : snapshot.get(0).timeMillis;
+			formatter.applyPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+			out.write("# " + reason + EOL);
+			out.write("# " + snapshot.size() + " events since " + formatter.format(new Date(baseMillis)) + EOL);
+
+			for (Entry entry : snapshot) {
+				out.write("+" + (entry.timeMillis - baseMillis) + "\t" + entry.threadName + "\t" + entry.event.name());
+				out.write("\t" + (entry.value == NO_VALUE ? "" : entry.value) + "\t" + (entry.detail == null ? "" : entry.detail) + EOL);
+			}
+
+			if (SmsAlarm.DEBUG) {
+				Log.d(LOG_TAG + ":write()", snapshot.size() + " events dumped to: \"" + file.getAbsolutePath() + "\"");
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG + ":write()", "An Exception occurred during writing to file: \"" + file.getAbsolutePath() + "\"", e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					Log.e(LOG_TAG + ":write()", "Failed to close file: \"" + file.getAbsolutePath() + "\"", e);
+				}
+			}
+		}
+	}
+}
@@ -4,25 +4,41 @@
 package ax.ha.it.smsalarm.util;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
 
 import android.annotation.SuppressLint;
 import android.os.Environment;
+import android.os.Process;
 import android.util.Log;
 
 /**
- * Utility class to be used when loggin to file is needed.
+ * Utility class to be used when loggin to file is needed.<br>
+ * Log records are only queued by the calling thread, all I/O is made on a shared background thread which writes the queued records in batches to a
+ * file that's kept open. When a log file has grown too large it's rotated, the rotated file is compressed with gzip and only a few of them are
+ * kept.
  * 
  * @author Robert Nyholm <robert.nyholm@aland.net>
  * @version 2.3.1
  * @since 2.3.1
  */
-@SuppressLint("SimpleDateFormat")
 public class Logger {
 	private static final String LOG_TAG = Logger.class.getSimpleName();
 
@@ -32,125 +48,301 @@ public class Logger {
 	// End of line is nice to have, this particular one represents a windows end of line
 	private static final String EOL = "\r\n";
 
-	// SimpleDateFormatter and Date, to get current time in a certain format(LogCat like)
-	private static final SimpleDateFormat formatter = new SimpleDateFormat("yy-MM-dd HH:mm:ss.SSS");
-	private Date now = Calendar.getInstance().getTime();
+	// Log file is rotated when it's larger than this, in bytes, and this number of rotated files are kept
+	private static final long MAX_FILE_SIZE = 512 * 1024;
+	private static final int MAX_ROTATED_FILES = 3;
+	private static final String GZIP_EXTENSION = ".gz";
 
-	// Name of file
-	private final String fileName;
+	// Single background thread on which all log files are written
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, LOG_TAG);
+			thread.setDaemon(true);
 
-	/**
-	 * Creates a new instance of {@link Logger}, given file name is the file which this instance always will write it's log records to.<br>
-	 * The directory of the log files will always be "SmsAlarm".
-	 * 
-	 * @param fileName
-	 *            Name of log file.
-	 */
-	public Logger(String fileName) {
-		this.fileName = fileName;
-	}
+			return thread;
+		}
+	});
+
+	// One writer per log file, shared by all instances of Logger logging to the same file
+	private static final Map<String, LogWriter> writers = new HashMap<String, LogWriter>();
+
+	// Writer of the file this instance logs to
+	private final LogWriter writer;
 
 	/**
-	 * To write a log record to file. Which file the log record will be written to depends on what filename this instance of {@link Logger} was
-	 * created with.<br>
-	 * If necessary directories and files doesn't exists this method will create them before the record is written.
-	 * <p>
-	 * The output of the log record to file will look like following:<br>
-	 * 
-	 * <pre>
-	 * 13-05-03 23:57:42.123    message
-	 * </pre>
+	 * Writes the log records of one log file. Records are queued by any thread and written by the background thread.
 	 * 
-	 * @param message
-	 *            Message of log record.
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
 	 */
-	public void log2File(String message) {
-		// Only proceed further with logging if the external storage is writable
-		if (isExternalStorageWritable()) {
-			// Get path to root
-			String root = Environment.getExternalStorageDirectory().toString();
+	private static class LogWriter implements Runnable {
+		// Name of file
+		private final String fileName;
+
+		// Records waiting to be written, and whether or not a write is already queued to the background thread
+		private List<String> pendingRecords = new ArrayList<String>();
+		private long[] pendingTimes = new long[16];
+		private boolean writeQueued = false;
 
-			// Create file objects, one representing the directory and one the actual file. These are used to check if they already exists or not and
-			// for logging
-			File directory = new File(root + "/" + DIRECTORY);
-			File file = new File(root + "/" + DIRECTORY + "/" + fileName);
+		// SimpleDateFormat isn't thread safe, but is only used by the background thread, to get current time in a certain format(LogCat like)
+		@SuppressLint("SimpleDateFormat")
+		private final SimpleDateFormat formatter = new SimpleDateFormat("yy-MM-dd HH:mm:ss.SSS");
+		private final Date date = new Date();
 
-			// Check if directory and log file already exists
-			checkDirAndFile(directory, file);
+		// The open log file and it's approximate size, only accessed by the background thread
+		private File file;
+		private Writer out;
+		private long fileSize;
+
+		private LogWriter(String fileName) {
+			this.fileName = fileName;
+		}
+
+		/**
+		 * To queue a log record, the write is queued to the background thread if it isn't already.
+		 * 
+		 * @param message
+		 *            Message of log record.
+		 */
+		private synchronized void queue(String message) {
+			if (pendingRecords.size() == pendingTimes.length) {
+				long[] times = new long[pendingTimes.length * 2];
+				System.arraycopy(pendingTimes, 0, times, 0, pendingTimes.length);
+				pendingTimes = times;
+			}
+
+			pendingTimes[pendingRecords.size()] = System.currentTimeMillis();
+			pendingRecords.add(message);
+
+			if (!writeQueued) {
+				writeQueued = true;
+				executor.execute(this);
+			}
+		}
+
+		/**
+		 * Writes all records queued so far in one batch, <b><i>must only be run on the background thread</i></b>.
+		 */
+		@Override
+		public void run() {
+			List<String> records;
+			long[] times;
+
+			// Swap the pending records so the loggers can continue queuing while this batch is written
+			synchronized (this) {
+				records = pendingRecords;
+				times = pendingTimes;
+				pendingRecords = new ArrayList<String>();
+				pendingTimes = new long[16];
+				writeQueued = false;
+			}
+
+			if (!open()) {
+				Log.e(LOG_TAG + ":run()", "Unable to log " + records.size() + " record(s) to file: \"" + fileName + "\", external storage isn't available for writing");
+				return;
+			}
 
 			try {
-				// Create BufferedWriter with FileWriter of file, used to write to file
-				BufferedWriter bW = new BufferedWriter(new FileWriter(file, true));
+				for (int i = 0; i < records.size(); i++) {
+					date.setTime(times[i]);
+					String record = formatter.format(date) + "\t" + records.get(i) + EOL;
+					out.write(record);
+					fileSize += record.length();
+				}
 
-				// Get current time
-				now = Calendar.getInstance().getTime();
+				// Ensure that everything has been written to the file, once per batch
+				out.flush();
+			} catch (IOException e) {
+				// An exception occurred while writing to file, log it and reopen the file next time
+				Log.e(LOG_TAG + ":run()", "An Exception occurred during writing to file: \"" + fileName + "\"", e);
+				close();
+			}
+
+			if (fileSize > MAX_FILE_SIZE) {
+				rotate();
+			}
+		}
+
+		/**
+		 * To open the log file, if it's not already open. If necessary directories and files doesn't exists they are created.
+		 * 
+		 * @return <code>true</code> if the log file is open, else <code>false</code>.
+		 */
+		private boolean open() {
+			if (out != null) {
+				return true;
+			}
 
-				// Write the log entry to writer
-				bW.write(formatter.format(now) + "\t" + message + EOL);
+			// Only proceed further with logging if the external storage is writable
+			if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+				return false;
+			}
+
+			File directory = new File(Environment.getExternalStorageDirectory(), DIRECTORY);
+			file = new File(directory, fileName);
+
+			if (!directory.exists()) {
+				directory.mkdirs();
+			}
 
-				// Ensure that everything has been written to the file and close
-				bW.flush();
-				bW.close();
-			} catch (Exception e) {
-				// An exception occurred while writing to file, log it
-				Log.e(LOG_TAG + ":log2File()", "An Exception occurred during writing to file: \"" + fileName + "\"", e);
+			try {
+				out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+				fileSize = file.length();
+			} catch (IOException e) {
+				Log.e(LOG_TAG + ":open()", "An exception occurred during opening of file: \"" + fileName + "\"", e);
+				out = null;
 			}
-		} else {
-			// External storage isn't available for writing, log this
-			Log.e(LOG_TAG + ":log2File()", "Unable to log to file because the external storage isn't available for writing");
+
+			return out != null;
 		}
-	}
 
-	/**
-	 * To check if needed directory or file for the application and this instance of {@link Logger} exists on the file system, if they doesn't they
-	 * are created.
-	 * 
-	 * @param directory
-	 *            File which path represents the directory needed.
-	 * @param file
-	 *            File which path represents the file needed.
-	 */
-	private void checkDirAndFile(File directory, File file) {
-		// If directory doesn't exist then create both the directory and a new file, else if the file doesn't exist just create that one
-		if (!directory.exists()) {
-			directory.mkdirs();
-
-			createNewFile(file);
-		} else if (!file.exists()) {
-			createNewFile(file);
+		/**
+		 * To close the log file, if it's open.
+		 */
+		private void close() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					Log.e(LOG_TAG + ":close()", "An exception occurred during closing of file: \"" + fileName + "\"", e);
+				}
+
+				out = null;
+			}
+		}
+
+		/**
+		 * To rotate the log file. The current log file is compressed into <code>fileName.1.gz</code>, and any previously rotated files are shifted one
+		 * step, the oldest is deleted. Next record is written to a new log file.
+		 */
+		private void rotate() {
+			close();
+
+			File directory = file.getParentFile();
+
+			// Shift previously rotated files, oldest one is overwritten
+			for (int i = MAX_ROTATED_FILES - 1; i > 0; i--) {
+				File rotated = new File(directory, fileName + "." + i + GZIP_EXTENSION);
+
+				if (rotated.exists()) {
+					File shifted = new File(directory, fileName + "." + (i + 1) + GZIP_EXTENSION);
+					shifted.delete();
+					rotated.renameTo(shifted);
+				}
+			}
+
+			if (gzip(file, new File(directory, fileName + "." + 1 + GZIP_EXTENSION))) {
+				file.delete();
+			}
+		}
+
+		/**
+		 * To compress given <code>source</code> file into given <code>target</code> file with gzip.
+		 * 
+		 * @param source
+		 *            File to compress.
+		 * @param target
+		 *            Compressed file.
+		 * @return <code>true</code> if file was successfully compressed, else <code>false</code>.
+		 */
+		private boolean gzip(File source, File target) {
+			InputStream in = null;
+			OutputStream gzipOut = null;
+
+			try {
+				in = new FileInputStream(source);
+				gzipOut = new GZIPOutputStream(new FileOutputStream(target));
+
+				byte[] buffer = new byte[8192];
+				int read;
+
+				while ((read = in.read(buffer)) != -1) {
+					gzipOut.write(buffer, 0, read);
+				}
+
+				return true;
+			} catch (IOException e) {
+				Log.e(LOG_TAG + ":gzip()", "An exception occurred during compressing of file: \"" + source.getName() + "\"", e);
+			} finally {
+				closeQuietly(in);
+				closeQuietly(gzipOut);
+			}
+
+			return false;
+		}
+
+		/**
+		 * To close given stream, ignoring any exceptions.
+		 * 
+		 * @param closeable
+		 *            Stream to close, can be <code>null</code>.
+		 */
+		private void closeQuietly(Closeable closeable) {
+			if (closeable != null) {
+				try {
+					closeable.close();
+				} catch (IOException e) {
+					// Nothing to do, stream is of no use any more anyway
+				}
+			}
 		}
 	}
 
 	/**
-	 * Creates a new file on the file system according to the path of given file.
+	 * To run given <code>task</code> on the background thread on which all log files are written. Other classes writing files in the background
+	 * shares this thread, so all such I/O is made on the same timeline.
 	 * 
-	 * @param file
-	 *            File which path the new file will be created according to.
+	 * @param task
+	 *            Task to run in the background.
 	 */
-	private void createNewFile(File file) {
-		try {
-			file.createNewFile();
-		} catch (IOException e) {
-			Log.e(LOG_TAG + ":createNewFile()", "An exception occurred during creation of file: \"" + fileName + "\"", e);
-		}
+	static void execute(Runnable task) {
+		executor.execute(task);
 	}
 
 	/**
-	 * To figure out whether or not the external storage is writable or not.
+	 * Creates a new instance of {@link Logger}, given file name is the file which this instance always will write it's log records to.<br>
+	 * The directory of the log files will always be "SmsAlarm".
 	 * 
-	 * @return <code>true</code> if the external storage is writable, else <code>false</code>.
+	 * @param fileName
+	 *            Name of log file.
 	 */
-	private boolean isExternalStorageWritable() {
-		boolean result = false;
+	public Logger(String fileName) {
+		synchronized (writers) {
+			LogWriter logWriter = writers.get(fileName);
 
-		// Get the current storage state
-		String externalStorageState = Environment.getExternalStorageState();
+			if (logWriter == null) {
+				logWriter = new LogWriter(fileName);
+				writers.put(fileName, logWriter);
+			}
 
-		// MEDIA_MOUNTED = Writable, good to go
-		if (Environment.MEDIA_MOUNTED.equals(externalStorageState)) {
-			result = true;
+			writer = logWriter;
 		}
+	}
 
-		return result;
+	/**
+	 * To write a log record to file. Which file the log record will be written to depends on what filename this instance of {@link Logger} was
+	 * created with.<br>
+	 * The log record is only queued by this method, it's written to file later on a background thread, hence this method does no I/O and is safe to
+	 * call from any thread. If necessary directories and files doesn't exists they will be created before the record is written.
+	 * <p>
+	 * The output of the log record to file will look like following:<br>
+	 * 
+	 * <pre>
+	 * 13-05-03 23:57:42.123    message
+	 * </pre>
+	 * 
+	 * @param message
+	 *            Message of log record.
+	 */
+	public void log2File(String message) {
+		writer.queue(message);
 	}
 }
@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.util.Log;
+
+/**
+ * Lightweight registry of <b><i>Metrics</i></b>, <b><i>counters</i></b> and <b><i>latency histograms</i></b>, kept in memory for as long as the
+ * application process lives. Recording a metric is cheap enough to be done on the alarm path.
+ * <p>
+ * The registry also traces the <b><i>Alarm Pipeline</i></b>. A trace is started when an SMS is received and each {@link AlarmStage} records the time
+ * elapsed since then, on a monotonic clock, in a histogram of it's own. Only one trace is kept at a time, a new SMS starts a new trace.
+ * <p>
+ * <b><i>Metrics is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class Metrics {
+	/**
+	 * Enumeration of the traced stages of the alarm pipeline, in the order they normally are reached.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public enum AlarmStage {
+		// @formatter:off
+		CLASSIFIED("alarm.classified"),					// SMS classified, reached for every SMS
+		STORED("alarm.stored"),							// Alarm inserted into database
+		AUDIO_STARTED("alarm.audioStarted"),			// Alarm signal started to play
+		VIBRATION_STARTED("alarm.vibrationStarted"),	// Vibration started
+		NOTIFICATION_POSTED("alarm.notificationPosted");// Notification posted
+		// @formatter:on
+
+		private final String metricName;
+
+		private AlarmStage(String metricName) {
+			this.metricName = metricName;
+		}
+
+		public String getMetricName() {
+			return metricName;
+		}
+	}
+
+	/**
+	 * Histogram of latencies. Latencies are counted in buckets growing exponentially, four buckets per doubling, hence any percentile is known with
+	 * an error of at most 19% while a histogram only takes up a fixed and small amount of memory.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class Histogram {
+		// Latencies below this number of microseconds has a bucket each, above it there are four buckets per doubling
+		private static final int LINEAR_BUCKETS = 8;
+		private static final int BUCKETS = LINEAR_BUCKETS + 4 * (64 - 3);
+
+		private final long[] buckets = new long[BUCKETS];
+		private long count;
+		private long sumMicros;
+		private long maxMicros;
+
+		/**
+		 * To record given latency.
+		 * 
+		 * @param nanos
+		 *            Latency in nanoseconds.
+		 */
+		public synchronized void record(long nanos) {
+			long micros = Math.max(0, nanos / 1000);
+
+			buckets[bucketOf(micros)]++;
+			count++;
+			sumMicros += micros;
+			maxMicros = Math.max(maxMicros, micros);
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * To get the mean of all recorded latencies.
+		 * 
+		 * @return Mean latency in milliseconds, <code>0</code> if nothing has been recorded.
+		 */
+		public synchronized double getMeanMillis() {
+			return count > 0 ? sumMicros / 1000d / count : 0;
+		}
+
+		/**
+		 * To get the maximum of all recorded latencies.
+		 * 
+		 * @return Maximum latency in milliseconds.
+		 */
+		public synchronized double getMaxMillis() {
+			return maxMicros / 1000d;
+		}
+
+		/**
+		 * To get given percentile of the recorded latencies, the upper bound of the bucket in which the percentile is found is returned.
+		 * 
+		 * @param percentile
+		 *            Percentile, 0 to 100.
+		 * @return Latency in milliseconds, <code>0</code> if nothing has been recorded.
+		 */
+		public synchronized double getPercentileMillis(double percentile) {
+			long rank = (long) Math.ceil(percentile / 100 * count);
+			long seen = 0;
+
+			for (int i = 0; i < BUCKETS && count > 0; i++) {
+				seen += buckets[i];
+
+				if (seen >= Math.max(1, rank)) {
+					return Math.min(upperBoundOf(i), maxMicros) / 1000d;
+				}
+			}
+
+			return 0;
+		}
+
+		/**
+		 * To figure out in which bucket given latency is counted.
+		 * 
+		 * @param micros
+		 *            Latency in microseconds.
+		 * @return Index of bucket.
+		 */
+		private static int bucketOf(long micros) {
+			if (micros < LINEAR_BUCKETS) {
+				return (int) micros;
+			}
+
+			// Position of highest bit, and the two bits following it choose one of four buckets within the doubling
+			int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+			int quarter = (int) (micros >> (highestBit - 2)) & 3;
+
+			return LINEAR_BUCKETS + (highestBit - 3) * 4 + quarter;
+		}
+
+		/**
+		 * To get the upper bound, exclusive, of given bucket.
+		 * 
+		 * @param bucket
+		 *            Index of bucket.
+		 * @return Upper bound in microseconds.
+		 */
+		private static long upperBoundOf(int bucket) {
+			if (bucket < LINEAR_BUCKETS) {
+				return bucket + 1;
+			}
+
+			int highestBit = (bucket - LINEAR_BUCKETS) / 4 + 3;
+			int quarter = (bucket - LINEAR_BUCKETS) % 4;
+
+			return (long) (4 + quarter + 1) << (highestBit - 2);
+		}
+	}
+
+	/**
+	 * A trace of one SMS through the alarm pipeline.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class AlarmTrace {
+		private final long startNanos = System.nanoTime();
+
+		// Stages already recorded, one bit per stage, each stage is only recorded once per trace
+		private final AtomicInteger recordedStages = new AtomicInteger();
+	}
+
+	// Singleton instance of this class, eagerly initialized
+	private static final Metrics INSTANCE = new Metrics();
+
+	private static final String LOG_TAG = Metrics.class.getSimpleName();
+
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	// Trace of the latest received SMS
+	private final AtomicReference<AlarmTrace> alarmTrace = new AtomicReference<AlarmTrace>();
+
+	/**
+	 * Creates a new instance of {@link Metrics}.
+	 */
+	private Metrics() {
+		if (INSTANCE != null) {
+			Log.e(LOG_TAG + ":Metrics()", "Metrics already instantiated");
+		}
+	}
+
+	/**
+	 * To get the <b><i>singleton</i></b> instance of {@link Metrics}.
+	 * 
+	 * @return Instance of <code>Metrics</code>.
+	 */
+	public static Metrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * To increment the counter of given name by one, the counter is created if it doesn't exist.
+	 * 
+	 * @param name
+	 *            Name of counter.
+	 */
+	public void increment(String name) {
+		AtomicLong counter = counters.get(name);
+
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = counters.putIfAbsent(name, newCounter);
+
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * To record given latency in the histogram of given name, the histogram is created if it doesn't exist.
+	 * 
+	 * @param name
+	 *            Name of histogram.
+	 * @param nanos
+	 *            Latency in nanoseconds.
+	 */
+	public void record(String name, long nanos) {
+		histogram(name).record(nanos);
+	}
+
+	/**
+	 * To start a new trace of the alarm pipeline, <b><i>called when an SMS is received</i></b>.
+	 */
+	public void alarmReceived() {
+		alarmTrace.set(new AlarmTrace());
+	}
+
+	/**
+	 * To record that given {@link AlarmStage} has been reached by the latest received SMS. The time since the SMS was received is recorded in the
+	 * histogram of the stage, unless the stage already has been recorded for the SMS.
+	 * 
+	 * @param stage
+	 *            Reached stage.
+	 */
+	public void alarmStage(AlarmStage stage) {
+		AlarmTrace trace = alarmTrace.get();
+
+		if (trace == null) {
+			return;
+		}
+
+		int bit = 1 << stage.ordinal();
+		int recorded;
+
+		do {
+			recorded = trace.recordedStages.get();
+
+			if ((recorded & bit) != 0) {
+				return;
+			}
+		} while (!trace.recordedStages.compareAndSet(recorded, recorded | bit));
+
+		record(stage.getMetricName(), System.nanoTime() - trace.startNanos);
+	}
+
+	/**
+	 * To get a snapshot of all counters.
+	 * 
+	 * @return Value of each counter, sorted by name.
+	 */
+	public Map<String, Long> getCounters() {
+		Map<String, Long> snapshot = new TreeMap<String, Long>();
+
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * To get all histograms.
+	 * 
+	 * @return Histograms, sorted by name.
+	 */
+	public Map<String, Histogram> getHistograms() {
+		return new TreeMap<String, Histogram>(histograms);
+	}
+
+	/**
+	 * To get the histogram of given name, it's created if it doesn't exist.
+	 * 
+	 * @param name
+	 *            Name of histogram.
+	 * @return Histogram of given name.
+	 */
+	public Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+
+		if (histogram == null) {
+			Histogram newHistogram = new Histogram();
+			histogram = histograms.putIfAbsent(name, newHistogram);
+
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * To reset all metrics.
+	 */
+	public void reset() {
+		counters.clear();
+		histograms.clear();
+		alarmTrace.set(null);
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.os.SystemClock;
+import android.util.Log;
+import ax.ha.it.smsalarm.activity.SmsAlarm;
+
+/**
+ * Application wide scheduler for <b><i>delayed work</i></b>. All delayed tasks are run on one single thread owned by a
+ * {@link ScheduledExecutorService}, instead of each task creating a thread of it's own as a <code>java.util.Timer</code> does.<br>
+ * Each scheduled task gets a {@link ScheduledTask} handle by which it can be cancelled, and each task is measured, per task name, so it's possible to
+ * see how many tasks that has been scheduled, run, cancelled and failed and how late and for how long they ran.
+ * <p>
+ * <b><i>Note. Tasks are run one at a time, hence a task must never block for long.</i></b>
+ * <p>
+ * <b><i>Scheduler is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class Scheduler {
+	/**
+	 * Handle to a task scheduled with {@link Scheduler}, can be used to cancel the task.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class ScheduledTask {
+		private final String name;
+		private volatile ScheduledFuture<?> future;
+
+		private ScheduledTask(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * To cancel this task. If the task already is running it's allowed to finish.
+		 * 
+		 * @return <code>true</code> if the task was cancelled before it was run, else <code>false</code>.
+		 */
+		public boolean cancel() {
+			if (future != null && future.cancel(false)) {
+				synchronized (INSTANCE.stats) {
+					INSTANCE.statsFor(name).cancelled++;
+				}
+
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * To figure out if this task is <b><i>done</i></b>, that is if it has been run or cancelled.
+		 * 
+		 * @return <code>true</code> if task is done, else <code>false</code>.
+		 */
+		public boolean isDone() {
+			return future != null && future.isDone();
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Measurements of all tasks scheduled with a certain name.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class TaskStats {
+		private int scheduled;
+		private int run;
+		private int cancelled;
+		private int failed;
+		private long totalLatenessMillis;
+		private long maxLatenessMillis;
+		private long totalRunTimeMillis;
+		private long maxRunTimeMillis;
+
+		private TaskStats() {
+		}
+
+		private TaskStats(TaskStats stats) {
+			scheduled = stats.scheduled;
+			run = stats.run;
+			cancelled = stats.cancelled;
+			failed = stats.failed;
+			totalLatenessMillis = stats.totalLatenessMillis;
+			maxLatenessMillis = stats.maxLatenessMillis;
+			totalRunTimeMillis = stats.totalRunTimeMillis;
+			maxRunTimeMillis = stats.maxRunTimeMillis;
+		}
+
+		public int getScheduled() {
+			return scheduled;
+		}
+
+		public int getRun() {
+			return run;
+		}
+
+		public int getCancelled() {
+			return cancelled;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public long getMaxLatenessMillis() {
+			return maxLatenessMillis;
+		}
+
+		public long getAverageLatenessMillis() {
+			return run > 0 ? totalLatenessMillis / run : 0;
+		}
+
+		public long getMaxRunTimeMillis() {
+			return maxRunTimeMillis;
+		}
+
+		public long getAverageRunTimeMillis() {
+			return run > 0 ? totalRunTimeMillis / run : 0;
+		}
+
+		@Override
+		public String toString() {
+			return "scheduled=" + scheduled + ", run=" + run + ", cancelled=" + cancelled + ", failed=" + failed + ", lateness(avg/max)=" + getAverageLatenessMillis() + "/" + maxLatenessMillis + "ms, runTime(avg/max)=" + getAverageRunTimeMillis() + "/" + maxRunTimeMillis + "ms";
+		}
+	}
+
+	// Singleton instance of this class, eagerly initialized
+	private static final Scheduler INSTANCE = new Scheduler();
+
+	private static final String LOG_TAG = Scheduler.class.getSimpleName();
+
+	// Tasks that starts later than this, in milliseconds, are logged when debugging
+	private static final long LATENESS_WARNING_LIMIT = 100;
+
+	// The executor on which all tasks are run
+	private final ScheduledExecutorService executor;
+
+	// Measurements per task name, guarded by it's own lock
+	private final Map<String, TaskStats> stats = new HashMap<String, TaskStats>();
+
+	/**
+	 * Creates a new instance of {@link Scheduler}.
+	 */
+	private Scheduler() {
+		if (INSTANCE != null) {
+			Log.e(LOG_TAG + ":Scheduler()", "Scheduler already instantiated");
+		}
+
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, LOG_TAG);
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * To get the <b><i>singleton</i></b> instance of {@link Scheduler}.
+	 * 
+	 * @return Instance of <code>Scheduler</code>.
+	 */
+	public static Scheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * To schedule given <code>task</code> to be run once after given delay.
+	 * 
+	 * @param name
+	 *            Name of task, tasks are measured per name.
+	 * @param task
+	 *            The task to run.
+	 * @param delayMillis
+	 *            Delay, in milliseconds, until task is run.
+	 * @return Handle to scheduled task, can be used to cancel it.
+	 */
+	public ScheduledTask schedule(final String name, final Runnable task, long delayMillis) {
+		final ScheduledTask scheduledTask = new ScheduledTask(name);
+		final long dueTime = SystemClock.elapsedRealtime() + delayMillis;
+
+		synchronized (stats) {
+			statsFor(name).scheduled++;
+		}
+
+		scheduledTask.future = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				long startTime = SystemClock.elapsedRealtime();
+				boolean failed = false;
+
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// Catch it here so it's logged, else it would just silently end up in the future
+					failed = true;
+					Log.e(LOG_TAG + ":schedule()", "Task: \"" + name + "\" failed", e);
+				}
+
+				record(name, Math.max(0, startTime - dueTime), SystemClock.elapsedRealtime() - startTime, failed);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+
+		return scheduledTask;
+	}
+
+	/**
+	 * To get a snapshot of the measurements of all tasks scheduled so far, per task name.
+	 * 
+	 * @return Copy of measurements.
+	 */
+	public Map<String, TaskStats> getStats() {
+		Map<String, TaskStats> snapshot = new HashMap<String, TaskStats>();
+
+		synchronized (stats) {
+			for (Map.Entry<String, TaskStats> entry : stats.entrySet()) {
+				snapshot.put(entry.getKey(), new TaskStats(entry.getValue()));
+			}
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * To record measurements for a run of task with given name.
+	 * 
+	 * @param name
+	 *            Name of task.
+	 * @param latenessMillis
+	 *            How late, in milliseconds, the task started.
+	 * @param runTimeMillis
+	 *            For how long, in milliseconds, the task ran.
+	 * @param failed
+	 *            Whether or not the task failed.
+	 */
+	private void record(String name, long latenessMillis, long runTimeMillis, boolean failed) {
+		synchronized (stats) {
+			TaskStats taskStats = statsFor(name);
+			taskStats.run++;
+			taskStats.totalLatenessMillis += latenessMillis;
+			taskStats.maxLatenessMillis = Math.max(taskStats.maxLatenessMillis, latenessMillis);
+			taskStats.totalRunTimeMillis += runTimeMillis;
+			taskStats.maxRunTimeMillis = Math.max(taskStats.maxRunTimeMillis, runTimeMillis);
+
+			if (failed) {
+				taskStats.failed++;
+			}
+		}
+
+		if (SmsAlarm.DEBUG && latenessMillis > LATENESS_WARNING_LIMIT) {
+			Log.d(LOG_TAG + ":record()", "Task: \"" + name + "\" started " + latenessMillis + "ms late");
+		}
+	}
+
+	/**
+	 * To get the {@link TaskStats} for given task name, created if it doesn't exist. <b><i>Caller must hold the lock of stats.</i></b>
+	 * 
+	 * @param name
+	 *            Name of task.
+	 * @return Measurements for task.
+	 */
+	private TaskStats statsFor(String name) {
+		TaskStats taskStats = stats.get(name);
+
+		if (taskStats == null) {
+			taskStats = new TaskStats();
+			stats.put(name, taskStats);
+		}
+
+		return taskStats;
+	}
+}
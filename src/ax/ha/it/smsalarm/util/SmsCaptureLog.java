@@ -0,0 +1,398 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+import android.os.Environment;
+import android.util.Log;
+
+/**
+ * Structured, binary, capture log of received SMS. Each captured SMS is appended as a length prefixed record containing the raw
+ * <b><i>PDUs</i></b> as well as the interpreted sender and body and the result of the classification, hence a captured SMS can later be replayed
+ * exactly as it was received.<br>
+ * Records are appended on the same background thread as {@link Logger} writes on, and read through a {@link Reader} which memory maps the log file.
+ * <p>
+ * The log file starts with a header, the <code>MAGIC</code> and <code>VERSION</code>, followed by any number of records looking like:
+ * 
+ * <pre>
+ * int    length of rest of record
+ * long   time of capture, milliseconds since epoch
+ * int    number of PDUs, then for each PDU: int length, bytes
+ * string format of PDUs, "3gpp" or "3gpp2", empty if unknown
+ * string sender
+ * string body
+ * string alarm type
+ * string trigger text
+ * </pre>
+ * 
+ * where each string is an int length followed by the UTF-8 encoded bytes. A record that was only partly written, the application could have been
+ * killed while writing it, ends the log.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class SmsCaptureLog {
+	/**
+	 * A captured SMS, as read from a {@link SmsCaptureLog}.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class CapturedSms {
+		private final long timestamp;
+		private final byte[][] pdus;
+		private final String format;
+		private final String sender;
+		private final String body;
+		private final String alarmType;
+		private final String triggerText;
+
+		/**
+		 * Creates a new instance of {@link CapturedSms}.
+		 * 
+		 * @param timestamp
+		 *            Time of capture, milliseconds since epoch.
+		 * @param pdus
+		 *            Raw PDUs of SMS.
+		 * @param format
+		 *            Format of PDUs, "3gpp" or "3gpp2", empty if unknown.
+		 * @param sender
+		 *            Sender of SMS.
+		 * @param body
+		 *            Body of SMS.
+		 * @param alarmType
+		 *            Name of <code>AlarmType</code> the SMS was classified as.
+		 * @param triggerText
+		 *            Text that triggered the alarm, empty if none.
+		 */
+		public CapturedSms(long timestamp, byte[][] pdus, String format, String sender, String body, String alarmType, String triggerText) {
+			this.timestamp = timestamp;
+			this.pdus = pdus;
+			this.format = format;
+			this.sender = sender;
+			this.body = body;
+			this.alarmType = alarmType;
+			this.triggerText = triggerText;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public byte[][] getPdus() {
+			return pdus;
+		}
+
+		public String getFormat() {
+			return format;
+		}
+
+		public String getSender() {
+			return sender;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public String getAlarmType() {
+			return alarmType;
+		}
+
+		public String getTriggerText() {
+			return triggerText;
+		}
+	}
+
+	/**
+	 * Reader of a {@link SmsCaptureLog}. The whole log file is memory mapped, hence records are read without copying the file through any streams.
+	 * <b><i>Note. A Reader isn't thread safe.</i></b>
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class Reader {
+		private final MappedByteBuffer buffer;
+
+		// Next record, read ahead to be able to tell if there is any
+		private CapturedSms next;
+
+		/**
+		 * Creates a new {@link Reader} of given capture log file.
+		 * 
+		 * @param file
+		 *            Capture log file to read.
+		 * @throws IOException
+		 *             If the file couldn't be read or isn't a capture log.
+		 */
+		public Reader(File file) throws IOException {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+			try {
+				FileChannel channel = randomAccessFile.getChannel();
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				// The mapping stays valid after the file is closed
+				randomAccessFile.close();
+			}
+
+			if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("File: \"" + file.getName() + "\" isn't a SMS capture log of version " + VERSION);
+			}
+
+			next = readRecord();
+		}
+
+		/**
+		 * To figure out if there is any more captured SMS to read.
+		 * 
+		 * @return <code>true</code> if there is any, else <code>false</code>.
+		 */
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		/**
+		 * To read next captured SMS.
+		 * 
+		 * @return Next {@link CapturedSms}.
+		 * @throws NoSuchElementException
+		 *             If there isn't any more captured SMS.
+		 */
+		public CapturedSms next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+
+			CapturedSms current = next;
+			next = readRecord();
+
+			return current;
+		}
+
+		/**
+		 * To read a record from current position of buffer.
+		 * 
+		 * @return Read record, or <code>null</code> if there isn't any more complete record.
+		 */
+		private CapturedSms readRecord() {
+			if (buffer.remaining() < 4) {
+				return null;
+			}
+
+			int length = buffer.getInt();
+
+			if (length < 0 || length > buffer.remaining()) {
+				return null;
+			}
+
+			// Read record from a slice, so a corrupt record can't make the reader go out of sync
+			ByteBuffer record = buffer.slice();
+			record.limit(length);
+			buffer.position(buffer.position() + length);
+
+			try {
+				long timestamp = record.getLong();
+				byte[][] pdus = new byte[record.getInt()][];
+
+				for (int i = 0; i < pdus.length; i++) {
+					pdus[i] = new byte[record.getInt()];
+					record.get(pdus[i]);
+				}
+
+				return new CapturedSms(timestamp, pdus, getString(record), getString(record), getString(record), getString(record), getString(record));
+			} catch (BufferUnderflowException e) {
+				Log.e(LOG_TAG + ":readRecord()", "Corrupt record found, skipping rest of log", e);
+			} catch (NegativeArraySizeException e) {
+				Log.e(LOG_TAG + ":readRecord()", "Corrupt record found, skipping rest of log", e);
+			}
+
+			return null;
+		}
+	}
+
+	private static final String LOG_TAG = SmsCaptureLog.class.getSimpleName();
+
+	// Header identifying a capture log file, "SMSC", and version of the record format
+	private static final int MAGIC = 0x534D5343;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// Name of directory for application
+	private static final String DIRECTORY = "SmsAlarm";
+
+	// Name of file, and the file opened for appending which is only accessed on the background thread
+	private final String fileName;
+	private FileOutputStream out;
+
+	/**
+	 * Creates a new instance of {@link SmsCaptureLog}, appending to given file in directory "SmsAlarm" on external storage.
+	 * 
+	 * @param fileName
+	 *            Name of capture log file.
+	 */
+	public SmsCaptureLog(String fileName) {
+		this.fileName = fileName;
+	}
+
+	/**
+	 * To get the capture log file.
+	 * 
+	 * @return The file.
+	 */
+	public File getFile() {
+		return new File(new File(Environment.getExternalStorageDirectory(), DIRECTORY), fileName);
+	}
+
+	/**
+	 * To append a captured SMS to the log. The record is built on the calling thread but written on a background thread, hence this method does no
+	 * I/O.
+	 * 
+	 * @param sms
+	 *            SMS to capture.
+	 */
+	public void append(CapturedSms sms) {
+		final byte[] record = toRecord(sms);
+
+		Logger.execute(new Runnable() {
+			@Override
+			public void run() {
+				write(record);
+			}
+		});
+	}
+
+	/**
+	 * To open a {@link Reader} of this capture log.
+	 * 
+	 * @return Reader positioned at first captured SMS.
+	 * @throws IOException
+	 *             If the log couldn't be read.
+	 */
+	public Reader openReader() throws IOException {
+		return new Reader(getFile());
+	}
+
+	/**
+	 * To write given record to the log file, the file is opened, and if new a header is written, if it isn't already open.
+	 * <b><i>Must only be called from the background thread.</i></b>
+	 * 
+	 * @param record
+	 *            Record to write.
+	 */
+	private void write(byte[] record) {
+		try {
+			if (out == null) {
+				if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+					Log.e(LOG_TAG + ":write()", "Unable to capture SMS because the external storage isn't available for writing");
+					return;
+				}
+
+				File file = getFile();
+				file.getParentFile().mkdirs();
+
+				boolean newFile = !file.exists() || file.length() == 0;
+				out = new FileOutputStream(file, true);
+
+				if (newFile) {
+					out.write(ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION).array());
+				}
+			}
+
+			// Whole record in one write, not buffered, so it's on disk as soon as possible
+			out.write(record);
+		} catch (IOException e) {
+			Log.e(LOG_TAG + ":write()", "An Exception occurred during writing to file: \"" + fileName + "\"", e);
+
+			try {
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException ioe) {
+				// Nothing to do, file is opened again on next write
+			}
+
+			out = null;
+		}
+	}
+
+	/**
+	 * To build a length prefixed record of given captured SMS.
+	 * 
+	 * @param sms
+	 *            Captured SMS.
+	 * @return The record.
+	 */
+	private static byte[] toRecord(CapturedSms sms) {
+		byte[][] strings = { encode(sms.format), encode(sms.sender), encode(sms.body), encode(sms.alarmType), encode(sms.triggerText) };
+
+		// Timestamp and number of PDUs
+		int length = 8 + 4;
+
+		for (byte[] pdu : sms.pdus) {
+			length += 4 + pdu.length;
+		}
+
+		for (byte[] string : strings) {
+			length += 4 + string.length;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(4 + length);
+		record.putInt(length);
+		record.putLong(sms.timestamp);
+		record.putInt(sms.pdus.length);
+
+		for (byte[] pdu : sms.pdus) {
+			record.putInt(pdu.length);
+			record.put(pdu);
+		}
+
+		for (byte[] string : strings) {
+			record.putInt(string.length);
+			record.put(string);
+		}
+
+		return record.array();
+	}
+
+	/**
+	 * To encode given string as UTF-8.
+	 * 
+	 * @param string
+	 *            String to encode, <code>null</code> is encoded as an empty string.
+	 * @return Encoded string.
+	 */
+	private static byte[] encode(String string) {
+		return string != null ? string.getBytes(UTF_8) : new byte[0];
+	}
+
+	/**
+	 * To read a length prefixed UTF-8 string from given buffer.
+	 * 
+	 * @param buffer
+	 *            Buffer to read string from.
+	 * @return Read string.
+	 */
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+
+		return new String(bytes, UTF_8);
+	}
+}
@@ -0,0 +1,477 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.util;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import ax.ha.it.smsalarm.activity.SmsAlarm;
+import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.DataType;
+import ax.ha.it.smsalarm.handler.SharedPreferencesHandler.PrefKey;
+import ax.ha.it.smsalarm.receiver.SmsReceiver;
+import ax.ha.it.smsalarm.util.Scheduler.ScheduledTask;
+
+/**
+ * <b><i>Load Generator</i></b> for debug and testing purpose, dispatches a burst of mock SMS at a configurable rate and with a configurable mix of
+ * {@link MessageKind}'s, to see how the application behaves in an incident storm. The end-to-end latency of each SMS, from it's dispatched until
+ * {@link SmsReceiver} has handled it, is recorded together with the alarm type the SMS was classified as.<br>
+ * The result of each SMS and a summary of the whole run is written to the file <code>loadgenerator.txt</code>.
+ * <p>
+ * Contents of the SMS are built from the configured phone numbers and free texts, so primary and secondary SMS triggers alarms if such are
+ * configured.
+ * <p>
+ * <b><i>SmsLoadGenerator is a singleton, eagerly initialized to avoid concurrent modification.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ * @see DebugUtils#createMockSMS(String, String, boolean)
+ */
+public class SmsLoadGenerator {
+	/**
+	 * Enumeration of the different kinds of SMS the load generator can dispatch.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public enum MessageKind {
+		PRIMARY, SECONDARY, NON_ALARM, MULTIPART, UNICODE;
+	}
+
+	/**
+	 * State of one run of the load generator.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class Run {
+		private final int id;
+		private final Context context;
+		private final double intervalMillis;
+		private final MessageKind[] kinds;
+
+		// Content of the SMS
+		private final String primarySender;
+		private final String primaryText;
+		private final String secondarySender;
+		private final String secondaryText;
+
+		// Time of dispatch and latency of each SMS in nanoseconds, latency is -1 until SMS is handled
+		private final long[] dispatchNanos;
+		private final long[] latencyNanos;
+		private final AlarmType[] alarmTypes;
+
+		private final Logger logger = new Logger(RESULT_LOG_FILE);
+
+		private long startMillis;
+		private int dispatched;
+		private int handled;
+		private ScheduledTask task;
+
+		private Run(int id, Context context, int count, int ratePerSecond, MessageKind[] kinds, String primarySender, String primaryText, String secondarySender, String secondaryText) {
+			this.id = id;
+			this.context = context;
+			this.intervalMillis = 1000d / ratePerSecond;
+			this.kinds = kinds;
+			this.primarySender = primarySender;
+			this.primaryText = primaryText;
+			this.secondarySender = secondarySender;
+			this.secondaryText = secondaryText;
+
+			dispatchNanos = new long[count];
+			latencyNanos = new long[count];
+			alarmTypes = new AlarmType[count];
+
+			Arrays.fill(latencyNanos, -1);
+		}
+	}
+
+	// Singleton instance of this class, eagerly initialized
+	private static final SmsLoadGenerator INSTANCE = new SmsLoadGenerator();
+
+	private static final String LOG_TAG = SmsLoadGenerator.class.getSimpleName();
+
+	// Extras identifying a dispatched SMS, put into the intent broadcasted to SmsReceiver
+	public static final String EXTRA_RUN_ID = "ax.ha.it.smsalarm.LOAD_GENERATOR_RUN_ID";
+	public static final String EXTRA_MESSAGE_ID = "ax.ha.it.smsalarm.LOAD_GENERATOR_MESSAGE_ID";
+
+	// Name of file to which results are written
+	private static final String RESULT_LOG_FILE = "loadgenerator.txt";
+
+	// Name of scheduled task dispatching the SMS
+	private static final String TASK_NAME = "smsLoadGenerator";
+
+	// Time to wait for SMS not yet handled once all SMS has been dispatched
+	private static final long COMPLETION_TIMEOUT = 30000;
+
+	// Sender of non alarm SMS, should not be configured to trigger any alarms
+	private static final String NON_ALARM_SENDER = "0000000";
+
+	// Text making a multipart SMS, and text which can't be encoded in the GSM 7 bit alphabet
+	private static final String MULTIPART_FILLER = " Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+	private static final int MULTIPART_MIN_LENGTH = 400;
+	private static final String UNICODE_TEXT = " \u041f\u043e\u0436\u0430\u0440 \u2013 \u706b\u707d \u00c5\u00c4\u00d6";
+
+	// Kinds of SMS are chosen randomly from the mix, with same seed on every run so runs with the same configuration are comparable
+	private static final long MIX_SEED = 1;
+
+	// Current run, null if no run is in progress
+	private Run run;
+	private int lastRunId;
+
+	/**
+	 * Creates a new instance of {@link SmsLoadGenerator}.
+	 */
+	private SmsLoadGenerator() {
+		if (INSTANCE != null) {
+			Log.e(LOG_TAG + ":SmsLoadGenerator()", "SmsLoadGenerator already instantiated");
+		}
+	}
+
+	/**
+	 * To get the <b><i>singleton</i></b> instance of {@link SmsLoadGenerator}.
+	 * 
+	 * @return Instance of <code>SmsLoadGenerator</code>.
+	 */
+	public static SmsLoadGenerator getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * To start a run of the load generator, dispatching given number of SMS at given rate. Which kind each SMS is of is randomly chosen, weighted by
+	 * given mix.
+	 * 
+	 * @param context
+	 *            Context within SmsReceiver are triggered.
+	 * @param count
+	 *            Number of SMS to dispatch.
+	 * @param ratePerSecond
+	 *            Number of SMS to dispatch per second.
+	 * @param mix
+	 *            Weight of each kind of SMS, kinds missing in the mix are never dispatched.
+	 * @return <code>true</code> if the run was started, <code>false</code> if a run already is in progress or the arguments are invalid.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized boolean start(Context context, int count, int ratePerSecond, Map<MessageKind, Integer> mix) {
+		MessageKind[] kinds = chooseKinds(count, mix);
+
+		if (run != null || count <= 0 || ratePerSecond <= 0 || kinds == null) {
+			return false;
+		}
+
+		SharedPreferencesHandler prefHandler = SharedPreferencesHandler.getInstance();
+		List<String> primaryNumbers = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_NUMBERS_KEY, DataType.LIST, context);
+		List<String> secondaryNumbers = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_NUMBERS_KEY, DataType.LIST, context);
+		List<String> primaryFreeTexts = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY, DataType.LIST, context);
+		List<String> secondaryFreeTexts = (List<String>) prefHandler.fetchPrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY, DataType.LIST, context);
+
+		// @formatter:off
+		run = new Run(++lastRunId, context.getApplicationContext(), count, ratePerSecond, kinds,
+				primaryNumbers.isEmpty() ? NON_ALARM_SENDER : primaryNumbers.get(0), primaryFreeTexts.isEmpty() ? "" : " " + primaryFreeTexts.get(0),
+				secondaryNumbers.isEmpty() ? NON_ALARM_SENDER : secondaryNumbers.get(0), secondaryFreeTexts.isEmpty() ? "" : " " + secondaryFreeTexts.get(0));
+		// @formatter:on
+
+		run.logger.log2File("Run " + run.id + " started, messages: " + count + ", rate: " + ratePerSecond + "/s, mix: " + mix);
+		run.startMillis = System.currentTimeMillis();
+
+		scheduleNext(run, 0);
+
+		return true;
+	}
+
+	/**
+	 * To stop any run in progress, SMS already dispatched are included in the summary.
+	 */
+	public synchronized void stop() {
+		if (run != null) {
+			finish(run);
+		}
+	}
+
+	/**
+	 * To figure out whether or not a run of the load generator is in progress.
+	 * 
+	 * @return <code>true</code> if a run is in progress, else <code>false</code>.
+	 */
+	public synchronized boolean isRunning() {
+		return run != null;
+	}
+
+	/**
+	 * To record that a SMS has been handled by {@link SmsReceiver}, intents of SMS not dispatched by the load generator are ignored.
+	 * 
+	 * @param intent
+	 *            Intent received by <code>SmsReceiver</code>.
+	 * @param alarmType
+	 *            Type of alarm the SMS was classified as.
+	 */
+	public void messageHandled(Intent intent, AlarmType alarmType) {
+		if (!intent.hasExtra(EXTRA_MESSAGE_ID)) {
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		synchronized (this) {
+			int messageId = intent.getIntExtra(EXTRA_MESSAGE_ID, -1);
+
+			// From a run that is finished, or already handled
+			if (run == null || run.id != intent.getIntExtra(EXTRA_RUN_ID, -1) || messageId < 0 || messageId >= run.dispatched || run.latencyNanos[messageId] >= 0) {
+				return;
+			}
+
+			run.latencyNanos[messageId] = now - run.dispatchNanos[messageId];
+			run.alarmTypes[messageId] = alarmType;
+			run.handled++;
+
+			run.logger.log2File(messageId + "\t" + run.kinds[messageId] + "\t" + alarmType + "\t" + String.format("%.1f", run.latencyNanos[messageId] / 1e6) + " ms");
+
+			if (run.handled == run.kinds.length) {
+				finish(run);
+			}
+		}
+	}
+
+	/**
+	 * To schedule dispatching of next SMS, or if all SMS have been dispatched, the time out of the run.
+	 * 
+	 * @param run
+	 *            Run in progress.
+	 * @param delayMillis
+	 *            Delay until next SMS should be dispatched.
+	 */
+	private void scheduleNext(final Run run, long delayMillis) {
+		run.task = Scheduler.getInstance().schedule(TASK_NAME, new Runnable() {
+			@Override
+			public void run() {
+				dispatch(run);
+			}
+		}, delayMillis);
+	}
+
+	/**
+	 * To dispatch next SMS of given run, <b><i>called from the scheduler thread</i></b>.
+	 * 
+	 * @param run
+	 *            Run in progress.
+	 */
+	private void dispatch(Run run) {
+		int messageId;
+		MessageKind kind;
+
+		synchronized (this) {
+			if (this.run != run) {
+				return;
+			}
+
+			// All dispatched, time out waiting for the rest
+			if (run.dispatched == run.kinds.length) {
+				finish(run);
+				return;
+			}
+
+			messageId = run.dispatched;
+			kind = run.kinds[messageId];
+		}
+
+		// Build the SMS outside of the lock, it takes some time
+		Intent intent = createIntent(run, messageId, kind);
+
+		synchronized (this) {
+			if (this.run != run) {
+				return;
+			}
+
+			if (intent != null) {
+				run.dispatchNanos[messageId] = System.nanoTime();
+				run.context.sendBroadcast(intent);
+			} else {
+				Log.e(LOG_TAG + ":dispatch()", "Failed to create SMS: " + messageId + " of kind: " + kind);
+			}
+
+			run.dispatched++;
+
+			if (run.dispatched < run.kinds.length) {
+				// Keep the rate on the start time, so a late dispatch doesn't delay the rest
+				long dueMillis = run.startMillis + (long) (run.dispatched * run.intervalMillis);
+				scheduleNext(run, Math.max(0, dueMillis - System.currentTimeMillis()));
+			} else {
+				scheduleNext(run, COMPLETION_TIMEOUT);
+			}
+		}
+	}
+
+	/**
+	 * To create the intent dispatching SMS of given id and kind.
+	 * 
+	 * @param run
+	 *            Run in progress.
+	 * @param messageId
+	 *            Id of SMS within run.
+	 * @param kind
+	 *            Kind of SMS.
+	 * @return Intent to broadcast, <code>null</code> if SMS couldn't be created.
+	 */
+	private Intent createIntent(Run run, int messageId, MessageKind kind) {
+		// Each SMS gets an unique body
+		String body = "Load test " + run.id + "." + messageId;
+		String sender = run.primarySender;
+		boolean ucs2 = false;
+
+		switch (kind) {
+			case PRIMARY:
+				body += run.primaryText;
+				break;
+			case SECONDARY:
+				sender = run.secondarySender;
+				body += run.secondaryText;
+				break;
+			case NON_ALARM:
+				sender = NON_ALARM_SENDER;
+				break;
+			case MULTIPART:
+				StringBuilder sb = new StringBuilder(body).append(run.primaryText);
+
+				while (sb.length() < MULTIPART_MIN_LENGTH) {
+					sb.append(MULTIPART_FILLER);
+				}
+
+				body = sb.toString();
+				break;
+			case UNICODE:
+				body += run.primaryText + UNICODE_TEXT;
+				ucs2 = true;
+				break;
+		}
+
+		byte[][] pdus = DebugUtils.createMockSMS(sender, body, ucs2);
+
+		if (pdus == null) {
+			return null;
+		}
+
+		Intent intent = DebugUtils.createMockSMSIntent(run.context, pdus);
+		intent.putExtra(EXTRA_RUN_ID, run.id);
+		intent.putExtra(EXTRA_MESSAGE_ID, messageId);
+
+		return intent;
+	}
+
+	/**
+	 * To finish given run and write a summary of it, <b><i>must be called holding the lock of this instance</i></b>.
+	 * 
+	 * @param run
+	 *            Run to finish.
+	 */
+	private void finish(Run run) {
+		if (this.run != run) {
+			return;
+		}
+
+		this.run = null;
+
+		if (run.task != null) {
+			run.task.cancel();
+		}
+
+		// Latencies of handled SMS, sorted for percentiles, and number of SMS of each alarm type
+		long[] latencies = new long[run.handled];
+		Map<AlarmType, Integer> alarmTypeCounts = new EnumMap<AlarmType, Integer>(AlarmType.class);
+		int i = 0;
+
+		for (int messageId = 0; messageId < run.dispatched; messageId++) {
+			if (run.latencyNanos[messageId] >= 0) {
+				latencies[i++] = run.latencyNanos[messageId];
+
+				Integer alarmTypeCount = alarmTypeCounts.get(run.alarmTypes[messageId]);
+				alarmTypeCounts.put(run.alarmTypes[messageId], alarmTypeCount == null ? 1 : alarmTypeCount + 1);
+			}
+		}
+
+		Arrays.sort(latencies);
+
+		long elapsedMillis = System.currentTimeMillis() - run.startMillis;
+
+		// @formatter:off
+		String summary = "Run " + run.id + " finished, dispatched: " + run.dispatched + "/" + run.kinds.length + ", handled: " + run.handled + ", elapsed: " + elapsedMillis + " ms, " +
+				"latency min/50%/95%/99%/max: " + percentile(latencies, 0) + "/" + percentile(latencies, 50) + "/" + percentile(latencies, 95) + "/" + percentile(latencies, 99) + "/" + percentile(latencies, 100) + " ms, " +
+				"alarm types: " + alarmTypeCounts;
+		// @formatter:on
+
+		run.logger.log2File(summary);
+
+		if (SmsAlarm.DEBUG) {
+			Log.d(LOG_TAG + ":finish()", summary);
+		}
+	}
+
+	/**
+	 * To choose kind of each SMS, randomly weighted by given mix.
+	 * 
+	 * @param count
+	 *            Number of SMS.
+	 * @param mix
+	 *            Weight of each kind of SMS.
+	 * @return Kind of each SMS, <code>null</code> if mix has no positive weights.
+	 */
+	private static MessageKind[] chooseKinds(int count, Map<MessageKind, Integer> mix) {
+		int totalWeight = 0;
+
+		for (Integer weight : mix.values()) {
+			totalWeight += Math.max(0, weight);
+		}
+
+		if (totalWeight == 0 || count <= 0) {
+			return null;
+		}
+
+		Random random = new Random(MIX_SEED);
+		MessageKind[] kinds = new MessageKind[count];
+
+		for (int i = 0; i < count; i++) {
+			int r = random.nextInt(totalWeight);
+
+			for (MessageKind kind : MessageKind.values()) {
+				Integer weight = mix.get(kind);
+				r -= weight != null ? Math.max(0, weight) : 0;
+
+				if (r < 0) {
+					kinds[i] = kind;
+					break;
+				}
+			}
+		}
+
+		return kinds;
+	}
+
+	/**
+	 * To get given percentile of given sorted latencies.
+	 * 
+	 * @param sortedLatencies
+	 *            Sorted latencies, in nanoseconds.
+	 * @param percentile
+	 *            Percentile, 0 to 100.
+	 * @return Latency in milliseconds, formatted with one decimal, or "-" if there are no latencies.
+	 */
+	private static String percentile(long[] sortedLatencies, int percentile) {
+		if (sortedLatencies.length == 0) {
+			return "-";
+		}
+
+		int index = (int) Math.ceil(percentile / 100d * sortedLatencies.length) - 1;
+
+		return String.format("%.1f", sortedLatencies[Math.max(0, index)] / 1e6);
+	}
+}
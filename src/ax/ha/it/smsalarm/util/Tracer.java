@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Process;
+import android.os.Trace;
+import android.util.Log;
+import ax.ha.it.smsalarm.activity.SmsAlarm;
+
+/**
+ * Utility class for tracing the alarm pipeline in <b><i>named, nested sections</i></b>. Each section is emitted as an {@link Trace} section, seen in
+ * any system trace of the device, on Jelly Bean MR2 and higher.
+ * <p>
+ * The sections can also be recorded by the application itself, for the next given number of alarms, see {@link #recordAlarms(int)}. The recording
+ * is written to a file in the directory "SmsAlarm" on external storage, in the JSON trace event format which opens directly in Perfetto or
+ * chrome://tracing. Hence a slow alarm can be analysed without any system trace being taken.
+ * <p>
+ * Sections must be ended on the same thread as they were begun, always end a section within a <code>finally</code> block:
+ * 
+ * <pre>
+ * Tracer.begin(&quot;SmsReceiver.checkAlarm&quot;);
+ * try {
+ * 	...
+ * } finally {
+ * 	Tracer.end();
+ * }
+ * </pre>
+ * 
+ * <b><i>Note. All of this functionality should be accessed in a static manner.</i></b>
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class Tracer {
+	private static final String LOG_TAG = Tracer.class.getSimpleName();
+
+	// Whether or not system trace sections are available
+	private static final boolean TRACE_AVAILABLE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+	// Time to keep recording after last alarm has been received, so all sections of it are included
+	private static final long RECORDING_GRACE_PERIOD = 30000;
+
+	// Maximum number of recorded events, a recording stops if reached
+	private static final int MAX_RECORDED_EVENTS = 100000;
+
+	// Name of directory for application, and format of name of recording files
+	private static final String DIRECTORY = "SmsAlarm";
+	private static final String RECORDING_FILE_NAME_FORMAT = "'alarmtrace-'yyyyMMdd-HHmmss'.json'";
+
+	/**
+	 * A recorded begin or end of a section.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	private static class Event {
+		private final String name;
+		private final boolean begin;
+		private final long timestampMicros;
+		private final int threadId;
+
+		private Event(String name, boolean begin, long timestampMicros, int threadId) {
+			this.name = name;
+			this.begin = begin;
+			this.timestampMicros = timestampMicros;
+			this.threadId = threadId;
+		}
+	}
+
+	// Checked on every begin and end, so tracing is cheap when not recording
+	private static volatile boolean recording = false;
+
+	// State of the recording, guarded by the class lock
+	private static List<Event> events;
+	private static Map<Integer, String> threadNames;
+	private static int alarmsLeft;
+	private static Scheduler.ScheduledTask stopTask;
+
+	// Id of recording and number of sections begun, and not yet ended, within it on each thread. So a section begun before the recording started
+	// isn't ended in it
+	private static int recordingId;
+	private static final ThreadLocal<int[]> recordedDepth = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[2];
+		}
+	};
+
+	/**
+	 * To begin a section of given name on the calling thread, sections can be nested.
+	 * 
+	 * @param name
+	 *            Name of section, at most 127 characters.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	public static void begin(String name) {
+		if (TRACE_AVAILABLE) {
+			Trace.beginSection(name);
+		}
+
+		if (recording) {
+			record(name, true);
+		}
+	}
+
+	/**
+	 * To end the latest begun section on the calling thread.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	public static void end() {
+		if (TRACE_AVAILABLE) {
+			Trace.endSection();
+		}
+
+		if (recording) {
+			record(null, false);
+		}
+	}
+
+	/**
+	 * To start recording the sections of the next given number of alarms. If a recording is in progress it's stopped and written first.
+	 * 
+	 * @param alarms
+	 *            Number of alarms to record.
+	 */
+	public static synchronized void recordAlarms(int alarms) {
+		if (recording) {
+			stopRecording();
+		}
+
+		events = new ArrayList<Event>();
+		threadNames = new HashMap<Integer, String>();
+		alarmsLeft = alarms;
+		recordingId++;
+		recording = true;
+	}
+
+	/**
+	 * To figure out whether or not a recording is in progress.
+	 * 
+	 * @return <code>true</code> if a recording is in progress, else <code>false</code>.
+	 */
+	public static boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * To signal that an alarm has been received, once the number of alarms to record has been received the recording is stopped after a grace period.
+	 */
+	public static synchronized void alarmReceived() {
+		if (recording && alarmsLeft > 0 && --alarmsLeft == 0) {
+			stopTask = Scheduler.getInstance().schedule(LOG_TAG + ":stopRecording", new Runnable() {
+				@Override
+				public void run() {
+					stopRecording();
+				}
+			}, RECORDING_GRACE_PERIOD);
+		}
+	}
+
+	/**
+	 * To stop any recording in progress and write it to file, the file is written on a background thread.
+	 */
+	public static synchronized void stopRecording() {
+		if (!recording) {
+			return;
+		}
+
+		recording = false;
+
+		if (stopTask != null) {
+			stopTask.cancel();
+			stopTask = null;
+		}
+
+		final List<Event> recordedEvents = events;
+		final Map<Integer, String> recordedThreadNames = threadNames;
+		events = null;
+		threadNames = null;
+
+		Logger.execute(new Runnable() {
+			@Override
+			public void run() {
+				write(recordedEvents, recordedThreadNames);
+			}
+		});
+	}
+
+	/**
+	 * To record a begin or end of a section on the calling thread.
+	 * 
+	 * @param name
+	 *            Name of section, <code>null</code> for ends.
+	 * @param begin
+	 *            Whether it's a begin or an end.
+	 */
+	private static void record(String name, boolean begin) {
+		long timestampMicros = System.nanoTime() / 1000;
+		int threadId = Process.myTid();
+		int[] depth = recordedDepth.get();
+
+		synchronized (Tracer.class) {
+			if (!recording) {
+				return;
+			}
+
+			// Depth was counted within an earlier recording, start over
+			if (depth[0] != recordingId) {
+				depth[0] = recordingId;
+				depth[1] = 0;
+			}
+
+			// An end of a section not begun within the recording
+			if (!begin && depth[1] == 0) {
+				return;
+			}
+
+			if (events.size() >= MAX_RECORDED_EVENTS) {
+				Log.e(LOG_TAG + ":record()", "Maximum number of events recorded, stopping recording");
+				stopRecording();
+				return;
+			}
+
+			if (!threadNames.containsKey(threadId)) {
+				threadNames.put(threadId, Thread.currentThread().getName());
+			}
+
+			events.add(new Event(name, begin, timestampMicros, threadId));
+			depth[1] += begin ? 1 : -1;
+		}
+	}
+
+	/**
+	 * To write given events to a new recording file, <b><i>must only be called from the background thread</i></b>.
+	 * 
+	 * @param events
+	 *            Recorded events.
+	 * @param threadNames
+	 *            Names of the threads on which the events were recorded.
+	 */
+	private static void write(List<Event> events, Map<Integer, String> threadNames) {
+		if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+			Log.e(LOG_TAG + ":write()", "Unable to write recording because the external storage isn't available for writing");
+			return;
+		}
+
+		File directory = new File(Environment.getExternalStorageDirectory(), DIRECTORY);
+		directory.mkdirs();
+
+		File file = new File(directory, new SimpleDateFormat(RECORDING_FILE_NAME_FORMAT, Locale.ENGLISH).format(new Date()));
+		int pid = Process.myPid();
+		Writer out = null;
+
+		try {
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+			out.write("{\"traceEvents\":[\n");
+
+			// Name the threads first
+			boolean first = true;
+
+			for (Map.Entry<Integer, String> threadName : threadNames.entrySet()) {
+				out.write((first ? "" : ",\n") + "{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":" + pid + ",\"tid\":" + threadName.getKey() + ",\"args\":{\"name\":\"" + escape(threadName.getValue()) + "\"}}");
+				first = false;
+			}
+
+			for (Event event : events) {
+				out.write((first ? "" : ",\n") + "{\"ph\":\"" + (event.begin ? "B" : "E") + "\",\"pid\":" + pid + ",\"tid\":" + event.threadId + ",\"ts\":" + event.timestampMicros);
+				out.write(event.begin ? ",\"name\":\"" + escape(event.name) + "\"}" : "}");
+				first = false;
+			}
+
+			out.write("\n]}\n");
+
+			if (SmsAlarm.DEBUG) {
+				Log.d(LOG_TAG + ":write()", events.size() + " events written to: \"" + file.getAbsolutePath() + "\"");
+			}
+		} catch (IOException e) {
+			Log.e(LOG_TAG + ":write()", "An Exception occurred during writing to file: \"" + file.getAbsolutePath() + "\"", e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					Log.e(LOG_TAG + ":write()", "Failed to close file: \"" + file.getAbsolutePath() + "\"", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * To escape given string for use within a JSON string.
+	 * 
+	 * @param string
+	 *            String to escape.
+	 * @return Escaped string.
+	 */
+	private static String escape(String string) {
+		return string.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -193,12 +193,36 @@ public class Utils {
 		String strippedString = "";
 
 		if (string != null && string.length() > 0) {
-			strippedString = string.replaceAll("\\s+", "");
+			// Most strings, like phone numbers, doesn't contain any white spaces at all, no need to run a regular expression on them
+			strippedString = containsWhiteSpace(string) ? string.replaceAll("\\s+", "") : string;
 		}
 
 		return strippedString;
 	}
 
+	/**
+	 * To figure out if given <code>String</code> contains any white space, as matched by <code>\s</code> in a regular expression.
+	 * 
+	 * @param string
+	 *            String to check.
+	 * @return <code>true</code> if string contains any white space, else <code>false</code>.
+	 */
+	private static boolean containsWhiteSpace(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			switch (string.charAt(i)) {
+				case ' ':
+				case '\t':
+				case '\n':
+				case '\013':
+				case '\f':
+				case '\r':
+					return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * To clean a message from the following pattern if found in given {@link String}:
 	 * <p>
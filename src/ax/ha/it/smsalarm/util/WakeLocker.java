@@ -3,83 +3,195 @@
  */
 package ax.ha.it.smsalarm.util;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.util.Log;
+import ax.ha.it.smsalarm.activity.SmsAlarm;
+import ax.ha.it.smsalarm.util.FlightRecorder.Event;
+import ax.ha.it.smsalarm.util.Scheduler.ScheduledTask;
 
 /**
- * Utility class that makes handling with {@link WakeLock} a bit easier.
+ * Utility class that makes handling with {@link WakeLock} a bit easier.<br>
+ * The wake lock is <b><i>reference counted</i></b> by {@link WakeLockHandle}'s, each acquired by an <b><i>owner</i></b> and with a timeout. The
+ * device is kept awake as long as any handle is held, and the wake lock is released as soon as the last handle has been released. Hence overlapping
+ * alarms can't cut each others wake lock short and the wake lock is held only for as long as there is any work going on.<br>
+ * Handles should be released as soon as the owners work is done, the timeout is only a safety net for when that for some reason never happens.
  * 
  * @author Robert Nyholm <robert.nyholm@aland.net>
  * @version 2.3.1
  * @since 2.1
  */
 public abstract class WakeLocker {
+	/**
+	 * Handle to an acquired {@link WakeLock}, must be released when the work it was acquired for is done.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class WakeLockHandle {
+		private final int id;
+		private final String owner;
+		private final long acquiredAt;
+		private ScheduledTask timeout;
+		private boolean released = false;
+
+		private WakeLockHandle(int id, String owner) {
+			this.id = id;
+			this.owner = owner;
+			acquiredAt = System.currentTimeMillis();
+		}
+
+		/**
+		 * To release this handle, releasing an already released handle has no effect.
+		 */
+		public void release() {
+			WakeLocker.release(this, false);
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getOwner() {
+			return owner;
+		}
+
+		public synchronized boolean isReleased() {
+			return released;
+		}
+	}
+
 	private static final String LOG_TAG = WakeLocker.class.getSimpleName();
 
-	// To handle wake lock
+	// To handle wake lock, one wake lock shared by all handles
 	private static PowerManager.WakeLock wakeLock;
 
+	// All currently held handles, in the order they were acquired
+	private static final List<WakeLockHandle> handles = new ArrayList<WakeLockHandle>();
+
+	// Id of next acquired handle
+	private static int nextHandleId = 1;
+
 	/**
-	 * To acquire a {@link WakeLock}.<br/>
+	 * To acquire a {@link WakeLock} for given <code>owner</code>. The actual wake lock is acquired if this is the first handle held, and it will
+	 * be released after given timeout unless the returned {@link WakeLockHandle} is released before that.
 	 * 
 	 * @param context
 	 *            The Context from which {@link PowerManager} is fetched.
+	 * @param owner
+	 *            Tag of owner of the handle, used when logging.
+	 * @param timeoutMillis
+	 *            Maximum time in milliseconds to hold the handle.
+	 * @return Handle to release when owners work is done.
+	 * @see #release(int)
 	 */
 	@SuppressWarnings("deprecation")
 	@SuppressLint("Wakelock")
-	public static void acquire(Context context) {
-		// Null check, so we don't release wakeLock if it's not necessary
-		if (wakeLock != null) {
-			wakeLock.release();
+	public static synchronized WakeLockHandle acquire(Context context, String owner, long timeoutMillis) {
+		// Declare and initialize PowerManager and WakeLock with correct flags, reference counting is made by the handles
+		if (wakeLock == null) {
+			PowerManager pm = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+			wakeLock = pm.newWakeLock(PowerManager.FULL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP | PowerManager.ON_AFTER_RELEASE, LOG_TAG);
+			wakeLock.setReferenceCounted(false);
 		}
 
-		// Declare and initialize PowerManager and WakeLock with correct flags
-		PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-		wakeLock = pm.newWakeLock(PowerManager.FULL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP | PowerManager.ON_AFTER_RELEASE, LOG_TAG + ":acquire()");
+		final WakeLockHandle handle = new WakeLockHandle(nextHandleId++, owner);
+
+		// First handle, acquire WakeLock
+		if (handles.isEmpty()) {
+			wakeLock.acquire();
+		}
 
-		// Acquire WakeLock
-		wakeLock.acquire();
+		handles.add(handle);
+		FlightRecorder.record(Event.WAKE_LOCK_ACQUIRED, handles.size(), owner);
+
+		handle.timeout = Scheduler.getInstance().schedule(LOG_TAG + ":timeout", new Runnable() {
+			@Override
+			public void run() {
+				release(handle, true);
+			}
+		}, timeoutMillis);
+
+		if (SmsAlarm.DEBUG) {
+			Log.d(LOG_TAG + ":acquire()", "Wake lock acquired by: \"" + owner + "\", holders are now: " + getHolders());
+		}
+
+		return handle;
 	}
 
 	/**
-	 * To release a {@link WakeLock}.<br/>
+	 * To release the held {@link WakeLockHandle} of given id. Useful when the handle itself can't be passed along to where the work is done, for
+	 * example to a <code>Service</code>, but it's id can. Releasing a handle which already has been released has no effect.
+	 * 
+	 * @param handleId
+	 *            Id of handle to release, see {@link WakeLockHandle#getId()}.
+	 * @return <code>true</code> if the handle was released, else <code>false</code>.
 	 */
-	public static void release() {
-		// Null check, so we don't release wakeLock if it's not necessary
-		if (wakeLock != null) {
-			wakeLock.release();
+	public static synchronized boolean release(int handleId) {
+		for (WakeLockHandle handle : handles) {
+			if (handle.id == handleId) {
+				release(handle, false);
+				return true;
+			}
 		}
-		wakeLock = null;
+
+		return false;
 	}
 
 	/**
-	 * To acquire a {@link WakeLock} and release it after given time in milliseconds.
+	 * To get the owners of all currently held {@link WakeLockHandle}'s.
 	 * 
-	 * @param context
-	 *            The Context from which {@link PowerManager} is fetched.
-	 * @param releaseTime
-	 *            Time in milliseconds until the acquired WakeLock is released.
-	 * @see #acquire(Context)
-	 * @see #release()
+	 * @return Owners of held handles, in the order they were acquired.
 	 */
-	public static void acquireAndRelease(Context context, int releaseTime) {
-		// To release acquired WakeLock after a specific time
-		Timer releaseTimer = new Timer();
+	public static synchronized List<String> getHolders() {
+		List<String> holders = new ArrayList<String>();
 
-		// Acquire WakeLock
-		acquire(context);
+		for (WakeLockHandle handle : handles) {
+			holders.add(handle.owner);
+		}
 
-		// Setup a TimerTask and start it, after given time in milliseconds has passed the WakeLock will be released
-		releaseTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				release();
+		return holders;
+	}
+
+	/**
+	 * To release given {@link WakeLockHandle}, and the actual {@link WakeLock} if it was the last held handle.
+	 * 
+	 * @param handle
+	 *            Handle to release.
+	 * @param timedOut
+	 *            Whether or not the release is due to the handle timing out.
+	 */
+	private static synchronized void release(WakeLockHandle handle, boolean timedOut) {
+		synchronized (handle) {
+			if (handle.released) {
+				return;
 			}
-		}, releaseTime);
+
+			handle.released = true;
+		}
+
+		handle.timeout.cancel();
+		handles.remove(handle);
+		FlightRecorder.record(Event.WAKE_LOCK_RELEASED, handles.size(), handle.owner);
+
+		// Last handle, release WakeLock
+		if (handles.isEmpty() && wakeLock != null && wakeLock.isHeld()) {
+			wakeLock.release();
+		}
+
+		if (timedOut) {
+			FlightRecorder.timeout(handle.owner, System.currentTimeMillis() - handle.acquiredAt);
+			Log.e(LOG_TAG + ":release()", "Wake lock held by: \"" + handle.owner + "\" timed out, it should have been released earlier, check why");
+		}
+
+		if (SmsAlarm.DEBUG) {
+			Log.d(LOG_TAG + ":release()", "Wake lock released by: \"" + handle.owner + "\" after " + (System.currentTimeMillis() - handle.acquiredAt) + "ms, holders are now: " + getHolders());
+		}
 	}
 }
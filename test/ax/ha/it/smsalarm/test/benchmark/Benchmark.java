@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.benchmark;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Minimal micro benchmark harness, runs an operation a number of times to warm it up and then measures time and allocations per operation.<br>
+ * Allocations are counted with {@link Debug#startAllocCounting()}, only allocations made by the benchmarking thread are counted.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+@SuppressWarnings("deprecation")
+public class Benchmark {
+	private static final String LOG_TAG = Benchmark.class.getSimpleName();
+
+	/**
+	 * An operation to benchmark. The result of each operation is consumed by the harness so the operation can't be optimized away.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public interface Operation {
+		Object run();
+	}
+
+	/**
+	 * Result of a benchmark.
+	 * 
+	 * @author Robert Nyholm <robert.nyholm@aland.net>
+	 * @version 2.3.1
+	 * @since 2.3.1
+	 */
+	public static class Result {
+		private final String name;
+		private final double nanosPerOperation;
+		private final double allocationsPerOperation;
+		private final double bytesPerOperation;
+
+		private Result(String name, double nanosPerOperation, double allocationsPerOperation, double bytesPerOperation) {
+			this.name = name;
+			this.nanosPerOperation = nanosPerOperation;
+			this.allocationsPerOperation = allocationsPerOperation;
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		public double getNanosPerOperation() {
+			return nanosPerOperation;
+		}
+
+		public double getAllocationsPerOperation() {
+			return allocationsPerOperation;
+		}
+
+		public double getBytesPerOperation() {
+			return bytesPerOperation;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-50s %12.0f ns/op %10.1f allocs/op %12.1f B/op", name, nanosPerOperation, allocationsPerOperation, bytesPerOperation);
+		}
+	}
+
+	// Number of times operation is run before, and while, measuring
+	private final int warmupIterations;
+	private final int measuredIterations;
+
+	// Consumes results of operations
+	private int sink;
+
+	/**
+	 * Creates a new instance of {@link Benchmark}.
+	 * 
+	 * @param warmupIterations
+	 *            Number of times each operation is run before measuring.
+	 * @param measuredIterations
+	 *            Number of times each operation is run while measuring.
+	 */
+	public Benchmark(int warmupIterations, int measuredIterations) {
+		this.warmupIterations = warmupIterations;
+		this.measuredIterations = measuredIterations;
+	}
+
+	/**
+	 * To benchmark given operation, the result is also logged.
+	 * 
+	 * @param name
+	 *            Name of benchmark.
+	 * @param operation
+	 *            Operation to benchmark.
+	 * @return Result of benchmark.
+	 */
+	public Result run(String name, Operation operation) {
+		for (int i = 0; i < warmupIterations; i++) {
+			consume(operation.run());
+		}
+
+		// Start from a clean heap so a collection caused by earlier garbage doesn't end up in this measurement
+		System.gc();
+
+		Debug.resetThreadAllocCount();
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < measuredIterations; i++) {
+			consume(operation.run());
+		}
+
+		long elapsed = System.nanoTime() - start;
+
+		Debug.stopAllocCounting();
+
+		Result result = new Result(name, (double) elapsed / measuredIterations, (double) Debug.getThreadAllocCount() / measuredIterations, (double) Debug.getThreadAllocSize() / measuredIterations);
+		Log.d(LOG_TAG + ":run()", result.toString());
+
+		return result;
+	}
+
+	/**
+	 * To consume result of an operation.
+	 * 
+	 * @param result
+	 *            Result to consume.
+	 */
+	private void consume(Object result) {
+		sink += result != null ? result.hashCode() : 0;
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import ax.ha.it.smsalarm.alarm.Alarm;
+import ax.ha.it.smsalarm.alarm.Alarm.AlarmType;
+import ax.ha.it.smsalarm.classifier.AlarmClassifier;
+import ax.ha.it.smsalarm.classifier.Classification;
+import ax.ha.it.smsalarm.classifier.RuleSet;
+import ax.ha.it.smsalarm.test.benchmark.Benchmark.Result;
+import ax.ha.it.smsalarm.util.Utils;
+
+/**
+ * Benchmarks of the <b><i>Alarm Hot Path</i></b>, that is everything done from an SMS is received until it's classified and stored as an alarm.
+ * Time and allocations per operation are logged for each benchmark, classification is benchmarked against synthetic rule sets of increasing size.
+ * <p>
+ * The benchmarks are annotated as {@link LargeTest}, so they can be left out of ordinary test runs and be run on their own with
+ * <code>-e size large</code>.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+@LargeTest
+public class HotPathBenchmarkTest extends AndroidTestCase {
+	// Sizes of synthetic rule sets, number of rules of each kind and type
+	private static final int[] RULE_SET_SIZES = { 1, 10, 100, 1000 };
+
+	// A typical alarm message, from http://www.alarmcentralen.ax
+	private static final String MESSAGE = "12.04.2015 13:37:00 1.1 Brand i byggnad, Storagatan 12, Mariehamn. Larmad enhet: RVS1, RVS2";
+
+	private final Benchmark benchmark = new Benchmark(2000, 10000);
+
+	public void testClassifyOnSender() {
+		for (int size : RULE_SET_SIZES) {
+			final RuleSet ruleSet = createRuleSet(size);
+
+			// Last secondary number, so all numbers are checked
+			final String sender = "4" + (size - 1);
+
+			Result result = benchmark.run("classify sender, " + size + " rules", new Benchmark.Operation() {
+				@Override
+				public Object run() {
+					return AlarmClassifier.classify(ruleSet, sender, "");
+				}
+			});
+
+			assertTrue(result.getNanosPerOperation() > 0);
+		}
+	}
+
+	public void testClassifyOnFreeText() {
+		for (int size : RULE_SET_SIZES) {
+			final RuleSet ruleSet = createRuleSet(size);
+
+			// Last secondary free text, so all free texts are checked
+			final String body = MESSAGE + " word" + (size - 1);
+
+			benchmark.run("classify free text, " + size + " rules", new Benchmark.Operation() {
+				@Override
+				public Object run() {
+					return AlarmClassifier.classify(ruleSet, "0", body);
+				}
+			});
+		}
+	}
+
+	public void testClassifyOnRegex() {
+		for (int size : RULE_SET_SIZES) {
+			final RuleSet ruleSet = createRuleSet(size);
+
+			benchmark.run("classify regex, " + size + " rules", new Benchmark.Operation() {
+				@Override
+				public Object run() {
+					return AlarmClassifier.classify(ruleSet, "0", MESSAGE);
+				}
+			});
+		}
+	}
+
+	public void testCreateRuleSet() {
+		for (final int size : RULE_SET_SIZES) {
+			benchmark.run("create rule set, " + size + " rules", new Benchmark.Operation() {
+				@Override
+				public Object run() {
+					return createRuleSet(size);
+				}
+			});
+		}
+	}
+
+	public void testTriggerTextAccumulation() {
+		// Every word of the message is a trigger text
+		List<String> words = new ArrayList<String>();
+		Collections.addAll(words, MESSAGE.split(" "));
+		final RuleSet ruleSet = new RuleSet(Collections.<String> emptyList(), Collections.<String> emptyList(), words, Collections.<String> emptyList(), Collections.<String> emptyList(), Collections.<String> emptyList());
+		final Classification classification = AlarmClassifier.classify(ruleSet, "0", MESSAGE);
+
+		assertEquals(words.size(), classification.getTriggerTexts().size());
+
+		benchmark.run("trigger text, " + words.size() + " texts", new Benchmark.Operation() {
+			@Override
+			public Object run() {
+				return classification.getTriggerText();
+			}
+		});
+	}
+
+	public void testCleanAlarmCentralAXMessage() {
+		benchmark.run("Utils.cleanAlarmCentralAXMessage", new Benchmark.Operation() {
+			@Override
+			public Object run() {
+				return Utils.cleanAlarmCentralAXMessage(MESSAGE);
+			}
+		});
+	}
+
+	public void testRemoveSpaces() {
+		benchmark.run("Utils.removeSpaces", new Benchmark.Operation() {
+			@Override
+			public Object run() {
+				return Utils.removeSpaces("+358 18 123 45 67");
+			}
+		});
+	}
+
+	public void testAlarmParcelRoundTrip() {
+		final Alarm alarm = new Alarm("+35818123456", MESSAGE, "Brand", AlarmType.PRIMARY);
+
+		benchmark.run("Alarm parcel round trip", new Benchmark.Operation() {
+			@Override
+			public Object run() {
+				Parcel parcel = Parcel.obtain();
+
+				try {
+					alarm.writeToParcel(parcel, 0);
+					parcel.setDataPosition(0);
+
+					return Alarm.CREATOR.createFromParcel(parcel);
+				} finally {
+					parcel.recycle();
+				}
+			}
+		});
+	}
+
+	/**
+	 * To create a synthetic {@link RuleSet} with given number of rules of each kind and type. None of the rules matches {@link #MESSAGE}, except one
+	 * primary regular expression.
+	 * 
+	 * @param size
+	 *            Number of rules of each kind and type.
+	 * @return Created rule set.
+	 */
+	private static RuleSet createRuleSet(int size) {
+		List<String> primaryNumbers = new ArrayList<String>();
+		List<String> secondaryNumbers = new ArrayList<String>();
+		List<String> primaryFreeTexts = new ArrayList<String>();
+		List<String> secondaryFreeTexts = new ArrayList<String>();
+		List<String> primaryRegexs = new ArrayList<String>();
+		List<String> secondaryRegexs = new ArrayList<String>();
+
+		for (int i = 0; i < size; i++) {
+			primaryNumbers.add("1" + i);
+			secondaryNumbers.add("4" + i);
+			primaryFreeTexts.add("nomatch" + i);
+			secondaryFreeTexts.add("word" + i);
+			primaryRegexs.add(i == size - 1 ? "RVS\\d" : "nomatch" + i + "\\d+");
+			secondaryRegexs.add("nomatch" + i + "[a-z]+");
+		}
+
+		return new RuleSet(primaryNumbers, secondaryNumbers, primaryFreeTexts, secondaryFreeTexts, primaryRegexs, secondaryRegexs);
+	}
+}
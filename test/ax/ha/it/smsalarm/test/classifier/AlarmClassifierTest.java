@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.classifier;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.classifier.AlarmClassifier;
+import ax.ha.it.smsalarm.classifier.Classification;
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.Rule;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+import ax.ha.it.smsalarm.classifier.RuleSet;
+
+/**
+ * Test class for {@link AlarmClassifier}. As the classifier doesn't depend on anything Android specific this is a plain {@link TestCase}, which can
+ * be run on any JVM.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class AlarmClassifierTest extends TestCase {
+	// Same rules as used in SmsReceiverTest
+	// @formatter:off
+	private final RuleSet rules = new RuleSet(
+			Arrays.asList("11111", "22222", "33333"), 
+			Arrays.asList("44444", "55555", "66666"), 
+			Arrays.asList("Large", "Fire", "test"), 
+			Arrays.asList("Small", "Alarm", "quickly"), 
+			Arrays.asList("\\d+", "\\w+[@]\\w+[.]\\w+", "\\d{2}[:]\\d{2}"), 
+			Arrays.asList("w{3}[.]\\w+[.]\\w+", "small_firealert"));
+	// @formatter:on
+
+	public void testNoAlarm() {
+		Classification classification = AlarmClassifier.classify(rules, "00000", "lorem ipsum");
+		assertFalse(classification.isAlarm());
+		assertEquals(Type.UNDEFINED, classification.getType());
+		assertEquals("", classification.getTriggerText());
+		assertTrue(classification.getMatchedRuleIds().isEmpty());
+
+		assertFalse(AlarmClassifier.classify(RuleSet.EMPTY, "11111", "Large fire 12").isAlarm());
+	}
+
+	public void testPrimary() {
+		Classification classification = AlarmClassifier.classify(rules, "11111", "lorem ipsum");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("", classification.getTriggerText());
+		assertEquals(Arrays.asList("PRIMARY.NUMBER.0"), classification.getMatchedRuleIds());
+
+		classification = AlarmClassifier.classify(rules, "28463800", "Testing large fire test");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("large, fire, test", classification.getTriggerText());
+		assertEquals(Arrays.asList("PRIMARY.FREE_TEXT.0", "PRIMARY.FREE_TEXT.1", "PRIMARY.FREE_TEXT.2"), classification.getMatchedRuleIds());
+
+		classification = AlarmClassifier.classify(rules, "11111", "Testing test large foo@bar.com 00:67");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("large, test, 00, 67, foo@bar.com, 00:67", classification.getTriggerText());
+		assertEquals(Arrays.asList("PRIMARY.NUMBER.0", "PRIMARY.FREE_TEXT.0", "PRIMARY.FREE_TEXT.2", "PRIMARY.REGEX.0", "PRIMARY.REGEX.1", "PRIMARY.REGEX.2"), classification.getMatchedRuleIds());
+	}
+
+	public void testSecondary() {
+		Classification classification = AlarmClassifier.classify(rules, "44444", "lorem ipsum");
+		assertEquals(Type.SECONDARY, classification.getType());
+		assertEquals("", classification.getTriggerText());
+
+		classification = AlarmClassifier.classify(rules, "99999", "The word for testing is smaLL");
+		assertEquals(Type.SECONDARY, classification.getType());
+		assertEquals("smaLL", classification.getTriggerText());
+
+		classification = AlarmClassifier.classify(rules, "44444", "Testing (www.foobar.com), ALARM and bla bla and small_firealert, quIckly blaha SMall");
+		assertEquals(Type.SECONDARY, classification.getType());
+		assertEquals("SMall, ALARM, quIckly, www.foobar.com, small_firealert", classification.getTriggerText());
+	}
+
+	public void testPrimaryDontDowngrade() {
+		// Primary on number, secondary free texts must not be checked
+		Classification classification = AlarmClassifier.classify(rules, "22222", "Testing small alarm");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("", classification.getTriggerText());
+
+		// Primary on free text, secondary free texts must not be checked
+		classification = AlarmClassifier.classify(rules, "00000", "Testing large small alarm");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("large", classification.getTriggerText());
+
+		// Primary on regular expression, secondary free texts must not be checked
+		classification = AlarmClassifier.classify(rules, "00000", "Testing small alarm 12");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("12", classification.getTriggerText());
+	}
+
+	public void testPrefilter() {
+		RuleSet numberRules = new RuleSet(Arrays.asList("11111"), Arrays.asList("44444"), Arrays.<String> asList(), Arrays.<String> asList(), Arrays.<String> asList(), Arrays.<String> asList());
+		RuleSet freeTextRules = new RuleSet(Arrays.<String> asList(), Arrays.<String> asList(), Arrays.asList("Large", "Fire"), Arrays.asList("Small"), Arrays.<String> asList(), Arrays.<String> asList());
+
+		assertTrue(RuleSet.EMPTY.isEmpty());
+		assertFalse(AlarmClassifier.mightBeAlarm(RuleSet.EMPTY, "11111", "Large fire 12"));
+
+		// Only number rules, body doesn't matter
+		assertFalse(numberRules.hasBodyRules());
+		assertTrue(AlarmClassifier.mightBeAlarm(numberRules, "44444", null));
+		assertFalse(AlarmClassifier.mightBeAlarm(numberRules, "00000", "Large fire 12"));
+
+		// Free texts are whole words, not case sensitive
+		assertTrue(freeTextRules.hasBodyRules());
+		assertTrue(AlarmClassifier.mightBeAlarm(freeTextRules, "00000", "a LARGE one"));
+		assertTrue(AlarmClassifier.mightBeAlarm(freeTextRules, "00000", "smaLL"));
+		assertFalse(AlarmClassifier.mightBeAlarm(freeTextRules, "00000", "Largest fires are  small, really"));
+		assertFalse(AlarmClassifier.mightBeAlarm(freeTextRules, "00000", ""));
+
+		// Regular expressions are prefiltered by their required literals, unless they have none
+		RuleSet regexRules = new RuleSet(Arrays.<String> asList(), Arrays.<String> asList(), Arrays.<String> asList(), Arrays.<String> asList(), Arrays.asList("\\d+ LARM"), Arrays.asList("RVS:\\w+"));
+		assertTrue(AlarmClassifier.mightBeAlarm(regexRules, "00000", "12 LARM"));
+		assertTrue(AlarmClassifier.mightBeAlarm(regexRules, "00000", "RVS:"));
+		assertFalse(AlarmClassifier.mightBeAlarm(regexRules, "00000", "12 larm rvs"));
+		assertTrue(AlarmClassifier.mightBeAlarm(rules, "00000", "lorem ipsum"));
+	}
+
+	public void testPrefilterNeverRejectsAlarm() {
+		// @formatter:off
+		RuleSet freeTextRules = new RuleSet(
+				Arrays.asList("11111"), 
+				Arrays.<String> asList(), 
+				Arrays.asList("Large", "Fire", "brand"), 
+				Arrays.asList("Small", "\u00e4lg"), 
+				Arrays.<String> asList(), 
+				Arrays.<String> asList());
+		// @formatter:on
+		List<String> words = Arrays.asList("large", "LARGE", "larger", "fire", "FiRe", "fires", "small", "\u00c4LG", "\u00e4lgen", "brand", "a", "", "12", "lorem", "ipsum");
+		List<String> senders = Arrays.asList("11111", "22222");
+		Random random = new Random(42);
+
+		for (int i = 0; i < 10000; i++) {
+			StringBuilder body = new StringBuilder();
+
+			for (int j = random.nextInt(6); j > 0; j--) {
+				body.append(words.get(random.nextInt(words.size()))).append(random.nextInt(4) == 0 ? "  " : " ");
+			}
+
+			String sender = senders.get(random.nextInt(senders.size()));
+
+			if (AlarmClassifier.classify(rules, sender, body.toString()).isAlarm()) {
+				assertTrue(AlarmClassifier.mightBeAlarm(rules, sender, body.toString()));
+			}
+
+			if (AlarmClassifier.classify(freeTextRules, sender, body.toString()).isAlarm()) {
+				assertTrue(body.toString(), AlarmClassifier.mightBeAlarm(freeTextRules, sender, body.toString()));
+			}
+		}
+	}
+
+	public void testSenderScope() {
+		Rule rule = new Rule("r", Kind.REGEX, Type.PRIMARY, "{112, +35818*}  RVS:\\w+");
+
+		assertTrue(rule.isScoped());
+		assertEquals("RVS:\\w+", rule.getValue());
+		assertEquals(Arrays.asList("112"), rule.getSenders());
+		assertEquals(Arrays.asList("+35818"), rule.getSenderPrefixes());
+		assertTrue(rule.appliesTo("112"));
+		assertTrue(rule.appliesTo("+35818123456"));
+		assertFalse(rule.appliesTo("1120"));
+		assertFalse(rule.appliesTo(null));
+
+		// Numbers are never scoped, and neither are values not starting with a scope
+		assertFalse(new Rule("r", Kind.NUMBER, Type.PRIMARY, "{112}").isScoped());
+		assertFalse(new Rule("r", Kind.FREE_TEXT, Type.PRIMARY, "Fire{112}").isScoped());
+		assertTrue(new Rule("r", Kind.FREE_TEXT, Type.PRIMARY, "Fire").appliesTo("0"));
+		assertEquals("a{1}", Rule.stripSenderScope("{112}a{1}"));
+		assertEquals("{{112}a", Rule.stripSenderScope("{{112}a"));
+	}
+
+	public void testEscapedRulesKeepBehaviour() {
+		// Valid regular expression, leading repetition of nothing matches anywhere
+		String regex = Rule.escapeSenderScope(Kind.REGEX, "{112}");
+		Rule rule = new Rule("r", Kind.REGEX, Type.PRIMARY, regex);
+
+		assertFalse(rule.isScoped());
+		assertTrue(rule.appliesTo("0"));
+
+		for (String body : Arrays.asList("", "112", "x {112} y", "lorem ipsum")) {
+			assertEquals(body, Pattern.compile("{112}").matcher(body).find(), rule.getPattern().matcher(body).find());
+		}
+
+		// Invalid regular expression, matched literally
+		rule = new Rule("r", Kind.REGEX, Type.PRIMARY, Rule.escapeSenderScope(Kind.REGEX, "{a} x"));
+
+		assertFalse(rule.isScoped());
+		assertTrue(rule.getPattern().matcher("b {a} x c").find());
+		assertFalse(rule.getPattern().matcher("a x").find());
+
+		// Free text, matched as is
+		rule = new Rule("r", Kind.FREE_TEXT, Type.PRIMARY, Rule.escapeSenderScope(Kind.FREE_TEXT, "{112}Fire"));
+
+		assertFalse(rule.isScoped());
+		assertEquals("{112}Fire", rule.getValue());
+		assertEquals("\\{x}", new Rule("r", Kind.FREE_TEXT, Type.PRIMARY, Rule.escapeSenderScope(Kind.FREE_TEXT, "\\{x}")).getValue());
+
+		// @formatter:off
+		RuleSet escapedRules = new RuleSet(
+				Arrays.<String> asList(), 
+				Arrays.<String> asList(), 
+				Arrays.asList(Rule.escapeSenderScope(Kind.FREE_TEXT, "{112}Fire")), 
+				Arrays.<String> asList(), 
+				Arrays.asList(Rule.escapeSenderScope(Kind.REGEX, "{112} RVS:\\w+")), 
+				Arrays.<String> asList());
+		// @formatter:on
+
+		assertEquals(Type.PRIMARY, AlarmClassifier.classify(escapedRules, "113", "{112}Fire").getType());
+		assertEquals(Type.PRIMARY, AlarmClassifier.classify(escapedRules, "113", "Call RVS:1").getType());
+		assertEquals(Type.UNDEFINED, AlarmClassifier.classify(escapedRules, "112", "Fire RVS").getType());
+
+		// Values not starting with a scope are left as they are
+		assertEquals("Fire{112}", Rule.escapeSenderScope(Kind.FREE_TEXT, "Fire{112}"));
+		assertEquals("{{112}a", Rule.escapeSenderScope(Kind.REGEX, "{{112}a"));
+		assertEquals("{112}", Rule.escapeSenderScope(Kind.NUMBER, "{112}"));
+	}
+
+	public void testScopedRulesRoutedBySender() {
+		// @formatter:off
+		RuleSet scopedRules = new RuleSet(
+				Arrays.<String> asList(), 
+				Arrays.<String> asList(), 
+				Arrays.asList("{112}Fire", "Large"), 
+				Arrays.asList("{0457*}Small", "{04570*}Tiny"), 
+				Arrays.asList("{112,0457*}RVS:\\w+"), 
+				Arrays.<String> asList());
+		// @formatter:on
+
+		assertEquals(Type.PRIMARY, AlarmClassifier.classify(scopedRules, "112", "Fire").getType());
+		assertEquals(Type.UNDEFINED, AlarmClassifier.classify(scopedRules, "113", "Fire").getType());
+		assertEquals(Type.PRIMARY, AlarmClassifier.classify(scopedRules, "113", "Large fire").getType());
+		assertEquals(Type.PRIMARY, AlarmClassifier.classify(scopedRules, "0457123", "RVS:1").getType());
+		assertEquals(Type.UNDEFINED, AlarmClassifier.classify(scopedRules, null, "RVS:1 fire small").getType());
+
+		// Longest matching prefix includes the rules of shorter prefixes
+		assertEquals(Type.SECONDARY, AlarmClassifier.classify(scopedRules, "0457123", "Small").getType());
+		assertEquals(Type.SECONDARY, AlarmClassifier.classify(scopedRules, "0457012", "Small").getType());
+		assertEquals(Type.SECONDARY, AlarmClassifier.classify(scopedRules, "0457012", "tiny").getType());
+		assertEquals(Type.UNDEFINED, AlarmClassifier.classify(scopedRules, "0457123", "tiny").getType());
+
+		// Only rules applying to the sender are returned
+		assertEquals(2, scopedRules.getRules(Type.PRIMARY, Kind.FREE_TEXT, "112").size());
+		assertEquals(1, scopedRules.getRules(Type.PRIMARY, Kind.FREE_TEXT, "0").size());
+		assertEquals(2, scopedRules.getRules(Type.SECONDARY, Kind.FREE_TEXT, "045701").size());
+		assertEquals(2, scopedRules.getRules(Type.PRIMARY, Kind.FREE_TEXT).size());
+
+		// Prefilter only considers rules applying to the sender
+		assertTrue(AlarmClassifier.mightBeAlarm(scopedRules, "112", "Fire"));
+		assertFalse(AlarmClassifier.mightBeAlarm(scopedRules, "113", "Fire RVS:1"));
+		assertTrue(AlarmClassifier.mightBeAlarm(scopedRules, "0457", "RVS:1"));
+	}
+
+	public void testInvalidRegexIsMatchedLiterally() {
+		RuleSet invalidRegexRules = new RuleSet(Arrays.<String> asList(), Arrays.<String> asList(), Arrays.<String> asList(), Arrays.<String> asList(), Arrays.asList("fire(("), Arrays.<String> asList());
+
+		Classification classification = AlarmClassifier.classify(invalidRegexRules, "00000", "Big fire(( now");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("fire((", classification.getTriggerText());
+	}
+}
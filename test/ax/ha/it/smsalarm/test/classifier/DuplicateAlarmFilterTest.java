@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.classifier;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.classifier.DuplicateAlarmFilter;
+
+/**
+ * Test class for {@link DuplicateAlarmFilter}.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class DuplicateAlarmFilterTest extends TestCase {
+	private static final long WINDOW = 120000;
+
+	private final DuplicateAlarmFilter filter = new DuplicateAlarmFilter();
+
+	public void testNormalizedHash() {
+		long hash = DuplicateAlarmFilter.hash("112", "Large fire in Jomala");
+
+		assertEquals(hash, DuplicateAlarmFilter.hash("112", "  LARGE fire\tin\r\n  jomala "));
+		assertFalse(hash == DuplicateAlarmFilter.hash("113", "Large fire in Jomala"));
+		assertFalse(hash == DuplicateAlarmFilter.hash("112", "Large fire in Jomala 2"));
+		assertFalse(hash == DuplicateAlarmFilter.hash("112", "Largefire in Jomala"));
+	}
+
+	public void testFindDuplicate() {
+		assertEquals(DuplicateAlarmFilter.NO_ALARM, filter.findDuplicate("112", "Large fire", WINDOW, 0));
+
+		filter.alarmRaised("112", "Large fire", 1, 0);
+		filter.alarmRaised("112", "Small fire", 2, 1000);
+
+		assertEquals(1, filter.findDuplicate("112", "large  fire", WINDOW, WINDOW));
+		assertEquals(2, filter.findDuplicate("112", "Small fire", WINDOW, WINDOW));
+		assertEquals(DuplicateAlarmFilter.NO_ALARM, filter.findDuplicate("113", "Large fire", WINDOW, WINDOW));
+
+		// Outside the window
+		assertEquals(DuplicateAlarmFilter.NO_ALARM, filter.findDuplicate("112", "Large fire", WINDOW, WINDOW + 1));
+		assertEquals(2, filter.findDuplicate("112", "Small fire", WINDOW, WINDOW + 1));
+	}
+
+	public void testBounded() {
+		for (int i = 0; i < 1000; i++) {
+			filter.alarmRaised("112", "Alarm " + i, i, 0);
+		}
+
+		assertEquals(999, filter.findDuplicate("112", "Alarm 999", WINDOW, 0));
+		assertEquals(DuplicateAlarmFilter.NO_ALARM, filter.findDuplicate("112", "Alarm 0", WINDOW, 0));
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.classifier;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.classifier.MultipartSmsBuffer;
+import ax.ha.it.smsalarm.classifier.MultipartSmsBuffer.ConcatHeader;
+import ax.ha.it.smsalarm.classifier.MultipartSmsBuffer.PartialSms;
+
+/**
+ * Test class for {@link MultipartSmsBuffer}.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class MultipartSmsBufferTest extends TestCase {
+	private static final long TIMEOUT = 60000;
+
+	private final MultipartSmsBuffer buffer = new MultipartSmsBuffer(TIMEOUT);
+
+	public void testParseConcatHeader() {
+		ConcatHeader header = ConcatHeader.parse(createPdu(0x00, new int[] { 0x2a, 3, 2 }));
+		assertEquals(0x2a, header.getReference());
+		assertEquals(3, header.getCount());
+		assertEquals(2, header.getSequence());
+
+		header = ConcatHeader.parse(createPdu(0x08, new int[] { 0x12, 0x34, 2, 1 }));
+		assertEquals(0x1234, header.getReference());
+		assertEquals(2, header.getCount());
+		assertEquals(1, header.getSequence());
+
+		// Not a segment, invalid sequence number and malformed PDU
+		assertNull(ConcatHeader.parse(createPdu(0x24, new int[] { 0x00 })));
+		assertNull(ConcatHeader.parse(createPdu(0x00, new int[] { 0x2a, 3, 4 })));
+		assertNull(ConcatHeader.parse(new byte[] { 0x00, 0x44, 0x0b }));
+		assertNull(ConcatHeader.parse(null));
+	}
+
+	public void testReassemble() {
+		PartialSms sms = buffer.add("11111", new ConcatHeader(1, 3, 1), "Large fi", 0);
+		assertFalse(sms.isComplete());
+		assertEquals("Large", sms.getPrefix());
+
+		// Segments can arrive in any order, and more than once
+		assertSame(sms, buffer.add("11111", new ConcatHeader(1, 3, 3), " now", 0));
+		assertEquals("Large", sms.getPrefix());
+		assertEquals("Large fi now", sms.getBody());
+		assertSame(sms, buffer.add("11111", new ConcatHeader(1, 3, 3), " now", 0));
+
+		// Same reference from another sender is another SMS
+		assertNotSame(sms, buffer.add("22222", new ConcatHeader(1, 3, 2), "re", 0));
+		assertEquals(2, buffer.size());
+
+		assertSame(sms, buffer.add("11111", new ConcatHeader(1, 3, 2), "re", 0));
+		assertTrue(sms.isComplete());
+		assertEquals("Large fire now", sms.getPrefix());
+		assertEquals("Large fire now", sms.getBody());
+		assertEquals(1, buffer.size());
+	}
+
+	public void testUndeliveredBody() {
+		// First segment isn't an alarm, it's broadcast isn't aborted and hence it's delivered to the inbox
+		PartialSms sms = buffer.add("11111", new ConcatHeader(1, 3, 1), "Large fi", 0);
+		buffer.segmentsDelivered(sms, Arrays.asList(1));
+		assertEquals("", sms.getUndeliveredBody());
+
+		buffer.add("11111", new ConcatHeader(1, 3, 2), "re", 0);
+		buffer.add("11111", new ConcatHeader(1, 3, 3), " now", 0);
+		assertTrue(sms.isComplete());
+		assertEquals("Large fire now", sms.getBody());
+		assertEquals("re now", sms.getUndeliveredBody());
+	}
+
+	public void testEvictNotRaisedFirst() {
+		PartialSms raised = buffer.add("11111", new ConcatHeader(0, 2, 1), "Large fire", 0);
+		buffer.alarmRaised(raised, 7);
+
+		for (int i = 1; i < MultipartSmsBuffer.MAX_PARTIAL_SMS; i++) {
+			buffer.add("22222", new ConcatHeader(i, 2, 1), "lorem", i);
+		}
+
+		// SMS without any alarm raised is evicted, even though the raised one is older
+		buffer.add("33333", new ConcatHeader(0, 2, 1), "ipsum", 100);
+		assertEquals(MultipartSmsBuffer.MAX_PARTIAL_SMS, buffer.size());
+		assertTrue(buffer.takeEvicted().isEmpty());
+		assertSame(raised, buffer.add("11111", new ConcatHeader(0, 2, 1), "Large fire", 100));
+	}
+
+	public void testEvictRaisedHandedOver() {
+		PartialSms oldest = null;
+
+		for (int i = 0; i < MultipartSmsBuffer.MAX_PARTIAL_SMS; i++) {
+			PartialSms sms = buffer.add("11111", new ConcatHeader(i, 2, 1), "Large fire " + i, i);
+			buffer.alarmRaised(sms, i);
+
+			if (oldest == null) {
+				oldest = sms;
+			}
+		}
+
+		buffer.add("22222", new ConcatHeader(0, 2, 1), "lorem", 100);
+
+		// The oldest SMS with an alarm raised is never dropped silently, it's handed over with the segments received so far
+		List<PartialSms> evicted = buffer.takeEvicted();
+		assertEquals(1, evicted.size());
+		assertSame(oldest, evicted.get(0));
+		assertEquals(0, evicted.get(0).getAlarmId());
+		assertEquals("Large fire 0", evicted.get(0).getBody());
+		assertTrue(buffer.takeEvicted().isEmpty());
+	}
+
+	public void testExpire() {
+		PartialSms sms = buffer.add("11111", new ConcatHeader(1, 2, 2), "fire", 0);
+		assertEquals("", sms.getPrefix());
+
+		assertFalse(sms.isAlarmRaised());
+		buffer.alarmRaised(sms, 7);
+		assertTrue(sms.isAlarmRaised());
+		assertEquals(7, sms.getAlarmId());
+
+		assertTrue(buffer.expire(TIMEOUT - 1).isEmpty());
+		assertEquals(1, buffer.size());
+		assertSame(sms, buffer.expire(TIMEOUT).get(0));
+		assertEquals(0, buffer.size());
+	}
+
+	/**
+	 * To create a SMS-DELIVER PDU with a user data header holding one information element.
+	 * 
+	 * @param iei
+	 *            Information element identifier.
+	 * @param data
+	 *            Data of information element.
+	 * @return Created PDU.
+	 */
+	private static byte[] createPdu(int iei, int[] data) {
+		// @formatter:off
+		int[] head = { 
+			0x00,											// No SMSC address
+			0x44,											// SMS-DELIVER with user data header
+			0x0b, 0x91, 0x53, 0x48, 0x27, 0x16, 0x15, 0xf5,	// Originating address
+			0x00, 0x00,										// Protocol identifier and data coding scheme
+			0x51, 0x10, 0x12, 0x21, 0x43, 0x65, 0x00,		// Time stamp
+			0x0a,											// User data length
+			data.length + 2, iei, data.length };			// User data header
+		// @formatter:on
+		byte[] pdu = new byte[head.length + data.length + 4];
+
+		for (int i = 0; i < head.length; i++) {
+			pdu[i] = (byte) head[i];
+		}
+
+		for (int i = 0; i < data.length; i++) {
+			pdu[head.length + i] = (byte) data[i];
+		}
+
+		return pdu;
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.classifier;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.classifier.RegexLiterals;
+
+/**
+ * Test class for {@link RegexLiterals}.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class RegexLiteralsTest extends TestCase {
+	public void testFindRequiredLiteral() {
+		assertEquals("LARM", RegexLiterals.findRequiredLiteral("LARM"));
+		assertEquals("LARM", RegexLiterals.findRequiredLiteral("^\\d+ LAR?\\s+LARM[0-9]{2}$"));
+		assertEquals(" RVS:", RegexLiterals.findRequiredLiteral("(Brand|Fire) RVS:\\w+"));
+		assertEquals("www.", RegexLiterals.findRequiredLiteral("www\\.+[a-z]+"));
+		assertEquals("fire((", RegexLiterals.findRequiredLiteral("fire\\(\\("));
+		assertEquals("small_firealert", RegexLiterals.findRequiredLiteral("small_firealert"));
+		assertEquals("ab", RegexLiterals.findRequiredLiteral("abc*d"));
+		assertEquals("@", RegexLiterals.findRequiredLiteral("\\w+@\\w+[.]\\w+"));
+	}
+
+	public void testNoRequiredLiteral() {
+		assertNull(RegexLiterals.findRequiredLiteral(null));
+		assertNull(RegexLiterals.findRequiredLiteral(""));
+		assertNull(RegexLiterals.findRequiredLiteral("\\d+"));
+		assertNull(RegexLiterals.findRequiredLiteral("a?b*c{2}"));
+		assertNull(RegexLiterals.findRequiredLiteral("Brand|Fire"));
+		assertNull(RegexLiterals.findRequiredLiteral("(?i)LARM"));
+		assertNull(RegexLiterals.findRequiredLiteral("\\QLARM\\E"));
+		assertNull(RegexLiterals.findRequiredLiteral("(LARM)\\1"));
+		assertNull(RegexLiterals.findRequiredLiteral("\\x41LARM"));
+	}
+
+	public void testRequiredLiteralAlwaysFound() {
+		// @formatter:off
+		List<String> regexs = Arrays.asList(
+				"LARM", "LA(RM)?", "L(?i:ar)M", "ab+c", "a.c", "[ab]c", "(a|b)c", "x*y", "a{1,2}b", "\\d+a", "(?:ab)+c", "a\\.b", 
+				"\\ba\\b", "c$", "^a", "a[^\\]]b", "a(?=b)", "(?<x>ab)c", "ab??c", "a\\+b");
+		// @formatter:on
+		String alphabet = "abcxyLARM.+] 1";
+		Random random = new Random(42);
+
+		for (String regex : regexs) {
+			Pattern pattern = Pattern.compile(regex);
+			String literal = RegexLiterals.findRequiredLiteral(regex);
+
+			for (int i = 0; i < 2000 && literal != null; i++) {
+				StringBuilder body = new StringBuilder();
+
+				for (int j = random.nextInt(8); j > 0; j--) {
+					body.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+
+				if (pattern.matcher(body).find()) {
+					assertTrue(regex + " found in " + body, body.indexOf(literal) >= 0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.classifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.classifier.AlarmClassifier;
+import ax.ha.it.smsalarm.classifier.Classification;
+import ax.ha.it.smsalarm.classifier.Classification.Type;
+import ax.ha.it.smsalarm.classifier.Rule.Kind;
+import ax.ha.it.smsalarm.classifier.RuleSet;
+import ax.ha.it.smsalarm.classifier.RuleSetReader;
+
+/**
+ * Tests of {@link RuleSetReader}.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class RuleSetReaderTest extends TestCase {
+	// @formatter:off
+	private static final String RULES = "# Rules from the dispatch centre\n" +
+										"\n" +
+										"NUMBER,PRIMARY,+358 18 123-456\n" +
+										"number;secondary;0457 000 000\n" +
+										"FREE_TEXT,SECONDARY,\"brand\"\n" +
+										"REGEX,PRIMARY,(?i)larm\\s+\\d{1,3}\n" +
+										"REGEX,SECONDARY,(\n" +
+										"FREE_TEXT,PRIMARY,brand\n" +
+										"NUMBER,UNDEFINED,123\n" +
+										"NUMBER,PRIMARY\n";
+	// @formatter:on
+
+	public void testRead() throws IOException {
+		RuleSetReader reader = new RuleSetReader();
+		RuleSet ruleSet = reader.read(new BufferedReader(new StringReader(RULES)));
+
+		assertEquals(10, reader.getLinesRead());
+		assertEquals(4, reader.getRejectedLines());
+		assertEquals(4, ruleSet.size());
+
+		assertEquals("+35818123456", ruleSet.getRules(Type.PRIMARY, Kind.NUMBER).get(0).getValue());
+		assertEquals("0457000000", ruleSet.getRules(Type.SECONDARY, Kind.NUMBER).get(0).getValue());
+		assertEquals("brand", ruleSet.getRules(Type.SECONDARY, Kind.FREE_TEXT).get(0).getValue());
+		assertTrue(ruleSet.getRules(Type.PRIMARY, Kind.FREE_TEXT).isEmpty());
+		assertTrue(ruleSet.getRules(Type.SECONDARY, Kind.REGEX).isEmpty());
+	}
+
+	public void testReadOutcomes() throws IOException {
+		RuleSetReader reader = new RuleSetReader();
+		reader.read(new BufferedReader(new StringReader(RULES)));
+
+		assertEquals(1, reader.getCrossTierDuplicates());
+		assertEquals(0, reader.getDuplicates());
+		assertEquals(1, reader.getInvalidRegexs());
+		assertEquals(2, reader.getMalformedLines());
+	}
+
+	public void testReadWithExistingRules() throws IOException {
+		RuleSetReader reader = new RuleSetReader();
+		reader.addExistingRules(Kind.NUMBER, Type.PRIMARY, Arrays.asList("+35818123456"));
+		reader.addExistingRules(Kind.FREE_TEXT, Type.PRIMARY, Arrays.asList("brand"));
+		RuleSet ruleSet = reader.read(new BufferedReader(new StringReader(RULES)));
+
+		assertEquals(2, reader.getDuplicates());
+		assertEquals(1, reader.getCrossTierDuplicates());
+		assertEquals(6, reader.getRejectedLines());
+		assertEquals(2, ruleSet.size());
+
+		// Existing rules aren't part of the read rules
+		assertTrue(reader.getAcceptedRules(Kind.NUMBER, Type.PRIMARY).isEmpty());
+		assertEquals(Arrays.asList("0457000000"), reader.getAcceptedRules(Kind.NUMBER, Type.SECONDARY));
+	}
+
+	public void testReadRulesClassify() throws IOException {
+		RuleSet ruleSet = new RuleSetReader().read(new BufferedReader(new StringReader(RULES)));
+
+		Classification classification = AlarmClassifier.classify(ruleSet, "0", "LARM 112 brand i byggnad");
+		assertEquals(Type.PRIMARY, classification.getType());
+		assertEquals("LARM 112", classification.getTriggerText());
+
+		assertEquals(Type.SECONDARY, AlarmClassifier.classify(ruleSet, "0457000000", "").getType());
+		assertEquals(Type.UNDEFINED, AlarmClassifier.classify(ruleSet, "0", "hello").getType());
+	}
+
+	public void testReadScopedRegex() throws IOException {
+		RuleSetReader reader = new RuleSetReader();
+		RuleSet ruleSet = reader.read(new BufferedReader(new StringReader("REGEX,PRIMARY,{112} RVS:\\w+\nREGEX,SECONDARY,{112} (\n")));
+
+		assertEquals(1, reader.getRejectedLines());
+		assertEquals("RVS:\\w+", ruleSet.getRules(Type.PRIMARY, Kind.REGEX).get(0).getValue());
+		assertEquals(Type.PRIMARY, AlarmClassifier.classify(ruleSet, "112", "RVS:1").getType());
+		assertEquals(Type.UNDEFINED, AlarmClassifier.classify(ruleSet, "0", "RVS:1").getType());
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.handler;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer.Decision;
+import ax.ha.it.smsalarm.handler.AlarmStormCoalescer.Storm;
+
+/**
+ * Tests of {@link AlarmStormCoalescer}.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class AlarmStormCoalescerTest extends TestCase {
+	private static final long WINDOW = 60000;
+
+	private AlarmStormCoalescer coalescer;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		coalescer = new AlarmStormCoalescer(WINDOW);
+	}
+
+	public void testFirstAlarmStartsStorm() {
+		Storm storm = coalescer.alarm(true, 1000);
+
+		assertEquals(Decision.START, storm.getDecision());
+		assertEquals(1, storm.getAlarms());
+		assertTrue(storm.isPrimary());
+	}
+
+	public void testSameTierCoalesced() {
+		Storm first = coalescer.alarm(true, 1000);
+		Storm second = coalescer.alarm(true, 5000);
+		Storm third = coalescer.alarm(true, 9000);
+
+		assertEquals(Decision.COALESCE, second.getDecision());
+		assertEquals(Decision.COALESCE, third.getDecision());
+		assertEquals(first.getId(), third.getId());
+		assertEquals(3, third.getAlarms());
+		assertEquals(8000, third.getDurationMillis());
+	}
+
+	public void testSecondaryCoalescedIntoPrimary() {
+		coalescer.alarm(true, 1000);
+		Storm storm = coalescer.alarm(false, 2000);
+
+		assertEquals(Decision.COALESCE, storm.getDecision());
+		assertTrue(storm.isPrimary());
+		assertEquals(1, storm.getPrimaryAlarms());
+		assertEquals(1, storm.getSecondaryAlarms());
+	}
+
+	public void testPrimaryPreemptsSecondary() {
+		Storm first = coalescer.alarm(false, 1000);
+		Storm second = coalescer.alarm(true, 2000);
+		Storm third = coalescer.alarm(true, 3000);
+
+		assertEquals(Decision.PREEMPT, second.getDecision());
+		assertEquals(first.getId(), second.getId());
+		assertTrue(second.isPrimary());
+		assertEquals(1, second.getPreemptions());
+		assertEquals(Decision.COALESCE, third.getDecision());
+	}
+
+	public void testWindowFromStormStart() {
+		Storm first = coalescer.alarm(true, 0);
+		Storm second = coalescer.alarm(true, WINDOW / 2);
+		Storm third = coalescer.alarm(true, WINDOW);
+
+		assertEquals(Decision.COALESCE, second.getDecision());
+		assertEquals(first.getId(), third.getId());
+
+		// Alarms keep arriving within the window of each other, but the storm doesn't slide along
+		Storm fourth = coalescer.alarm(true, WINDOW + WINDOW / 2);
+		assertEquals(Decision.START, fourth.getDecision());
+		assertTrue(first.getId() != fourth.getId());
+	}
+
+	public void testStormLastsWithoutSignal() {
+		// No alarm signal is played, in silent or vibrate mode, hence nothing ends the storm but the window
+		Storm first = coalescer.alarm(false, 0);
+		Storm preempting = coalescer.alarm(true, 1000);
+
+		assertEquals(Decision.PREEMPT, preempting.getDecision());
+		assertEquals(Decision.COALESCE, coalescer.alarm(true, 2000).getDecision());
+		assertEquals(Decision.COALESCE, coalescer.alarm(false, WINDOW).getDecision());
+
+		Storm next = coalescer.alarm(true, WINDOW + 1);
+		assertEquals(Decision.START, next.getDecision());
+		assertTrue(first.getId() != next.getId());
+	}
+
+	public void testNewStormAfterWindow() {
+		Storm first = coalescer.alarm(true, 0);
+		Storm second = coalescer.alarm(false, WINDOW + 1);
+
+		assertEquals(Decision.START, second.getDecision());
+		assertTrue(first.getId() != second.getId());
+		assertFalse(second.isPrimary());
+		assertEquals(1, second.getAlarms());
+	}
+
+	public void testEndStorm() {
+		coalescer.alarm(true, 0);
+		coalescer.endStorm();
+
+		assertEquals(Decision.START, coalescer.alarm(true, 1000).getDecision());
+	}
+
+	public void testStatsKeptPerStorm() {
+		coalescer.alarm(true, 0);
+		coalescer.alarm(true, 1000);
+		coalescer.alarm(false, 10 * WINDOW);
+
+		List<Storm> storms = coalescer.getStorms();
+
+		assertEquals(2, storms.size());
+		assertEquals(2, storms.get(0).getAlarms());
+		assertEquals(1, storms.get(1).getSecondaryAlarms());
+	}
+
+	public void testReturnedStormIsSnapshot() {
+		Storm first = coalescer.alarm(true, 0);
+		coalescer.alarm(true, 1000);
+
+		assertEquals(1, first.getAlarms());
+		assertEquals(Decision.START, first.getDecision());
+	}
+
+	public void testEndedStormsCapped() {
+		for (int i = 0; i < 20; i++) {
+			coalescer.alarm(true, i * 10 * WINDOW);
+		}
+
+		List<Storm> storms = coalescer.getStorms();
+
+		assertTrue(storms.size() < 20);
+		assertEquals(20, storms.get(storms.size() - 1).getId());
+	}
+}
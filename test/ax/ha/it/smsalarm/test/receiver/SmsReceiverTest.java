@@ -565,6 +565,35 @@ public class SmsReceiverTest extends AndroidTestCase {
 		assertEquals("Testing large test@foo.com, 67:87 fire", alarm.getMessage());
 	}
 
+	/**
+	 * To test that an alarm triggered on phone number gets the whole message, even if there are only number rules and hence the body isn't needed to
+	 * classify the SMS.
+	 */
+	public void testOnReceiveTriggerOnlyNumberRules() {
+		prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_FREE_TEXTS_KEY, new ArrayList<String>(), context);
+		prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_FREE_TEXTS_KEY, new ArrayList<String>(), context);
+		prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.PRIMARY_LISTEN_REGULAR_EXPRESSIONS_KEY, new ArrayList<String>(), context);
+		prefHandler.storePrefs(PrefKey.SHARED_PREF, PrefKey.SECONDARY_LISTEN_REGULAR_EXPRESSIONS_KEY, new ArrayList<String>(), context);
+
+		currentAlarmsCount = databaseHandler.getAlarmsCount();
+
+		receiver = new SmsReceiver();
+		receiver.onReceive(context, createMockSMSIntent("22222", "Only number rules, whole message kept"));
+
+		alarm = databaseHandler.fetchLatestAlarm();
+
+		assertEquals(++currentAlarmsCount, databaseHandler.getAlarmsCount());
+		assertEquals(AlarmType.PRIMARY, alarm.getAlarmType());
+		assertEquals("22222", alarm.getSender());
+		assertEquals("Only number rules, whole message kept", alarm.getMessage());
+
+		// Not an alarm, as sender isn't the phone number of any rule
+		receiver = new SmsReceiver();
+		receiver.onReceive(context, createMockSMSIntent("00000", "Large fire"));
+
+		assertEquals(currentAlarmsCount, databaseHandler.getAlarmsCount());
+	}
+
 	/**
 	 * To test that no alarms are triggered if Sms Alarm is disabled.
 	 */
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.util;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.util.FlightRecorder;
+import ax.ha.it.smsalarm.util.FlightRecorder.Entry;
+import ax.ha.it.smsalarm.util.FlightRecorder.Event;
+
+/**
+ * Tests of {@link FlightRecorder}.
+ *
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class FlightRecorderTest extends TestCase {
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		FlightRecorder.clear();
+	}
+
+	public void testEventsKeptInOrder() {
+		FlightRecorder.record(Event.SMS_RECEIVED, 1);
+		FlightRecorder.record(Event.SMS_CLASSIFIED, "PRIMARY");
+		FlightRecorder.record(Event.ALARM_STORED, 42);
+
+		List<Entry> entries = FlightRecorder.getEntries();
+
+		assertEquals(3, entries.size());
+		assertEquals(Event.SMS_RECEIVED, entries.get(0).getEvent());
+		assertEquals("PRIMARY", entries.get(1).getDetail());
+		assertEquals(42, entries.get(2).getValue());
+		assertTrue(entries.get(0).getSequence() < entries.get(2).getSequence());
+	}
+
+	public void testOldestEventsOverwritten() {
+		for (int i = 0; i < FlightRecorder.CAPACITY + 10; i++) {
+			FlightRecorder.record(Event.ALARM_STORED, i);
+		}
+
+		List<Entry> entries = FlightRecorder.getEntries();
+
+		assertEquals(FlightRecorder.CAPACITY, entries.size());
+		assertEquals(10, entries.get(0).getValue());
+		assertEquals(FlightRecorder.CAPACITY + 9, entries.get(entries.size() - 1).getValue());
+	}
+
+	public void testConcurrentRecording() throws InterruptedException {
+		Thread[] threads = new Thread[4];
+
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						FlightRecorder.record(Event.WAKE_LOCK_ACQUIRED, j);
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Ring buffer is full and every entry is in sequence order
+		List<Entry> entries = FlightRecorder.getEntries();
+		assertEquals(FlightRecorder.CAPACITY, entries.size());
+
+		for (int i = 1; i < entries.size(); i++) {
+			assertEquals(entries.get(i - 1).getSequence() + 1, entries.get(i).getSequence());
+		}
+	}
+}
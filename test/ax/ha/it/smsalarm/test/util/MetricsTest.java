@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2015 Robert Nyholm. All rights reserved.
+ */
+package ax.ha.it.smsalarm.test.util;
+
+import junit.framework.TestCase;
+import ax.ha.it.smsalarm.util.Metrics;
+import ax.ha.it.smsalarm.util.Metrics.AlarmStage;
+import ax.ha.it.smsalarm.util.Metrics.Histogram;
+
+/**
+ * Tests of {@link Metrics}.
+ * 
+ * @author Robert Nyholm <robert.nyholm@aland.net>
+ * @version 2.3.1
+ * @since 2.3.1
+ */
+public class MetricsTest extends TestCase {
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Metrics.getInstance().reset();
+	}
+
+	public void testHistogramPercentiles() {
+		Histogram histogram = new Histogram();
+
+		// 1 to 1000 milliseconds
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000000L);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMeanMillis(), 0.001);
+		assertEquals(1000.0, histogram.getMaxMillis(), 0.001);
+
+		// Percentiles are known within 19%, and never above the maximum
+		assertEquals(500, histogram.getPercentileMillis(50), 500 * 0.19);
+		assertEquals(950, histogram.getPercentileMillis(95), 950 * 0.19);
+		assertTrue(histogram.getPercentileMillis(99) <= 1000.0);
+	}
+
+	public void testEmptyHistogram() {
+		Histogram histogram = new Histogram();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0.0, histogram.getPercentileMillis(99), 0);
+		assertEquals(0.0, histogram.getMeanMillis(), 0);
+	}
+
+	public void testCounters() {
+		Metrics.getInstance().increment("test.counter");
+		Metrics.getInstance().increment("test.counter");
+
+		assertEquals(Long.valueOf(2), Metrics.getInstance().getCounters().get("test.counter"));
+	}
+
+	public void testAlarmStageRecordedOncePerTrace() {
+		// No trace started, nothing recorded
+		Metrics.getInstance().alarmStage(AlarmStage.CLASSIFIED);
+		assertFalse(Metrics.getInstance().getHistograms().containsKey(AlarmStage.CLASSIFIED.getMetricName()));
+
+		Metrics.getInstance().alarmReceived();
+		Metrics.getInstance().alarmStage(AlarmStage.CLASSIFIED);
+		Metrics.getInstance().alarmStage(AlarmStage.CLASSIFIED);
+		assertEquals(1, Metrics.getInstance().histogram(AlarmStage.CLASSIFIED.getMetricName()).getCount());
+
+		Metrics.getInstance().alarmReceived();
+		Metrics.getInstance().alarmStage(AlarmStage.CLASSIFIED);
+		assertEquals(2, Metrics.getInstance().histogram(AlarmStage.CLASSIFIED.getMetricName()).getCount());
+	}
+}